@@ -0,0 +1,111 @@
+package com.nmims.canteen.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
+import com.nmims.canteen.models.InventoryItem;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent stock movements against the Firestore emulator
+ * Start it with `firebase emulators:start --only firestore`; the device reaches the host
+ * at 10.0.2.2. Plain stock movements are blind increments, so every updater must commit,
+ * none may be lost, and the derived alert fields must describe the final stock whichever
+ * writer refreshed them last.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryConcurrencyTest {
+    private static final int UPDATERS = 50;
+    private static final int START_STOCK = 60;
+
+    private String inventoryId;
+
+    @BeforeClass
+    public static void useEmulator() {
+        FirebaseFirestore.getInstance().useEmulator("10.0.2.2", 8080);
+    }
+
+    @After
+    public void deleteItem() throws Exception {
+        if (inventoryId != null) {
+            Tasks.await(FirebaseUtils.getInventoryItemDocument(inventoryId).delete(), 10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void concurrentUpdatersKeepStockAndAlertFieldsConsistent() throws Exception {
+        inventoryId = FirebaseUtils.generateDocumentId();
+        InventoryItem seed = new InventoryItem();
+        seed.setItemName("Concurrency test item");
+        seed.setCurrentStock(START_STOCK);
+        seed.setLowStockThreshold(10);
+        seed.setReorderPoint(15);
+        seed.setUnitCost(10);
+        seed.calculateTotalValue();
+        seed.checkAlertLevels();
+        Tasks.await(FirebaseUtils.getInventoryItemDocument(inventoryId).set(seed), 10, TimeUnit.SECONDS);
+
+        // Every updater takes one unit, crossing the Medium and High alert levels on the way
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(UPDATERS);
+        AtomicInteger committed = new AtomicInteger();
+        for (int i = 0; i < UPDATERS; i++) {
+            String performedBy = "updater-" + i;
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                InventoryManager.getInstance().updateStock(inventoryId, -1, "Concurrency test", performedBy,
+                        new InventoryManager.StockMovementCallback() {
+                            @Override
+                            public void onSuccess(InventoryItem item) {
+                                committed.incrementAndGet();
+                                done.countDown();
+                            }
+
+                            @Override
+                            public void onFailure(String error) {
+                                done.countDown();
+                            }
+                        });
+            }).start();
+        }
+        start.countDown();
+        assertTrue("Updaters timed out", done.await(2, TimeUnit.MINUTES));
+        assertEquals("Every updater must commit", UPDATERS, committed.get());
+
+        DocumentSnapshot snapshot = Tasks.await(
+                FirebaseUtils.getInventoryItemDocument(inventoryId).get(Source.SERVER), 10, TimeUnit.SECONDS);
+        InventoryItem stored = snapshot.toObject(InventoryItem.class);
+        int logEntries = Tasks.await(
+                FirebaseUtils.getInventoryItemLogsCollection(inventoryId).get(Source.SERVER), 10, TimeUnit.SECONDS).size();
+
+        assertEquals(START_STOCK - UPDATERS, stored.getCurrentStock());
+        assertEquals(UPDATERS, stored.getMovementCount());
+        assertEquals(UPDATERS, logEntries);
+        assertEquals(UPDATERS, stored.getStockOut());
+
+        // Derived fields must match what the final stock implies
+        boolean storedLowStockAlert = stored.isLowStockAlert();
+        String storedAlertLevel = stored.getAlertLevel();
+        stored.checkAlertLevels();
+        assertEquals(stored.isLowStockAlert(), storedLowStockAlert);
+        assertEquals(stored.getAlertLevel(), storedAlertLevel);
+    }
+}
@@ -1,6 +1,7 @@
 package com.nmims.canteen.activities;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -43,15 +44,18 @@ import com.nmims.canteen.models.SalesData;
 import com.nmims.canteen.services.FirebaseAuthService;
 import com.nmims.canteen.services.FirestoreService;
 import com.nmims.canteen.utils.AnalyticsManager;
+import com.nmims.canteen.utils.DemandMatrix;
 import com.nmims.canteen.utils.InventoryManager;
 import com.nmims.canteen.utils.NotificationManager;
+import com.nmims.canteen.utils.ReportExporter;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
 
 /**
  * Comprehensive admin panel with sales analytics and inventory management
@@ -59,6 +63,8 @@ import java.util.TimerTask;
  */
 public class AdminActivity extends AppCompatActivity {
     private static final String TAG = "AdminActivity";
+    private static final int STAFFING_HISTORY_DAYS = 28;
+    private static final double ITEMS_PER_STAFF_HOUR = 30; // Items one kitchen staff member prepares per hour
 
     // UI Components
     private AppBarLayout appBarLayout;
@@ -76,6 +82,8 @@ public class AdminActivity extends AppCompatActivity {
     private MaterialTextView activeUsersTextView;
     private MaterialTextView lowStockItemsTextView;
     private MaterialTextView pendingReviewsTextView;
+    private MaterialTextView kitchenLatencyTextView;
+    private MaterialTextView kitchenStaffingTextView;
 
     // Real-time indicators
     private TextView newOrdersBadge;
@@ -99,9 +107,9 @@ public class AdminActivity extends AppCompatActivity {
     private int activeUsers;
     private int lowStockItems;
     private int pendingReviews;
+    private Map<String, Double> kitchenLatency; // Today's time-to-ready percentiles
+    private DemandMatrix recentDemand; // Last four weeks, for staffing
 
-    // Auto-refresh
-    private Timer autoRefreshTimer;
     private final DecimalFormat currencyFormatter = new DecimalFormat("₹##,##0.00");
 
     @Override
@@ -127,14 +135,14 @@ public class AdminActivity extends AppCompatActivity {
         // Setup real-time monitoring
         startRealTimeMonitoring();
 
-        // Start auto-refresh
-        startAutoRefresh();
+        // Push today's sales to the dashboard as orders change
+        startLiveSales();
     }
 
     private void initializeServices() {
         authService = FirebaseAuthService.getInstance();
         firestoreService = FirestoreService.getInstance();
-        analyticsManager = AnalyticsManager.getInstance();
+        analyticsManager = AnalyticsManager.getInstance(this);
         inventoryManager = InventoryManager.getInstance();
         notificationManager = NotificationManager.getInstance();
         notifications = new ArrayList<>();
@@ -156,6 +164,8 @@ public class AdminActivity extends AppCompatActivity {
         activeUsersTextView = findViewById(R.id.activeUsersTextView);
         lowStockItemsTextView = findViewById(R.id.lowStockItemsTextView);
         pendingReviewsTextView = findViewById(R.id.pendingReviewsTextView);
+        kitchenLatencyTextView = findViewById(R.id.kitchenLatencyTextView);
+        kitchenStaffingTextView = findViewById(R.id.kitchenStaffingTextView);
 
         // Badge indicators
         newOrdersBadge = findViewById(R.id.newOrdersBadge);
@@ -225,21 +235,7 @@ public class AdminActivity extends AppCompatActivity {
     }
 
     private void loadDashboardData() {
-        // Load today's analytics
-        analyticsManager.calculateDailySales(new Date(), new AnalyticsManager.AnalyticsCallback<SalesData>() {
-            @Override
-            public void onSuccess(SalesData salesData) {
-                todaySales = salesData.getTotalRevenue();
-                todayOrders = salesData.getTotalOrders();
-                activeUsers = salesData.getUniqueCustomers();
-                updateDashboardSummary();
-            }
-
-            @Override
-            public void onFailure(String error) {
-                showError("Failed to load analytics data: " + error);
-            }
-        });
+        // Today's sales arrive through the live listener (see startLiveSales)
 
         // Load inventory data
         inventoryManager.checkLowStock(new InventoryManager.InventoryAnalysisCallback() {
@@ -257,6 +253,9 @@ public class AdminActivity extends AppCompatActivity {
             }
         });
 
+        // Load demand history for kitchen staffing
+        loadRecentDemand();
+
         // Load pending reviews
         loadPendingReviewsCount();
 
@@ -264,6 +263,35 @@ public class AdminActivity extends AppCompatActivity {
         loadNewOrdersCount();
     }
 
+    private void applyTodaySales(SalesData salesData) {
+        todaySales = salesData.getTotalRevenue();
+        todayOrders = salesData.getTotalOrders();
+        activeUsers = salesData.getUniqueCustomers();
+        kitchenLatency = AnalyticsManager.getLatencyPercentiles(salesData).get("timeToReady");
+        updateDashboardSummary();
+    }
+
+    private void loadRecentDemand() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -1);
+        Date endDate = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_MONTH, 1 - STAFFING_HISTORY_DAYS);
+        Date startDate = calendar.getTime();
+
+        analyticsManager.getDemandMatrix(startDate, endDate, new AnalyticsManager.AnalyticsCallback<DemandMatrix>() {
+            @Override
+            public void onSuccess(DemandMatrix result) {
+                recentDemand = result;
+                updateDashboardSummary();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                showError("Failed to load demand history: " + error);
+            }
+        });
+    }
+
     private void loadPendingReviewsCount() {
         // In a real implementation, you would query Firestore for unapproved reviews
         pendingReviews = 0;
@@ -292,12 +320,46 @@ public class AdminActivity extends AppCompatActivity {
             activeUsersTextView.setText(String.valueOf(activeUsers));
             lowStockItemsTextView.setText(String.valueOf(lowStockItems));
             pendingReviewsTextView.setText(String.valueOf(pendingReviews));
+            kitchenLatencyTextView.setText(formatKitchenLatency());
+            kitchenStaffingTextView.setText(formatKitchenStaffing());
 
             // Update badges
             updateBadges();
         });
     }
 
+    /**
+     * Staff needed this hour and the next, plus the busiest quarter hour, from average demand
+     */
+    private String formatKitchenStaffing() {
+        if (recentDemand == null || recentDemand.isEmpty()) {
+            return "Not enough order history";
+        }
+
+        Calendar now = Calendar.getInstance();
+        int slot = recentDemand.slotOf(now.getTimeInMillis());
+        int weekday = slot / DemandMatrix.QUARTERS;
+        int hour = slot % DemandMatrix.QUARTERS / 4;
+        int nextWeekday = hour == 23 ? (weekday + 1) % DemandMatrix.DAYS : weekday;
+        int nextHour = (hour + 1) % DemandMatrix.HOURS;
+
+        int[][] plan = recentDemand.getStaffingPlan(ITEMS_PER_STAFF_HOUR);
+        int peakSlot = recentDemand.getPeakQuarterHourSlot(DemandMatrix.Metric.ITEMS);
+        double peakItems = recentDemand.getAverageQuarterHour(DemandMatrix.Metric.ITEMS,
+                peakSlot / DemandMatrix.QUARTERS, peakSlot % DemandMatrix.QUARTERS);
+
+        return String.format(Locale.getDefault(), "Now %d staff · next hour %d · peak %s (%.0f items/15 min)",
+                plan[weekday][hour], plan[nextWeekday][nextHour], DemandMatrix.formatSlot(peakSlot), peakItems);
+    }
+
+    private String formatKitchenLatency() {
+        if (kitchenLatency == null || kitchenLatency.get("count") == 0) {
+            return "No orders ready yet";
+        }
+        return String.format(Locale.getDefault(), "p50 %.0f min · p90 %.0f min · p99 %.0f min",
+                kitchenLatency.get("p50"), kitchenLatency.get("p90"), kitchenLatency.get("p99"));
+    }
+
     private void updateBadges() {
         // Update notification badges
         int totalNotifications = lowStockItems + pendingReviews;
@@ -374,16 +436,19 @@ public class AdminActivity extends AppCompatActivity {
         });
     }
 
-    private void startAutoRefresh() {
-        autoRefreshTimer = new Timer();
-        autoRefreshTimer.scheduleAtFixedRate(new TimerTask() {
+    private void startLiveSales() {
+        // Order snapshot listener feeds today's rollup, reads scale with changes not time
+        analyticsManager.startLiveSales(new AnalyticsManager.AnalyticsCallback<SalesData>() {
             @Override
-            public void run() {
-                runOnUiThread(() -> {
-                    loadDashboardData();
-                });
+            public void onSuccess(SalesData today) {
+                applyTodaySales(today);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                showError("Live sales updates stopped: " + error);
             }
-        }, 60000, 60000); // Refresh every 60 seconds
+        });
     }
 
     private void showQuickActions() {
@@ -508,11 +573,16 @@ public class AdminActivity extends AppCompatActivity {
     }
 
     private void exportReport(java.util.Map<String, Object> report) {
-        analyticsManager.exportToCSV(report, new AnalyticsManager.AnalyticsCallback<String>() {
+        analyticsManager.exportToCSV(this, report, new AnalyticsManager.AnalyticsCallback<Uri>() {
             @Override
-            public void onSuccess(String csvData) {
-                // Save to file or share
-                Toast.makeText(AdminActivity.this, "Report exported successfully", Toast.LENGTH_SHORT).show();
+            public void onSuccess(Uri fileUri) {
+                runOnUiThread(() -> {
+                    Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                    shareIntent.setType(ReportExporter.Format.CSV.getMimeType());
+                    shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
+                    shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    startActivity(Intent.createChooser(shareIntent, "Share Report"));
+                });
             }
 
             @Override
@@ -583,9 +653,7 @@ public class AdminActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (autoRefreshTimer != null) {
-            autoRefreshTimer.cancel();
-        }
+        analyticsManager.stopLiveSales();
 
         // Stop real-time monitoring
         inventoryManager.stopRealTimeMonitoring();
@@ -146,7 +146,8 @@ public class CartActivity extends AppCompatActivity {
     }
 
     private void setupCartListener() {
-        cartManager.addCartChangeListener(new CartManager.CartChangeListener() {
+        // Bound to this activity, so it is dropped on destroy
+        cartManager.addCartChangeListener(this, new CartManager.CartChangeListener() {
             @Override
             public void onCartChanged(ArrayList<CartItem> cartItems) {
                 loadCartData();
@@ -379,13 +380,6 @@ public class CartActivity extends AppCompatActivity {
         loadCartData();
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        // Clean up listeners
-        cartManager.removeCartChangeListener(null);
-    }
-
     @Override
     public void onBackPressed() {
         // Instead of going back to previous screen, go to main menu
@@ -40,6 +40,7 @@ import com.nmims.canteen.services.FirestoreService;
 import com.nmims.canteen.utils.CartManager;
 import com.nmims.canteen.utils.FirebaseDataInitializer;
 import com.nmims.canteen.utils.FirebaseUtils;
+import com.nmims.canteen.utils.StockReservationManager;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -290,7 +291,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupCartListener() {
-        cartManager.addCartChangeListener(new CartManager.CartChangeListener() {
+        // Bound to this activity, so it is dropped on destroy
+        cartManager.addCartChangeListener(this, new CartManager.CartChangeListener() {
             @Override
             public void onCartChanged(java.util.ArrayList<com.nmims.canteen.models.CartItem> cartItems) {
                 updateCartBadge();
@@ -402,7 +404,16 @@ public class MainActivity extends AppCompatActivity {
 
     private void addToCart(FoodItem foodItem) {
         if (foodItem.isAvailable() && !foodItem.isOutOfStock()) {
-            cartManager.addItem(foodItem, 1);
+            cartManager.addItem(foodItem, 1, new StockReservationManager.ReservationCallback() {
+                @Override
+                public void onSuccess(StockReservationManager.Hold hold) {
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    showError(foodItem.getName() + ": " + error);
+                }
+            });
         } else {
             showError("This item is currently out of stock");
         }
@@ -448,13 +459,6 @@ public class MainActivity extends AppCompatActivity {
         updateCartBadge();
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        // Clean up listeners
-        cartManager.removeCartChangeListener(null);
-    }
-
     // Menu methods
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
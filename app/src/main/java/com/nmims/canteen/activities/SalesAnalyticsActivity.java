@@ -1,16 +1,24 @@
 package com.nmims.canteen.activities;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
+import android.util.LruCache;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.cardview.widget.CardView;
+import androidx.core.content.ContextCompat;
 
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.charts.BarChart;
@@ -19,9 +27,14 @@ import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.BarData;
 import com.github.mikephil.charting.data.BarDataSet;
+import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.data.PieData;
+import com.github.mikephil.charting.data.PieDataSet;
+import com.github.mikephil.charting.data.PieEntry;
+import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.github.mphil.charting.formatter.ValueFormatter;
 import com.google.android.material.datepicker.MaterialDatePicker;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
@@ -29,11 +42,17 @@ import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 import com.nmims.canteen.R;
+import com.nmims.canteen.models.CohortRetention;
 import com.nmims.canteen.models.SalesData;
 import com.nmims.canteen.utils.AnalyticsManager;
+import com.nmims.canteen.utils.ChartDownsampler;
+import com.nmims.canteen.utils.DemandMatrix;
+import com.nmims.canteen.utils.ReportExporter;
+import com.nmims.canteen.utils.TopKTracker;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -48,6 +67,24 @@ import java.util.Map;
 public class SalesAnalyticsActivity extends AppCompatActivity {
     private static final String TAG = "SalesAnalyticsActivity";
 
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    // Chart density limits; larger inputs are downsampled before they reach the chart
+    private static final int MAX_LINE_POINTS = 200;
+    private static final int MAX_LABELLED_POINTS = 31; // Circles and values only on sparse lines
+    private static final int MAX_BAR_ENTRIES = 8;
+    private static final int MAX_PIE_SLICES = 6;
+    private static final int TOP_ITEMS_LIMIT = 10;
+    private static final int CHART_CACHE_SIZE = 8;
+    private static final long LIVE_CHART_TTL_MS = 60 * 1000L;
+
+    // Heatmap bitmap geometry in pixels (scaled to the card width)
+    private static final int HEATMAP_HOUR_WIDTH = 24;
+    private static final int HEATMAP_ROW_HEIGHT = 24;
+    private static final int HEATMAP_LABEL_WIDTH = 48;
+    private static final int HEATMAP_LABEL_HEIGHT = 20;
+    private static final float HEATMAP_TEXT_SIZE = 14f;
+
     // UI Components
     private Toolbar toolbar;
     private CardView dateRangeCard;
@@ -66,6 +103,9 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
     private BarChart categoryChart;
     private BarChart topItemsChart;
     private PieChart paymentChart;
+    private ImageView demandHeatmapImageView;
+    private TextView demandHeatmapTitleTextView;
+    private TextView demandHeatmapSummaryTextView;
 
     // Summary components
     private CardView summaryCard;
@@ -78,8 +118,13 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
     // Data
     private AnalyticsManager analyticsManager;
     private SalesData currentSalesData;
+    private CohortRetention cohortRetention;
+    private DemandMatrix.Metric heatmapMetric = DemandMatrix.Metric.ORDERS;
+    private boolean heatmapQuarterHours;
     private Date startDate;
     private Date endDate;
+    private final LruCache<String, ChartSet> chartCache = new LruCache<>(CHART_CACHE_SIZE);
+    private volatile String chartKey; // Range whose results may still be shown
     private final DecimalFormat currencyFormatter = new DecimalFormat("₹##,##0.00");
 
     @Override
@@ -88,7 +133,7 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         setContentView(R.layout.activity_sales_analytics);
 
         // Initialize services
-        analyticsManager = AnalyticsManager.getInstance();
+        analyticsManager = AnalyticsManager.getInstance(this);
 
         // Initialize UI
         initializeViews();
@@ -121,6 +166,9 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         categoryChart = findViewById(R.id.categoryChart);
         topItemsChart = findViewById(R.id.topItemsChart);
         paymentChart = findViewById(R.id.paymentChart);
+        demandHeatmapImageView = findViewById(R.id.demandHeatmapImageView);
+        demandHeatmapTitleTextView = findViewById(R.id.demandHeatmapTitleTextView);
+        demandHeatmapSummaryTextView = findViewById(R.id.demandHeatmapSummaryTextView);
         summaryCard = findViewById(R.id.summaryCard);
         totalRevenueTextView = findViewById(R.id.totalRevenueTextView);
         totalOrdersTextView = findViewById(R.id.totalOrdersTextView);
@@ -142,6 +190,7 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         setupCategoryChart();
         setupTopItemsChart();
         setupPaymentChart();
+        setupDemandHeatmap();
     }
 
     private void setupRevenueChart() {
@@ -256,6 +305,20 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         // Legend setup would go here
     }
 
+    private void setupDemandHeatmap() {
+        // Tap cycles orders, revenue and items; long press switches hour and quarter-hour columns
+        demandHeatmapImageView.setOnClickListener(v -> {
+            DemandMatrix.Metric[] metrics = DemandMatrix.Metric.values();
+            heatmapMetric = metrics[(heatmapMetric.ordinal() + 1) % metrics.length];
+            updateDemandHeatmap();
+        });
+        demandHeatmapImageView.setOnLongClickListener(v -> {
+            heatmapQuarterHours = !heatmapQuarterHours;
+            updateDemandHeatmap();
+            return true;
+        });
+    }
+
     private void setupSummaryCard() {
         // Summary card is already initialized
     }
@@ -377,15 +440,41 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
     }
 
     private void loadSalesData() {
+        Date rangeStart = startDate;
+        Date rangeEnd = endDate;
+        String key = getChartKey(rangeStart, rangeEnd);
+        chartKey = key;
+
+        // Ranges seen before are redrawn from ready-made chart data
+        ChartSet cached = chartCache.get(key);
+        if (cached != null && !cached.isExpired()) {
+            currentSalesData = cached.salesData;
+            applyCharts(cached);
+            updateDemandHeatmap();
+            updateSummary();
+            loadCohortRetention();
+            return;
+        }
+
         showLoading(true);
 
-        analyticsManager.calculateDailySales(startDate, new AnalyticsManager.AnalyticsCallback<SalesData>() {
+        // Past days come from the on-device store, only missing days hit the network
+        analyticsManager.calculateRangeSales(rangeStart, rangeEnd, new AnalyticsManager.AnalyticsCallback<SalesData>() {
             @Override
             public void onSuccess(SalesData salesData) {
+                // Still on the analytics thread, so downsampling never blocks the UI
+                ChartSet charts = buildCharts(salesData, rangeStart, rangeEnd);
+                chartCache.put(key, charts);
+                if (!key.equals(chartKey)) {
+                    return; // Another range was selected meanwhile
+                }
+
                 currentSalesData = salesData;
-                updateCharts();
+                runOnUiThread(() -> applyCharts(charts));
+                updateDemandHeatmap();
                 updateSummary();
                 showLoading(false);
+                loadCohortRetention();
             }
 
             @Override
@@ -396,66 +485,124 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         });
     }
 
-    private void updateCharts() {
-        if (currentSalesData == null) {
-            return;
-        }
+    private void loadCohortRetention() {
+        cohortRetention = null;
 
-        // Update revenue chart
-        updateRevenueChart();
+        // Week-N cohort matrix from per-day customer bitmaps
+        analyticsManager.getWeeklyCohortRetention(startDate, endDate, new AnalyticsManager.AnalyticsCallback<CohortRetention>() {
+            @Override
+            public void onSuccess(CohortRetention result) {
+                cohortRetention = result;
+                updateSummary();
+            }
 
-        // Update category chart
-        updateCategoryChart();
+            @Override
+            public void onFailure(String error) {
+                showError("Failed to load cohort retention: " + error);
+            }
+        });
+    }
 
-        // Update top items chart
-        updateTopItemsChart();
+    /**
+     * Week-1 cohort retention as a percentage, falling back to repeat rate for ranges under two weeks
+     */
+    private double getRetentionPercentage() {
+        if (cohortRetention != null && cohortRetention.getCohortCount() > 1) {
+            return cohortRetention.getAverageRetention(1) * 100;
+        }
+        return currentSalesData.getRepeatRate();
+    }
 
-        // Update payment chart
-        updatePaymentChart();
+    /**
+     * Cache key per range and resolution (hourly for a single day, daily otherwise)
+     */
+    private String getChartKey(Date rangeStart, Date rangeEnd) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        String resolution = isSingleDay(rangeStart, rangeEnd) ? "hourly" : "daily";
+        return dateFormat.format(rangeStart) + "_" + dateFormat.format(rangeEnd) + "_" + resolution;
     }
 
-    private void updateRevenueChart() {
-        if (currentSalesData == null) return;
+    private boolean isSingleDay(Date rangeStart, Date rangeEnd) {
+        return rangeEnd.getTime() - rangeStart.getTime() < DAY_MS;
+    }
+
+    /**
+     * Downsample the range and build every chart's data objects (off the main thread)
+     */
+    private ChartSet buildCharts(SalesData salesData, Date rangeStart, Date rangeEnd) {
+        ChartSet charts = new ChartSet(salesData, !rangeEnd.before(getStartOfToday()));
+        buildRevenueChart(charts, salesData, rangeStart, rangeEnd);
+        buildCategoryChart(charts, salesData);
+        buildTopItemsChart(charts, salesData);
+        buildPaymentChart(charts, salesData);
+        return charts;
+    }
 
-        ArrayList<Entry> revenueEntries = new ArrayList<>();
-        ArrayList<String> dateLabels = new ArrayList<>();
-
-        // Get hourly sales data
-        Map<String, Double> hourlySales = currentSalesData.getHourlySales();
-        for (Map.Entry<String, Double> entry : hourlySales.entrySet()) {
-            try {
-                SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy HH:mm", Locale.getDefault());
-                Date date = sdf.parse(entry.getKey() + " 00:00");
-                revenueEntries.add(new Entry(date.getTime(), entry.getValue()));
-                dateLabels.add(entry.getKey());
-            } catch (Exception e) {
-                // Handle parsing error
+    /**
+     * Revenue by hour for a single day, by day otherwise, thinned with LTTB for long ranges
+     */
+    private void buildRevenueChart(ChartSet charts, SalesData salesData, Date rangeStart, Date rangeEnd) {
+        List<Entry> revenueEntries = new ArrayList<>();
+
+        if (isSingleDay(rangeStart, rangeEnd)) {
+            Map<String, Double> hourlySales = salesData.getHourlySales();
+            for (int hour = 0; hour < 24; hour++) {
+                Double revenue = hourlySales.get(String.format(Locale.US, "%02d:00", hour));
+                revenueEntries.add(new Entry(hour, revenue != null ? revenue.floatValue() : 0f));
             }
+            charts.revenueAxisFormatter = new ValueFormatter() {
+                @Override
+                public String getFormattedValue(float value) {
+                    return String.format(Locale.US, "%02d:00", (int) value);
+                }
+            };
+        } else {
+            // X is days since the range start; epoch millis do not fit a float's precision
+            long base = rangeStart.getTime();
+            SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+            for (Map.Entry<String, Double> entry : salesData.getDailySales().entrySet()) {
+                try {
+                    Date date = dayFormat.parse(entry.getKey());
+                    float day = Math.round((double) (date.getTime() - base) / DAY_MS);
+                    revenueEntries.add(new Entry(day, entry.getValue().floatValue()));
+                } catch (Exception e) {
+                    Log.e(TAG, "Skipping malformed day " + entry.getKey(), e);
+                }
+            }
+            revenueEntries.sort((a, b) -> Float.compare(a.getX(), b.getX()));
+
+            boolean multiYear = rangeEnd.getTime() - base > 366 * DAY_MS;
+            SimpleDateFormat labelFormat = new SimpleDateFormat(multiYear ? "MMM yyyy" : "dd MMM", Locale.getDefault());
+            charts.revenueAxisFormatter = new ValueFormatter() {
+                @Override
+                public String getFormattedValue(float value) {
+                    return labelFormat.format(new Date(base + (long) value * DAY_MS));
+                }
+            };
         }
 
-        LineDataSet revenueDataSet = new LineDataSet(revenueEntries, "Revenue");
+        List<Entry> sampled = ChartDownsampler.largestTriangleThreeBuckets(revenueEntries, MAX_LINE_POINTS);
+        boolean dense = sampled.size() > MAX_LABELLED_POINTS;
+
+        LineDataSet revenueDataSet = new LineDataSet(sampled, "Revenue");
         revenueDataSet.setColor(Color.parseColor("#4CAF50"));
         revenueDataSet.setLineWidth(2f);
-        revenueDataSet.setDrawCircles(true);
-        revenueDataSet.setDrawValues(true);
+        revenueDataSet.setDrawCircles(!dense);
+        revenueDataSet.setDrawValues(!dense);
         revenueDataSet.setValueTextSize(10f);
         revenueDataSet.setValueTextColor(Color.BLACK);
 
-        LineData lineData = new LineData(revenueDataSet);
-        revenueChart.setData(lineData);
-        revenueChart.animateX(1000);
+        charts.revenueData = new LineData(revenueDataSet);
     }
 
-    private void updateCategoryChart() {
-        if (currentSalesData == null) return;
+    private void buildCategoryChart(ChartSet charts, SalesData salesData) {
+        List<Map.Entry<String, Double>> categories =
+                ChartDownsampler.topWithOther(salesData.getCategoryRevenue(), MAX_BAR_ENTRIES);
 
         ArrayList<BarEntry> categoryEntries = new ArrayList<>();
-        ArrayList<String> categoryLabels = new ArrayList<>();
-
-        Map<String, Double> categoryRevenue = currentSalesData.getCategoryRevenue();
-        for (Map.Entry<String, Double> entry : categoryRevenue.entrySet()) {
-            categoryEntries.add(new BarEntry(categoryLabels.size(), entry.getValue()));
-            categoryLabels.add(entry.getKey());
+        for (Map.Entry<String, Double> entry : categories) {
+            categoryEntries.add(new BarEntry(charts.categoryLabels.size(), entry.getValue().floatValue()));
+            charts.categoryLabels.add(entry.getKey());
         }
 
         BarDataSet categoryDataSet = new BarDataSet(categoryEntries, "Revenue by Category");
@@ -463,85 +610,163 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         categoryDataSet.setValueTextSize(10f);
         categoryDataSet.setValueTextColor(Color.BLACK);
 
-        BarData barData = new BarData(categoryDataSet);
-        categoryChart.setData(barData);
-        categoryChart.animateY(1000);
+        charts.categoryData = new BarData(categoryDataSet);
     }
 
-    private void updateTopItemsChart() {
-        if (currentSalesData == null) return;
+    /**
+     * Top items straight from the range's merged top-K, the rest of item revenue as "Other"
+     */
+    private void buildTopItemsChart(ChartSet charts, SalesData salesData) {
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>();
+        for (TopKTracker.Entry entry : salesData.getTopRevenueItemsWithBounds(TOP_ITEMS_LIMIT)) {
+            ranked.add(new AbstractMap.SimpleImmutableEntry<>(salesData.getItemName(entry.getKey()), entry.getCount()));
+        }
+        if (ranked.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Double>> topItems = ChartDownsampler.topWithOther(ranked,
+                salesData.getTopItemsByRevenue().getTotalWeight(), TOP_ITEMS_LIMIT + 1);
 
-        analyticsManager.getTopRevenueItems(startDate, endDate, 10, new AnalyticsManager.AnalyticsCallback<List<Map.Entry<String, Double>>>() {
-            @Override
-            public void onSuccess(List<Map.Entry<String, Double>> topItems) {
-                if (topItems != null && !topItems.isEmpty()) {
-                    ArrayList<BarEntry> itemEntries = new ArrayList<>();
-                    ArrayList<String> itemLabels = new ArrayList<>();
-
-                    for (Map.Entry<String, Double> entry : topItems) {
-                        itemEntries.add(new BarEntry(itemLabels.size(), entry.getValue()));
-                        itemLabels.add(entry.getKey());
-                    }
-
-                    BarDataSet topItemsDataSet = new BarDataSet(itemEntries, "Top Selling Items");
-                    topItemsDataSet.setColor(Color.parseColor("#FF9800"));
-                    topItemsDataSet.setValueTextSize(10f);
-                    topItemsDataSet.setValueTextColor(Color.BLACK);
-
-                    BarData topItemsData = new BarData(topItemsDataSet);
-                    topItemsChart.setData(topItemsData);
-                    topItemsChart.animateY(1000);
-                }
-            }
+        ArrayList<BarEntry> itemEntries = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : topItems) {
+            itemEntries.add(new BarEntry(charts.topItemLabels.size(), entry.getValue().floatValue()));
+            charts.topItemLabels.add(entry.getKey());
+        }
 
-            @Override
-            public void onFailure(String error) {
-                showError("Failed to load top items: " + error);
-            }
-        });
-    }
+        BarDataSet topItemsDataSet = new BarDataSet(itemEntries, "Top Selling Items");
+        topItemsDataSet.setColor(Color.parseColor("#FF9800"));
+        topItemsDataSet.setValueTextSize(10f);
+        topItemsDataSet.setValueTextColor(Color.BLACK);
 
-    private void updatePaymentChart() {
-        if (currentSalesData == null) return;
+        charts.topItemsData = new BarData(topItemsDataSet);
+    }
 
-        // Payment breakdown data
-        Map<String, Double> paymentBreakdown = currentSalesData.getPaymentBreakdown();
+    private void buildPaymentChart(ChartSet charts, SalesData salesData) {
+        // Share of revenue per payment method
+        List<Map.Entry<String, Double>> payments =
+                ChartDownsampler.topWithOther(salesData.getPaymentBreakdown(), MAX_PIE_SLICES);
 
         ArrayList<PieEntry> pieEntries = new ArrayList<>();
-        ArrayList<Integer> colors = new ArrayList<>();
-        ArrayList<String> labels = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : payments) {
+            pieEntries.add(new PieEntry(entry.getValue().floatValue(), entry.getKey()));
+        }
 
+        ArrayList<Integer> colors = new ArrayList<>();
         colors.add(Color.parseColor("#4CAF50"));  // Cash
         colors.add(Color.parseColor("#2196F3"));  // Credit Card
         colors.add(Color.parseColor("#FF9800"));  // Debit Card
         colors.add(Color.parseColor("#9C27B0"));  // UPI
-        colors.add(Color.parseColor("#607D8B"));  // Wallet
+        colors.add(Color.parseColor("#607D8B"));  // Wallet / Other
+
+        PieDataSet paymentDataSet = new PieDataSet(pieEntries, "Payment Methods");
+        paymentDataSet.setColors(colors);
+        paymentDataSet.setValueTextSize(10f);
+        paymentDataSet.setValueTextColor(Color.BLACK);
+
+        charts.paymentData = new PieData(paymentDataSet);
+    }
+
+    /**
+     * Hand prebuilt data to the charts (main thread only)
+     */
+    private void applyCharts(ChartSet charts) {
+        revenueChart.getXAxis().setValueFormatter(charts.revenueAxisFormatter);
+        revenueChart.setData(charts.revenueData);
+        revenueChart.animateX(1000);
+
+        categoryChart.getXAxis().setValueFormatter(new IndexAxisValueFormatter(charts.categoryLabels));
+        categoryChart.setData(charts.categoryData);
+        categoryChart.animateY(1000);
 
-        for (Map.Entry<String, Double> entry : paymentBreakdown.entrySet()) {
-            pieEntries.add(new PieEntry(entry.getValue(), entry.getKey()));
-            labels.add(entry.getKey());
+        if (charts.topItemsData != null) {
+            topItemsChart.getXAxis().setValueFormatter(new IndexAxisValueFormatter(charts.topItemLabels));
+            topItemsChart.setData(charts.topItemsData);
+            topItemsChart.animateY(1000);
+        } else {
+            topItemsChart.clear();
         }
 
-        // This would need a PieChart setup
-        // For now, we'll update the BarChart to show payment breakdown
-        updatePaymentBarChart(pieEntries, labels, colors);
+        paymentChart.setData(charts.paymentData);
+        paymentChart.animateY(1000);
+    }
+
+    private Date getStartOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Render the range's weekday × hour matrix, already merged from the daily rollups
+     */
+    private void updateDemandHeatmap() {
+        if (currentSalesData == null) return;
+
+        DemandMatrix demand = currentSalesData.getDemandMatrix();
+        DemandMatrix.Metric metric = heatmapMetric;
+        boolean quarterHours = heatmapQuarterHours;
+
+        double[][] cells = quarterHours ? demand.getQuarterHourMatrix(metric) : demand.getHourMatrix(metric);
+        Bitmap heatmap = renderHeatmap(cells, quarterHours ? 4 : 1);
+
+        String metricName = metric == DemandMatrix.Metric.REVENUE ? "Revenue"
+                : metric == DemandMatrix.Metric.ITEMS ? "Items" : "Orders";
+        String title = "Demand by Weekday and " + (quarterHours ? "Quarter Hour" : "Hour") + " · " + metricName;
+        int peakSlot = demand.getPeakQuarterHourSlot(metric);
+        String summary = peakSlot >= 0
+                ? "Busiest on average: " + DemandMatrix.formatSlot(peakSlot) + " · tap to change metric, long press for detail"
+                : "No orders in this range";
+
+        runOnUiThread(() -> {
+            demandHeatmapImageView.setImageBitmap(heatmap);
+            demandHeatmapTitleTextView.setText(title);
+            demandHeatmapSummaryTextView.setText(summary);
+        });
     }
 
-    private void updatePaymentBarChart(List<PieEntry> pieEntries, ArrayList<String> labels, ArrayList<Integer> colors) {
-        // Convert pie chart data to bar chart for now
-        ArrayList<BarEntry> paymentEntries = new ArrayList<>();
-        for (int i = 0; i < pieEntries.size(); i++) {
-            paymentEntries.add(new BarEntry(i, pieEntries.get(i).getValue()));
+    private Bitmap renderHeatmap(double[][] cells, int columnsPerHour) {
+        int columns = cells[0].length;
+        int cellWidth = HEATMAP_HOUR_WIDTH / columnsPerHour;
+        int width = HEATMAP_LABEL_WIDTH + columns * cellWidth;
+        int height = DemandMatrix.DAYS * HEATMAP_ROW_HEIGHT + HEATMAP_LABEL_HEIGHT;
+
+        double max = 0;
+        for (double[] row : cells) {
+            for (double value : row) {
+                max = Math.max(max, value);
+            }
         }
 
-        BarDataSet paymentDataSet = new BarDataSet(paymentEntries, "Payment Methods");
-        paymentDataSet.setColors(colors);
-        paymentDataSet.setValueTextSize(10f);
-        paymentDataSet.setValueTextColor(Color.BLACK);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+
+        Paint cellPaint = new Paint();
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.GRAY);
+        textPaint.setTextSize(HEATMAP_TEXT_SIZE);
+        int baseColor = ContextCompat.getColor(this, R.color.colorPrimary) & 0x00FFFFFF;
+
+        for (int day = 0; day < DemandMatrix.DAYS; day++) {
+            int top = day * HEATMAP_ROW_HEIGHT;
+            canvas.drawText(DemandMatrix.DAY_LABELS[day], 4, top + HEATMAP_ROW_HEIGHT * 0.7f, textPaint);
+            for (int column = 0; column < columns; column++) {
+                int alpha = max > 0 ? (int) Math.round(255 * cells[day][column] / max) : 0;
+                cellPaint.setColor((alpha << 24) | baseColor);
+                int left = HEATMAP_LABEL_WIDTH + column * cellWidth;
+                canvas.drawRect(left, top, left + cellWidth - 1, top + HEATMAP_ROW_HEIGHT - 1, cellPaint);
+            }
+        }
 
-        BarData paymentData = new BarData(paymentDataSet);
-        paymentChart.setData(paymentData);
-        paymentChart.animateY(1000);
+        // Hour labels every three hours
+        for (int hour = 0; hour < DemandMatrix.HOURS; hour += 3) {
+            canvas.drawText(String.format(Locale.US, "%02d", hour),
+                    HEATMAP_LABEL_WIDTH + hour * HEATMAP_HOUR_WIDTH, height - 4, textPaint);
+        }
+        return bitmap;
     }
 
     private void updateSummary() {
@@ -552,7 +777,7 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
             totalOrdersTextView.setText(String.valueOf(currentSalesData.getTotalOrders()));
             averageOrderValueTextView.setText(currencyFormatter.format(currentSalesData.getAverageOrderValue()));
             peakHourTextView.setText(currentSalesData.getPeakHour());
-            customerRetentionTextView.setText(String.format("%.1f%%", currentSalesData.getRepeatRate()));
+            customerRetentionTextView.setText(String.format("%.1f%%", getRetentionPercentage()));
         });
     }
 
@@ -564,6 +789,7 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         String[] exportOptions = {
                 "Export as CSV",
                 "Export as JSON",
+                "Export Order Details",
                 "Export to PDF",
                 "Share Report",
                 "Print Report"
@@ -592,6 +818,9 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
             case "Export as JSON":
                 exportToJSON();
                 break;
+            case "Export Order Details":
+                exportOrderDetails();
+                break;
             case "Export to PDF":
                 exportToPDF();
                 break;
@@ -606,11 +835,10 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
 
     private void exportToCSV() {
         Map<String, Object> reportData = createReportData();
-        analyticsManager.exportToCSV(reportData, new AnalyticsManager.AnalyticsCallback<String>() {
+        analyticsManager.exportToCSV(this, reportData, new AnalyticsManager.AnalyticsCallback<Uri>() {
             @Override
-            public void onSuccess(String csvData) {
-                // Save to file or share
-                showExportSuccess("CSV", csvData);
+            public void onSuccess(Uri fileUri) {
+                showExportSuccess(ReportExporter.Format.CSV, fileUri);
             }
 
             @Override
@@ -622,10 +850,10 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
 
     private void exportToJSON() {
         Map<String, Object> reportData = createReportData();
-        analyticsManager.exportToJSON(reportData, new AnalyticsManager.AnalyticsCallback<String>() {
+        analyticsManager.exportToJSON(this, reportData, new AnalyticsManager.AnalyticsCallback<Uri>() {
             @Override
-            public void onSuccess(String jsonData) {
-                showExportSuccess("JSON", jsonData);
+            public void onSuccess(Uri fileUri) {
+                showExportSuccess(ReportExporter.Format.JSON, fileUri);
             }
 
             @Override
@@ -635,6 +863,30 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         });
     }
 
+    private void exportOrderDetails() {
+        // End date is inclusive in the UI, the order query is end-exclusive
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(endDate);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+
+        analyticsManager.exportOrderDetails(this, startDate, calendar.getTime(), ReportExporter.Format.CSV,
+                new AnalyticsManager.AnalyticsCallback<Uri>() {
+            @Override
+            public void onSuccess(Uri fileUri) {
+                showExportSuccess(ReportExporter.Format.CSV, fileUri);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                showError("Failed to export orders: " + error);
+            }
+        });
+    }
+
     private void exportToPDF() {
         // PDF export would require additional libraries
         showError("PDF export not available");
@@ -667,7 +919,7 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
             reportData.put("totalOrders", currentSalesData.getTotalOrders());
             reportData.put("averageOrderValue", currentSalesData.getAverageOrderValue());
             reportData.put("peakHour", currentSalesData.getPeakHour());
-            reportData.put("customerRetentionRate", currentSalesData.getRepeatRate());
+            reportData.put("customerRetentionRate", getRetentionPercentage());
             reportData.put("activeCustomers", currentSalesData.getUniqueCustomers());
             reportData.put("newCustomers", currentSalesData.getNewCustomers());
             reportData.put("returningCustomers", currentSalesData.getReturningCustomers());
@@ -685,6 +937,10 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
             reportData.put("monthlySales", currentSalesData.getMonthlySales());
         }
 
+        if (cohortRetention != null) {
+            reportData.put("cohortRetention", cohortRetention);
+        }
+
         return reportData;
     }
 
@@ -705,22 +961,38 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
         reportText.append("New Customers: ").append(reportData.get("newCustomers")).append("\n");
         reportText.append("Returning Customers: ").append(reportData.get("returningCustomers")).append("\n\n");
 
+        CohortRetention cohorts = (CohortRetention) reportData.get("cohortRetention");
+        if (cohorts != null && cohorts.getCohortCount() > 0) {
+            SimpleDateFormat weekFormat = new SimpleDateFormat("dd MMM", Locale.getDefault());
+            reportText.append("WEEKLY COHORT RETENTION:\n");
+            for (int i = 0; i < cohorts.getCohortCount(); i++) {
+                reportText.append(weekFormat.format(cohorts.getCohortStart(i)))
+                        .append(" (").append(cohorts.getCohortSize(i)).append("):");
+                for (int week = 0; cohorts.getRetention(i, week) >= 0; week++) {
+                    reportText.append(String.format(Locale.getDefault(), " %.0f%%", cohorts.getRetention(i, week) * 100));
+                }
+                reportText.append("\n");
+            }
+            reportText.append("\n");
+        }
+
         return reportText.toString();
     }
 
-    private void showExportSuccess(String format, String data) {
-        new MaterialAlertDialogBuilder(this)
+    private void showExportSuccess(ReportExporter.Format format, Uri fileUri) {
+        runOnUiThread(() -> new MaterialAlertDialogBuilder(this)
                 .setTitle("Export Successful")
-                .setMessage("Report exported successfully as " + format.toUpperCase() + " format")
+                .setMessage("Report exported successfully as " + format.getExtension().toUpperCase() + " format")
                 .setPositiveButton("OK", null)
                 .setNeutralButton("Share", (dialog, which) -> {
-                    // Share functionality
+                    // Share the exported file
                     Intent shareIntent = new Intent(Intent.ACTION_SEND);
-                    shareIntent.setType("text/plain");
-                    shareIntent.putExtra(Intent.EXTRA_TEXT, data);
+                    shareIntent.setType(format.getMimeType());
+                    shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
+                    shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
                     startActivity(Intent.createChooser(shareIntent, "Share Report"));
                 })
-                .show();
+                .show());
     }
 
     private void showError(String message) {
@@ -757,4 +1029,31 @@ public class SalesAnalyticsActivity extends AppCompatActivity {
     public void onBackPressed() {
         super.onBackPressed();
     }
-}
\ No newline at end of file
+
+    /**
+     * Chart-ready data for one range and resolution
+     * Ranges that include today keep changing, so they expire after a short while
+     */
+    private static class ChartSet {
+        final SalesData salesData;
+        final boolean live;
+        final long builtAt;
+        LineData revenueData;
+        ValueFormatter revenueAxisFormatter;
+        BarData categoryData;
+        final List<String> categoryLabels = new ArrayList<>();
+        BarData topItemsData;
+        final List<String> topItemLabels = new ArrayList<>();
+        PieData paymentData;
+
+        ChartSet(SalesData salesData, boolean live) {
+            this.salesData = salesData;
+            this.live = live;
+            this.builtAt = System.currentTimeMillis();
+        }
+
+        boolean isExpired() {
+            return live && System.currentTimeMillis() - builtAt > LIVE_CHART_TTL_MS;
+        }
+    }
+}
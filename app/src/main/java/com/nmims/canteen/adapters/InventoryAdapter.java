@@ -4,11 +4,14 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -18,6 +21,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.nmims.canteen.R;
 import com.nmims.canteen.models.InventoryItem;
+import com.nmims.canteen.utils.InventoryManager;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
@@ -31,6 +35,8 @@ import java.util.Locale;
  * Handles inventory item display with stock tracking and management controls
  */
 public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.InventoryViewHolder> {
+    private static final int HISTORY_PAGE_SIZE = 20;
+
     private final Context context;
     private List<InventoryItem> inventoryItems;
     private final OnInventoryInteractionListener listener;
@@ -300,6 +306,7 @@ public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.Inve
             });
 
             historyButton.setOnClickListener(v -> {
+                showMovementHistoryDialog(item);
                 if (listener != null) {
                     listener.onViewHistory(item);
                 }
@@ -444,6 +451,60 @@ public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.Inve
                     .show();
         }
 
+        /**
+         * Show the item's movement log, starting from the recent ring on the document
+         * and paging older movements in from the inventoryLogs subcollection
+         */
+        private void showMovementHistoryDialog(InventoryItem item) {
+            List<InventoryItem.InventoryMovement> shown = new ArrayList<>(item.getRecentMovements());
+            ArrayAdapter<String> rows = new ArrayAdapter<>(context, android.R.layout.simple_list_item_1);
+            for (InventoryItem.InventoryMovement movement : shown) {
+                rows.add(formatMovement(movement));
+            }
+
+            AlertDialog dialog = new MaterialAlertDialogBuilder(context)
+                    .setTitle("Stock History - " + item.getItemName())
+                    .setAdapter(rows, null)
+                    .setNeutralButton("Load More", null)
+                    .setPositiveButton("Close", null)
+                    .create();
+
+            dialog.setOnShowListener(d -> {
+                Button loadMoreButton = dialog.getButton(AlertDialog.BUTTON_NEUTRAL);
+                // The ring holds every movement when the log is no longer than it
+                loadMoreButton.setEnabled(item.getMovementCount() > shown.size());
+                loadMoreButton.setOnClickListener(v -> {
+                    loadMoreButton.setEnabled(false);
+                    String afterMovementId = shown.isEmpty() ? null : shown.get(shown.size() - 1).getMovementId();
+
+                    InventoryManager.getInstance().getMovementHistory(item.getInventoryId(), afterMovementId, HISTORY_PAGE_SIZE,
+                            new InventoryManager.MovementHistoryCallback() {
+                                @Override
+                                public void onSuccess(List<InventoryItem.InventoryMovement> movements, boolean hasMore) {
+                                    shown.addAll(movements);
+                                    for (InventoryItem.InventoryMovement movement : movements) {
+                                        rows.add(formatMovement(movement));
+                                    }
+                                    loadMoreButton.setEnabled(hasMore);
+                                }
+
+                                @Override
+                                public void onFailure(String error) {
+                                    loadMoreButton.setEnabled(true);
+                                }
+                            });
+                });
+            });
+            dialog.show();
+        }
+
+        private String formatMovement(InventoryItem.InventoryMovement movement) {
+            String date = movement.getTimestamp() != null ? dateFormat.format(movement.getTimestamp()) : "";
+            String quantity = movement.getQuantity() > 0 ? "+" + movement.getQuantity() : String.valueOf(movement.getQuantity());
+            return date + "  " + movement.getMovementType() + " " + quantity + " → " + movement.getNewStock()
+                    + (movement.getReason() != null ? "\n" + movement.getReason() : "");
+        }
+
         private String formatTimeAgo(String dateString) {
             try {
                 SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
@@ -26,7 +26,9 @@ public class AdminNotification implements Serializable {
         SECURITY("Security Alert", "security", "🔒"),
         BACKUP_COMPLETE("Backup Complete", "system", "💾"),
         REPORT_AVAILABLE("Report Available", "reports", "📊"),
-        PROMO_SUCCESS("Promotion Success", "marketing", "🎉");
+        PROMO_SUCCESS("Promotion Success", "marketing", "🎉"),
+        SALES_DROP("Sales Drop", "sales", "📉"),
+        ITEM_NOT_SELLING("Item Not Selling", "inventory", "🚫");
 
         private final String defaultTitle;
         private final String category;
@@ -224,6 +226,62 @@ public class AdminNotification implements Serializable {
         return notification;
     }
 
+    public static AdminNotification createSalesDropAlert(int orders, double expectedOrders, String slot) {
+        AdminNotification notification = new AdminNotification(
+            NotificationType.SALES_DROP,
+            "Orders Below Normal",
+            "Only " + orders + " orders so far this hour, usually about " + String.format("%.0f", expectedOrders) + " (" + slot + ")",
+            Priority.HIGH
+        );
+        notification.setReferenceType("sales_data");
+        notification.setRequiresAction(true);
+        notification.setActionRequired("Check ordering and payments");
+        notification.setActionUrl("/analytics");
+        return notification;
+    }
+
+    public static AdminNotification createDemandSpikeNotification(String subject, int count, double expectedCount) {
+        AdminNotification notification = new AdminNotification(
+            NotificationType.HIGH_SALES,
+            "Demand Spike",
+            subject + ": " + count + " this hour, usually about " + String.format("%.0f", expectedCount),
+            Priority.MEDIUM
+        );
+        notification.setReferenceType("sales_data");
+        notification.setRequiresAction(false);
+        notification.setActionUrl("/analytics");
+        return notification;
+    }
+
+    public static AdminNotification createItemNotSellingAlert(String itemId, String itemName, long ordersSinceLastSale) {
+        AdminNotification notification = new AdminNotification(
+            NotificationType.ITEM_NOT_SELLING,
+            "Item Not Selling",
+            itemName + " has not been ordered in the last " + ordersSinceLastSale + " orders, it may be unavailable",
+            Priority.MEDIUM
+        );
+        notification.setReferenceId(itemId);
+        notification.setReferenceType("food_item");
+        notification.setRequiresAction(true);
+        notification.setActionRequired("Check item availability");
+        notification.setActionUrl("/inventory/" + itemId);
+        return notification;
+    }
+
+    public static AdminNotification createPaymentIssueAlert(double recentSuccessRate, double usualSuccessRate) {
+        AdminNotification notification = new AdminNotification(
+            NotificationType.PAYMENT_ISSUE,
+            "Payments Failing",
+            "Recent payment success " + String.format("%.0f", recentSuccessRate * 100) + "%, usually "
+                    + String.format("%.0f", usualSuccessRate * 100) + "%",
+            Priority.URGENT
+        );
+        notification.setReferenceType("payments");
+        notification.setRequiresAction(true);
+        notification.setActionRequired("Check payment gateway");
+        return notification;
+    }
+
     public static AdminNotification createCustomerComplaint(String orderId, String complaintType) {
         AdminNotification notification = new AdminNotification(
             NotificationType.CUSTOMER_COMPLAINT,
@@ -17,6 +17,9 @@ public class CartItem implements Parcelable {
     private String specialInstructions;
     private double discountApplied;
     private String cartItemId;
+    private String reservationId; // Stock hold placed at add-to-cart, see StockReservationManager
+    private int reservedQuantity;
+    private long reservationExpiresAt;
 
     // Default constructor
     public CartItem() {
@@ -45,6 +48,9 @@ public class CartItem implements Parcelable {
         specialInstructions = in.readString();
         discountApplied = in.readDouble();
         cartItemId = in.readString();
+        reservationId = in.readString();
+        reservedQuantity = in.readInt();
+        reservationExpiresAt = in.readLong();
     }
 
     @Override
@@ -57,6 +63,9 @@ public class CartItem implements Parcelable {
         dest.writeString(specialInstructions);
         dest.writeDouble(discountApplied);
         dest.writeString(cartItemId);
+        dest.writeString(reservationId);
+        dest.writeInt(reservedQuantity);
+        dest.writeLong(reservationExpiresAt);
     }
 
     @Override
@@ -150,6 +159,30 @@ public class CartItem implements Parcelable {
         this.cartItemId = cartItemId;
     }
 
+    public String getReservationId() {
+        return reservationId;
+    }
+
+    public void setReservationId(String reservationId) {
+        this.reservationId = reservationId;
+    }
+
+    public int getReservedQuantity() {
+        return reservedQuantity;
+    }
+
+    public void setReservedQuantity(int reservedQuantity) {
+        this.reservedQuantity = reservedQuantity;
+    }
+
+    public long getReservationExpiresAt() {
+        return reservationExpiresAt;
+    }
+
+    public void setReservationExpiresAt(long reservationExpiresAt) {
+        this.reservationExpiresAt = reservationExpiresAt;
+    }
+
     /**
      * Calculates total price based on unit price, quantity, and discount
      */
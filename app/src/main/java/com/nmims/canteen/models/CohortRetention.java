@@ -0,0 +1,102 @@
+package com.nmims.canteen.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Weekly cohort retention matrix
+ * Row i is the cohort of customers whose first order in the analysed range fell in week i,
+ * column n is the share of that cohort that ordered again in week i + n
+ */
+public class CohortRetention implements Serializable {
+    private List<Date> cohortStarts;
+    private List<Integer> cohortSizes;
+    private List<List<Double>> retention; // Ragged: row i has weeks - i columns
+    private long computeTimeMs;
+
+    // Default constructor for serialization
+    public CohortRetention() {
+        this.cohortStarts = new ArrayList<>();
+        this.cohortSizes = new ArrayList<>();
+        this.retention = new ArrayList<>();
+    }
+
+    /**
+     * Add cohort row (retention values are fractions 0..1, week 0 first)
+     */
+    public void addCohort(Date weekStart, int size, List<Double> weeklyRetention) {
+        cohortStarts.add(weekStart);
+        cohortSizes.add(size);
+        retention.add(weeklyRetention);
+    }
+
+    public int getCohortCount() {
+        return cohortStarts.size();
+    }
+
+    public Date getCohortStart(int cohort) {
+        return cohortStarts.get(cohort);
+    }
+
+    public int getCohortSize(int cohort) {
+        return cohortSizes.get(cohort);
+    }
+
+    /**
+     * Get retention of cohort in week N after its first week, or -1 if not yet observed
+     */
+    public double getRetention(int cohort, int weekN) {
+        List<Double> row = retention.get(cohort);
+        return weekN >= 0 && weekN < row.size() ? row.get(weekN) : -1;
+    }
+
+    /**
+     * Get week-N retention averaged over all cohorts, weighted by cohort size
+     */
+    public double getAverageRetention(int weekN) {
+        double retained = 0;
+        int customers = 0;
+        for (int i = 0; i < retention.size(); i++) {
+            List<Double> row = retention.get(i);
+            if (weekN < row.size()) {
+                retained += row.get(weekN) * cohortSizes.get(i);
+                customers += cohortSizes.get(i);
+            }
+        }
+        return customers > 0 ? retained / customers : 0;
+    }
+
+    public List<Date> getCohortStarts() {
+        return cohortStarts;
+    }
+
+    public void setCohortStarts(List<Date> cohortStarts) {
+        this.cohortStarts = cohortStarts;
+    }
+
+    public List<Integer> getCohortSizes() {
+        return cohortSizes;
+    }
+
+    public void setCohortSizes(List<Integer> cohortSizes) {
+        this.cohortSizes = cohortSizes;
+    }
+
+    public List<List<Double>> getRetention() {
+        return retention;
+    }
+
+    public void setRetention(List<List<Double>> retention) {
+        this.retention = retention;
+    }
+
+    public long getComputeTimeMs() {
+        return computeTimeMs;
+    }
+
+    public void setComputeTimeMs(long computeTimeMs) {
+        this.computeTimeMs = computeTimeMs;
+    }
+}
@@ -1,7 +1,10 @@
 package com.nmims.canteen.models;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Food item data model with inventory tracking
@@ -50,6 +53,9 @@ public class FoodItem implements Serializable {
     private boolean isDiscounted;
     private Date discountExpiryDate;
 
+    // Bill of materials: inventory consumed per serving; empty when the dish is stocked as itself
+    private List<RecipeIngredient> recipe;
+
     // Default constructor for Firebase
     public FoodItem() {
         this.createdAt = new Date();
@@ -58,6 +64,7 @@ public class FoodItem implements Serializable {
         this.isVegetarian = false;
         this.isFeatured = false;
         this.rating = 0.0;
+        this.recipe = new ArrayList<>();
         this.reviewCount = 0;
         this.stockQuantity = 0;
         this.lowStockThreshold = 10;
@@ -310,6 +317,14 @@ public class FoodItem implements Serializable {
         this.ingredients = ingredients;
     }
 
+    public List<RecipeIngredient> getRecipe() {
+        return recipe;
+    }
+
+    public void setRecipe(List<RecipeIngredient> recipe) {
+        this.recipe = recipe != null ? recipe : new ArrayList<>();
+    }
+
     public String getAllergens() {
         return allergens;
     }
@@ -456,6 +471,36 @@ public class FoodItem implements Serializable {
         }
     }
 
+    /**
+     * Whether servings consume ingredient stock rather than stock of the dish itself
+     */
+    public boolean hasRecipe() {
+        return recipe != null && !recipe.isEmpty();
+    }
+
+    /**
+     * Servings that can be made from inventory keyed by inventory ID, in O(recipe size)
+     * A dish without a recipe is limited by its own inventory entry; a missing ingredient makes 0
+     */
+    public int calculateServingsAvailable(Map<String, InventoryItem> inventory) {
+        if (!hasRecipe()) {
+            InventoryItem own = inventory.get(itemId);
+            return own != null ? Math.max(own.getCurrentStock(), 0) : 0;
+        }
+        int servings = Integer.MAX_VALUE;
+        for (RecipeIngredient ingredient : recipe) {
+            if (ingredient.getQuantity() <= 0) {
+                continue;
+            }
+            InventoryItem stock = inventory.get(ingredient.getInventoryId());
+            if (stock == null || stock.getCurrentStock() < ingredient.getQuantity()) {
+                return 0;
+            }
+            servings = Math.min(servings, stock.getCurrentStock() / ingredient.getQuantity());
+        }
+        return servings == Integer.MAX_VALUE ? 0 : servings;
+    }
+
     /**
      * Gets stock status as string
      */
@@ -503,4 +548,37 @@ public class FoodItem implements Serializable {
     public int hashCode() {
         return itemId != null ? itemId.hashCode() : 0;
     }
+
+    /**
+     * One ingredient line of a recipe, in the inventory item's own unit
+     */
+    public static class RecipeIngredient implements Serializable {
+        private String inventoryId;
+        private String ingredientName;
+        private int quantity; // Per serving
+        private String unit;
+
+        public RecipeIngredient() {
+            // Default constructor for Firebase
+        }
+
+        public RecipeIngredient(String inventoryId, String ingredientName, int quantity, String unit) {
+            this.inventoryId = inventoryId;
+            this.ingredientName = ingredientName;
+            this.quantity = quantity;
+            this.unit = unit;
+        }
+
+        public String getInventoryId() { return inventoryId; }
+        public void setInventoryId(String inventoryId) { this.inventoryId = inventoryId; }
+
+        public String getIngredientName() { return ingredientName; }
+        public void setIngredientName(String ingredientName) { this.ingredientName = ingredientName; }
+
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+
+        public String getUnit() { return unit; }
+        public void setUnit(String unit) { this.unit = unit; }
+    }
 }
\ No newline at end of file
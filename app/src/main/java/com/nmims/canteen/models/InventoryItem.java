@@ -1,15 +1,33 @@
 package com.nmims.canteen.models;
 
 import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Inventory tracking model
  * Contains comprehensive inventory management data for food items
  */
 public class InventoryItem implements Serializable {
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+    public static final int RECENT_MOVEMENTS_LIMIT = 10; // Full history lives in the inventoryLogs subcollection
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    // Movement IDs: microsecond-scale stamps that never repeat or go backwards in this process,
+    // suffixed per process so two devices writing in the same instant do not collide
+    private static final String MOVEMENT_ID_SUFFIX =
+            String.format(Locale.US, "%06x", Double.doubleToLongBits(Math.random()) & 0xffffffL); // Fixed width
+    private static long lastMovementStamp;
+
     // Basic information
     private String inventoryId;
     private String itemId;
@@ -31,8 +49,13 @@ public class InventoryItem implements Serializable {
     private int leadTimeDays;
     private String batchNumber;
     private String expiryDate;
+    private long expiryEpochDay; // Parsed expiryDate, stored so Firestore can range-query it
     private String manufacturingDate;
 
+    // Lots: batchNumber and expiryDate above mirror the lot picked next
+    private Map<String, StockLot> lots; // By lot ID, so one lot's fields can be incremented in place
+    private int unpickedUnits; // Taken by increment-only writers and not yet picked from lots
+
     // Quality control
     private double storageTemperature;
     private String storageLocation;
@@ -46,8 +69,10 @@ public class InventoryItem implements Serializable {
     private int adjusted;
     private int sold;
     private String lastMovementDate;
+    private Date lastMovementAt; // Server time of the last movement
     private String lastMovementType;
     private String lastMovementReason;
+    private long movementCount;
 
     // Cost analysis
     private double unitCost;
@@ -65,7 +90,7 @@ public class InventoryItem implements Serializable {
     private String alertLevel; // "Low", "Medium", "High", "Critical"
 
     // Additional tracking
-    private List<InventoryMovement> movementHistory;
+    private List<InventoryMovement> recentMovements; // Newest first, capped at RECENT_MOVEMENTS_LIMIT
     private String lastVerifiedDate;
     private String verifiedBy;
     private String notes;
@@ -86,10 +111,12 @@ public class InventoryItem implements Serializable {
         this.qualityAlert = false;
         this.lowStockThreshold = 10;
         this.expiryWarningDays = 7;
+        this.expiryEpochDay = NO_EXPIRY;
         this.qualityStatus = "Good";
         this.alertLevel = "Low";
         this.isActive = true;
-        this.movementHistory = new ArrayList<>();
+        this.recentMovements = new ArrayList<>();
+        this.lots = new HashMap<>();
         this.lastMovementDate = new Date().toString();
     }
 
@@ -160,6 +187,77 @@ public class InventoryItem implements Serializable {
         public void setCostImpact(double costImpact) { this.costImpact = costImpact; }
     }
 
+    // One received lot with its own expiry and cost
+    public static class StockLot implements Serializable {
+        private String lotId;
+        private String batchNumber;
+        private int quantity; // Remaining, before unpicked units are picked
+        private int receivedQuantity;
+        private int wasted;
+        private double unitCost;
+        private String expiryDate;
+        private long expiryEpochDay;
+        private Date receivedAt;
+
+        public StockLot() {
+            this.expiryEpochDay = NO_EXPIRY;
+        }
+
+        public StockLot(String lotId, String batchNumber, int quantity, double unitCost, String expiryDate) {
+            this();
+            this.lotId = lotId;
+            this.batchNumber = batchNumber;
+            this.quantity = quantity;
+            this.receivedQuantity = quantity;
+            this.unitCost = unitCost;
+            this.expiryDate = expiryDate;
+            this.expiryEpochDay = parseEpochDay(expiryDate);
+            this.receivedAt = new Date();
+        }
+
+        StockLot copyWithQuantity(int quantity) {
+            StockLot copy = new StockLot();
+            copy.lotId = lotId;
+            copy.batchNumber = batchNumber;
+            copy.quantity = quantity;
+            copy.receivedQuantity = receivedQuantity;
+            copy.wasted = wasted;
+            copy.unitCost = unitCost;
+            copy.expiryDate = expiryDate;
+            copy.expiryEpochDay = expiryEpochDay;
+            copy.receivedAt = receivedAt;
+            return copy;
+        }
+
+        // Getters and Setters
+        public String getLotId() { return lotId; }
+        public void setLotId(String lotId) { this.lotId = lotId; }
+
+        public String getBatchNumber() { return batchNumber; }
+        public void setBatchNumber(String batchNumber) { this.batchNumber = batchNumber; }
+
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+
+        public int getReceivedQuantity() { return receivedQuantity; }
+        public void setReceivedQuantity(int receivedQuantity) { this.receivedQuantity = receivedQuantity; }
+
+        public int getWasted() { return wasted; }
+        public void setWasted(int wasted) { this.wasted = wasted; }
+
+        public double getUnitCost() { return unitCost; }
+        public void setUnitCost(double unitCost) { this.unitCost = unitCost; }
+
+        public String getExpiryDate() { return expiryDate; }
+        public void setExpiryDate(String expiryDate) { this.expiryDate = expiryDate; }
+
+        public long getExpiryEpochDay() { return expiryEpochDay; }
+        public void setExpiryEpochDay(long expiryEpochDay) { this.expiryEpochDay = expiryEpochDay; }
+
+        public Date getReceivedAt() { return receivedAt; }
+        public void setReceivedAt(Date receivedAt) { this.receivedAt = receivedAt; }
+    }
+
     // Getters and Setters
     public String getInventoryId() {
         return inventoryId;
@@ -291,9 +389,18 @@ public class InventoryItem implements Serializable {
 
     public void setExpiryDate(String expiryDate) {
         this.expiryDate = expiryDate;
+        this.expiryEpochDay = parseEpochDay(expiryDate);
         checkExpiryAlert();
     }
 
+    public long getExpiryEpochDay() {
+        return expiryEpochDay;
+    }
+
+    public void setExpiryEpochDay(long expiryEpochDay) {
+        this.expiryEpochDay = expiryEpochDay;
+    }
+
     public String getManufacturingDate() {
         return manufacturingDate;
     }
@@ -302,6 +409,22 @@ public class InventoryItem implements Serializable {
         this.manufacturingDate = manufacturingDate;
     }
 
+    public Map<String, StockLot> getLots() {
+        return lots;
+    }
+
+    public void setLots(Map<String, StockLot> lots) {
+        this.lots = lots != null ? lots : new HashMap<>();
+    }
+
+    public int getUnpickedUnits() {
+        return unpickedUnits;
+    }
+
+    public void setUnpickedUnits(int unpickedUnits) {
+        this.unpickedUnits = unpickedUnits;
+    }
+
     public double getStorageTemperature() {
         return storageTemperature;
     }
@@ -383,6 +506,14 @@ public class InventoryItem implements Serializable {
         this.lastMovementDate = lastMovementDate;
     }
 
+    public Date getLastMovementAt() {
+        return lastMovementAt;
+    }
+
+    public void setLastMovementAt(Date lastMovementAt) {
+        this.lastMovementAt = lastMovementAt;
+    }
+
     public String getLastMovementType() {
         return lastMovementType;
     }
@@ -492,12 +623,36 @@ public class InventoryItem implements Serializable {
         this.alertLevel = alertLevel;
     }
 
-    public List<InventoryMovement> getMovementHistory() {
-        return movementHistory;
+    public List<InventoryMovement> getRecentMovements() {
+        return recentMovements;
     }
 
+    /**
+     * Blind writers append to the stored ring, so it is put back in newest-first order on read
+     */
+    public void setRecentMovements(List<InventoryMovement> recentMovements) {
+        this.recentMovements = recentMovements != null ? new ArrayList<>(recentMovements) : new ArrayList<>();
+        Collections.sort(this.recentMovements, Comparator.comparing(InventoryMovement::getTimestamp,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        trimRecentMovements();
+    }
+
+    /**
+     * Legacy embedded history; older documents are folded into the recent ring on read
+     * and the list is no longer written back
+     */
     public void setMovementHistory(List<InventoryMovement> movementHistory) {
-        this.movementHistory = movementHistory != null ? movementHistory : new ArrayList<>();
+        if (movementHistory != null && recentMovements.isEmpty()) {
+            setRecentMovements(movementHistory);
+        }
+    }
+
+    public long getMovementCount() {
+        return movementCount;
+    }
+
+    public void setMovementCount(long movementCount) {
+        this.movementCount = movementCount;
     }
 
     public String getLastVerifiedDate() {
@@ -549,10 +704,21 @@ public class InventoryItem implements Serializable {
     }
 
     /**
-     * Calculates total value of current stock
+     * Calculates total value of current stock, at each lot's own cost where stock is in lots
      */
     public void calculateTotalValue() {
-        this.totalValue = currentStock * unitCost;
+        if (lots == null || lots.isEmpty()) {
+            this.totalValue = currentStock * unitCost;
+        } else {
+            int inLots = 0;
+            double value = 0;
+            for (StockLot lot : pickedLots()) {
+                inLots += lot.getQuantity();
+                value += lot.getQuantity() * lot.getUnitCost();
+            }
+            // Stock received without a lot is valued at the item's cost
+            this.totalValue = value + Math.max(currentStock - inLots, 0) * unitCost;
+        }
         calculatePotentialLoss();
     }
 
@@ -560,7 +726,7 @@ public class InventoryItem implements Serializable {
      * Calculates potential loss if all stock expires
      */
     public void calculatePotentialLoss() {
-        this.potentialLossValue = currentStock * unitCost;
+        this.potentialLossValue = totalValue;
     }
 
     /**
@@ -573,11 +739,54 @@ public class InventoryItem implements Serializable {
     }
 
     /**
-     * Adds stock movement to history
+     * Applies a stock movement and records it in the recent ring
+     * Returns the movement so the caller can append it to the item's inventoryLogs
+     */
+    public InventoryMovement addMovement(String movementType, int quantity, String reason, String performedBy, String referenceId) {
+        InventoryMovement movement = newMovement(movementType, quantity, reason, performedBy, referenceId);
+        applyMovement(movement);
+
+        // Recalculate totals and check alerts
+        calculateTotalValue();
+        checkAlertLevels();
+        return movement;
+    }
+
+    /**
+     * Applies a movement from newMovement to stock, counters and the recent ring; totals and
+     * alert flags are left for the caller to recompute
+     */
+    public void applyMovement(InventoryMovement movement) {
+        this.recentMovements.add(0, movement); // Newest first
+        trimRecentMovements();
+        this.movementCount++;
+
+        // Update current stock
+        this.currentStock = movement.getNewStock();
+        this.lastMovementDate = movement.getTimestamp().toString();
+        this.lastMovementType = movement.getMovementType();
+        this.lastMovementReason = movement.getReason();
+
+        // Update movement counters
+        String counterField = getCounterField(movement.getMovementType());
+        if (counterField != null) {
+            int delta = getCounterDelta(movement.getMovementType(), movement.getQuantity());
+            switch (counterField) {
+                case "stockIn": this.stockIn += delta; break;
+                case "stockOut": this.stockOut += delta; break;
+                case "sold": this.sold += delta; break;
+                case "wasted": this.wasted += delta; break;
+                case "adjusted": this.adjusted += delta; break;
+            }
+        }
+    }
+
+    /**
+     * Builds a movement against the current stock without applying it
      */
-    public void addMovement(String movementType, int quantity, String reason, String performedBy, String referenceId) {
+    public InventoryMovement newMovement(String movementType, int quantity, String reason, String performedBy, String referenceId) {
         InventoryMovement movement = new InventoryMovement();
-        movement.setMovementId("MOV_" + System.currentTimeMillis());
+        movement.setMovementId(nextMovementId());
         movement.setMovementType(movementType);
         movement.setQuantity(quantity);
         movement.setPreviousStock(this.currentStock);
@@ -586,37 +795,126 @@ public class InventoryItem implements Serializable {
         movement.setPerformedBy(performedBy);
         movement.setReferenceId(referenceId);
         movement.setCostImpact(quantity * unitCost);
+        return movement;
+    }
 
-        this.movementHistory.add(0, movement); // Add to beginning of list
+    /**
+     * Counter field a movement type adds to, or null for none
+     */
+    public static String getCounterField(String movementType) {
+        switch (movementType) {
+            case "STOCK_IN": return "stockIn";
+            case "STOCK_OUT": return "stockOut";
+            case "SALE": return "sold";
+            case "WASTE": return "wasted";
+            case "ADJUSTMENT": return "adjusted";
+            default: return null;
+        }
+    }
 
-        // Update current stock
-        this.currentStock = movement.getNewStock();
-        this.lastMovementDate = movement.getTimestamp().toString();
-        this.lastMovementType = movementType;
-        this.lastMovementReason = reason;
+    /**
+     * Amount a movement adds to its counter: adjustments are signed, everything else counts units
+     */
+    public static int getCounterDelta(String movementType, int quantity) {
+        return "ADJUSTMENT".equals(movementType) || "STOCK_IN".equals(movementType) ? quantity : Math.abs(quantity);
+    }
 
-        // Update movement counters
-        switch (movementType) {
-            case "STOCK_IN":
-                this.stockIn += quantity;
-                break;
-            case "STOCK_OUT":
-                this.stockOut += Math.abs(quantity);
-                break;
-            case "SALE":
-                this.sold += Math.abs(quantity);
-                break;
-            case "WASTE":
-                this.wasted += Math.abs(quantity);
-                break;
-            case "ADJUSTMENT":
-                this.adjusted += quantity;
+    // Lot Picking
+
+    /**
+     * Lots with stock, in pick order: earliest expiry first, then oldest receipt
+     * Quantities are as stored, before unpicked units are taken
+     */
+    public List<StockLot> lotsInPickOrder() {
+        List<StockLot> ordered = new ArrayList<>();
+        if (lots != null) {
+            for (StockLot lot : lots.values()) {
+                if (lot.getQuantity() > 0) {
+                    ordered.add(lot);
+                }
+            }
+        }
+        Collections.sort(ordered, (a, b) -> {
+            int byExpiry = Long.compare(a.getExpiryEpochDay(), b.getExpiryEpochDay());
+            if (byExpiry != 0) return byExpiry;
+            long aReceived = a.getReceivedAt() != null ? a.getReceivedAt().getTime() : 0;
+            long bReceived = b.getReceivedAt() != null ? b.getReceivedAt().getTime() : 0;
+            int byReceipt = Long.compare(aReceived, bReceived);
+            return byReceipt != 0 ? byReceipt : String.valueOf(a.getLotId()).compareTo(String.valueOf(b.getLotId()));
+        });
+        return ordered;
+    }
+
+    /**
+     * First-expiry-first-out picks (lot ID to units) for the unpicked units; units beyond
+     * every lot came from stock received without one and pick nothing
+     */
+    public Map<String, Integer> pendingPicks() {
+        return pick(lotsInPickOrder(), Collections.emptyMap(), null, unpickedUnits);
+    }
+
+    /**
+     * Picks for taking units after the pending picks: from lotId only, or first-expiry-first-out
+     * when lotId is null; fewer units are picked if the lots run out
+     */
+    public Map<String, Integer> pickLots(int units, String lotId) {
+        return pick(lotsInPickOrder(), pendingPicks(), lotId, units);
+    }
+
+    /**
+     * Lots as they stand once pending picks are taken, in pick order, without changing this item
+     */
+    public List<StockLot> pickedLots() {
+        Map<String, Integer> pending = pendingPicks();
+        List<StockLot> picked = new ArrayList<>();
+        for (StockLot lot : lotsInPickOrder()) {
+            Integer taken = pending.get(lot.getLotId());
+            int remaining = lot.getQuantity() - (taken != null ? taken : 0);
+            if (remaining > 0) {
+                picked.add(lot.copyWithQuantity(remaining));
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * Mirror the next lot to be picked into batchNumber and expiryDate; items without lots keep theirs
+     */
+    public void refreshLotSummary() {
+        if (lots == null || lots.isEmpty()) {
+            return;
+        }
+        List<StockLot> picked = pickedLots();
+        StockLot next = picked.isEmpty() ? null : picked.get(0);
+        this.batchNumber = next != null ? next.getBatchNumber() : null;
+        setExpiryDate(next != null ? next.getExpiryDate() : null);
+    }
+
+    private static Map<String, Integer> pick(List<StockLot> ordered, Map<String, Integer> alreadyTaken,
+                                             String lotId, int units) {
+        Map<String, Integer> picks = new LinkedHashMap<>();
+        for (StockLot lot : ordered) {
+            if (units <= 0) {
                 break;
+            }
+            if (lotId != null && !lotId.equals(lot.getLotId())) {
+                continue;
+            }
+            Integer taken = alreadyTaken.get(lot.getLotId());
+            int available = lot.getQuantity() - (taken != null ? taken : 0);
+            int take = Math.min(available, units);
+            if (take > 0) {
+                picks.put(lot.getLotId(), take);
+                units -= take;
+            }
         }
+        return picks;
+    }
 
-        // Recalculate totals and check alerts
-        calculateTotalValue();
-        checkAlertLevels();
+    private void trimRecentMovements() {
+        while (recentMovements.size() > RECENT_MOVEMENTS_LIMIT) {
+            recentMovements.remove(recentMovements.size() - 1);
+        }
     }
 
     /**
@@ -642,14 +940,7 @@ public class InventoryItem implements Serializable {
      * Checks expiry date and updates alerts
      */
     public void checkExpiryAlert() {
-        if (expiryDate != null && !expiryDate.isEmpty()) {
-            try {
-                // Simple expiry check (would need proper date parsing in real implementation)
-                this.expiryAlert = false; // Would calculate based on actual date comparison
-            } catch (Exception e) {
-                // Handle date parsing error
-            }
-        }
+        this.expiryAlert = isExpiringSoon();
     }
 
     /**
@@ -660,11 +951,53 @@ public class InventoryItem implements Serializable {
     }
 
     /**
-     * Gets days until expiry
+     * Gets days until expiry (negative once expired, Integer.MAX_VALUE without an expiry date)
      */
     public int getDaysToExpiry() {
-        // Simplified implementation - would need proper date parsing
-        return 30; // Placeholder
+        if (expiryEpochDay == NO_EXPIRY) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) (expiryEpochDay - todayEpochDay());
+    }
+
+    /**
+     * Parse "yyyy-MM-dd" to days since 1970-01-01, or NO_EXPIRY if absent or malformed
+     */
+    public static long parseEpochDay(String date) {
+        if (date == null || date.isEmpty()) {
+            return NO_EXPIRY;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            return Math.floorDiv(format.parse(date).getTime(), DAY_MS);
+        } catch (Exception e) {
+            return NO_EXPIRY;
+        }
+    }
+
+    /**
+     * Local calendar day of a time, as days since 1970-01-01
+     */
+    public static long epochDayOf(long timeMillis) {
+        return Math.floorDiv(timeMillis + TimeZone.getDefault().getOffset(timeMillis), DAY_MS);
+    }
+
+    public static long todayEpochDay() {
+        return epochDayOf(System.currentTimeMillis());
+    }
+
+    /**
+     * Next movement ID; IDs from one process sort in creation order
+     */
+    public static String nextMovementId() {
+        long stamp;
+        synchronized (InventoryItem.class) {
+            stamp = Math.max(System.currentTimeMillis() * 1000, lastMovementStamp + 1);
+            lastMovementStamp = stamp;
+        }
+        return String.format(Locale.US, "MOV_%019d_%s", stamp, MOVEMENT_ID_SUFFIX);
     }
 
     /**
@@ -1,8 +1,17 @@
 package com.nmims.canteen.models;
 
+import com.nmims.canteen.utils.CustomerBitmap;
+import com.nmims.canteen.utils.DemandMatrix;
+import com.nmims.canteen.utils.HyperLogLog;
+import com.nmims.canteen.utils.OrderArchive;
+import com.nmims.canteen.utils.QuantileDigest;
+import com.nmims.canteen.utils.TopKTracker;
+
 import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -10,6 +19,15 @@ import java.util.Map;
  * Contains comprehensive sales performance metrics and analytics data
  */
 public class SalesData implements Serializable {
+    // Precomputed "HH:00" keys so bucketing an order allocates no strings
+    private static final String[] HOUR_KEYS = new String[24];
+
+    static {
+        for (int hour = 0; hour < HOUR_KEYS.length; hour++) {
+            HOUR_KEYS[hour] = (hour < 10 ? "0" : "") + hour + ":00";
+        }
+    }
+
     // Date and period information
     private String dateId; // Format: yyyy-MM-dd
     private Date date;
@@ -35,6 +53,8 @@ public class SalesData implements Serializable {
     private double repeatRate;
     private int uniqueCustomers;
     private double customerRetentionRate;
+    private HyperLogLog customerSketch; // Distinct customers, mergeable across days
+    private CustomerBitmap activeCustomers; // Dense customer IDs active in this period
 
     // Payment breakdown
     private Map<String, Integer> paymentMethodCounts;
@@ -46,6 +66,9 @@ public class SalesData implements Serializable {
     private Map<String, Integer> itemOrderCounts;
     private String topSellingItemId;
     private String topRevenueItemId;
+    private TopKTracker topItemsByQuantity; // Streaming top-K keyed by item ID
+    private TopKTracker topItemsByRevenue;
+    private Map<String, String> itemNames; // Latest display name per item ID
 
     // Category performance
     private Map<String, Integer> categoryOrders;
@@ -62,6 +85,7 @@ public class SalesData implements Serializable {
     private Map<String, Integer> weeklyOrders;
     private Map<String, Double> monthlySales;
     private Map<String, Integer> monthlyOrders;
+    private DemandMatrix demandMatrix; // Weekday × quarter-hour orders, revenue and items
 
     // Performance indicators
     private double growthRate;
@@ -80,6 +104,12 @@ public class SalesData implements Serializable {
     private double averageDeliveryTime;
     private int onTimeDeliveries;
 
+    // Distributions (mergeable quantile digests, times in minutes from order creation)
+    private QuantileDigest orderValueDigest;
+    private QuantileDigest timeToConfirmDigest;
+    private QuantileDigest timeToReadyDigest;
+    private QuantileDigest timeToDeliveryDigest;
+
     // Quality metrics
     private double averageRating;
     private int totalReviews;
@@ -100,6 +130,7 @@ public class SalesData implements Serializable {
         this.itemQuantities = new HashMap<>();
         this.itemRevenue = new HashMap<>();
         this.itemOrderCounts = new HashMap<>();
+        this.itemNames = new HashMap<>();
         this.categoryOrders = new HashMap<>();
         this.categoryRevenue = new HashMap<>();
         this.categoryQuantities = new HashMap<>();
@@ -111,6 +142,15 @@ public class SalesData implements Serializable {
         this.weeklyOrders = new HashMap<>();
         this.monthlySales = new HashMap<>();
         this.monthlyOrders = new HashMap<>();
+        this.demandMatrix = new DemandMatrix();
+        this.topItemsByQuantity = new TopKTracker();
+        this.topItemsByRevenue = new TopKTracker();
+        this.customerSketch = new HyperLogLog();
+        this.activeCustomers = new CustomerBitmap();
+        this.orderValueDigest = new QuantileDigest();
+        this.timeToConfirmDigest = new QuantileDigest();
+        this.timeToReadyDigest = new QuantileDigest();
+        this.timeToDeliveryDigest = new QuantileDigest();
 
         // Initialize payment methods
         paymentMethodCounts.put("Cash", 0);
@@ -298,6 +338,29 @@ public class SalesData implements Serializable {
         this.customerRetentionRate = customerRetentionRate;
     }
 
+    public HyperLogLog getCustomerSketch() {
+        return customerSketch;
+    }
+
+    public void setCustomerSketch(HyperLogLog customerSketch) {
+        this.customerSketch = customerSketch != null ? customerSketch : new HyperLogLog();
+    }
+
+    public CustomerBitmap getActiveCustomers() {
+        return activeCustomers;
+    }
+
+    public void setActiveCustomers(CustomerBitmap activeCustomers) {
+        this.activeCustomers = activeCustomers != null ? activeCustomers : new CustomerBitmap();
+    }
+
+    /**
+     * Whether uniqueCustomers is an exact count rather than a sketch estimate
+     */
+    public boolean isUniqueCustomersExact() {
+        return customerSketch.isExact();
+    }
+
     public Map<String, Integer> getPaymentMethodCounts() {
         return paymentMethodCounts;
     }
@@ -354,6 +417,38 @@ public class SalesData implements Serializable {
         this.topRevenueItemId = topRevenueItemId;
     }
 
+    public TopKTracker getTopItemsByQuantity() {
+        return topItemsByQuantity;
+    }
+
+    public void setTopItemsByQuantity(TopKTracker topItemsByQuantity) {
+        this.topItemsByQuantity = topItemsByQuantity != null ? topItemsByQuantity : new TopKTracker();
+    }
+
+    public TopKTracker getTopItemsByRevenue() {
+        return topItemsByRevenue;
+    }
+
+    public void setTopItemsByRevenue(TopKTracker topItemsByRevenue) {
+        this.topItemsByRevenue = topItemsByRevenue != null ? topItemsByRevenue : new TopKTracker();
+    }
+
+    public Map<String, String> getItemNames() {
+        return itemNames;
+    }
+
+    public void setItemNames(Map<String, String> itemNames) {
+        this.itemNames = itemNames != null ? itemNames : new HashMap<>();
+    }
+
+    /**
+     * Display name of an item ID as last seen, or the key itself if unknown
+     */
+    public String getItemName(String itemId) {
+        String name = itemNames.get(itemId);
+        return name != null ? name : itemId;
+    }
+
     public Map<String, Integer> getCategoryOrders() {
         return categoryOrders;
     }
@@ -546,6 +641,46 @@ public class SalesData implements Serializable {
         this.averageDeliveryTime = averageDeliveryTime;
     }
 
+    public QuantileDigest getOrderValueDigest() {
+        return orderValueDigest;
+    }
+
+    public void setOrderValueDigest(QuantileDigest orderValueDigest) {
+        this.orderValueDigest = orderValueDigest != null ? orderValueDigest : new QuantileDigest();
+    }
+
+    public QuantileDigest getTimeToConfirmDigest() {
+        return timeToConfirmDigest;
+    }
+
+    public void setTimeToConfirmDigest(QuantileDigest timeToConfirmDigest) {
+        this.timeToConfirmDigest = timeToConfirmDigest != null ? timeToConfirmDigest : new QuantileDigest();
+    }
+
+    public QuantileDigest getTimeToReadyDigest() {
+        return timeToReadyDigest;
+    }
+
+    public void setTimeToReadyDigest(QuantileDigest timeToReadyDigest) {
+        this.timeToReadyDigest = timeToReadyDigest != null ? timeToReadyDigest : new QuantileDigest();
+    }
+
+    public QuantileDigest getTimeToDeliveryDigest() {
+        return timeToDeliveryDigest;
+    }
+
+    public void setTimeToDeliveryDigest(QuantileDigest timeToDeliveryDigest) {
+        this.timeToDeliveryDigest = timeToDeliveryDigest != null ? timeToDeliveryDigest : new QuantileDigest();
+    }
+
+    public DemandMatrix getDemandMatrix() {
+        return demandMatrix;
+    }
+
+    public void setDemandMatrix(DemandMatrix demandMatrix) {
+        this.demandMatrix = demandMatrix != null ? demandMatrix : new DemandMatrix();
+    }
+
     public int getOnTimeDeliveries() {
         return onTimeDeliveries;
     }
@@ -650,34 +785,25 @@ public class SalesData implements Serializable {
         this.totalOrders++;
         this.totalRevenue += order.getFinalAmount();
 
-        // Update payment method data
-        String paymentMethod = order.getPaymentMethod().getDisplayName();
-        paymentMethodCounts.put(paymentMethod, paymentMethodCounts.getOrDefault(paymentMethod, 0) + 1);
-        paymentMethodRevenue.put(paymentMethod, paymentMethodRevenue.getOrDefault(paymentMethod, 0.0) + order.getFinalAmount());
+        // Update distinct customers (count is read from the sketch once the rollup is built)
+        customerSketch.offer(order.getUserId());
 
-        // Update delivery type data
-        if (order.getDeliveryType() == Order.DeliveryType.PICKUP) {
-            pickupOrders++;
-        } else {
-            deliveryOrders++;
-            deliveryRevenue += order.getDeliveryCharges();
+        // Update value and fulfilment latency distributions
+        orderValueDigest.add(order.getFinalAmount());
+        addLatency(timeToConfirmDigest, order.getCreatedAt(), order.getConfirmedAt());
+        addLatency(timeToReadyDigest, order.getCreatedAt(), order.getReadyAt());
+        addLatency(timeToDeliveryDigest, order.getCreatedAt(), order.getDeliveredAt());
+
+        if (order.getCreatedAt() != null) {
+            addDemand(order.getCreatedAt().getTime(), order.getFinalAmount(), order.getTotalItemCount());
         }
+        addPayment(order.getPaymentMethod(), order.getFinalAmount());
+        addDelivery(order.getDeliveryType(), order.getDeliveryCharges());
 
         // Update order items data
         for (CartItem item : order.getItems()) {
-            String itemId = item.getFoodItem().getItemId();
-            String itemName = item.getFoodItem().getName();
-            String category = item.getFoodItem().getCategory();
-
-            // Update item quantities
-            itemQuantities.put(itemId, itemQuantities.getOrDefault(itemId, 0) + item.getQuantity());
-            itemRevenue.put(itemId, itemRevenue.getOrDefault(itemId, 0.0) + item.getTotalPrice());
-            itemOrderCounts.put(itemId, itemOrderCounts.getOrDefault(itemId, 0) + 1);
-
-            // Update category data
-            categoryOrders.put(category, categoryOrders.getOrDefault(category, 0) + 1);
-            categoryRevenue.put(category, categoryRevenue.getOrDefault(category, 0.0) + item.getTotalPrice());
-            categoryQuantities.put(category, categoryQuantities.getOrDefault(category, 0) + item.getQuantity());
+            addItemLine(item.getFoodItem().getItemId(), item.getFoodItem().getName(), item.getFoodItem().getCategory(),
+                    item.getQuantity(), item.getTotalPrice());
         }
 
         // Calculate average order value
@@ -687,6 +813,91 @@ public class SalesData implements Serializable {
         updateTopPerformers();
     }
 
+    /**
+     * Adds an archived order to this sales record, as addOrderData does for a fetched one
+     * userId is the order's customer, resolved from the row's dense customer ID
+     */
+    public void addOrderRow(OrderArchive.Row row, OrderArchive archive, String userId) {
+        if (row.isCancelled()) return;
+
+        this.totalOrders++;
+        this.totalRevenue += row.getFinalAmount();
+        customerSketch.offer(userId);
+
+        orderValueDigest.add(row.getFinalAmount());
+        addLatency(timeToConfirmDigest, row.getSecondsToConfirm());
+        addLatency(timeToReadyDigest, row.getSecondsToReady());
+        addLatency(timeToDeliveryDigest, row.getSecondsToDelivery());
+
+        int itemCount = 0;
+        for (int i = 0; i < row.getItemCount(); i++) {
+            itemCount += row.getItemQuantity(i);
+        }
+        addDemand(row.getCreatedAt(), row.getFinalAmount(), itemCount);
+        addPayment(row.getPaymentMethod(), row.getFinalAmount());
+        addDelivery(row.getDeliveryType(), row.getDeliveryCharges());
+
+        for (int i = 0; i < row.getItemCount(); i++) {
+            int denseItemId = row.getItemId(i);
+            String itemId = archive.getItemId(denseItemId);
+            addItemLine(itemId != null && !itemId.isEmpty() ? itemId : null, archive.getItemName(denseItemId),
+                    row.getItemCategory(i), row.getItemQuantity(i), row.getItemTotal(i));
+        }
+
+        calculateAverageOrderValue();
+        updateTopPerformers();
+    }
+
+    /**
+     * Update hourly data and the weekday × quarter-hour demand matrix
+     */
+    private void addDemand(long createdAt, double amount, int itemCount) {
+        demandMatrix.add(createdAt, amount, itemCount);
+        String hourKey = HOUR_KEYS[demandMatrix.slotOf(createdAt) % DemandMatrix.QUARTERS / 4];
+        hourlySales.merge(hourKey, amount, Double::sum);
+        hourlyOrders.merge(hourKey, 1, Integer::sum);
+        if (hourlySales.get(hourKey) > peakHourRevenue) {
+            peakHour = hourKey;
+            peakHourRevenue = hourlySales.get(hourKey);
+            peakHourOrders = hourlyOrders.get(hourKey);
+        }
+    }
+
+    private void addPayment(Order.PaymentMethod method, double amount) {
+        if (method == null) return;
+        String paymentMethod = method.getDisplayName();
+        paymentMethodCounts.put(paymentMethod, paymentMethodCounts.getOrDefault(paymentMethod, 0) + 1);
+        paymentMethodRevenue.put(paymentMethod, paymentMethodRevenue.getOrDefault(paymentMethod, 0.0) + amount);
+    }
+
+    private void addDelivery(Order.DeliveryType deliveryType, double deliveryCharges) {
+        if (deliveryType == Order.DeliveryType.PICKUP) {
+            pickupOrders++;
+        } else {
+            deliveryOrders++;
+            deliveryRevenue += deliveryCharges;
+        }
+    }
+
+    private void addItemLine(String itemId, String itemName, String category, int quantity, double totalPrice) {
+        // Update item quantities
+        itemQuantities.put(itemId, itemQuantities.getOrDefault(itemId, 0) + quantity);
+        itemRevenue.put(itemId, itemRevenue.getOrDefault(itemId, 0.0) + totalPrice);
+        itemOrderCounts.put(itemId, itemOrderCounts.getOrDefault(itemId, 0) + 1);
+
+        // Update category data
+        categoryOrders.put(category, categoryOrders.getOrDefault(category, 0) + 1);
+        categoryRevenue.put(category, categoryRevenue.getOrDefault(category, 0.0) + totalPrice);
+        categoryQuantities.put(category, categoryQuantities.getOrDefault(category, 0) + quantity);
+
+        // Update streaming top-K trackers; renamed or same-named dishes stay apart
+        if (itemId != null && itemName != null) {
+            itemNames.put(itemId, itemName);
+        }
+        topItemsByQuantity.offer(itemId, quantity);
+        topItemsByRevenue.offer(itemId, totalPrice);
+    }
+
     /**
      * Updates top selling items and categories
      */
@@ -719,6 +930,137 @@ public class SalesData implements Serializable {
         }
     }
 
+    /**
+     * Merges another period's data into this record (used for weekly/monthly rollups)
+     */
+    public void merge(SalesData other) {
+        if (other == null) return;
+
+        this.totalOrders += other.totalOrders;
+        this.totalRevenue += other.totalRevenue;
+        this.newCustomers += other.newCustomers;
+        this.returningCustomers += other.returningCustomers;
+        this.pickupOrders += other.pickupOrders;
+        this.deliveryOrders += other.deliveryOrders;
+        this.deliveryRevenue += other.deliveryRevenue;
+        this.cancelledOrders += other.cancelledOrders;
+        this.refundedAmount += other.refundedAmount;
+        this.discountGiven += other.discountGiven;
+        this.complaints += other.complaints;
+        this.totalReviews += other.totalReviews;
+
+        mergeCounts(paymentMethodCounts, other.paymentMethodCounts);
+        mergeAmounts(paymentMethodRevenue, other.paymentMethodRevenue);
+        mergeCounts(itemQuantities, other.itemQuantities);
+        mergeAmounts(itemRevenue, other.itemRevenue);
+        mergeCounts(itemOrderCounts, other.itemOrderCounts);
+        mergeCounts(categoryOrders, other.categoryOrders);
+        mergeAmounts(categoryRevenue, other.categoryRevenue);
+        mergeCounts(categoryQuantities, other.categoryQuantities);
+        mergeAmounts(hourlySales, other.hourlySales);
+        mergeCounts(hourlyOrders, other.hourlyOrders);
+        topItemsByQuantity.merge(other.topItemsByQuantity);
+        topItemsByRevenue.merge(other.topItemsByRevenue);
+        itemNames.putAll(other.itemNames);
+
+        // Distinct customers are merged, not summed, so multi-day customers count once
+        customerSketch.merge(other.customerSketch);
+        this.uniqueCustomers = (int) customerSketch.cardinality();
+        activeCustomers.or(other.activeCustomers);
+        demandMatrix.merge(other.demandMatrix);
+        orderValueDigest.merge(other.orderValueDigest);
+        timeToConfirmDigest.merge(other.timeToConfirmDigest);
+        timeToReadyDigest.merge(other.timeToReadyDigest);
+        timeToDeliveryDigest.merge(other.timeToDeliveryDigest);
+
+        // Keep a per-day series so aggregated records can still be charted
+        if (other.dateId != null) {
+            dailySales.put(other.dateId, other.totalRevenue);
+            dailyOrders.put(other.dateId, other.totalOrders);
+        }
+
+        calculateAverageOrderValue();
+        calculateRepeatRate();
+        updateTopPerformers();
+    }
+
+    /**
+     * Record fulfilment steps an already counted order has reached since its previous snapshot
+     */
+    public void addFulfilmentProgress(Order previous, Order current) {
+        if (previous.getConfirmedAt() == null) {
+            addLatency(timeToConfirmDigest, current.getCreatedAt(), current.getConfirmedAt());
+        }
+        if (previous.getReadyAt() == null) {
+            addLatency(timeToReadyDigest, current.getCreatedAt(), current.getReadyAt());
+        }
+        if (previous.getDeliveredAt() == null) {
+            addLatency(timeToDeliveryDigest, current.getCreatedAt(), current.getDeliveredAt());
+        }
+    }
+
+    /**
+     * Deep copy of this record, safe to hand to other threads while this one keeps changing
+     */
+    public SalesData copy() {
+        SalesData copy = new SalesData(dateId, date);
+        copy.merge(this);
+
+        // Fields merge() does not carry over as-is
+        copy.period = period;
+        copy.weekStart = weekStart;
+        copy.weekEnd = weekEnd;
+        copy.monthStart = monthStart;
+        copy.monthEnd = monthEnd;
+        copy.yearStart = yearStart;
+        copy.yearEnd = yearEnd;
+        copy.peakHour = peakHour;
+        copy.peakHourOrders = peakHourOrders;
+        copy.peakHourRevenue = peakHourRevenue;
+        copy.customerRetentionRate = customerRetentionRate;
+        copy.averageRating = averageRating;
+        copy.customerSatisfactionScore = customerSatisfactionScore;
+        copy.averageDeliveryTime = averageDeliveryTime;
+        copy.onTimeDeliveries = onTimeDeliveries;
+        copy.lowStockAlerts = lowStockAlerts;
+        copy.outOfStockItems = outOfStockItems;
+        copy.wasteValue = wasteValue;
+        copy.dailySales = new HashMap<>(dailySales);
+        copy.dailyOrders = new HashMap<>(dailyOrders);
+        copy.weeklySales = new HashMap<>(weeklySales);
+        copy.weeklyOrders = new HashMap<>(weeklyOrders);
+        copy.monthlySales = new HashMap<>(monthlySales);
+        copy.monthlyOrders = new HashMap<>(monthlyOrders);
+        return copy;
+    }
+
+    /**
+     * Record minutes between two order timestamps, skipping steps the order never reached
+     */
+    private static void addLatency(QuantileDigest digest, Date from, Date to) {
+        if (from == null || to == null || to.before(from)) return;
+        digest.add((to.getTime() - from.getTime()) / 60000.0);
+    }
+
+    private static void addLatency(QuantileDigest digest, int seconds) {
+        if (seconds < 0) return;
+        digest.add(seconds / 60.0);
+    }
+
+    private static void mergeCounts(Map<String, Integer> target, Map<String, Integer> source) {
+        if (source == null) return;
+        for (Map.Entry<String, Integer> entry : source.entrySet()) {
+            target.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+    }
+
+    private static void mergeAmounts(Map<String, Double> target, Map<String, Double> source) {
+        if (source == null) return;
+        for (Map.Entry<String, Double> entry : source.entrySet()) {
+            target.merge(entry.getKey(), entry.getValue(), Double::sum);
+        }
+    }
+
     /**
      * Calculates growth rate compared to previous period
      */
@@ -731,18 +1073,28 @@ public class SalesData implements Serializable {
     }
 
     /**
-     * Gets top selling items with specified limit
+     * Gets top selling items with specified limit (ordered, read from the top-K tracker)
      */
     public Map<String, Integer> getTopSellingItems(int limit) {
-        Map<String, Integer> topItems = new HashMap<>();
+        Map<String, Integer> topItems = new LinkedHashMap<>();
+        for (TopKTracker.Entry entry : topItemsByQuantity.getTop(limit)) {
+            topItems.put(getItemName(entry.getKey()), (int) Math.round(entry.getCount()));
+        }
+        return topItems;
+    }
 
-        // Sort items by quantity and take top N
-        itemQuantities.entrySet().stream()
-            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-            .limit(limit)
-            .forEach(entry -> topItems.put(entry.getKey(), entry.getValue()));
+    /**
+     * Gets top selling items with their error bounds, keyed by item ID (see getItemName)
+     */
+    public List<TopKTracker.Entry> getTopSellingItemsWithBounds(int limit) {
+        return topItemsByQuantity.getTop(limit);
+    }
 
-        return topItems;
+    /**
+     * Gets top revenue items with their error bounds, keyed by item ID (see getItemName)
+     */
+    public List<TopKTracker.Entry> getTopRevenueItemsWithBounds(int limit) {
+        return topItemsByRevenue.getTop(limit);
     }
 
     /**
@@ -8,11 +8,13 @@ import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.Transaction;
@@ -22,6 +24,9 @@ import com.nmims.canteen.models.Review;
 import com.nmims.canteen.models.User;
 import com.nmims.canteen.models.CartItem;
 import com.nmims.canteen.models.InventoryItem;
+import com.nmims.canteen.utils.AnalyticsManager;
+import com.nmims.canteen.utils.IngredientConsumption;
+import com.nmims.canteen.utils.StockReservationManager;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -266,6 +271,9 @@ public class FirestoreService {
                 .addOnSuccessListener(executor, aVoid -> {
                     Log.d(TAG, "Order created successfully: " + order.getOrderId());
 
+                    // Today's analytics bucket is no longer current
+                    AnalyticsManager.getInstance().onOrderChanged(order);
+
                     // Update inventory if order is confirmed
                     if (order.getStatus() == Order.OrderStatus.CONFIRMED) {
                         updateInventoryForOrder(order);
@@ -372,6 +380,7 @@ public class FirestoreService {
                 .update(updates)
                 .addOnSuccessListener(executor, aVoid -> {
                     Log.d(TAG, "Order status updated successfully: " + orderId);
+                    invalidateOrderDay(orderId);
                     if (callback != null) callback.onSuccess(true);
                 })
                 .addOnFailureListener(executor, e -> {
@@ -380,6 +389,22 @@ public class FirestoreService {
                 });
     }
 
+    /**
+     * Invalidate analytics for the day the order was placed on, which may be a past day
+     */
+    private void invalidateOrderDay(String orderId) {
+        FirebaseUtils.getOrderDocument(orderId)
+                .get()
+                .addOnSuccessListener(executor, documentSnapshot -> {
+                    Order order = documentSnapshot.toObject(Order.class);
+                    if (order != null) {
+                        order.setOrderId(orderId);
+                        AnalyticsManager.getInstance().onOrderChanged(order);
+                    }
+                })
+                .addOnFailureListener(executor, e -> Log.e(TAG, "Error reading order " + orderId + " for analytics", e));
+    }
+
     /**
      * Get orders by status (admin only)
      */
@@ -645,6 +670,8 @@ public class FirestoreService {
 
     /**
      * Process order with inventory updates in transaction
+     * Lines are exploded through current recipes, so the order writes one aggregated
+     * decrement per ingredient (or per dish stocked as itself)
      */
     public void processOrderWithInventory(Order order, DatabaseCallback<String> callback) {
         if (order == null) {
@@ -652,20 +679,52 @@ public class FirestoreService {
             return;
         }
 
+        StockReservationManager reservations = StockReservationManager.getInstance();
+
         FirebaseUtils.getFirestore().runTransaction((Transaction.Function<TransactionResult>) transaction -> {
             try {
-                // Check inventory for all items
+                // Current recipes, so a recipe edited since the item was carted still applies
+                Map<String, FoodItem> menu = readMenu(transaction, order.getItems());
+                IngredientConsumption consumption = IngredientConsumption.explode(order.getItems(), menu);
+
+                // A line whose stock hold still covers it needs only its hold; held units
+                // come off what must be checked against the inventory document
+                Map<CartItem, DocumentSnapshot> holds = new HashMap<>();
+                Map<String, Integer> heldByInventoryId = new HashMap<>();
                 for (CartItem item : order.getItems()) {
-                    DocumentReference inventoryRef = FirebaseUtils.getInventoryItemDocument(item.getFoodItem().getItemId());
+                    String inventoryId = item.getFoodItem().getItemId();
+                    DocumentSnapshot hold = reservations.readHold(transaction, inventoryId, item.getReservationId());
+                    if (StockReservationManager.coversQuantity(hold, item.getQuantity())) {
+                        holds.put(item, hold);
+                        FoodItem current = menu.get(inventoryId);
+                        if (current == null || !current.hasRecipe()) {
+                            Integer held = heldByInventoryId.get(inventoryId);
+                            heldByInventoryId.put(inventoryId, (held != null ? held : 0) + item.getQuantity());
+                        }
+                    }
+                }
+
+                // Check every inventory item once, for the whole order's demand net of everyone's holds
+                for (String inventoryId : consumption.getInventoryIds()) {
+                    Integer held = heldByInventoryId.get(inventoryId);
+                    int unheld = consumption.getQuantity(inventoryId) - (held != null ? held : 0);
+                    if (unheld <= 0) {
+                        continue;
+                    }
+
+                    DocumentReference inventoryRef = FirebaseUtils.getInventoryItemDocument(inventoryId);
                     DocumentSnapshot inventoryDoc = transaction.get(inventoryRef);
 
                     if (!inventoryDoc.exists()) {
-                        throw new Exception("Inventory item not found: " + item.getFoodItem().getItemId());
+                        throw new Exception("Inventory item not found: " + inventoryId);
                     }
 
                     InventoryItem inventoryItem = inventoryDoc.toObject(InventoryItem.class);
-                    if (inventoryItem == null || inventoryItem.getCurrentStock() < item.getQuantity()) {
-                        throw new Exception("Insufficient stock for: " + item.getFoodItem().getName());
+                    if (inventoryItem == null || inventoryItem.getCurrentStock()
+                            - reservations.readHeldUnits(transaction, inventoryId) < unheld) {
+                        String name = inventoryItem != null && inventoryItem.getItemName() != null
+                                ? inventoryItem.getItemName() : inventoryId;
+                        throw new Exception("Insufficient stock for: " + name);
                     }
                 }
 
@@ -673,27 +732,13 @@ public class FirestoreService {
                 DocumentReference orderRef = FirebaseUtils.getOrderDocument(order.getOrderId());
                 transaction.set(orderRef, order);
 
-                // Update inventory
-                for (CartItem item : order.getItems()) {
-                    DocumentReference inventoryRef = FirebaseUtils.getInventoryItemDocument(item.getFoodItem().getItemId());
-                    DocumentSnapshot inventoryDoc = transaction.get(inventoryRef);
-                    InventoryItem inventoryItem = inventoryDoc.toObject(InventoryItem.class);
-
-                    if (inventoryItem != null) {
-                        int newStock = inventoryItem.getCurrentStock() - item.getQuantity();
-                        transaction.update(inventoryRef, "currentStock", newStock);
-                        transaction.update(inventoryRef, "updatedAt", new Date());
-
-                        // Add movement to history
-                        Map<String, Object> movement = new HashMap<>();
-                        movement.put("movementType", "SALE");
-                        movement.put("quantity", -item.getQuantity());
-                        movement.put("reason", "Order: " + order.getOrderId());
-                        movement.put("performedBy", "system");
-                        movement.put("timestamp", new Date());
-
-                        // This would need to be handled properly with array operations
-                    }
+                // Update inventory with increments: fully held items never read the inventory
+                // document, so concurrent checkouts of held stock do not contend on it
+                for (String inventoryId : consumption.getInventoryIds()) {
+                    transaction.update(FirebaseUtils.getInventoryItemDocument(inventoryId), consumption.toUpdate(inventoryId));
+                }
+                for (Map.Entry<CartItem, DocumentSnapshot> hold : holds.entrySet()) {
+                    reservations.convertHold(transaction, hold.getKey().getFoodItem().getItemId(), hold.getValue());
                 }
 
                 return TransactionResult.success(true);
@@ -703,6 +748,7 @@ public class FirestoreService {
             }
         }).addOnSuccessListener(executor, result -> {
             Log.d(TAG, "Order processed with inventory updates: " + order.getOrderId());
+            AnalyticsManager.getInstance().onOrderChanged(order);
             if (callback != null) callback.onSuccess(order.getOrderId());
         }).addOnFailureListener(executor, e -> {
             Log.e(TAG, "Failed to process order with inventory", e);
@@ -749,33 +795,91 @@ public class FirestoreService {
 
     /**
      * Update inventory for confirmed order
+     * Lines are exploded through current recipes and applied as one batch of aggregated increments
      */
     private void updateInventoryForOrder(Order order) {
-        for (CartItem item : order.getItems()) {
-            String itemId = item.getFoodItem().getItemId();
-            int quantity = item.getQuantity();
-
-            FirebaseUtils.getInventoryItemDocument(itemId)
-                    .get()
-                    .addOnSuccessListener(executor, documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            InventoryItem inventoryItem = documentSnapshot.toObject(InventoryItem.class);
-                            if (inventoryItem != null) {
-                                int newStock = inventoryItem.getCurrentStock() - quantity;
-                                if (newStock >= 0) {
-                                    FirebaseUtils.getInventoryItemDocument(itemId)
-                                            .update("currentStock", newStock, "updatedAt", new Date())
-                                            .addOnSuccessListener(aVoid -> {
-                                                Log.d(TAG, "Inventory updated for order: " + itemId);
-                                            })
-                                            .addOnFailureListener(e -> {
-                                                Log.e(TAG, "Failed to update inventory", e);
-                                            });
-                                }
-                            }
-                        }
-                    });
+        List<Task<DocumentSnapshot>> reads = new ArrayList<>();
+        for (String foodItemId : distinctFoodItemIds(order.getItems())) {
+            reads.add(FirebaseUtils.getFoodItemDocument(foodItemId).get());
+        }
+
+        Tasks.whenAllComplete(reads).addOnCompleteListener(executor, settled -> {
+            // A recipe that failed to load falls back to the line's own food item
+            Map<String, FoodItem> menu = new HashMap<>();
+            for (Task<DocumentSnapshot> read : reads) {
+                if (read.isSuccessful()) {
+                    putMenuItem(menu, read.getResult());
+                }
+            }
+
+            IngredientConsumption consumption = IngredientConsumption.explode(order.getItems(), menu);
+            if (consumption.isEmpty()) {
+                return;
+            }
+
+            // Read first, so a missing inventory item is skipped rather than failing the order's
+            // other items, and stock is taken no further than zero
+            FirebaseUtils.getFirestore().runTransaction((Transaction.Function<Void>) transaction -> {
+                Map<String, DocumentSnapshot> inventoryDocs = new HashMap<>();
+                for (String inventoryId : consumption.getInventoryIds()) {
+                    inventoryDocs.put(inventoryId, transaction.get(FirebaseUtils.getInventoryItemDocument(inventoryId)));
+                }
+
+                for (String inventoryId : consumption.getInventoryIds()) {
+                    DocumentSnapshot inventoryDoc = inventoryDocs.get(inventoryId);
+                    if (!inventoryDoc.exists()) {
+                        Log.w(TAG, "Skipping missing inventory item " + inventoryId + " for order " + order.getOrderId());
+                        continue;
+                    }
+                    Long stock = inventoryDoc.getLong("currentStock");
+                    int available = stock != null ? (int) Math.max(0, Math.min(stock, Integer.MAX_VALUE)) : 0;
+                    if (available < consumption.getQuantity(inventoryId)) {
+                        Log.w(TAG, "Only " + available + " of " + consumption.getQuantity(inventoryId)
+                                + " in stock for " + inventoryId + ", order " + order.getOrderId());
+                    }
+                    if (available > 0) {
+                        transaction.update(inventoryDoc.getReference(), consumption.toUpdate(inventoryId, available));
+                    }
+                }
+                return null;
+            }).addOnSuccessListener(aVoid -> {
+                Log.d(TAG, "Inventory updated for order: " + order.getOrderId());
+            }).addOnFailureListener(e -> {
+                Log.e(TAG, "Failed to update inventory", e);
+            });
+        });
+    }
+
+    /**
+     * Read the current food item of every order line inside a transaction (read phase)
+     */
+    private Map<String, FoodItem> readMenu(Transaction transaction, List<CartItem> items) throws FirebaseFirestoreException {
+        Map<String, FoodItem> menu = new HashMap<>();
+        for (String foodItemId : distinctFoodItemIds(items)) {
+            putMenuItem(menu, transaction.get(FirebaseUtils.getFoodItemDocument(foodItemId)));
+        }
+        return menu;
+    }
+
+    private void putMenuItem(Map<String, FoodItem> menu, DocumentSnapshot document) {
+        if (document != null && document.exists()) {
+            FoodItem foodItem = document.toObject(FoodItem.class);
+            if (foodItem != null) {
+                foodItem.setItemId(document.getId());
+                menu.put(document.getId(), foodItem);
+            }
+        }
+    }
+
+    private List<String> distinctFoodItemIds(List<CartItem> items) {
+        List<String> ids = new ArrayList<>();
+        for (CartItem item : items) {
+            if (item.getFoodItem() != null && item.getFoodItem().getItemId() != null
+                    && !ids.contains(item.getFoodItem().getItemId())) {
+                ids.add(item.getFoodItem().getItemId());
+            }
         }
+        return ids;
     }
 
     /**
@@ -0,0 +1,250 @@
+package com.nmims.canteen.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.nmims.canteen.models.SalesData;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe cache for daily sales rollups
+ * Keeps today's bucket live, recent days in a bounded LRU and finalized past days on disk
+ */
+public class AnalyticsCache {
+    private static final String TAG = "AnalyticsCache";
+    private static final String STORE_DIRECTORY = "analytics_daily";
+    private static final String STORE_EXTENSION = ".json";
+
+    // Default number of daily rollups kept in memory (roughly one semester)
+    public static final int DEFAULT_MAX_ENTRIES = 120;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, SalesData> memoryCache;
+    private final Gson gson;
+
+    // Today's bucket is never persisted and is invalidated by new orders
+    private String todayId;
+    private SalesData todayData;
+
+    private File storeDirectory;
+
+    public AnalyticsCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public AnalyticsCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.gson = new Gson();
+        this.memoryCache = new LinkedHashMap<String, SalesData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SalesData> eldest) {
+                return size() > AnalyticsCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Attach on-device file store for finalized past days
+     */
+    public synchronized void attachStore(Context context) {
+        if (storeDirectory != null || context == null) {
+            return;
+        }
+
+        File directory = new File(context.getApplicationContext().getFilesDir(), STORE_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create analytics store: " + directory);
+            return;
+        }
+        storeDirectory = directory;
+    }
+
+    /**
+     * Get rollup for date ID, checking today's bucket, memory and then disk
+     */
+    public SalesData get(String dateId) {
+        synchronized (this) {
+            if (dateId.equals(todayId)) {
+                return todayData;
+            }
+
+            SalesData cached = memoryCache.get(dateId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // Disk read happens outside the lock
+        SalesData stored = readFromStore(dateId);
+        if (stored != null) {
+            synchronized (this) {
+                memoryCache.put(dateId, stored);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Check whether a rollup is available without computing it
+     */
+    public boolean contains(String dateId) {
+        return get(dateId) != null;
+    }
+
+    /**
+     * Cache today's live bucket (memory only)
+     */
+    public synchronized void putToday(String dateId, SalesData data) {
+        if (todayId != null && !todayId.equals(dateId)) {
+            // Day rolled over, drop the stale live bucket
+            todayData = null;
+        }
+        todayId = dateId;
+        todayData = data;
+    }
+
+    /**
+     * Cache a finalized past day in memory and persist it to disk
+     */
+    public void putPastDay(String dateId, SalesData data) {
+        synchronized (this) {
+            if (dateId.equals(todayId)) {
+                todayId = null;
+                todayData = null;
+            }
+            memoryCache.put(dateId, data);
+        }
+        writeToStore(dateId, data);
+    }
+
+    /**
+     * Cache rollup in memory only
+     */
+    public synchronized void put(String dateId, SalesData data) {
+        memoryCache.put(dateId, data);
+    }
+
+    /**
+     * Invalidate today's live bucket
+     */
+    public synchronized void invalidateToday() {
+        todayData = null;
+    }
+
+    /**
+     * Invalidate a day in memory and on disk
+     */
+    public void invalidate(String dateId) {
+        synchronized (this) {
+            if (dateId.equals(todayId)) {
+                todayData = null;
+            }
+            memoryCache.remove(dateId);
+        }
+
+        File file = getStoreFile(dateId);
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete stored rollup: " + dateId);
+        }
+    }
+
+    /**
+     * Clear memory cache (persisted past days are kept)
+     */
+    public synchronized void clear() {
+        memoryCache.clear();
+        todayId = null;
+        todayData = null;
+    }
+
+    /**
+     * Clear memory cache and delete all persisted rollups
+     */
+    public void clearAll() {
+        clear();
+
+        File directory;
+        synchronized (this) {
+            directory = storeDirectory;
+        }
+        if (directory == null) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Failed to delete stored rollup: " + file.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get number of rollups held in memory
+     */
+    public synchronized int size() {
+        return memoryCache.size() + (todayData != null ? 1 : 0);
+    }
+
+    // Store Helpers
+
+    private File getStoreFile(String dateId) {
+        File directory;
+        synchronized (this) {
+            directory = storeDirectory;
+        }
+        return directory != null ? new File(directory, dateId + STORE_EXTENSION) : null;
+    }
+
+    private SalesData readFromStore(String dateId) {
+        File file = getStoreFile(dateId);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, SalesData.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading stored rollup: " + dateId, e);
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete corrupt rollup: " + dateId);
+            }
+            return null;
+        }
+    }
+
+    private void writeToStore(String dateId, SalesData data) {
+        File file = getStoreFile(dateId);
+        if (file == null) {
+            return;
+        }
+
+        // Write to temp file first so a crash never leaves a half-written rollup
+        File tempFile = new File(file.getParentFile(), dateId + STORE_EXTENSION + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            gson.toJson(data, writer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing rollup: " + dateId, e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error committing rollup: " + dateId);
+            tempFile.delete();
+        }
+    }
+}
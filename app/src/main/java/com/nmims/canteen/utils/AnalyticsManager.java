@@ -1,27 +1,40 @@
 package com.nmims.canteen.utils;
 
+import android.content.Context;
+import android.net.Uri;
 import android.util.Log;
 
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.nmims.canteen.models.CohortRetention;
 import com.nmims.canteen.models.Order;
 import com.nmims.canteen.models.SalesData;
 import com.nmims.canteen.models.FoodItem;
 import com.nmims.canteen.models.Review;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Sales analytics and reporting utilities
@@ -29,15 +42,34 @@ import java.util.concurrent.Executors;
  */
 public class AnalyticsManager {
     private static final String TAG = "AnalyticsManager";
+    private static final int EXPORT_PAGE_SIZE = 500;
+    private static final int BASELINE_HISTORY_DAYS = 28;
+    private static final long CHANGE_CHECK_INTERVAL_MS = 5 * 60 * 1000L;
+    private static final long CLOCK_SKEW_MS = 10 * 60 * 1000L; // lastUpdatedAt is set by each device's clock
     private static AnalyticsManager instance;
 
     // Background thread for calculations
     private final ExecutorService executorService;
-    private final Map<String, SalesData> cache; // Cache for frequently accessed data
+    private final AnalyticsCache cache; // Live today bucket, LRU of recent days and on-device past days
+    private final CustomerIdRegistry customerIds; // Dense IDs for per-day customer bitmaps
+    private final OrderArchive archive; // Columnar on-device copy of past orders for range scans
+
+    // Single background lane for live order updates
+    private final ScheduledExecutorService liveExecutor;
+    private final LiveSalesTracker liveSales;
+
+    // Guarded by changeCheckLock
+    private final Object changeCheckLock = new Object();
+    private long lastChangeCheck;
 
     private AnalyticsManager() {
         this.executorService = Executors.newFixedThreadPool(3);
-        this.cache = new HashMap<>();
+        this.cache = new AnalyticsCache();
+        this.customerIds = new CustomerIdRegistry();
+        this.archive = new OrderArchive(customerIds);
+        this.liveExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.liveSales = new LiveSalesTracker(liveExecutor, customerIds, cache, archive,
+                new SalesAnomalyDetector(liveExecutor, NotificationManager.getInstance()));
     }
 
     /**
@@ -50,6 +82,23 @@ public class AnalyticsManager {
         return instance;
     }
 
+    /**
+     * Get singleton instance with on-device persistence of past days enabled
+     */
+    public static synchronized AnalyticsManager getInstance(Context context) {
+        AnalyticsManager manager = getInstance();
+        manager.cache.attachStore(context);
+        boolean customerIdsKept = manager.customerIds.attachStore(context);
+        boolean archiveKept = manager.archive.attachStore(context);
+        if (!customerIdsKept || !archiveKept) {
+            // Stored customer bitmaps and archived orders are meaningless without their ID mapping,
+            // and rollups persisted with an untracked archive may include unsettled days
+            manager.cache.clearAll();
+            manager.archive.clear();
+        }
+        return manager;
+    }
+
     /**
      * Analytics result callback interface
      */
@@ -64,49 +113,10 @@ public class AnalyticsManager {
      * Calculate daily sales for specific date
      */
     public void calculateDailySales(Date date, AnalyticsCallback<SalesData> callback) {
-        String dateId = formatDateId(date);
-
-        // Check cache first
-        if (cache.containsKey(dateId)) {
-            if (callback != null) callback.onSuccess(cache.get(dateId));
-            return;
-        }
-
         executorService.execute(() -> {
             try {
-                SalesData salesData = new SalesData(dateId, date);
-                salesData.setPeriod("daily");
-
-                // Get start and end of day
-                Calendar calendar = Calendar.getInstance();
-                calendar.setTime(date);
-                calendar.set(Calendar.HOUR_OF_DAY, 0);
-                calendar.set(Calendar.MINUTE, 0);
-                calendar.set(Calendar.SECOND, 0);
-                calendar.set(Calendar.MILLISECOND, 0);
-                Date dayStart = calendar.getTime();
-
-                calendar.add(Calendar.DAY_OF_MONTH, 1);
-                Date dayEnd = calendar.getTime();
-
-                // Fetch orders for the day
-                List<Order> orders = getOrdersForDateRange(dayStart, dayEnd);
-
-                // Process orders
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        salesData.addOrderData(order);
-                    }
-                }
-
-                // Calculate additional metrics
-                calculateCustomerMetrics(salesData, orders);
-                calculateHourlyBreakdown(salesData, orders);
-                calculateQualityMetrics(salesData, orders);
-
-                // Cache the result
-                cache.put(dateId, salesData);
-
+                // Served from cache when available (may read the on-device store)
+                SalesData salesData = loadDailySales(date);
                 if (callback != null) callback.onSuccess(salesData);
 
             } catch (Exception e) {
@@ -133,31 +143,8 @@ public class AnalyticsManager {
                 Date weekEnd = calendar.getTime();
                 salesData.setWeekEnd(weekEnd);
 
-                // Get daily data for the week and aggregate
-                List<SalesData> dailyData = new ArrayList<>();
-                Date currentDate = new Date(weekStart.getTime());
-
-                while (currentDate.before(weekEnd)) {
-                    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-                    String dailyDateId = sdf.format(currentDate);
-
-                    // Get or calculate daily data
-                    if (cache.containsKey(dailyDateId)) {
-                        dailyData.add(cache.get(dailyDateId));
-                    } else {
-                        // Calculate daily sales for this date
-                        final Date finalCurrentDate = new Date(currentDate.getTime());
-                        Tasks.await(FirebaseUtils.getOrdersCollection()
-                                .whereGreaterThanOrEqualTo("createdAt", finalCurrentDate)
-                                .get());
-                        // This would need proper async handling in real implementation
-                    }
-
-                    calendar.add(Calendar.DAY_OF_MONTH, 1);
-                    currentDate = calendar.getTime();
-                }
-
-                // Aggregate daily data
+                // Aggregate daily data for the week
+                List<SalesData> dailyData = getDailyDataForRange(weekStart, weekEnd);
                 aggregateDailySales(dailyData, salesData);
 
                 if (callback != null) callback.onSuccess(salesData);
@@ -200,39 +187,124 @@ public class AnalyticsManager {
         });
     }
 
-    // Top Selling Items Analysis
+    /**
+     * Calculate yearly sales for year starting from given date
+     */
+    public void calculateYearlySales(Date yearStart, AnalyticsCallback<SalesData> callback) {
+        executorService.execute(() -> {
+            try {
+                SimpleDateFormat sdf = new SimpleDateFormat("yyyy", java.util.Locale.getDefault());
+                String dateId = sdf.format(yearStart) + "_YEAR";
+                SalesData salesData = new SalesData(dateId, yearStart);
+                salesData.setPeriod("yearly");
+                salesData.setYearStart(yearStart);
+
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(yearStart);
+                calendar.add(Calendar.YEAR, 1);
+                Date yearEnd = calendar.getTime();
+                salesData.setYearEnd(yearEnd);
+
+                // Aggregate daily data for the year
+                List<SalesData> dailyData = getDailyDataForRange(yearStart, yearEnd);
+                aggregateDailySales(dailyData, salesData);
+
+                if (callback != null) callback.onSuccess(salesData);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error calculating yearly sales", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
 
     /**
-     * Get top selling items for specified period
+     * Calculate sales for an arbitrary date range (both ends inclusive, day granularity)
      */
-    public void getTopSellingItems(Date startDate, Date endDate, int limit, AnalyticsCallback<List<Map.Entry<String, Integer>>> callback) {
+    public void calculateRangeSales(Date startDate, Date endDate, AnalyticsCallback<SalesData> callback) {
         executorService.execute(() -> {
             try {
-                Map<String, Integer> itemSales = new HashMap<>();
+                SalesData salesData = loadRangeSales(startDate, endDate);
+                if (callback != null) callback.onSuccess(salesData);
 
-                // Get orders for the period
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
+            } catch (Exception e) {
+                Log.e(TAG, "Error calculating range sales", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
 
-                // Aggregate item sales
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        for (var item : order.getItems()) {
-                            String itemName = item.getFoodItem().getName();
-                            itemSales.put(itemName, itemSales.getOrDefault(itemName, 0) + item.getQuantity());
-                        }
-                    }
-                }
+    /**
+     * Start live updates of today's sales
+     * callback.onSuccess is called with a fresh rollup after every batch of order changes;
+     * the same feed drives anomaly alerts to admins
+     */
+    public void startLiveSales(AnalyticsCallback<SalesData> callback) {
+        liveSales.start(new LiveSalesTracker.Listener() {
+            @Override
+            public void onUpdated(SalesData today) {
+                if (callback != null) callback.onSuccess(today);
+            }
+
+            @Override
+            public void onError(String error) {
+                if (callback != null) callback.onFailure(error);
+            }
+        });
+
+        // Anomaly baselines start from recent weeks instead of learning from scratch
+        executorService.execute(() -> {
+            try {
+                Calendar calendar = Calendar.getInstance();
+                calendar.add(Calendar.DAY_OF_MONTH, -1);
+                Date endDate = calendar.getTime();
+                calendar.add(Calendar.DAY_OF_MONTH, 1 - BASELINE_HISTORY_DAYS);
+                liveSales.seedBaselines(loadRangeSales(calendar.getTime(), endDate).getDemandMatrix());
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading anomaly baselines", e);
+            }
+        });
+    }
+
+    /**
+     * Stop live updates of today's sales
+     */
+    public void stopLiveSales() {
+        liveSales.stop();
+    }
+
+    /**
+     * Notify that an order was created or changed so the affected day is recomputed
+     * Changes made on other devices are picked up by the next range scan (see refreshArchive)
+     */
+    public void onOrderChanged(Order order) {
+        if (order == null || order.getCreatedAt() == null) {
+            cache.invalidateToday();
+            return;
+        }
+        cache.invalidate(formatDateId(order.getCreatedAt()));
+        Date createdAt = order.getCreatedAt();
+        executorService.execute(() -> archive.dropDay(createdAt));
+    }
+
+    // Top Selling Items Analysis
 
-                // Sort by quantity sold
-                List<Map.Entry<String, Integer>> sortedItems = new ArrayList<>(itemSales.entrySet());
-                sortedItems.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+    /**
+     * Get top selling items for specified period
+     * Merges the per-day top-K trackers, so cost is O(days * K log K) instead of scanning orders
+     */
+    public void getTopSellingItems(Date startDate, Date endDate, int limit, AnalyticsCallback<List<Map.Entry<String, Integer>>> callback) {
+        executorService.execute(() -> {
+            try {
+                SalesData rangeData = loadRangeSales(startDate, endDate);
 
-                // Limit results
-                if (sortedItems.size() > limit) {
-                    sortedItems = sortedItems.subList(0, limit);
+                List<Map.Entry<String, Integer>> topItems = new ArrayList<>();
+                for (TopKTracker.Entry entry : rangeData.getTopSellingItemsWithBounds(limit)) {
+                    topItems.add(new AbstractMap.SimpleImmutableEntry<>(rangeData.getItemName(entry.getKey()),
+                            (int) Math.round(entry.getCount())));
                 }
 
-                if (callback != null) callback.onSuccess(sortedItems);
+                if (callback != null) callback.onSuccess(topItems);
 
             } catch (Exception e) {
                 Log.e(TAG, "Error getting top selling items", e);
@@ -247,39 +319,70 @@ public class AnalyticsManager {
     public void getTopRevenueItems(Date startDate, Date endDate, int limit, AnalyticsCallback<List<Map.Entry<String, Double>>> callback) {
         executorService.execute(() -> {
             try {
-                Map<String, Double> itemRevenue = new HashMap<>();
+                SalesData rangeData = loadRangeSales(startDate, endDate);
 
-                // Get orders for the period
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
-
-                // Aggregate item revenue
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        for (var item : order.getItems()) {
-                            String itemName = item.getFoodItem().getName();
-                            itemRevenue.put(itemName, itemRevenue.getOrDefault(itemName, 0.0) + item.getTotalPrice());
-                        }
-                    }
+                List<Map.Entry<String, Double>> topItems = new ArrayList<>();
+                for (TopKTracker.Entry entry : rangeData.getTopRevenueItemsWithBounds(limit)) {
+                    topItems.add(new AbstractMap.SimpleImmutableEntry<>(rangeData.getItemName(entry.getKey()), entry.getCount()));
                 }
 
-                // Sort by revenue
-                List<Map.Entry<String, Double>> sortedItems = new ArrayList<>(itemRevenue.entrySet());
-                sortedItems.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+                if (callback != null) callback.onSuccess(topItems);
 
-                // Limit results
-                if (sortedItems.size() > limit) {
-                    sortedItems = sortedItems.subList(0, limit);
-                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting top revenue items", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
 
-                if (callback != null) callback.onSuccess(sortedItems);
+    /**
+     * Get top selling items with Space-Saving error bounds, keyed by item ID
+     * Each entry's true quantity lies in [count - error, count]
+     */
+    public void getTopSellingItemsWithBounds(Date startDate, Date endDate, int limit, AnalyticsCallback<List<TopKTracker.Entry>> callback) {
+        executorService.execute(() -> {
+            try {
+                SalesData rangeData = loadRangeSales(startDate, endDate);
+                if (callback != null) callback.onSuccess(rangeData.getTopSellingItemsWithBounds(limit));
 
             } catch (Exception e) {
-                Log.e(TAG, "Error getting top revenue items", e);
+                Log.e(TAG, "Error getting top selling items", e);
                 if (callback != null) callback.onFailure(e.getMessage());
             }
         });
     }
 
+    // Fulfilment Latency Analysis
+
+    /**
+     * Get p50/p90/p99 of order value and fulfilment latency (minutes) for a date range
+     * Merges the per-day quantile digests, so no orders are rescanned
+     */
+    public void getLatencyPercentiles(Date startDate, Date endDate, AnalyticsCallback<Map<String, Map<String, Double>>> callback) {
+        executorService.execute(() -> {
+            try {
+                SalesData rangeData = loadRangeSales(startDate, endDate);
+                if (callback != null) callback.onSuccess(getLatencyPercentiles(rangeData));
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting latency percentiles", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get p50/p90/p99 of order value and fulfilment latency (minutes) from a rollup
+     */
+    public static Map<String, Map<String, Double>> getLatencyPercentiles(SalesData salesData) {
+        Map<String, Map<String, Double>> percentiles = new HashMap<>();
+        percentiles.put("orderValue", getPercentiles(salesData.getOrderValueDigest()));
+        percentiles.put("timeToConfirm", getPercentiles(salesData.getTimeToConfirmDigest()));
+        percentiles.put("timeToReady", getPercentiles(salesData.getTimeToReadyDigest()));
+        percentiles.put("timeToDelivery", getPercentiles(salesData.getTimeToDeliveryDigest()));
+        return percentiles;
+    }
+
     // Category Performance Analysis
 
     /**
@@ -295,20 +398,17 @@ public class AnalyticsManager {
                 Map<String, Double> categoryRevenue = new HashMap<>();
                 Map<String, Integer> categoryQuantities = new HashMap<>();
 
-                // Get orders for the period
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
-
-                // Aggregate category data
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        for (var item : order.getItems()) {
-                            String category = item.getFoodItem().getCategory();
+                // Aggregate category data from the archive
+                scanOrders(startDate, endDate, row -> {
+                    if (row.isCounted()) {
+                        for (int i = 0; i < row.getItemCount(); i++) {
+                            String category = row.getItemCategory(i);
                             categoryOrders.put(category, categoryOrders.getOrDefault(category, 0) + 1);
-                            categoryRevenue.put(category, categoryRevenue.getOrDefault(category, 0.0) + item.getTotalPrice());
-                            categoryQuantities.put(category, categoryQuantities.getOrDefault(category, 0) + item.getQuantity());
+                            categoryRevenue.put(category, categoryRevenue.getOrDefault(category, 0.0) + row.getItemTotal(i));
+                            categoryQuantities.put(category, categoryQuantities.getOrDefault(category, 0) + row.getItemQuantity(i));
                         }
                     }
-                }
+                });
 
                 // Create performance metrics
                 for (String category : categoryOrders.keySet()) {
@@ -336,6 +436,23 @@ public class AnalyticsManager {
 
     // Peak Hours Analysis
 
+    /**
+     * Get weekday × quarter-hour demand matrix for a date range (both ends inclusive)
+     * Merged from the daily rollups, so any range is served from cache once its days are built
+     */
+    public void getDemandMatrix(Date startDate, Date endDate, AnalyticsCallback<DemandMatrix> callback) {
+        executorService.execute(() -> {
+            try {
+                DemandMatrix demand = loadRangeSales(startDate, endDate).getDemandMatrix();
+                if (callback != null) callback.onSuccess(demand);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting demand matrix", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
+
     /**
      * Get peak hours for specified number of days
      */
@@ -355,18 +472,19 @@ public class AnalyticsManager {
                 calendar.add(Calendar.DAY_OF_MONTH, -daysBack);
                 Date startDate = calendar.getTime();
 
-                // Get orders for the period
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
-
-                // Count orders by hour
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        Calendar orderTime = Calendar.getInstance();
-                        orderTime.setTime(order.getCreatedAt());
-                        int hour = orderTime.get(Calendar.HOUR_OF_DAY);
-                        String hourKey = String.format("%02d:00", hour);
-                        hourlyOrders.put(hourKey, hourlyOrders.get(hourKey) + 1);
+                // Count orders by hour, bucketed without per-order allocation
+                DemandMatrix demand = new DemandMatrix();
+                scanOrders(startDate, endDate, row -> {
+                    if (row.isCounted()) {
+                        demand.add(row.getCreatedAt(), row.getFinalAmount(), 0);
+                    }
+                });
+                for (int hour = 0; hour < 24; hour++) {
+                    int orders = 0;
+                    for (int day = 0; day < DemandMatrix.DAYS; day++) {
+                        orders += (int) demand.getHour(DemandMatrix.Metric.ORDERS, day, hour);
                     }
+                    hourlyOrders.put(String.format("%02d:00", hour), orders);
                 }
 
                 if (callback != null) callback.onSuccess(hourlyOrders);
@@ -381,14 +499,37 @@ public class AnalyticsManager {
     // Customer Analytics
 
     /**
-     * Calculate customer retention rate
+     * Calculate customer retention rate (0..1, both ends inclusive)
+     * Share of customers active in the equally long window before startDate
+     * who ordered again between startDate and endDate
      */
     public void getCustomerRetentionRate(Date startDate, Date endDate, AnalyticsCallback<Double> callback) {
         executorService.execute(() -> {
             try {
-                // This would need complex analysis of customer order history
-                // For now, return a simulated value
-                double retentionRate = 0.65; // 65% retention rate placeholder
+                Date rangeStart = getStartOfDay(startDate);
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(getStartOfDay(endDate));
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                Date rangeEnd = calendar.getTime();
+
+                // Previous window of the same number of days
+                calendar.setTime(rangeStart);
+                int days = 0;
+                while (calendar.getTime().before(rangeEnd)) {
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                    days++;
+                }
+                calendar.setTime(rangeStart);
+                calendar.add(Calendar.DAY_OF_MONTH, -days);
+                Date previousStart = calendar.getTime();
+
+                CustomerBitmap previousCustomers = loadActiveCustomers(previousStart, rangeStart);
+                CustomerBitmap currentCustomers = loadActiveCustomers(rangeStart, rangeEnd);
+
+                int cohortSize = previousCustomers.cardinality();
+                double retentionRate = cohortSize > 0
+                        ? (double) CustomerBitmap.andCardinality(previousCustomers, currentCustomers) / cohortSize
+                        : 0;
 
                 if (callback != null) callback.onSuccess(retentionRate);
 
@@ -399,24 +540,108 @@ public class AnalyticsManager {
         });
     }
 
+    /**
+     * Build weekly cohort retention matrix for a date range (both ends inclusive)
+     * Cohorts are customers whose first order within the range fell in that week;
+     * cells are intersections of per-day customer bitmaps, not order scans
+     */
+    public void getWeeklyCohortRetention(Date startDate, Date endDate, AnalyticsCallback<CohortRetention> callback) {
+        executorService.execute(() -> {
+            try {
+                Date rangeStart = getStartOfDay(startDate);
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(getStartOfDay(endDate));
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                Date rangeEnd = calendar.getTime();
+
+                // One bitmap per week from the cached daily rollups
+                List<Date> weekStarts = new ArrayList<>();
+                List<CustomerBitmap> weeklyCustomers = new ArrayList<>();
+                calendar.setTime(rangeStart);
+                while (calendar.getTime().before(rangeEnd)) {
+                    Date weekStart = calendar.getTime();
+                    calendar.add(Calendar.DAY_OF_MONTH, 7);
+                    Date weekEnd = calendar.getTime().before(rangeEnd) ? calendar.getTime() : rangeEnd;
+                    weekStarts.add(weekStart);
+                    weeklyCustomers.add(loadActiveCustomers(weekStart, weekEnd));
+                }
+
+                long startTime = System.nanoTime();
+                CohortRetention cohorts = new CohortRetention();
+                CustomerBitmap seen = new CustomerBitmap();
+
+                for (int i = 0; i < weeklyCustomers.size(); i++) {
+                    CustomerBitmap cohort = CustomerBitmap.andNot(weeklyCustomers.get(i), seen);
+                    seen.or(weeklyCustomers.get(i));
+
+                    int cohortSize = cohort.cardinality();
+                    List<Double> row = new ArrayList<>();
+                    for (int j = i; j < weeklyCustomers.size(); j++) {
+                        row.add(cohortSize > 0
+                                ? (double) CustomerBitmap.andCardinality(cohort, weeklyCustomers.get(j)) / cohortSize
+                                : 0);
+                    }
+                    cohorts.addCohort(weekStarts.get(i), cohortSize, row);
+                }
+
+                cohorts.setComputeTimeMs((System.nanoTime() - startTime) / 1_000_000);
+                if (callback != null) callback.onSuccess(cohorts);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error building cohort retention", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Count distinct customers for a date range (both ends inclusive)
+     * exact = true scans the archived orders, otherwise the daily
+     * HyperLogLog sketches are merged (±3.25% standard error once past 128 customers)
+     */
+    public void countUniqueCustomers(Date startDate, Date endDate, boolean exact, AnalyticsCallback<Long> callback) {
+        executorService.execute(() -> {
+            try {
+                long uniqueCustomers;
+                if (exact) {
+                    Calendar calendar = Calendar.getInstance();
+                    calendar.setTime(getStartOfDay(endDate));
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+
+                    CustomerBitmap customers = new CustomerBitmap();
+                    scanOrders(getStartOfDay(startDate), calendar.getTime(), row -> {
+                        if (row.isCounted() && row.getCustomerId() >= 0) {
+                            customers.add(row.getCustomerId());
+                        }
+                    });
+                    uniqueCustomers = customers.cardinality();
+                } else {
+                    uniqueCustomers = loadRangeSales(startDate, endDate).getCustomerSketch().cardinality();
+                }
+
+                if (callback != null) callback.onSuccess(uniqueCustomers);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error counting unique customers", e);
+                if (callback != null) callback.onFailure(e.getMessage());
+            }
+        });
+    }
+
     /**
      * Get repeat customer statistics
      */
     public void getRepeatCustomerStats(Date startDate, Date endDate, AnalyticsCallback<Map<String, Object>> callback) {
         executorService.execute(() -> {
             try {
-                Map<String, Integer> customerOrderCount = new HashMap<>();
-
-                // Get orders for the period
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
+                Map<Integer, Integer> customerOrderCount = new HashMap<>();
 
                 // Count orders per customer
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        String userId = order.getUserId();
-                        customerOrderCount.put(userId, customerOrderCount.getOrDefault(userId, 0) + 1);
+                scanOrders(startDate, endDate, row -> {
+                    if (row.isCounted()) {
+                        customerOrderCount.merge(row.getCustomerId(), 1, Integer::sum);
                     }
-                }
+                });
 
                 // Calculate statistics
                 int totalCustomers = customerOrderCount.size();
@@ -461,22 +686,23 @@ public class AnalyticsManager {
                 Map<String, Object> report = new HashMap<>();
 
                 // Get basic sales metrics
-                List<Order> orders = getOrdersForDateRange(startDate, endDate);
-                double totalRevenue = 0;
-                int totalOrders = 0;
-                int totalCustomers = 0;
-                Map<String, Integer> customerOrders = new HashMap<>();
-
-                for (Order order : orders) {
-                    if (!order.isCancelled() && order.isPaymentCompleted()) {
-                        totalRevenue += order.getFinalAmount();
-                        totalOrders++;
-                        String userId = order.getUserId();
-                        customerOrders.put(userId, customerOrders.getOrDefault(userId, 0) + 1);
+                double[] revenue = new double[1];
+                int[] orderCount = new int[1];
+                Set<Integer> customers = new HashSet<>();
+
+                long scanStart = System.nanoTime();
+                scanOrders(startDate, endDate, row -> {
+                    if (row.isCounted()) {
+                        revenue[0] += row.getFinalAmount();
+                        orderCount[0]++;
+                        customers.add(row.getCustomerId());
                     }
-                }
+                });
+                long scanTimeMs = (System.nanoTime() - scanStart) / 1_000_000;
 
-                totalCustomers = customerOrders.size();
+                double totalRevenue = revenue[0];
+                int totalOrders = orderCount[0];
+                int totalCustomers = customers.size();
                 double averageOrderValue = totalOrders > 0 ? totalRevenue / totalOrders : 0;
 
                 // Create report summary
@@ -489,6 +715,7 @@ public class AnalyticsManager {
                 report.put("averageOrderValue", averageOrderValue);
                 report.put("generatedAt", new Date());
                 report.put("generatedBy", "AnalyticsManager");
+                report.put("scanTimeMs", scanTimeMs);
 
                 // Add top items and categories
                 // This would call the respective analysis methods
@@ -505,56 +732,71 @@ public class AnalyticsManager {
     // Export Functions
 
     /**
-     * Export analytics data to CSV format
+     * Export analytics data to a CSV file (section,key,value rows) and return its content URI
+     */
+    public void exportToCSV(Context context, Map<String, Object> data, AnalyticsCallback<Uri> callback) {
+        exportReport(context, data, ReportExporter.Format.CSV, callback);
+    }
+
+    /**
+     * Export analytics data to a JSON file and return its content URI
      */
-    public void exportToCSV(Map<String, Object> data, AnalyticsCallback<String> callback) {
+    public void exportToJSON(Context context, Map<String, Object> data, AnalyticsCallback<Uri> callback) {
+        exportReport(context, data, ReportExporter.Format.JSON, callback);
+    }
+
+    /**
+     * Export one row per order in a date range and return the file's content URI
+     * Orders are fetched and written a page at a time, so large ranges use constant memory
+     */
+    public void exportOrderDetails(Context context, Date startDate, Date endDate, ReportExporter.Format format, AnalyticsCallback<Uri> callback) {
+        ReportExporter exporter = new ReportExporter(context);
         executorService.execute(() -> {
             try {
-                StringBuilder csv = new StringBuilder();
-
-                // Add header
-                csv.append("Metric,Value,Period\n");
+                File file = exporter.exportOrders(new ReportExporter.OrderPageSource() {
+                    private DocumentSnapshot lastDocument;
+
+                    @Override
+                    public List<Order> nextPage() throws Exception {
+                        Query query = FirebaseUtils.getOrdersCollection()
+                                .whereGreaterThanOrEqualTo("createdAt", startDate)
+                                .whereLessThan("createdAt", endDate)
+                                .orderBy("createdAt")
+                                .limit(EXPORT_PAGE_SIZE);
+                        if (lastDocument != null) {
+                            query = query.startAfter(lastDocument);
+                        }
 
-                // Add data rows
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    csv.append(entry.getKey()).append(",")
-                       .append(entry.getValue().toString()).append(",")
-                       .append("Custom Range\n");
-                }
+                        QuerySnapshot snapshots = Tasks.await(query.get());
+                        List<Order> orders = new ArrayList<>(snapshots.size());
+                        for (QueryDocumentSnapshot doc : snapshots) {
+                            Order order = doc.toObject(Order.class);
+                            order.setOrderId(doc.getId());
+                            orders.add(order);
+                            lastDocument = doc;
+                        }
+                        return orders;
+                    }
+                }, format, "orders");
 
-                if (callback != null) callback.onSuccess(csv.toString());
+                if (callback != null) callback.onSuccess(exporter.getUri(file));
 
             } catch (Exception e) {
-                Log.e(TAG, "Error exporting to CSV", e);
+                Log.e(TAG, "Error exporting order details", e);
                 if (callback != null) callback.onFailure(e.getMessage());
             }
         });
     }
 
-    /**
-     * Export analytics data to JSON format
-     */
-    public void exportToJSON(Map<String, Object> data, AnalyticsCallback<String> callback) {
+    private void exportReport(Context context, Map<String, Object> data, ReportExporter.Format format, AnalyticsCallback<Uri> callback) {
+        ReportExporter exporter = new ReportExporter(context);
         executorService.execute(() -> {
             try {
-                // Simple JSON conversion (in real implementation, use proper JSON library)
-                StringBuilder json = new StringBuilder();
-                json.append("{\n");
-
-                boolean first = true;
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    if (!first) json.append(",\n");
-                    json.append("  \"").append(entry.getKey()).append("\": \"")
-                        .append(entry.getValue().toString()).append("\"");
-                    first = false;
-                }
-
-                json.append("\n}");
-
-                if (callback != null) callback.onSuccess(json.toString());
+                File file = exporter.exportReport(data, format, "sales_report");
+                if (callback != null) callback.onSuccess(exporter.getUri(file));
 
             } catch (Exception e) {
-                Log.e(TAG, "Error exporting to JSON", e);
+                Log.e(TAG, "Error exporting to " + format.getExtension().toUpperCase(), e);
                 if (callback != null) callback.onFailure(e.getMessage());
             }
         });
@@ -571,45 +813,344 @@ public class AnalyticsManager {
     }
 
     /**
-     * Get orders for date range (simplified)
+     * Get start of day for date
+     */
+    private Date getStartOfDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Get orders for date range from Firestore (must be called off the main thread)
      */
-    private List<Order> getOrdersForDateRange(Date startDate, Date endDate) {
+    private List<Order> getOrdersForDateRange(Date startDate, Date endDate) throws Exception {
         List<Order> orders = new ArrayList<>();
-        // This would fetch from Firebase in real implementation
-        // For now, return empty list
+        QuerySnapshot snapshots = Tasks.await(FirebaseUtils.getOrdersCollection()
+                .whereGreaterThanOrEqualTo("createdAt", startDate)
+                .whereLessThan("createdAt", endDate)
+                .get());
+
+        for (QueryDocumentSnapshot doc : snapshots) {
+            Order order = doc.toObject(Order.class);
+            order.setOrderId(doc.getId());
+            orders.add(order);
+        }
         return orders;
     }
 
     /**
-     * Get daily data for date range
+     * Visit orders created in [startDate, endDate) in time order (must be called off the main thread)
+     * Past days come from the on-device archive. Each missing run of days is read from
+     * Firestore with one query and archived once settled; today and unsettled days are
+     * read every time.
      */
-    private List<SalesData> getDailyDataForRange(Date startDate, Date endDate) {
-        List<SalesData> dailyData = new ArrayList<>();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(startDate);
+    private void scanOrders(Date startDate, Date endDate, OrderArchive.RowVisitor visitor) throws Exception {
+        refreshArchive();
+        Date today = getStartOfDay(new Date());
+        Date archivedEnd = endDate.before(today) ? endDate : today;
 
-        while (calendar.getTime().before(endDate)) {
-            String dateId = formatDateId(calendar.getTime());
-            if (cache.containsKey(dateId)) {
-                dailyData.add(cache.get(dateId));
+        // Walk past days in runs that are either all archived or all missing
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(getStartOfDay(startDate));
+        Date runStart = null;
+        boolean runArchived = false;
+        while (calendar.getTime().before(archivedEnd)) {
+            Date day = calendar.getTime();
+            boolean archived = archive.hasDay(day);
+            if (runStart != null && archived != runArchived) {
+                scanRun(runStart, day, runArchived, startDate, visitor);
+                runStart = null;
+            }
+            if (runStart == null) {
+                runStart = day;
+                runArchived = archived;
             }
             calendar.add(Calendar.DAY_OF_MONTH, 1);
         }
+        if (runStart != null) {
+            scanRun(runStart, archivedEnd, runArchived, startDate, visitor);
+        }
+
+        if (endDate.after(today)) {
+            Date liveStart = startDate.after(today) ? startDate : today;
+            archive.scan(getOrdersForDateRange(liveStart, endDate), visitor);
+        }
+    }
+
+    private void scanRun(Date runStart, Date runEnd, boolean archived, Date startDate,
+                         OrderArchive.RowVisitor visitor) throws Exception {
+        Date start = startDate.after(runStart) ? startDate : runStart;
+        if (archived) {
+            archive.scan(start, runEnd, visitor);
+            return;
+        }
+
+        List<Order> orders = getOrdersForDateRange(runStart, runEnd);
+        archive.appendDays(runStart, runEnd, orders);
+        List<Order> inRange = new ArrayList<>();
+        for (Order order : orders) {
+            if (order.getCreatedAt() != null && !order.getCreatedAt().before(start)) {
+                inRange.add(order);
+            }
+        }
+        archive.scan(inRange, visitor);
+    }
+
+    /**
+     * Drop archived days and persisted rollups whose orders changed since the last check,
+     * including changes made on other devices (must be called off the main thread)
+     * Runs at most every CHANGE_CHECK_INTERVAL_MS, as one server query on lastUpdatedAt;
+     * offline, the check time is kept so the changes are picked up on the next check.
+     */
+    private void refreshArchive() {
+        synchronized (changeCheckLock) {
+            long now = System.currentTimeMillis();
+            if (now - lastChangeCheck < CHANGE_CHECK_INTERVAL_MS) {
+                return;
+            }
+            lastChangeCheck = now;
+
+            long checkedThrough = archive.getCheckedThrough();
+            if (checkedThrough > 0) {
+                try {
+                    QuerySnapshot changed = Tasks.await(FirebaseUtils.getOrdersCollection()
+                            .whereGreaterThanOrEqualTo("lastUpdatedAt", new Date(checkedThrough - CLOCK_SKEW_MS))
+                            .get(Source.SERVER));
+                    Date today = getStartOfDay(new Date(now));
+                    for (QueryDocumentSnapshot doc : changed) {
+                        Date createdAt = doc.getDate("createdAt");
+                        if (createdAt != null && createdAt.before(today)) {
+                            archive.dropDay(createdAt);
+                            cache.invalidate(formatDateId(createdAt));
+                        }
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error checking for changed orders", e);
+                    return;
+                }
+            }
+            archive.setCheckedThrough(now);
+        }
+    }
+
+    /**
+     * Get daily rollup from cache or compute it (must be called off the main thread)
+     */
+    private SalesData loadDailySales(Date date) throws Exception {
+        return loadDailySales(date, null);
+    }
+
+    /**
+     * Get daily rollup from cache, or build it from the archive when the day is archived and
+     * from Firestore otherwise (must be called off the main thread)
+     * A settled day read from Firestore is archived at once, or added to pending when given
+     * so that a range walk rewrites each month segment once
+     */
+    private SalesData loadDailySales(Date date, PendingArchiveDays pending) throws Exception {
+        refreshArchive();
+        String dateId = formatDateId(date);
+        SalesData cached = cache.get(dateId);
+        if (cached != null) {
+            backfillDemandMatrix(cached, date);
+            return cached;
+        }
+
+        Date dayStart = getStartOfDay(date);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(dayStart);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        Date dayEnd = calendar.getTime();
+
+        // A day is final once it has fully elapsed; capture this before fetching
+        boolean isPastDay = !dayEnd.after(new Date());
+
+        SalesData salesData = new SalesData(dateId, dayStart);
+        salesData.setPeriod("daily");
+        salesData.getDemandMatrix().addDay(dayStart.getTime());
+
+        // Archived days are settled past days; scan them locally instead of the network
+        if (isPastDay && archive.hasDay(dayStart)) {
+            buildDailyFromArchive(salesData, dayStart, dayEnd);
+            cache.putPastDay(dateId, salesData);
+            return salesData;
+        }
+
+        // Fetch orders for the day
+        List<Order> orders = getOrdersForDateRange(dayStart, dayEnd);
+
+        // Process orders
+        for (Order order : orders) {
+            if (!order.isCancelled() && order.isPaymentCompleted()) {
+                salesData.addOrderData(order);
+                if (order.getUserId() != null) {
+                    salesData.getActiveCustomers().add(customerIds.getOrAssign(order.getUserId()));
+                }
+            }
+        }
+
+        // Calculate additional metrics
+        calculateCustomerMetrics(salesData, orders);
+        calculateQualityMetrics(salesData);
+
+        // Settled past days are persisted, today stays live in memory; past days with
+        // orders still open are recomputed until they settle
+        if (isPastDay && OrderArchive.isSettled(dayEnd, orders)) {
+            // IDs must be on disk before any bitmap that references them
+            customerIds.flush();
+            cache.putPastDay(dateId, salesData);
+            if (pending != null) {
+                pending.dayStarts.add(dayStart);
+                pending.orders.addAll(orders);
+            } else {
+                archive.appendDays(dayStart, dayEnd, orders);
+            }
+        } else if (!isPastDay && !dayStart.after(new Date())) {
+            cache.putToday(dateId, salesData);
+        }
+
+        return salesData;
+    }
+
+    /**
+     * Build a past day's rollup from its archived orders, as the Firestore path does from fetched ones
+     */
+    private void buildDailyFromArchive(SalesData salesData, Date dayStart, Date dayEnd) {
+        Map<Integer, Integer> customerOrderCount = new HashMap<>();
+        archive.scan(dayStart, dayEnd, row -> {
+            int customerId = row.getCustomerId();
+            customerOrderCount.merge(customerId, 1, Integer::sum);
+            if (row.isCounted()) {
+                String userId = customerId >= 0 ? customerIds.getUserId(customerId) : null;
+                salesData.addOrderRow(row, archive, userId);
+                if (customerId >= 0) {
+                    salesData.getActiveCustomers().add(customerId);
+                }
+            }
+        });
+
+        classifyCustomers(salesData, customerOrderCount.values());
+        calculateQualityMetrics(salesData);
+    }
+
+    /**
+     * Fill the demand matrix of a past day persisted before it existed, from the archive only
+     */
+    private void backfillDemandMatrix(SalesData daily, Date date) {
+        Date dayStart = getStartOfDay(date);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(dayStart);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        Date dayEnd = calendar.getTime();
+
+        synchronized (daily) {
+            DemandMatrix demand = daily.getDemandMatrix();
+            if (demand.getCoveredDays() > 0 || !archive.hasDay(dayStart)) {
+                return;
+            }
+
+            demand.addDay(dayStart.getTime());
+            archive.scan(dayStart, dayEnd, row -> {
+                if (row.isCounted()) {
+                    int items = 0;
+                    for (int i = 0; i < row.getItemCount(); i++) {
+                        items += row.getItemQuantity(i);
+                    }
+                    demand.add(row.getCreatedAt(), row.getFinalAmount(), items);
+                }
+            });
+            cache.putPastDay(daily.getDateId(), daily);
+        }
+    }
+
+    /**
+     * Aggregate daily rollups for a range, both ends inclusive (must be called off the main thread)
+     */
+    private SalesData loadRangeSales(Date startDate, Date endDate) throws Exception {
+        Date rangeStart = getStartOfDay(startDate);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(getStartOfDay(endDate));
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        Date rangeEnd = calendar.getTime();
+
+        String dateId = formatDateId(rangeStart) + "_" + formatDateId(endDate);
+        SalesData salesData = new SalesData(dateId, rangeStart);
+        salesData.setPeriod("custom");
+
+        List<SalesData> dailyData = getDailyDataForRange(rangeStart, rangeEnd);
+        aggregateDailySales(dailyData, salesData);
+        return salesData;
+    }
+
+    /**
+     * Get daily data for date range, computing missing days (must be called off the main thread)
+     */
+    private List<SalesData> getDailyDataForRange(Date startDate, Date endDate) throws Exception {
+        List<SalesData> dailyData = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(getStartOfDay(startDate));
+        Date now = new Date();
+
+        // Newly settled days are archived a month at a time, not one segment rewrite per day
+        PendingArchiveDays pending = new PendingArchiveDays();
+        try {
+            int month = calendar.get(Calendar.MONTH);
+            while (calendar.getTime().before(endDate) && !calendar.getTime().after(now)) {
+                if (calendar.get(Calendar.MONTH) != month) {
+                    archivePending(pending);
+                    month = calendar.get(Calendar.MONTH);
+                }
+                dailyData.add(loadDailySales(calendar.getTime(), pending));
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+        } finally {
+            archivePending(pending);
+        }
 
         return dailyData;
     }
 
+    /**
+     * Summarize digest as p50/p90/p99 (NaN when empty) and sample count
+     */
+    private static Map<String, Double> getPercentiles(QuantileDigest digest) {
+        Map<String, Double> percentiles = new HashMap<>();
+        percentiles.put("p50", digest.quantile(0.5));
+        percentiles.put("p90", digest.quantile(0.9));
+        percentiles.put("p99", digest.quantile(0.99));
+        percentiles.put("count", (double) digest.getCount());
+        return percentiles;
+    }
+
+    /**
+     * Union of daily customer bitmaps for [startDate, endDate) (must be called off the main thread)
+     */
+    private CustomerBitmap loadActiveCustomers(Date startDate, Date endDate) throws Exception {
+        CustomerBitmap customers = new CustomerBitmap();
+        for (SalesData daily : getDailyDataForRange(startDate, endDate)) {
+            customers.or(daily.getActiveCustomers());
+        }
+        return customers;
+    }
+
     /**
      * Aggregate daily sales into weekly/monthly data
      */
     private void aggregateDailySales(List<SalesData> dailyData, SalesData aggregatedData) {
         for (SalesData daily : dailyData) {
-            aggregatedData.setTotalRevenue(aggregatedData.getTotalRevenue() + daily.getTotalRevenue());
-            aggregatedData.setTotalOrders(aggregatedData.getTotalOrders() + daily.getTotalOrders());
-            aggregatedData.setNewCustomers(aggregatedData.getNewCustomers() + daily.getNewCustomers());
-            aggregatedData.setReturningCustomers(aggregatedData.getReturningCustomers() + daily.getReturningCustomers());
+            aggregatedData.merge(daily);
+        }
+    }
 
-            // Aggregate other metrics as needed
+    private void archivePending(PendingArchiveDays pending) {
+        if (!pending.dayStarts.isEmpty()) {
+            archive.appendDays(pending.dayStarts, pending.orders);
+            pending.dayStarts.clear();
+            pending.orders.clear();
         }
     }
 
@@ -618,8 +1159,6 @@ public class AnalyticsManager {
      */
     private void calculateCustomerMetrics(SalesData salesData, List<Order> orders) {
         Map<String, Integer> customerOrderCount = new HashMap<>();
-        int newCustomers = 0;
-        int returningCustomers = 0;
 
         // Count orders per customer
         for (Order order : orders) {
@@ -627,8 +1166,16 @@ public class AnalyticsManager {
             customerOrderCount.put(userId, customerOrderCount.getOrDefault(userId, 0) + 1);
         }
 
-        // Classify customers
-        for (int orderCount : customerOrderCount.values()) {
+        classifyCustomers(salesData, customerOrderCount.values());
+    }
+
+    /**
+     * Classify customers as new or returning from their order counts
+     */
+    private void classifyCustomers(SalesData salesData, Collection<Integer> orderCounts) {
+        int newCustomers = 0;
+        int returningCustomers = 0;
+        for (int orderCount : orderCounts) {
             if (orderCount == 1) {
                 newCustomers++;
             } else {
@@ -638,50 +1185,13 @@ public class AnalyticsManager {
 
         salesData.setNewCustomers(newCustomers);
         salesData.setReturningCustomers(returningCustomers);
-        salesData.setUniqueCustomers(customerOrderCount.size());
-    }
-
-    /**
-     * Calculate hourly breakdown for sales data
-     */
-    private void calculateHourlyBreakdown(SalesData salesData, List<Order> orders) {
-        Map<String, Double> hourlySales = new HashMap<>();
-        Map<String, Integer> hourlyOrders = new HashMap<>();
-
-        for (Order order : orders) {
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(order.getCreatedAt());
-            int hour = calendar.get(Calendar.HOUR_OF_DAY);
-            String hourKey = String.format("%02d:00", hour);
-
-            hourlySales.put(hourKey, hourlySales.getOrDefault(hourKey, 0.0) + order.getFinalAmount());
-            hourlyOrders.put(hourKey, hourlyOrders.getOrDefault(hourKey, 0) + 1);
-        }
-
-        // Find peak hour
-        String peakHour = "";
-        double maxRevenue = 0;
-        int maxOrders = 0;
-
-        for (Map.Entry<String, Double> entry : hourlySales.entrySet()) {
-            if (entry.getValue() > maxRevenue) {
-                maxRevenue = entry.getValue();
-                peakHour = entry.getKey();
-                maxOrders = hourlyOrders.get(entry.getKey());
-            }
-        }
-
-        salesData.setHourlySales(hourlySales);
-        salesData.setHourlyOrders(hourlyOrders);
-        salesData.setPeakHour(peakHour);
-        salesData.setPeakHourRevenue(maxRevenue);
-        salesData.setPeakHourOrders(maxOrders);
+        salesData.setUniqueCustomers((int) salesData.getCustomerSketch().cardinality());
     }
 
     /**
      * Calculate quality metrics for sales data
      */
-    private void calculateQualityMetrics(SalesData salesData, List<Order> orders) {
+    private void calculateQualityMetrics(SalesData salesData) {
         int complaints = 0;
         double totalRating = 0;
         int totalReviews = 0;
@@ -695,12 +1205,21 @@ public class AnalyticsManager {
     }
 
     /**
-     * Clear cache
+     * Clear in-memory cache (persisted past days are kept)
      */
     public void clearCache() {
         cache.clear();
     }
 
+    /**
+     * Clear in-memory cache and delete persisted past days and archived orders
+     */
+    public void clearPersistedCache() {
+        cache.clearAll();
+        customerIds.clear();
+        archive.clear();
+    }
+
     /**
      * Get cached data for date
      */
@@ -722,5 +1241,17 @@ public class AnalyticsManager {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
+        if (liveExecutor != null && !liveExecutor.isShutdown()) {
+            liveSales.stop();
+            liveExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Settled days fetched during one range walk, archived together
+     */
+    private static class PendingArchiveDays {
+        final List<Date> dayStarts = new ArrayList<>();
+        final List<Order> orders = new ArrayList<>();
     }
-}
\ No newline at end of file
+}
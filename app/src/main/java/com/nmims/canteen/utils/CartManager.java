@@ -1,13 +1,27 @@
 package com.nmims.canteen.utils;
 
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.nmims.canteen.models.CartItem;
@@ -18,10 +32,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Shopping cart management and persistence utility
@@ -33,26 +51,53 @@ public class CartManager {
     private static final String CART_KEY = "cart_items";
     private static final String LAST_SYNC_KEY = "last_sync";
 
+    // Firebase cart document: lines keyed by cart item ID, so each line is updated on its own
+    private static final String LINES_FIELD = "lines";
+    private static final String LEGACY_ITEMS_FIELD = "items"; // Whole-cart array written by older versions
+
+    // Persistence: a burst of edits is written once it settles, or after the longest wait
+    private static final long PERSIST_DEBOUNCE_MS = 400;
+    private static final long PERSIST_MAX_DELAY_MS = 2000;
+
     private static CartManager instance;
     private final Context context;
     private final SharedPreferences preferences;
     private ArrayList<CartItem> cartItems;
-    private final ArrayList<CartChangeListener> listeners;
+    private final ListenerRegistry<CartChangeListener> listeners;
     private Date lastSync;
 
+    // Main thread only
+    private final Handler persistHandler;
+    private final Runnable persistTask;
+    private boolean localDirty;
+    private boolean remoteDirty;
+    private long dirtySince; // When the pending write was first requested
+    private final Map<String, CartItem> pendingLines; // Written whole: new to Firebase
+    private final Map<String, Set<String>> pendingFields; // Changed fields of lines already written
+    private final Set<String> pendingRemovals;
+    private final Map<String, HoldInFlight> holdsInFlight; // Cart item ID -> its stock hold awaiting a reply
+
     // Private constructor for singleton pattern
     private CartManager(Context context) {
         this.context = context.getApplicationContext();
         this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.cartItems = new ArrayList<>();
-        this.listeners = new ArrayList<>();
+        this.listeners = new ListenerRegistry<>(TAG);
         this.lastSync = new Date(preferences.getLong(LAST_SYNC_KEY, 0));
+        this.persistHandler = new Handler(Looper.getMainLooper());
+        this.persistTask = this::flush;
+        this.pendingLines = new LinkedHashMap<>();
+        this.pendingFields = new HashMap<>();
+        this.pendingRemovals = new HashSet<>();
+        this.holdsInFlight = new HashMap<>();
+        registerFlushTriggers();
 
         // Load cart from local storage
         loadCartFromLocalStorage();
 
-        // Sync with Firebase if user is authenticated
+        // Sync with Firebase if user is authenticated; lines are upserted, never replacing the cart
         if (FirebaseUtils.isUserAuthenticated()) {
+            markAllLinesForUpload();
             syncWithFirebase();
         }
     }
@@ -79,11 +124,20 @@ public class CartManager {
     }
 
     /**
-     * Add cart change listener
+     * Add cart change listener, delivered on the main thread until removed
      */
     public void addCartChangeListener(CartChangeListener listener) {
-        if (listener != null && !listeners.contains(listener)) {
-            listeners.add(listener);
+        if (listener != null) {
+            listeners.add(null, listener, ListenerRegistry.MAIN_THREAD);
+        }
+    }
+
+    /**
+     * Add cart change listener that is removed when owner is destroyed; call on the main thread
+     */
+    public void addCartChangeListener(LifecycleOwner owner, CartChangeListener listener) {
+        if (owner != null && listener != null) {
+            listeners.add(owner, null, listener, ListenerRegistry.MAIN_THREAD);
         }
     }
 
@@ -98,33 +152,25 @@ public class CartManager {
      * Notify listeners of cart changes
      */
     private void notifyCartChanged() {
-        for (CartChangeListener listener : listeners) {
-            listener.onCartChanged(new ArrayList<>(cartItems));
-        }
+        // Snapshot now; delivery may be posted after the cart changes again
+        ArrayList<CartItem> snapshot = new ArrayList<>(cartItems);
+        listeners.dispatch(listener -> listener.onCartChanged(new ArrayList<>(snapshot)));
     }
 
     private void notifyItemAdded(CartItem item) {
-        for (CartChangeListener listener : listeners) {
-            listener.onItemAdded(item);
-        }
+        listeners.dispatch(listener -> listener.onItemAdded(item));
     }
 
     private void notifyItemRemoved(CartItem item) {
-        for (CartChangeListener listener : listeners) {
-            listener.onItemRemoved(item);
-        }
+        listeners.dispatch(listener -> listener.onItemRemoved(item));
     }
 
     private void notifyItemUpdated(CartItem item) {
-        for (CartChangeListener listener : listeners) {
-            listener.onItemUpdated(item);
-        }
+        listeners.dispatch(listener -> listener.onItemUpdated(item));
     }
 
     private void notifyCartCleared() {
-        for (CartChangeListener listener : listeners) {
-            listener.onCartCleared();
-        }
+        listeners.dispatch(CartChangeListener::onCartCleared);
     }
 
     // Cart Operations
@@ -133,6 +179,15 @@ public class CartManager {
      * Add item to cart
      */
     public boolean addItem(FoodItem foodItem, int quantity) {
+        return addItem(foodItem, quantity, (StockReservationManager.ReservationCallback) null);
+    }
+
+    /**
+     * Add item to cart and hold its stock for StockReservationManager.HOLD_TTL_MS
+     * The line is added at once; if the hold is refused the addition is rolled back and
+     * callback gets the reason (e.g. "Only 2 left")
+     */
+    public boolean addItem(FoodItem foodItem, int quantity, StockReservationManager.ReservationCallback callback) {
         if (foodItem == null || quantity <= 0) {
             return false;
         }
@@ -142,22 +197,21 @@ public class CartManager {
         if (existingItem != null) {
             // Update quantity of existing item
             int newQuantity = existingItem.getQuantity() + quantity;
-            return updateItemQuantity(existingItem.getCartItemId(), newQuantity);
+            return updateItemQuantity(existingItem.getCartItemId(), newQuantity, callback);
         } else {
             // Add new item to cart
             CartItem newItem = new CartItem(foodItem, quantity);
             cartItems.add(newItem);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineAdded(newItem);
 
             // Notify listeners
             notifyItemAdded(newItem);
             notifyCartChanged();
 
+            holdStock(newItem, 0, callback);
+
             Log.d(TAG, "Added item to cart: " + foodItem.getName() + " (Quantity: " + quantity + ")");
             return true;
         }
@@ -171,8 +225,7 @@ public class CartManager {
             CartItem item = findItemByFoodItemId(foodItem.getItemId());
             if (item != null) {
                 item.setSpecialInstructions(specialInstructions);
-                saveCartToLocalStorage();
-                syncWithFirebase();
+                markLineChanged(item, "specialInstructions");
                 notifyItemUpdated(item);
             }
             return true;
@@ -187,12 +240,10 @@ public class CartManager {
         CartItem itemToRemove = findItemByCartItemId(cartItemId);
         if (itemToRemove != null) {
             cartItems.remove(itemToRemove);
+            releaseHold(itemToRemove);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineRemoved(itemToRemove);
 
             // Notify listeners
             notifyItemRemoved(itemToRemove);
@@ -208,24 +259,31 @@ public class CartManager {
      * Update item quantity
      */
     public boolean updateItemQuantity(String cartItemId, int newQuantity) {
+        return updateItemQuantity(cartItemId, newQuantity, null);
+    }
+
+    /**
+     * Update item quantity and resize its stock hold; rolled back if the hold is refused
+     */
+    public boolean updateItemQuantity(String cartItemId, int newQuantity, StockReservationManager.ReservationCallback callback) {
         if (newQuantity <= 0) {
             return removeItem(cartItemId);
         }
 
         CartItem item = findItemByCartItemId(cartItemId);
         if (item != null) {
+            int previousQuantity = item.getQuantity();
             item.setQuantity(newQuantity);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineChanged(item, "quantity", "totalPrice");
 
             // Notify listeners
             notifyItemUpdated(item);
             notifyCartChanged();
 
+            holdStock(item, previousQuantity, callback);
+
             Log.d(TAG, "Updated item quantity: " + item.getFoodItemName() + " -> " + newQuantity);
             return true;
         }
@@ -240,11 +298,8 @@ public class CartManager {
         if (item != null) {
             item.setSpecialInstructions(instructions);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineChanged(item, "specialInstructions");
 
             // Notify listeners
             notifyItemUpdated(item);
@@ -262,11 +317,8 @@ public class CartManager {
         if (item != null) {
             item.applyDiscount(discountAmount);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineChanged(item, "discountApplied", "totalPrice");
 
             // Notify listeners
             notifyItemUpdated(item);
@@ -285,11 +337,8 @@ public class CartManager {
         if (item != null) {
             item.applyPercentageDiscount(discountPercentage);
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineChanged(item, "discountApplied", "totalPrice");
 
             // Notify listeners
             notifyItemUpdated(item);
@@ -308,11 +357,8 @@ public class CartManager {
         if (item != null) {
             item.removeDiscount();
 
-            // Save to local storage
-            saveCartToLocalStorage();
-
-            // Sync with Firebase
-            syncWithFirebase();
+            // Persist once the edits settle
+            markLineChanged(item, "discountApplied", "totalPrice");
 
             // Notify listeners
             notifyItemUpdated(item);
@@ -327,13 +373,15 @@ public class CartManager {
      * Clear entire cart
      */
     public void clearCart() {
+        // Holds already turned into a sale at checkout are left as they are
+        for (CartItem item : cartItems) {
+            releaseHold(item);
+            markLineRemoved(item);
+        }
         cartItems.clear();
 
-        // Save to local storage
-        saveCartToLocalStorage();
-
-        // Sync with Firebase
-        syncWithFirebase();
+        // Persist once the edits settle
+        markLocalDirty();
 
         // Notify listeners
         notifyCartCleared();
@@ -355,21 +403,140 @@ public class CartManager {
             if (localItem != null) {
                 // Merge quantities - keep the higher one
                 int mergedQuantity = Math.max(localItem.getQuantity(), firebaseItem.getQuantity());
-                localItem.setQuantity(mergedQuantity);
+                if (mergedQuantity != localItem.getQuantity()) {
+                    localItem.setQuantity(mergedQuantity);
+                    markLineChanged(localItem, "quantity", "totalPrice");
+                }
+                if (!localItem.getCartItemId().equals(firebaseItem.getCartItemId())) {
+                    markLineRemoved(firebaseItem); // Same dish carted on another device; keep one line
+                }
             } else {
-                // Add new item from Firebase
+                // Add new item from Firebase; rewritten as a line in case it came from the older format
                 cartItems.add(firebaseItem);
+                markLineAdded(firebaseItem);
             }
         }
 
         // Save and sync
-        saveCartToLocalStorage();
-        syncWithFirebase();
+        markLocalDirty();
         notifyCartChanged();
 
         Log.d(TAG, "Cart merged with Firebase cart");
     }
 
+    // Stock Holds
+
+    /**
+     * Hold the line's current quantity; when the stock is not there restore previousQuantity
+     * (0 removes the line). Guest carts, dishes made from a recipe and holds that fail for
+     * any other reason (e.g. offline) leave the line unheld, to be checked at checkout.
+     * One hold per line is in flight at a time: changes made meanwhile only record that the
+     * line wants its latest quantity, and the single reservation is resized to it once the
+     * hold returns.
+     */
+    private void holdStock(CartItem item, int previousQuantity, StockReservationManager.ReservationCallback callback) {
+        if (!FirebaseUtils.isUserAuthenticated() || item.getFoodItem() == null || item.getFoodItem().hasRecipe()) {
+            if (callback != null) callback.onSuccess(null);
+            return;
+        }
+        HoldInFlight inFlight = holdsInFlight.get(item.getCartItemId());
+        if (inFlight != null) {
+            inFlight.resizeWanted = true;
+            inFlight.callbacks.add(callback);
+            return;
+        }
+        inFlight = new HoldInFlight(previousQuantity);
+        inFlight.callbacks.add(callback);
+        holdsInFlight.put(item.getCartItemId(), inFlight);
+        sendHold(item, inFlight);
+    }
+
+    private void sendHold(CartItem item, HoldInFlight inFlight) {
+        String inventoryId = item.getFoodItem().getItemId();
+        int quantity = item.getQuantity();
+        List<StockReservationManager.ReservationCallback> callbacks = new ArrayList<>(inFlight.callbacks);
+        inFlight.callbacks.clear();
+        inFlight.resizeWanted = false;
+
+        StockReservationManager.getInstance().hold(inventoryId, item.getReservationId(), quantity,
+                new StockReservationManager.ReservationCallback() {
+                    @Override
+                    public void onSuccess(StockReservationManager.Hold hold) {
+                        if (!cartItems.contains(item)) {
+                            // Line removed while the hold was in flight
+                            holdsInFlight.remove(item.getCartItemId());
+                            if (hold != null) {
+                                StockReservationManager.getInstance().release(inventoryId, hold.getReservationId());
+                            }
+                            return;
+                        }
+                        if (hold != null) {
+                            item.setReservationId(hold.getReservationId());
+                            item.setReservedQuantity(hold.getQuantity());
+                            item.setReservationExpiresAt(hold.getExpiresAt());
+                            markLocalDirty(); // Hold details ride along with the line's next Firebase write
+                        }
+                        // Not placed (hold == null): any hold from an earlier quantity still covers that much
+                        inFlight.acceptedQuantity = quantity;
+                        for (StockReservationManager.ReservationCallback waiting : callbacks) {
+                            if (waiting != null) waiting.onSuccess(hold);
+                        }
+                        continueHolds(item, inFlight);
+                    }
+
+                    @Override
+                    public void onFailure(String error) {
+                        if (!cartItems.contains(item)) {
+                            holdsInFlight.remove(item.getCartItemId());
+                            for (StockReservationManager.ReservationCallback waiting : callbacks) {
+                                if (waiting != null) waiting.onFailure(error);
+                            }
+                            return;
+                        }
+                        if (inFlight.resizeWanted && item.getQuantity() < quantity) {
+                            // Lowered meanwhile; the smaller quantity may still be there
+                            inFlight.callbacks.addAll(0, callbacks);
+                            sendHold(item, inFlight);
+                            return;
+                        }
+
+                        Log.d(TAG, "Stock hold refused for " + item.getFoodItemName() + ": " + error);
+                        holdsInFlight.remove(item.getCartItemId());
+                        callbacks.addAll(inFlight.callbacks);
+                        if (inFlight.acceptedQuantity <= 0) {
+                            removeItem(item.getCartItemId());
+                        } else {
+                            item.setQuantity(inFlight.acceptedQuantity);
+                            markLineChanged(item, "quantity", "totalPrice");
+                            notifyItemUpdated(item);
+                            notifyCartChanged();
+                        }
+                        for (StockReservationManager.ReservationCallback waiting : callbacks) {
+                            if (waiting != null) waiting.onFailure(error);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Resize to the latest quantity if the line changed while its hold was in flight
+     */
+    private void continueHolds(CartItem item, HoldInFlight inFlight) {
+        if (inFlight.resizeWanted) {
+            sendHold(item, inFlight);
+        } else {
+            holdsInFlight.remove(item.getCartItemId());
+        }
+    }
+
+    private void releaseHold(CartItem item) {
+        if (item.getReservationId() != null && item.getFoodItem() != null) {
+            StockReservationManager.getInstance().release(item.getFoodItem().getItemId(), item.getReservationId());
+            item.setReservationId(null);
+            item.setReservedQuantity(0);
+        }
+    }
+
     // Getters
 
     /**
@@ -497,6 +664,141 @@ public class CartManager {
 
     // Storage Operations
 
+    /**
+     * Mark a new line, written whole to Firebase once the edits settle
+     */
+    private void markLineAdded(CartItem item) {
+        pendingLines.put(item.getCartItemId(), item);
+        pendingFields.remove(item.getCartItemId());
+        pendingRemovals.remove(item.getCartItemId());
+        remoteDirty = true;
+        markLocalDirty();
+    }
+
+    /**
+     * Mark fields of a line changed; only those fields are sent
+     */
+    private void markLineChanged(CartItem item, String... fields) {
+        String cartItemId = item.getCartItemId();
+        if (!pendingLines.containsKey(cartItemId)) {
+            Set<String> changed = pendingFields.get(cartItemId);
+            if (changed == null) {
+                changed = new HashSet<>();
+                pendingFields.put(cartItemId, changed);
+            }
+            Collections.addAll(changed, fields);
+        }
+        remoteDirty = true;
+        markLocalDirty();
+    }
+
+    /**
+     * Mark a line removed; a line never written to Firebase is simply dropped
+     */
+    private void markLineRemoved(CartItem item) {
+        String cartItemId = item.getCartItemId();
+        pendingFields.remove(cartItemId);
+        if (pendingLines.remove(cartItemId) == null) {
+            pendingRemovals.add(cartItemId);
+            remoteDirty = true;
+        }
+        markLocalDirty();
+    }
+
+    private void markAllLinesForUpload() {
+        for (CartItem item : cartItems) {
+            pendingLines.put(item.getCartItemId(), item);
+            pendingFields.remove(item.getCartItemId());
+        }
+        remoteDirty = true;
+    }
+
+    /**
+     * Mark a change that only the local copy keeps (e.g. stock hold details)
+     */
+    private void markLocalDirty() {
+        long now = System.currentTimeMillis();
+        if (dirtySince == 0) {
+            dirtySince = now;
+        }
+        localDirty = true;
+
+        // Restart the quiet period, but never past the longest wait since the first edit
+        persistHandler.removeCallbacks(persistTask);
+        long delay = Math.min(PERSIST_DEBOUNCE_MS, dirtySince + PERSIST_MAX_DELAY_MS - now);
+        persistHandler.postDelayed(persistTask, Math.max(delay, 0));
+    }
+
+    /**
+     * Write pending changes now: one local save and at most one Firebase write
+     * Runs when any activity pauses and when the app leaves the foreground
+     */
+    public void flush() {
+        persistHandler.removeCallbacks(persistTask);
+        dirtySince = 0;
+        if (localDirty) {
+            localDirty = false;
+            saveCartToLocalStorage();
+        }
+        if (remoteDirty) {
+            remoteDirty = false;
+            syncWithFirebase();
+        }
+    }
+
+    /**
+     * Flush on every activity pause and when the UI is hidden, so a process killed in the
+     * background has already written its cart
+     */
+    private void registerFlushTriggers() {
+        if (!(context instanceof Application)) {
+            return;
+        }
+        Application application = (Application) context;
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityPaused(@NonNull Activity activity) {
+                flush();
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+                flush();
+            }
+
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, Bundle savedInstanceState) {}
+
+            @Override
+            public void onActivityStarted(@NonNull Activity activity) {}
+
+            @Override
+            public void onActivityResumed(@NonNull Activity activity) {}
+
+            @Override
+            public void onActivityStopped(@NonNull Activity activity) {}
+
+            @Override
+            public void onActivityDestroyed(@NonNull Activity activity) {}
+        });
+        application.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                    persistHandler.post(CartManager.this::flush);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+
+            @Override
+            public void onLowMemory() {
+                persistHandler.post(CartManager.this::flush);
+            }
+        });
+    }
+
     /**
      * Save cart to local SharedPreferences
      */
@@ -544,41 +846,136 @@ public class CartManager {
     }
 
     /**
-     * Sync cart with Firebase
+     * Send pending line changes to Firebase as one field-path update
+     * New lines are written whole, changed lines only their changed fields, removed lines are
+     * deleted; lines another device changed are left alone. Food items are referenced by ID and
+     * version, not copied.
      */
     public void syncWithFirebase() {
-        if (!FirebaseUtils.isUserAuthenticated()) {
+        if (!FirebaseUtils.isUserAuthenticated() || FirebaseUtils.getCurrentUserId() == null) {
+            clearPendingLines(); // Guest carts stay local; logging in uploads every line
             return;
         }
-
-        String userId = FirebaseUtils.getCurrentUserId();
-        if (userId == null) {
+        if (pendingLines.isEmpty() && pendingFields.isEmpty() && pendingRemovals.isEmpty()) {
             return;
         }
 
-        try {
-            // Convert cart items to map format for Firebase
-            Map<String, Object> cartData = new HashMap<>();
-            cartData.put("items", cartItemsToMapList());
-            cartData.put("totalItems", getItemCount());
-            cartData.put("totalPrice", getTotalPrice());
-            cartData.put("lastUpdated", FirebaseUtils.getServerTimestamp());
-
-            // Save to Firebase
-            FirebaseUtils.getCurrentUserCartDocument()
-                    .set(cartData)
-                    .addOnCompleteListener(task -> {
-                        if (task.isSuccessful()) {
-                            Log.d(TAG, "Cart synced with Firebase");
-                            lastSync = new Date();
-                        } else {
-                            Log.e(TAG, "Error syncing cart with Firebase", task.getException());
-                        }
-                    });
+        // Field paths and values, alternating
+        List<Object> updates = new ArrayList<>();
+        for (String cartItemId : pendingRemovals) {
+            updates.add(FieldPath.of(LINES_FIELD, cartItemId));
+            updates.add(FieldValue.delete());
+        }
+        for (CartItem item : pendingLines.values()) {
+            updates.add(FieldPath.of(LINES_FIELD, item.getCartItemId()));
+            updates.add(cartLineToMap(item));
+        }
+        for (Map.Entry<String, Set<String>> changed : pendingFields.entrySet()) {
+            CartItem item = findItemByCartItemId(changed.getKey());
+            if (item == null) {
+                continue;
+            }
+            Map<String, Object> line = cartLineToMap(item);
+            for (String field : changed.getValue()) {
+                Object value = line.get(field);
+                updates.add(FieldPath.of(LINES_FIELD, changed.getKey(), field));
+                updates.add(value != null ? value : FieldValue.delete());
+            }
+        }
+        if (!pendingLines.isEmpty()) {
+            updates.add(FieldPath.of(LEGACY_ITEMS_FIELD));
+            updates.add(FieldValue.delete());
+        }
+        updates.add(FieldPath.of("lastUpdated"));
+        updates.add(FirebaseUtils.getServerTimestamp());
+        Map<String, CartItem> sentLines = new LinkedHashMap<>(pendingLines);
+        Map<String, Set<String>> sentFields = new HashMap<>(pendingFields);
+        Set<String> sentRemovals = new HashSet<>(pendingRemovals);
+        clearPendingLines();
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error syncing cart with Firebase", e);
+        FirebaseUtils.getCurrentUserCartDocument()
+                .update((FieldPath) updates.get(0), updates.get(1), updates.subList(2, updates.size()).toArray())
+                .addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        Log.d(TAG, "Cart synced with Firebase");
+                        lastSync = new Date();
+                    } else if (isNotFound(task.getException())) {
+                        // No cart document yet, so there is nothing to overwrite
+                        createFirebaseCart();
+                    } else {
+                        Log.e(TAG, "Error syncing cart with Firebase", task.getException());
+                        requeuePendingLines(sentLines, sentFields, sentRemovals);
+                    }
+                });
+    }
+
+    private void createFirebaseCart() {
+        Map<String, Object> lines = new HashMap<>();
+        for (CartItem item : cartItems) {
+            lines.put(item.getCartItemId(), cartLineToMap(item));
         }
+        Map<String, Object> cartData = new HashMap<>();
+        cartData.put(LINES_FIELD, lines);
+        cartData.put("lastUpdated", FirebaseUtils.getServerTimestamp());
+
+        FirebaseUtils.getCurrentUserCartDocument()
+                .set(cartData)
+                .addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        Log.d(TAG, "Cart created in Firebase");
+                        lastSync = new Date();
+                    } else {
+                        Log.e(TAG, "Error creating cart in Firebase", task.getException());
+                    }
+                });
+    }
+
+    /**
+     * Put an unsent update back in the pending sets; edits made since it was built win
+     */
+    private void requeuePendingLines(Map<String, CartItem> lines, Map<String, Set<String>> fields,
+                                     Set<String> removals) {
+        for (String cartItemId : removals) {
+            if (!pendingLines.containsKey(cartItemId)) {
+                pendingRemovals.add(cartItemId);
+            }
+        }
+        for (Map.Entry<String, CartItem> line : lines.entrySet()) {
+            String cartItemId = line.getKey();
+            if (!pendingRemovals.contains(cartItemId) && !pendingLines.containsKey(cartItemId)) {
+                // A line removed since must never reach Firebase
+                if (findItemByCartItemId(cartItemId) != null) {
+                    pendingLines.put(cartItemId, line.getValue());
+                    pendingFields.remove(cartItemId);
+                }
+            }
+        }
+        for (Map.Entry<String, Set<String>> changed : fields.entrySet()) {
+            String cartItemId = changed.getKey();
+            if (pendingLines.containsKey(cartItemId) || pendingRemovals.contains(cartItemId)
+                    || findItemByCartItemId(cartItemId) == null) {
+                continue;
+            }
+            Set<String> pending = pendingFields.get(cartItemId);
+            if (pending == null) {
+                pending = new HashSet<>();
+                pendingFields.put(cartItemId, pending);
+            }
+            pending.addAll(changed.getValue());
+        }
+        remoteDirty = true;
+        markLocalDirty();
+    }
+
+    private void clearPendingLines() {
+        pendingLines.clear();
+        pendingFields.clear();
+        pendingRemovals.clear();
+    }
+
+    private static boolean isNotFound(Exception e) {
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.NOT_FOUND;
     }
 
     /**
@@ -597,9 +994,15 @@ public class CartManager {
                 .addOnCompleteListener(task -> {
                     if (task.isSuccessful() && task.getResult() != null) {
                         DocumentSnapshot document = task.getResult();
-                        if (document.exists()) {
+                        Object lines = document.get(LINES_FIELD);
+                        if (lines instanceof Map) {
+                            @SuppressWarnings("unchecked")
+                            Map<String, Map<String, Object>> lineMaps = (Map<String, Map<String, Object>>) lines;
+                            loadCartLines(lineMaps, onCompleteListener);
+                        } else if (document.exists()) {
+                            // Older whole-cart format with embedded food items
                             ArrayList<CartItem> firebaseCart = new ArrayList<>();
-                            List<Map<String, Object>> itemsMap = (List<Map<String, Object>>) document.get("items");
+                            List<Map<String, Object>> itemsMap = (List<Map<String, Object>>) document.get(LEGACY_ITEMS_FIELD);
                             if (itemsMap != null) {
                                 for (Map<String, Object> itemMap : itemsMap) {
                                     CartItem item = mapToCartItem(itemMap);
@@ -625,6 +1028,43 @@ public class CartManager {
                 });
     }
 
+    /**
+     * Rebuild cart lines, fetching each referenced food item once; lines whose food item
+     * is gone are dropped
+     */
+    private void loadCartLines(Map<String, Map<String, Object>> lineMaps,
+                               OnCompleteListener<ArrayList<CartItem>> onCompleteListener) {
+        Map<String, Task<DocumentSnapshot>> reads = new LinkedHashMap<>();
+        for (Map<String, Object> line : lineMaps.values()) {
+            Object foodItemId = line.get("foodItemId");
+            if (foodItemId instanceof String && !reads.containsKey(foodItemId)) {
+                reads.put((String) foodItemId, FirebaseUtils.getFoodItemDocument((String) foodItemId).get());
+            }
+        }
+
+        Tasks.whenAllComplete(reads.values()).addOnCompleteListener(settled -> {
+            ArrayList<CartItem> firebaseCart = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> line : lineMaps.entrySet()) {
+                Task<DocumentSnapshot> read = reads.get(line.getValue().get("foodItemId"));
+                if (read == null || !read.isSuccessful() || !read.getResult().exists()) {
+                    continue;
+                }
+                FoodItem foodItem = read.getResult().toObject(FoodItem.class);
+                if (foodItem == null) {
+                    continue;
+                }
+                foodItem.setItemId(read.getResult().getId());
+                CartItem item = lineMapToCartItem(line.getKey(), line.getValue(), foodItem);
+                if (item != null) {
+                    firebaseCart.add(item);
+                }
+            }
+            if (onCompleteListener != null) {
+                onCompleteListener.onComplete(Task.forResult(firebaseCart));
+            }
+        });
+    }
+
     // JSON Serialization Helper Methods
 
     private JSONObject cartItemToJsonObject(CartItem item) throws JSONException {
@@ -636,6 +1076,11 @@ public class CartManager {
         json.put("addedAt", item.getAddedAt().getTime());
         json.put("specialInstructions", item.getSpecialInstructions());
         json.put("discountApplied", item.getDiscountApplied());
+        if (item.getReservationId() != null) {
+            json.put("reservationId", item.getReservationId());
+            json.put("reservedQuantity", item.getReservedQuantity());
+            json.put("reservationExpiresAt", item.getReservationExpiresAt());
+        }
 
         // Convert FoodItem to JSON
         if (item.getFoodItem() != null) {
@@ -656,6 +1101,18 @@ public class CartManager {
         json.put("category", foodItem.getCategory());
         json.put("isVegetarian", foodItem.isVegetarian());
         json.put("preparationTime", foodItem.getPreparationTime());
+        if (foodItem.hasRecipe()) {
+            JSONArray recipe = new JSONArray();
+            for (FoodItem.RecipeIngredient ingredient : foodItem.getRecipe()) {
+                JSONObject ingredientJson = new JSONObject();
+                ingredientJson.put("inventoryId", ingredient.getInventoryId());
+                ingredientJson.put("ingredientName", ingredient.getIngredientName());
+                ingredientJson.put("quantity", ingredient.getQuantity());
+                ingredientJson.put("unit", ingredient.getUnit());
+                recipe.put(ingredientJson);
+            }
+            json.put("recipe", recipe);
+        }
         return json;
     }
 
@@ -677,6 +1134,11 @@ public class CartManager {
             item.setAddedAt(new Date(json.getLong("addedAt")));
             item.setSpecialInstructions(json.optString("specialInstructions", ""));
             item.setDiscountApplied(json.optDouble("discountApplied", 0.0));
+            if (json.has("reservationId")) {
+                item.setReservationId(json.getString("reservationId"));
+                item.setReservedQuantity(json.optInt("reservedQuantity", 0));
+                item.setReservationExpiresAt(json.optLong("reservationExpiresAt", 0));
+            }
 
             return item;
 
@@ -697,6 +1159,19 @@ public class CartManager {
             foodItem.setCategory(json.optString("category", ""));
             foodItem.setVegetarian(json.optBoolean("isVegetarian", false));
             foodItem.setPreparationTime(json.optInt("preparationTime", 10));
+            JSONArray recipe = json.optJSONArray("recipe");
+            if (recipe != null) {
+                List<FoodItem.RecipeIngredient> ingredients = new ArrayList<>();
+                for (int i = 0; i < recipe.length(); i++) {
+                    JSONObject ingredientJson = recipe.getJSONObject(i);
+                    ingredients.add(new FoodItem.RecipeIngredient(
+                            ingredientJson.getString("inventoryId"),
+                            ingredientJson.optString("ingredientName", ""),
+                            ingredientJson.getInt("quantity"),
+                            ingredientJson.optString("unit", "")));
+                }
+                foodItem.setRecipe(ingredients);
+            }
 
             return foodItem;
 
@@ -706,43 +1181,61 @@ public class CartManager {
         }
     }
 
-    private List<Map<String, Object>> cartItemsToMapList() {
-        List<Map<String, Object>> mapList = new ArrayList<>();
-        for (CartItem item : cartItems) {
-            Map<String, Object> itemMap = cartItemToMap(item);
-            mapList.add(itemMap);
-        }
-        return mapList;
-    }
-
-    private Map<String, Object> cartItemToMap(CartItem item) {
+    /**
+     * One cart line for Firebase; the food item is referenced by ID and by the version
+     * (its update time) the line was carted against
+     */
+    private Map<String, Object> cartLineToMap(CartItem item) {
         Map<String, Object> map = new HashMap<>();
-        map.put("cartItemId", item.getCartItemId());
         map.put("quantity", item.getQuantity());
         map.put("totalPrice", item.getTotalPrice());
         map.put("unitPrice", item.getUnitPrice());
         map.put("addedAt", item.getAddedAt());
         map.put("specialInstructions", item.getSpecialInstructions());
         map.put("discountApplied", item.getDiscountApplied());
+        if (item.getReservationId() != null) {
+            map.put("reservationId", item.getReservationId());
+            map.put("reservedQuantity", item.getReservedQuantity());
+            map.put("reservationExpiresAt", item.getReservationExpiresAt());
+        }
 
         if (item.getFoodItem() != null) {
-            map.put("foodItem", foodItemToMap(item.getFoodItem()));
+            map.put("foodItemId", item.getFoodItem().getItemId());
+            Date version = item.getFoodItem().getUpdatedAt();
+            map.put("foodItemVersion", version != null ? version.getTime() : 0L);
         }
 
         return map;
     }
 
-    private Map<String, Object> foodItemToMap(FoodItem foodItem) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("itemId", foodItem.getItemId());
-        map.put("name", foodItem.getName());
-        map.put("description", foodItem.getDescription());
-        map.put("price", foodItem.getPrice());
-        map.put("imageUrl", foodItem.getImageUrl());
-        map.put("category", foodItem.getCategory());
-        map.put("isVegetarian", foodItem.isVegetarian());
-        map.put("preparationTime", foodItem.getPreparationTime());
-        return map;
+    private CartItem lineMapToCartItem(String cartItemId, Map<String, Object> map, FoodItem foodItem) {
+        try {
+            Object version = map.get("foodItemVersion");
+            if (version instanceof Number && foodItem.getUpdatedAt() != null
+                    && ((Number) version).longValue() != foodItem.getUpdatedAt().getTime()) {
+                Log.d(TAG, "Cart line " + cartItemId + " was added before " + foodItem.getName() + " changed");
+            }
+
+            CartItem item = new CartItem(foodItem, ((Number) map.get("quantity")).intValue());
+            item.setCartItemId(cartItemId);
+            // The carted price stands until the line is re-added
+            item.setUnitPrice(((Number) map.get("unitPrice")).doubleValue());
+            item.setDiscountApplied(((Number) map.getOrDefault("discountApplied", 0.0)).doubleValue());
+            item.setTotalPrice(((Number) map.get("totalPrice")).doubleValue());
+            Object addedAt = map.get("addedAt");
+            item.setAddedAt(addedAt instanceof Timestamp ? ((Timestamp) addedAt).toDate() : (Date) addedAt);
+            item.setSpecialInstructions((String) map.get("specialInstructions"));
+            if (map.get("reservationId") != null) {
+                item.setReservationId((String) map.get("reservationId"));
+                item.setReservedQuantity(((Number) map.getOrDefault("reservedQuantity", 0)).intValue());
+                item.setReservationExpiresAt(((Number) map.getOrDefault("reservationExpiresAt", 0L)).longValue());
+            }
+            return item;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error converting cart line " + cartItemId, e);
+            return null;
+        }
     }
 
     private CartItem mapToCartItem(Map<String, Object> map) {
@@ -764,6 +1257,11 @@ public class CartManager {
             item.setAddedAt((Date) map.get("addedAt"));
             item.setSpecialInstructions((String) map.get("specialInstructions"));
             item.setDiscountApplied(((Number) map.get("discountApplied")).doubleValue());
+            if (map.get("reservationId") != null) {
+                item.setReservationId((String) map.get("reservationId"));
+                item.setReservedQuantity(((Number) map.getOrDefault("reservedQuantity", 0)).intValue());
+                item.setReservationExpiresAt(((Number) map.getOrDefault("reservationExpiresAt", 0L)).longValue());
+            }
 
             return item;
 
@@ -784,6 +1282,19 @@ public class CartManager {
             foodItem.setCategory((String) map.get("category"));
             foodItem.setVegetarian((Boolean) map.getOrDefault("isVegetarian", false));
             foodItem.setPreparationTime(((Number) map.getOrDefault("preparationTime", 10)).intValue());
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> recipe = (List<Map<String, Object>>) map.get("recipe");
+            if (recipe != null) {
+                List<FoodItem.RecipeIngredient> ingredients = new ArrayList<>();
+                for (Map<String, Object> ingredientMap : recipe) {
+                    ingredients.add(new FoodItem.RecipeIngredient(
+                            (String) ingredientMap.get("inventoryId"),
+                            (String) ingredientMap.get("ingredientName"),
+                            ((Number) ingredientMap.get("quantity")).intValue(),
+                            (String) ingredientMap.get("unit")));
+                }
+                foodItem.setRecipe(ingredients);
+            }
 
             return foodItem;
 
@@ -818,6 +1329,20 @@ public class CartManager {
      * Force sync with Firebase
      */
     public void forceSync() {
-        syncWithFirebase();
+        markAllLinesForUpload();
+        flush();
+    }
+
+    /**
+     * A line's stock hold awaiting a reply, with the changes that arrived meanwhile
+     */
+    private static class HoldInFlight {
+        int acceptedQuantity; // Last quantity not refused; restored when a larger one is
+        boolean resizeWanted; // The line's quantity changed after the hold in flight was sent
+        final List<StockReservationManager.ReservationCallback> callbacks = new ArrayList<>();
+
+        HoldInFlight(int acceptedQuantity) {
+            this.acceptedQuantity = acceptedQuantity;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package com.nmims.canteen.utils;
+
+import com.github.mikephil.charting.data.Entry;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces chart input to what a phone screen can show
+ * Line series are thinned with Largest-Triangle-Three-Buckets, which keeps the visual shape
+ * (peaks and dips) of a long series in O(n); categorical series keep their top N entries
+ * and fold the rest into "Other". Pure computation, safe to run off the main thread.
+ */
+public final class ChartDownsampler {
+    public static final String OTHER_LABEL = "Other";
+
+    private ChartDownsampler() {
+    }
+
+    /**
+     * Downsample points sorted by x to at most threshold points; first and last are kept
+     * Returns the input unchanged when it is already small enough
+     */
+    public static List<Entry> largestTriangleThreeBuckets(List<Entry> points, int threshold) {
+        int size = points.size();
+        if (threshold < 3 || size <= threshold) {
+            return points;
+        }
+
+        List<Entry> sampled = new ArrayList<>(threshold);
+        sampled.add(points.get(0));
+
+        // Points between the first and last are split into threshold - 2 buckets
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int selected = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int bucketStart = (int) Math.floor(bucket * bucketSize) + 1;
+            int bucketEnd = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket is the third triangle vertex
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += points.get(i).getX();
+                averageY += points.get(i).getY();
+            }
+            int nextCount = nextEnd - nextStart;
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            // Keep the point forming the largest triangle with the last kept point
+            Entry anchor = points.get(selected);
+            double maxArea = -1;
+            int maxIndex = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                Entry candidate = points.get(i);
+                double area = Math.abs((anchor.getX() - averageX) * (candidate.getY() - anchor.getY())
+                        - (anchor.getX() - candidate.getX()) * (averageY - anchor.getY()));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+
+            sampled.add(points.get(maxIndex));
+            selected = maxIndex;
+        }
+
+        sampled.add(points.get(size - 1));
+        return sampled;
+    }
+
+    /**
+     * Largest values first, at most limit entries, the remainder summed into "Other"
+     */
+    public static List<Map.Entry<String, Double>> topWithOther(Map<String, Double> values, int limit) {
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(values.entrySet());
+        ranked.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+        return topWithOther(ranked, sum(values.values()), limit);
+    }
+
+    /**
+     * Entries already ranked by value, with the total they were drawn from
+     * At most limit entries are returned, including "Other" for whatever the rest adds up to
+     */
+    public static List<Map.Entry<String, Double>> topWithOther(List<Map.Entry<String, Double>> ranked, double total, int limit) {
+        if (limit < 2) {
+            throw new IllegalArgumentException("Limit must leave room for Other");
+        }
+
+        double rankedTotal = 0;
+        for (Map.Entry<String, Double> entry : ranked) {
+            rankedTotal += entry.getValue();
+        }
+        // The remainder also covers entries the caller never ranked (e.g. items outside a top-K)
+        boolean unranked = total - rankedTotal > Math.abs(total) * 1e-9;
+        int keep = ranked.size() <= limit && !unranked ? ranked.size() : Math.min(ranked.size(), limit - 1);
+
+        List<Map.Entry<String, Double>> top = new ArrayList<>(keep + 1);
+        double kept = 0;
+        for (int i = 0; i < keep; i++) {
+            top.add(ranked.get(i));
+            kept += ranked.get(i).getValue();
+        }
+        if (keep < ranked.size() || unranked) {
+            top.add(new AbstractMap.SimpleImmutableEntry<>(OTHER_LABEL, total - kept));
+        }
+        return top;
+    }
+
+    private static double sum(Collection<Double> values) {
+        double total = 0;
+        for (Double value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,500 @@
+package com.nmims.canteen.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Compressed bitmap of dense customer IDs (Roaring-style)
+ * IDs are split by their high 16 bits into containers. A container holds a sorted array of
+ * low 16 bits while sparse (up to 4096 values, 2 bytes each) and switches to a 65536-bit
+ * bitmap (8 KB) once denser, so both a quiet day and a whole semester stay compact.
+ * Intersections work container by container, which makes cohort retention a few
+ * bitmap operations instead of a scan of order history.
+ */
+public class CustomerBitmap implements Serializable {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Values sharing the same high 16 bits
+     * Exactly one of values / bits is non-null
+     */
+    static class Container implements Serializable {
+        private short[] values; // Sorted low 16 bits (compared unsigned)
+        private long[] bits;
+        private int size;
+
+        Container() {
+            this.values = new short[4];
+        }
+
+        static Container fromBits(long[] bits) {
+            Container container = new Container();
+            container.values = null;
+            container.bits = bits;
+            int size = 0;
+            for (long word : bits) {
+                size += Long.bitCount(word);
+            }
+            container.size = size;
+            return container.size <= ARRAY_MAX ? container.toArray() : container;
+        }
+
+        boolean add(int low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[low >>> 6] |= mask;
+                size++;
+                return true;
+            }
+
+            int index = search(low);
+            if (index >= 0) {
+                return false;
+            }
+            if (size >= ARRAY_MAX) {
+                toBits();
+                return add(low);
+            }
+
+            int insertAt = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(4, values.length * 2), ARRAY_MAX));
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            values[insertAt] = (short) low;
+            size++;
+            return true;
+        }
+
+        boolean contains(int low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return search(low) >= 0;
+        }
+
+        Container or(Container other) {
+            if (values != null && other.values != null && size + other.size <= ARRAY_MAX) {
+                short[] merged = new short[size + other.size];
+                int i = 0, j = 0, k = 0;
+                while (i < size && j < other.size) {
+                    int a = values[i] & 0xFFFF;
+                    int b = other.values[j] & 0xFFFF;
+                    if (a == b) {
+                        merged[k++] = values[i++];
+                        j++;
+                    } else if (a < b) {
+                        merged[k++] = values[i++];
+                    } else {
+                        merged[k++] = other.values[j++];
+                    }
+                }
+                while (i < size) merged[k++] = values[i++];
+                while (j < other.size) merged[k++] = other.values[j++];
+                return fromArray(merged, k);
+            }
+
+            long[] result = toWords();
+            if (other.bits != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] |= other.bits[w];
+                }
+            } else {
+                for (int i = 0; i < other.size; i++) {
+                    int low = other.values[i] & 0xFFFF;
+                    result[low >>> 6] |= 1L << low;
+                }
+            }
+            return fromBits(result);
+        }
+
+        Container and(Container other) {
+            if (bits != null && other.bits != null) {
+                long[] result = new long[BITMAP_WORDS];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] = bits[w] & other.bits[w];
+                }
+                return fromBits(result);
+            }
+
+            // At least one side is an array, so the result fits in an array
+            Container small = values != null && (other.values == null || size <= other.size) ? this : other;
+            Container large = small == this ? other : this;
+            short[] result = new short[small.size];
+            int k = 0;
+            if (useMerge(small, large)) {
+                int i = 0, j = 0;
+                while (i < small.size && j < large.size) {
+                    int a = small.values[i] & 0xFFFF;
+                    int b = large.values[j] & 0xFFFF;
+                    if (a == b) {
+                        result[k++] = small.values[i];
+                        i++;
+                        j++;
+                    } else if (a < b) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                return fromArray(result, k);
+            }
+            for (int i = 0; i < small.size; i++) {
+                if (large.contains(small.values[i] & 0xFFFF)) {
+                    result[k++] = small.values[i];
+                }
+            }
+            return fromArray(result, k);
+        }
+
+        int andCardinality(Container other) {
+            if (bits != null && other.bits != null) {
+                int count = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    count += Long.bitCount(bits[w] & other.bits[w]);
+                }
+                return count;
+            }
+
+            Container small = values != null && (other.values == null || size <= other.size) ? this : other;
+            Container large = small == this ? other : this;
+            int count = 0;
+            if (useMerge(small, large)) {
+                int i = 0, j = 0;
+                while (i < small.size && j < large.size) {
+                    int a = small.values[i] & 0xFFFF;
+                    int b = large.values[j] & 0xFFFF;
+                    if (a == b) {
+                        count++;
+                        i++;
+                        j++;
+                    } else if (a < b) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                return count;
+            }
+            for (int i = 0; i < small.size; i++) {
+                if (large.contains(small.values[i] & 0xFFFF)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        Container andNot(Container other) {
+            if (values != null) {
+                short[] result = new short[size];
+                int k = 0;
+                for (int i = 0; i < size; i++) {
+                    if (!other.contains(values[i] & 0xFFFF)) {
+                        result[k++] = values[i];
+                    }
+                }
+                return fromArray(result, k);
+            }
+
+            long[] result = bits.clone();
+            if (other.bits != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] &= ~other.bits[w];
+                }
+            } else {
+                for (int i = 0; i < other.size; i++) {
+                    int low = other.values[i] & 0xFFFF;
+                    result[low >>> 6] &= ~(1L << low);
+                }
+            }
+            return fromBits(result);
+        }
+
+        Container copy() {
+            Container container = new Container();
+            container.values = values != null ? Arrays.copyOf(values, size) : null;
+            container.bits = bits != null ? bits.clone() : null;
+            container.size = size;
+            return container;
+        }
+
+        int getSizeInBytes() {
+            return bits != null ? BITMAP_WORDS * 8 : size * 2;
+        }
+
+        /**
+         * Linear merge for two arrays of similar size, binary search when one is much smaller
+         */
+        private static boolean useMerge(Container small, Container large) {
+            return large.values != null && small.size * 16 >= large.size;
+        }
+
+        private static Container fromArray(short[] values, int size) {
+            Container container = new Container();
+            container.values = size == values.length ? values : Arrays.copyOf(values, Math.max(size, 1));
+            container.size = size;
+            return container;
+        }
+
+        private int search(int low) {
+            int from = 0;
+            int to = size - 1;
+            while (from <= to) {
+                int mid = (from + to) >>> 1;
+                int value = values[mid] & 0xFFFF;
+                if (value < low) {
+                    from = mid + 1;
+                } else if (value > low) {
+                    to = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(from + 1);
+        }
+
+        private long[] toWords() {
+            if (bits != null) {
+                return bits.clone();
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                int low = values[i] & 0xFFFF;
+                words[low >>> 6] |= 1L << low;
+            }
+            return words;
+        }
+
+        private void toBits() {
+            bits = toWords();
+            values = null;
+        }
+
+        private Container toArray() {
+            short[] array = new short[size];
+            int k = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    array[k++] = (short) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return fromArray(array, k);
+        }
+    }
+
+    // Sorted high 16 bits with matching containers
+    private int[] keys;
+    private Container[] containers;
+    private int containerCount;
+
+    public CustomerBitmap() {
+        this.keys = new int[0];
+        this.containers = new Container[0];
+    }
+
+    /**
+     * Add a customer ID (must be non-negative)
+     */
+    public synchronized void add(int id) {
+        if (id < 0) {
+            return;
+        }
+        int high = id >>> 16;
+        int index = Arrays.binarySearch(keys, 0, containerCount, high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new Container());
+        }
+        containers[index].add(id & 0xFFFF);
+    }
+
+    /**
+     * Check whether a customer ID is present
+     */
+    public synchronized boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, containerCount, id >>> 16);
+        return index >= 0 && containers[index].contains(id & 0xFFFF);
+    }
+
+    /**
+     * Number of customers in the bitmap
+     */
+    public synchronized int cardinality() {
+        int count = 0;
+        for (int i = 0; i < containerCount; i++) {
+            count += containers[i].size;
+        }
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    /**
+     * Add every customer of another bitmap to this one
+     */
+    public void or(CustomerBitmap other) {
+        if (other == null || other == this) {
+            return;
+        }
+        withBoth(this, other, () -> {
+            for (int i = 0; i < other.containerCount; i++) {
+                int index = Arrays.binarySearch(keys, 0, containerCount, other.keys[i]);
+                if (index >= 0) {
+                    containers[index] = containers[index].or(other.containers[i]);
+                } else {
+                    insertContainer(-index - 1, other.keys[i], other.containers[i].copy());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Customers present in both bitmaps
+     */
+    public static CustomerBitmap and(CustomerBitmap a, CustomerBitmap b) {
+        return withBoth(a, b, () -> {
+            CustomerBitmap result = new CustomerBitmap();
+            int i = 0, j = 0;
+            while (i < a.containerCount && j < b.containerCount) {
+                if (a.keys[i] == b.keys[j]) {
+                    Container container = a.containers[i].and(b.containers[j]);
+                    if (container.size > 0) {
+                        result.insertContainer(result.containerCount, a.keys[i], container);
+                    }
+                    i++;
+                    j++;
+                } else if (a.keys[i] < b.keys[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Number of customers present in both bitmaps, without building the intersection
+     */
+    public static int andCardinality(CustomerBitmap a, CustomerBitmap b) {
+        return withBoth(a, b, () -> {
+            int count = 0;
+            int i = 0, j = 0;
+            while (i < a.containerCount && j < b.containerCount) {
+                if (a.keys[i] == b.keys[j]) {
+                    count += a.containers[i].andCardinality(b.containers[j]);
+                    i++;
+                    j++;
+                } else if (a.keys[i] < b.keys[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Customers in a that are not in b
+     */
+    public static CustomerBitmap andNot(CustomerBitmap a, CustomerBitmap b) {
+        return withBoth(a, b, () -> {
+            CustomerBitmap result = new CustomerBitmap();
+            for (int i = 0; i < a.containerCount; i++) {
+                int index = Arrays.binarySearch(b.keys, 0, b.containerCount, a.keys[i]);
+                Container container = index >= 0 ? a.containers[i].andNot(b.containers[index]) : a.containers[i].copy();
+                if (container.size > 0) {
+                    result.insertContainer(result.containerCount, a.keys[i], container);
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Deep copy, safe to use while this bitmap keeps changing
+     */
+    public synchronized CustomerBitmap copy() {
+        CustomerBitmap copy = new CustomerBitmap();
+        copy.keys = Arrays.copyOf(keys, containerCount);
+        copy.containers = new Container[containerCount];
+        for (int i = 0; i < containerCount; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.containerCount = containerCount;
+        return copy;
+    }
+
+    /**
+     * Approximate in-memory size in bytes
+     */
+    public synchronized int getSizeInBytes() {
+        int bytes = 0;
+        for (int i = 0; i < containerCount; i++) {
+            bytes += 4 + containers[i].getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    // Internal Helpers
+
+    private static final Object TIE_LOCK = new Object();
+
+    /**
+     * Run operation holding both locks, always taken in the same order to avoid deadlock
+     */
+    private static <T> T withBoth(CustomerBitmap a, CustomerBitmap b, Supplier<T> operation) {
+        if (a == b) {
+            synchronized (a) {
+                return operation.get();
+            }
+        }
+
+        int hashA = System.identityHashCode(a);
+        int hashB = System.identityHashCode(b);
+        if (hashA == hashB) {
+            synchronized (TIE_LOCK) {
+                synchronized (a) {
+                    synchronized (b) {
+                        return operation.get();
+                    }
+                }
+            }
+        }
+
+        CustomerBitmap first = hashA < hashB ? a : b;
+        CustomerBitmap second = first == a ? b : a;
+        synchronized (first) {
+            synchronized (second) {
+                return operation.get();
+            }
+        }
+    }
+
+    private void insertContainer(int index, int key, Container container) {
+        if (containerCount == keys.length) {
+            int capacity = Math.max(4, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+}
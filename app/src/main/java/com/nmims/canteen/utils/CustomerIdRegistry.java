@@ -0,0 +1,161 @@
+package com.nmims.canteen.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps Firebase user IDs to dense ints for customer bitmaps
+ * IDs are assigned in first-seen order and never reused, so persisted daily bitmaps
+ * stay valid as long as this mapping is kept alongside them
+ */
+public class CustomerIdRegistry {
+    private static final String TAG = "CustomerIdRegistry";
+    private static final String STORE_FILE = "customer_ids.json";
+
+    private final List<String> userIds; // Index is the dense ID
+    private final Map<String, Integer> denseIds;
+    private final Gson gson;
+
+    private File storeFile;
+    private boolean dirty;
+
+    public CustomerIdRegistry() {
+        this.userIds = new ArrayList<>();
+        this.denseIds = new HashMap<>();
+        this.gson = new Gson();
+    }
+
+    /**
+     * Attach on-device store and load saved IDs
+     * Returns false when no usable mapping was found, in which case any persisted
+     * bitmaps refer to unknown IDs and must be discarded by the caller
+     */
+    public synchronized boolean attachStore(Context context) {
+        if (storeFile != null) {
+            return true;
+        }
+        if (context == null) {
+            return false;
+        }
+
+        storeFile = new File(context.getApplicationContext().getFilesDir(), STORE_FILE);
+        if (!storeFile.exists()) {
+            // Create the store now so later launches can tell it apart from a lost mapping
+            dirty = true;
+            flush();
+            return false;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8)) {
+            List<String> saved = gson.fromJson(reader, new TypeToken<List<String>>() {}.getType());
+            if (saved == null) {
+                return false;
+            }
+
+            // IDs assigned before the store was attached are re-assigned after the saved ones
+            List<String> pending = new ArrayList<>(userIds);
+            userIds.clear();
+            denseIds.clear();
+            for (String userId : saved) {
+                denseIds.put(userId, userIds.size());
+                userIds.add(userId);
+            }
+            for (String userId : pending) {
+                getOrAssign(userId);
+            }
+            return pending.isEmpty();
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading customer IDs", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get dense ID for user, assigning the next free one if unseen
+     */
+    public synchronized int getOrAssign(String userId) {
+        Integer denseId = denseIds.get(userId);
+        if (denseId != null) {
+            return denseId;
+        }
+
+        int assigned = userIds.size();
+        denseIds.put(userId, assigned);
+        userIds.add(userId);
+        dirty = true;
+        return assigned;
+    }
+
+    /**
+     * Get dense ID for user, or -1 if never seen
+     */
+    public synchronized int lookup(String userId) {
+        Integer denseId = denseIds.get(userId);
+        return denseId != null ? denseId : -1;
+    }
+
+    /**
+     * Get user ID for dense ID, or null if unknown
+     */
+    public synchronized String getUserId(int denseId) {
+        return denseId >= 0 && denseId < userIds.size() ? userIds.get(denseId) : null;
+    }
+
+    public synchronized int size() {
+        return userIds.size();
+    }
+
+    /**
+     * Persist newly assigned IDs (call before persisting bitmaps that use them)
+     */
+    public synchronized void flush() {
+        if (!dirty || storeFile == null) {
+            return;
+        }
+
+        File tempFile = new File(storeFile.getParentFile(), STORE_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            gson.toJson(userIds, writer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing customer IDs", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(storeFile)) {
+            Log.e(TAG, "Error committing customer IDs");
+            tempFile.delete();
+            return;
+        }
+        dirty = false;
+    }
+
+    /**
+     * Forget all IDs and delete the store (persisted bitmaps must be cleared too)
+     */
+    public synchronized void clear() {
+        userIds.clear();
+        denseIds.clear();
+        dirty = false;
+        if (storeFile != null && storeFile.exists() && !storeFile.delete()) {
+            Log.w(TAG, "Failed to delete customer IDs");
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.nmims.canteen.utils;
+
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Weekday × quarter-hour demand matrix (7 × 96) of orders, revenue and items
+ * Hourly (7 × 24) views are summed from the quarter hours. Slots are computed from epoch
+ * millis and the zone offset, so adding an order allocates nothing. Matrices of separate
+ * days merge by addition, and the number of days seen per weekday is kept so cells can
+ * be turned into per-day averages for staffing and capacity planning.
+ */
+public class DemandMatrix implements Serializable {
+    public static final int DAYS = 7;
+    public static final int HOURS = 24;
+    public static final int QUARTERS = 96;
+
+    public static final String[] DAY_LABELS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long QUARTER_MS = 15 * MINUTE_MS;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+    private static final int EPOCH_WEEKDAY = 3; // 1970-01-01 was a Thursday
+
+    /**
+     * Quantity held in each cell
+     */
+    public enum Metric {
+        ORDERS, REVENUE, ITEMS
+    }
+
+    private int[] orders;
+    private double[] revenue;
+    private int[] items;
+    private int[] daysSeen; // Days of each weekday covered by this matrix
+
+    // Default timezone is cloned on every lookup, so resolve it once per matrix
+    private transient TimeZone timeZone;
+
+    // Default constructor for serialization
+    public DemandMatrix() {
+        this.orders = new int[DAYS * QUARTERS];
+        this.revenue = new double[DAYS * QUARTERS];
+        this.items = new int[DAYS * QUARTERS];
+        this.daysSeen = new int[DAYS];
+    }
+
+    /**
+     * Record one order placed at the given time
+     */
+    public void add(long timeMillis, double orderRevenue, int itemCount) {
+        int slot = slotOf(timeMillis);
+        orders[slot]++;
+        revenue[slot] += orderRevenue;
+        items[slot] += itemCount;
+    }
+
+    /**
+     * Mark the day starting at dayStart as covered (once per daily rollup)
+     */
+    public void addDay(long dayStartMillis) {
+        daysSeen[slotOf(dayStartMillis) / QUARTERS]++;
+    }
+
+    /**
+     * Add another matrix cell by cell
+     */
+    public void merge(DemandMatrix other) {
+        if (other == null) {
+            return;
+        }
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] += other.orders[i];
+            revenue[i] += other.revenue[i];
+            items[i] += other.items[i];
+        }
+        for (int day = 0; day < DAYS; day++) {
+            daysSeen[day] += other.daysSeen[day];
+        }
+    }
+
+    /**
+     * Weekday (0 = Monday) × quarter-hour slot of a time, in the device timezone
+     */
+    public int slotOf(long timeMillis) {
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+        }
+        long localMillis = timeMillis + timeZone.getOffset(timeMillis);
+        long day = Math.floorDiv(localMillis, DAY_MS);
+        int weekday = Math.floorMod(day + EPOCH_WEEKDAY, DAYS);
+        int quarter = (int) (Math.floorMod(localMillis, DAY_MS) / QUARTER_MS);
+        return weekday * QUARTERS + quarter;
+    }
+
+    /**
+     * Total for a weekday (0 = Monday) and quarter hour (0..95)
+     */
+    public double getQuarterHour(Metric metric, int weekday, int quarter) {
+        return get(metric, weekday * QUARTERS + quarter);
+    }
+
+    /**
+     * Total for a weekday (0 = Monday) and hour (0..23)
+     */
+    public double getHour(Metric metric, int weekday, int hour) {
+        int slot = weekday * QUARTERS + hour * 4;
+        return get(metric, slot) + get(metric, slot + 1) + get(metric, slot + 2) + get(metric, slot + 3);
+    }
+
+    /**
+     * 7 × 24 matrix of totals
+     */
+    public double[][] getHourMatrix(Metric metric) {
+        double[][] matrix = new double[DAYS][HOURS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                matrix[day][hour] = getHour(metric, day, hour);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * 7 × 96 matrix of totals
+     */
+    public double[][] getQuarterHourMatrix(Metric metric) {
+        double[][] matrix = new double[DAYS][QUARTERS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int quarter = 0; quarter < QUARTERS; quarter++) {
+                matrix[day][quarter] = get(metric, day * QUARTERS + quarter);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Average per covered day for a weekday and hour (0 if that weekday was never covered)
+     */
+    public double getAverageHour(Metric metric, int weekday, int hour) {
+        return daysSeen[weekday] > 0 ? getHour(metric, weekday, hour) / daysSeen[weekday] : 0;
+    }
+
+    /**
+     * Average per covered day for a weekday and quarter hour
+     */
+    public double getAverageQuarterHour(Metric metric, int weekday, int quarter) {
+        return daysSeen[weekday] > 0 ? getQuarterHour(metric, weekday, quarter) / daysSeen[weekday] : 0;
+    }
+
+    /**
+     * Kitchen staff needed per weekday and hour, given how many items one person
+     * prepares per hour, based on the average demand of that slot
+     */
+    public int[][] getStaffingPlan(double itemsPerStaffHour) {
+        if (itemsPerStaffHour <= 0) {
+            throw new IllegalArgumentException("Items per staff hour must be positive");
+        }
+        int[][] plan = new int[DAYS][HOURS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                plan[day][hour] = (int) Math.ceil(getAverageHour(Metric.ITEMS, day, hour) / itemsPerStaffHour);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Busiest quarter-hour slot on average (weekday * 96 + quarter), or -1 if empty
+     * Kitchen capacity must cover this slot's average item load
+     */
+    public int getPeakQuarterHourSlot(Metric metric) {
+        int peak = -1;
+        double peakValue = 0;
+        for (int slot = 0; slot < orders.length; slot++) {
+            double value = getAverageQuarterHour(metric, slot / QUARTERS, slot % QUARTERS);
+            if (value > peakValue) {
+                peak = slot;
+                peakValue = value;
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Format slot as e.g. "Mon 12:15"
+     */
+    public static String formatSlot(int slot) {
+        int quarter = slot % QUARTERS;
+        return String.format(Locale.US, "%s %02d:%02d",
+                DAY_LABELS[slot / QUARTERS], quarter / 4, (quarter % 4) * 15);
+    }
+
+    public int getDaysSeen(int weekday) {
+        return daysSeen[weekday];
+    }
+
+    /**
+     * Number of days covered, 0 for rollups built before the matrix existed
+     */
+    public int getCoveredDays() {
+        int days = 0;
+        for (int count : daysSeen) {
+            days += count;
+        }
+        return days;
+    }
+
+    public boolean isEmpty() {
+        for (int count : orders) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double get(Metric metric, int slot) {
+        switch (metric) {
+            case REVENUE:
+                return revenue[slot];
+            case ITEMS:
+                return items[slot];
+            default:
+                return orders[slot];
+        }
+    }
+
+    // Getters and Setters for serialization
+
+    public int[] getOrders() {
+        return orders;
+    }
+
+    public void setOrders(int[] orders) {
+        this.orders = orders != null ? orders : new int[DAYS * QUARTERS];
+    }
+
+    public double[] getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(double[] revenue) {
+        this.revenue = revenue != null ? revenue : new double[DAYS * QUARTERS];
+    }
+
+    public int[] getItems() {
+        return items;
+    }
+
+    public void setItems(int[] items) {
+        this.items = items != null ? items : new int[DAYS * QUARTERS];
+    }
+
+    public int[] getDaysSeen() {
+        return daysSeen;
+    }
+
+    public void setDaysSeen(int[] daysSeen) {
+        this.daysSeen = daysSeen != null ? daysSeen : new int[DAYS];
+    }
+}
@@ -0,0 +1,212 @@
+package com.nmims.canteen.utils;
+
+import android.util.Log;
+
+import com.nmims.canteen.models.InventoryItem;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry index over cached inventory items
+ * Items are ordered by parsed expiry epoch-day, so "expiring within N days" is a range read.
+ * Each item's warning-window entry day (expiry minus its warning days) sits on a day-tick
+ * timer wheel that the lane advances at local midnight, so an item is reported exactly once
+ * as it crosses into its window, with no periodic scans. Re-caching an item whose window day
+ * is unchanged keeps its timer, so the wheel holds one timer per indexed item.
+ */
+class ExpiryIndex {
+    private static final String TAG = "ExpiryIndex";
+
+    /**
+     * Notified on the lane when an item enters its expiry warning window
+     */
+    interface Listener {
+        void onExpiryWindowEntered(InventoryItem item);
+    }
+
+    private final ScheduledExecutorService lane;
+    private final Listener listener;
+
+    // Guarded by this
+    private final Map<String, Entry> entries;
+    private final TreeMap<Long, Map<String, InventoryItem>> byExpiryDay;
+    private final TimerWheel<String> wheel; // Keyed by item key; fired keys resolve to the current entry
+    private ScheduledFuture<?> midnightTask;
+
+    ExpiryIndex(ScheduledExecutorService lane, Listener listener) {
+        this.lane = lane;
+        this.listener = listener;
+        this.entries = new HashMap<>();
+        this.byExpiryDay = new TreeMap<>();
+        this.wheel = new TimerWheel<>(InventoryItem.todayEpochDay());
+    }
+
+    /**
+     * Start advancing the wheel at each local midnight
+     */
+    synchronized void start() {
+        if (midnightTask == null) {
+            scheduleMidnight();
+        }
+    }
+
+    synchronized void stop() {
+        if (midnightTask != null) {
+            midnightTask.cancel(false);
+            midnightTask = null;
+        }
+    }
+
+    /**
+     * Re-index key for item's current expiry (null item removes it)
+     * Returns true if this change moved the item into its warning window; later crossings
+     * are reported to the listener when the wheel reaches them
+     */
+    synchronized boolean update(String key, InventoryItem item) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            previous.unindex(byExpiryDay);
+        }
+        if (item == null || item.getExpiryEpochDay() == InventoryItem.NO_EXPIRY) {
+            if (previous != null) {
+                previous.cancelTimer();
+            }
+            return false;
+        }
+
+        Entry entry = new Entry(key, item);
+        entries.put(key, entry);
+        byExpiryDay.computeIfAbsent(entry.expiryDay, day -> new LinkedHashMap<>()).put(key, item);
+
+        // Wall-clock day: the wheel may lag until the queued midnight run catches it up
+        long today = InventoryItem.todayEpochDay();
+        if (previous != null && previous.windowDay == entry.windowDay) {
+            entry.timer = previous.timer; // Same crossing, and the fired key resolves to this entry
+        } else {
+            if (previous != null) {
+                previous.cancelTimer();
+            }
+            // Crossings already due are reported by the return value, not again by a lagging wheel
+            entry.timer = entry.windowDay > today ? wheel.schedule(key, entry.windowDay) : null;
+        }
+        boolean wasInWindow = previous != null && previous.windowDay <= today;
+        return entry.windowDay <= today && !wasInWindow;
+    }
+
+    /**
+     * Items expiring on or before today + days (already expired included), earliest first
+     */
+    synchronized List<InventoryItem> getExpiringWithin(int days) {
+        List<InventoryItem> items = new ArrayList<>();
+        for (Map<String, InventoryItem> day : byExpiryDay.headMap(InventoryItem.todayEpochDay() + days, true).values()) {
+            items.addAll(day.values());
+        }
+        return items;
+    }
+
+    /**
+     * Items expiring within [fromDay, toDay] epoch days, earliest first
+     */
+    synchronized List<InventoryItem> getExpiringBetween(long fromDay, long toDay) {
+        List<InventoryItem> items = new ArrayList<>();
+        for (Map<String, InventoryItem> day : byExpiryDay.subMap(fromDay, true, toDay, true).values()) {
+            items.addAll(day.values());
+        }
+        return items;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        byExpiryDay.clear();
+        wheel.clear();
+    }
+
+    // Lane Helpers
+
+    private void scheduleMidnight() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+
+        long delay = calendar.getTimeInMillis() - System.currentTimeMillis();
+        midnightTask = lane.schedule(this::onMidnight, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private void onMidnight() {
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            if (midnightTask == null) {
+                return; // Stopped while this run was queued
+            }
+            // Catches up on every day missed while the device slept
+            for (String key : wheel.advanceTo(InventoryItem.todayEpochDay())) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    entry.timer = null;
+                    due.add(entry);
+                }
+            }
+            scheduleMidnight();
+        }
+
+        // Report outside the lock; listeners may read the index
+        for (Entry entry : due) {
+            try {
+                listener.onExpiryWindowEntered(entry.item);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Expiry listener failed for " + entry.key, e);
+            }
+        }
+    }
+
+    /**
+     * Indexed item with its wheel timer
+     */
+    private static class Entry {
+        final String key;
+        final InventoryItem item;
+        final long expiryDay;
+        final long windowDay; // First day inside the warning window
+        TimerWheel.Timer<String> timer;
+
+        Entry(String key, InventoryItem item) {
+            this.key = key;
+            this.item = item;
+            this.expiryDay = item.getExpiryEpochDay();
+            this.windowDay = expiryDay - item.getExpiryWarningDays();
+        }
+
+        void cancelTimer() {
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+        }
+
+        void unindex(TreeMap<Long, Map<String, InventoryItem>> byExpiryDay) {
+            Map<String, InventoryItem> day = byExpiryDay.get(expiryDay);
+            if (day != null) {
+                day.remove(key);
+                if (day.isEmpty()) {
+                    byExpiryDay.remove(expiryDay);
+                }
+            }
+        }
+    }
+}
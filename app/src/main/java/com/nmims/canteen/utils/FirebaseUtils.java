@@ -4,11 +4,14 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
 
+import java.util.Date;
+
 /**
  * Firebase initialization and common operations utility class
  * Provides centralized access to Firebase services and common database operations
@@ -31,6 +34,10 @@ public class FirebaseUtils {
     public static final String ADMIN_NOTIFICATIONS_COLLECTION = "admin_notifications";
     public static final String CANTEEN_SETTINGS_COLLECTION = "canteen_settings";
     public static final String INVENTORY_LOGS_COLLECTION = "inventory_logs";
+    public static final String INVENTORY_ALERTS_COLLECTION = "inventory_alerts";
+    public static final String INVENTORY_ITEM_LOGS_SUBCOLLECTION = "inventoryLogs";
+    public static final String RESERVATIONS_SUBCOLLECTION = "reservations";
+    public static final String RESERVATION_SHARDS_SUBCOLLECTION = "reservationShards";
     public static final String USER_SESSIONS_COLLECTION = "user_sessions";
 
     // Storage paths
@@ -303,6 +310,47 @@ public class FirebaseUtils {
         return getInventoryCollection().document(inventoryId);
     }
 
+    /**
+     * Get an inventory item's append-only movement log
+     */
+    public static CollectionReference getInventoryItemLogsCollection(String inventoryId) {
+        return getInventoryItemDocument(inventoryId).collection(INVENTORY_ITEM_LOGS_SUBCOLLECTION);
+    }
+
+    /**
+     * Get an inventory item's movements, newest first
+     * Movement IDs sort in creation order, so paging needs no composite index
+     */
+    public static Query getInventoryItemLogsQuery(String inventoryId, int pageSize) {
+        return getInventoryItemLogsCollection(inventoryId)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                .limit(pageSize);
+    }
+
+    /**
+     * Get an inventory item's stock reservations (cart holds)
+     */
+    public static CollectionReference getReservationsCollection(String inventoryId) {
+        return getInventoryItemDocument(inventoryId).collection(RESERVATIONS_SUBCOLLECTION);
+    }
+
+    /**
+     * Get one shard of an inventory item's held-units counter
+     */
+    public static DocumentReference getReservationShardDocument(String inventoryId, int shard) {
+        return getInventoryItemDocument(inventoryId).collection(RESERVATION_SHARDS_SUBCOLLECTION).document(String.valueOf(shard));
+    }
+
+    /**
+     * Get holds on an item that have lapsed but not been released yet
+     */
+    public static Query getExpiredReservationsQuery(String inventoryId, Date now, int limit) {
+        return getReservationsCollection(inventoryId)
+                .whereEqualTo("status", "HELD")
+                .whereLessThan("expiresAt", now)
+                .limit(limit);
+    }
+
     /**
      * Get low stock items query
      */
@@ -314,14 +362,13 @@ public class FirebaseUtils {
     }
 
     /**
-     * Get expiring items query
+     * Get items expiring on or before lastEpochDay (days since 1970-01-01), earliest first
+     * Uses the parsed expiryEpochDay field, see InventoryItem.parseEpochDay
      */
-    public static Query getExpiringItemsQuery() {
-        // This would need proper date handling in a real implementation
+    public static Query getExpiringItemsQuery(long lastEpochDay) {
         return getInventoryCollection()
-                .whereEqualTo("expiryAlert", true)
-                .whereEqualTo("isActive", true)
-                .orderBy("expiryDate");
+                .whereLessThanOrEqualTo("expiryEpochDay", lastEpochDay)
+                .orderBy("expiryEpochDay");
     }
 
     /**
@@ -401,6 +448,29 @@ public class FirebaseUtils {
                 .limit(100);
     }
 
+    /**
+     * Get inventory alerts collection reference
+     */
+    public static CollectionReference getInventoryAlertsCollection() {
+        return mFirestore.collection(INVENTORY_ALERTS_COLLECTION);
+    }
+
+    /**
+     * Get unresolved inventory alerts query
+     */
+    public static Query getOpenInventoryAlertsQuery() {
+        return getInventoryAlertsCollection()
+                .whereEqualTo("resolved", false);
+    }
+
+    /**
+     * Get resolved inventory alerts query
+     */
+    public static Query getResolvedInventoryAlertsQuery() {
+        return getInventoryAlertsCollection()
+                .whereEqualTo("resolved", true);
+    }
+
     /**
      * Get user sessions collection reference
      */
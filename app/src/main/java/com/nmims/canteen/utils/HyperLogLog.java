@@ -0,0 +1,214 @@
+package com.nmims.canteen.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Mergeable distinct-count sketch (HyperLogLog with an exact sparse mode)
+ * Used to count unique customers per day and combine them into weekly/monthly/yearly totals
+ * without double counting customers who ordered on several days.
+ *
+ * Storage and accuracy:
+ * - Up to {@link #SPARSE_LIMIT} distinct values the sketch keeps their 64-bit hashes and the
+ *   count is exact (barring a 64-bit hash collision), at most 1 KB.
+ * - Beyond that it switches to 2^10 = 1024 one-byte registers (1 KB). The relative standard
+ *   error is 1.04 / sqrt(1024) = ~3.25%, so about 95% of estimates fall within ±6.5%.
+ * Merging is lossless: merge(a, b) equals the sketch of the union of both inputs.
+ */
+public class HyperLogLog implements Serializable {
+    public static final int PRECISION = 10;
+    public static final int REGISTER_COUNT = 1 << PRECISION;
+    public static final int SPARSE_LIMIT = 128;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+
+    // Exactly one of these is non-null
+    private long[] sparseHashes; // Sorted, distinct
+    private int sparseSize;
+    private byte[] registers;
+
+    public HyperLogLog() {
+        this.sparseHashes = new long[8];
+        this.sparseSize = 0;
+    }
+
+    /**
+     * Add a value (e.g. a user ID)
+     */
+    public synchronized void offer(String value) {
+        if (value == null) {
+            return;
+        }
+        offerHash(hash64(value));
+    }
+
+    /**
+     * Estimated (or exact, in sparse mode) number of distinct values
+     */
+    public synchronized long cardinality() {
+        if (registers == null) {
+            return sparseSize;
+        }
+
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+        if (estimate <= 2.5 * REGISTER_COUNT && zeroRegisters > 0) {
+            // Small range correction (linear counting)
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Whether the count is exact (sketch still in sparse mode)
+     */
+    public synchronized boolean isExact() {
+        return registers == null;
+    }
+
+    /**
+     * Merge another sketch into this one
+     */
+    public synchronized void merge(HyperLogLog other) {
+        if (other == null || other == this) {
+            return;
+        }
+
+        long[] otherHashes = null;
+        int otherSize = 0;
+        byte[] otherRegisters = null;
+        synchronized (other) {
+            if (other.registers != null) {
+                otherRegisters = other.registers.clone();
+            } else if (other.sparseHashes != null) {
+                otherHashes = Arrays.copyOf(other.sparseHashes, other.sparseSize);
+                otherSize = other.sparseSize;
+            }
+        }
+
+        if (otherRegisters != null) {
+            toDense();
+            for (int i = 0; i < REGISTER_COUNT; i++) {
+                if (otherRegisters[i] > registers[i]) {
+                    registers[i] = otherRegisters[i];
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < otherSize; i++) {
+            offerHash(otherHashes[i]);
+        }
+    }
+
+    /**
+     * Approximate in-memory size in bytes
+     */
+    public synchronized int getSizeInBytes() {
+        return registers != null ? registers.length : sparseSize * 8;
+    }
+
+    // Serialization accessors
+
+    public synchronized long[] getSparseHashes() {
+        return sparseHashes != null ? Arrays.copyOf(sparseHashes, sparseSize) : null;
+    }
+
+    public synchronized void setSparseHashes(long[] hashes) {
+        if (hashes == null) {
+            return;
+        }
+        long[] sorted = hashes.clone();
+        Arrays.sort(sorted);
+        this.sparseHashes = sorted;
+        this.sparseSize = sorted.length;
+    }
+
+    public synchronized byte[] getRegisters() {
+        return registers != null ? registers.clone() : null;
+    }
+
+    public synchronized void setRegisters(byte[] registers) {
+        if (registers == null || registers.length != REGISTER_COUNT) {
+            return;
+        }
+        this.registers = registers.clone();
+        this.sparseHashes = null;
+        this.sparseSize = 0;
+    }
+
+    // Internal Helpers
+
+    private void offerHash(long hash) {
+        if (registers != null) {
+            updateRegister(hash);
+            return;
+        }
+
+        int index = Arrays.binarySearch(sparseHashes, 0, sparseSize, hash);
+        if (index >= 0) {
+            return;
+        }
+
+        if (sparseSize >= SPARSE_LIMIT) {
+            toDense();
+            updateRegister(hash);
+            return;
+        }
+
+        int insertAt = -index - 1;
+        if (sparseSize == sparseHashes.length) {
+            sparseHashes = Arrays.copyOf(sparseHashes, Math.min(sparseHashes.length * 2, SPARSE_LIMIT));
+        }
+        System.arraycopy(sparseHashes, insertAt, sparseHashes, insertAt + 1, sparseSize - insertAt);
+        sparseHashes[insertAt] = hash;
+        sparseSize++;
+    }
+
+    private void toDense() {
+        if (registers != null) {
+            return;
+        }
+        registers = new byte[REGISTER_COUNT];
+        for (int i = 0; i < sparseSize; i++) {
+            updateRegister(sparseHashes[i]);
+        }
+        sparseHashes = null;
+        sparseSize = 0;
+    }
+
+    private void updateRegister(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Rank of the first set bit in the remaining 54 bits (guard bit caps it)
+        long remaining = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over UTF-16 chars followed by a murmur3 finalizer
+     */
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
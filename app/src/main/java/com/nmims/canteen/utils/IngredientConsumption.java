@@ -0,0 +1,121 @@
+package com.nmims.canteen.utils;
+
+import com.google.firebase.firestore.FieldValue;
+import com.nmims.canteen.models.CartItem;
+import com.nmims.canteen.models.FoodItem;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stock an order consumes, aggregated per inventory item
+ * Each cart line is exploded through its dish's recipe into ingredient quantities; dishes
+ * without a recipe consume their own inventory entry. Lines sharing an ingredient add up,
+ * so the whole order becomes one increment update per inventory document.
+ */
+public class IngredientConsumption {
+
+    /**
+     * Units taken from one inventory item
+     */
+    private static class Demand {
+        int sold; // Dishes stocked as themselves
+        int consumed; // Ingredients used by recipes
+    }
+
+    private final Map<String, Demand> demands;
+
+    private IngredientConsumption() {
+        this.demands = new LinkedHashMap<>();
+    }
+
+    /**
+     * Explode cart lines; recipes come from menu (current food item documents by ID) when
+     * present there, otherwise from the line's own food item
+     */
+    public static IngredientConsumption explode(List<CartItem> items, Map<String, FoodItem> menu) {
+        IngredientConsumption consumption = new IngredientConsumption();
+        for (CartItem item : items) {
+            FoodItem foodItem = item.getFoodItem();
+            if (foodItem == null || item.getQuantity() <= 0) {
+                continue;
+            }
+            FoodItem current = menu != null ? menu.get(foodItem.getItemId()) : null;
+            consumption.addLine(current != null ? current : foodItem, item.getQuantity());
+        }
+        return consumption;
+    }
+
+    /**
+     * Inventory IDs touched, in first-seen order
+     */
+    public Set<String> getInventoryIds() {
+        return demands.keySet();
+    }
+
+    /**
+     * Total units taken from an inventory item
+     */
+    public int getQuantity(String inventoryId) {
+        Demand demand = demands.get(inventoryId);
+        return demand != null ? demand.sold + demand.consumed : 0;
+    }
+
+    /**
+     * Increment update for an inventory item: stock down, sold or stockOut up, lot picking deferred
+     */
+    public Map<String, Object> toUpdate(String inventoryId) {
+        return toUpdate(inventoryId, Integer.MAX_VALUE);
+    }
+
+    /**
+     * As toUpdate, taking at most available units so stock never goes below zero; dishes
+     * stocked as themselves are served before recipe ingredients
+     */
+    public Map<String, Object> toUpdate(String inventoryId, int available) {
+        Demand demand = demands.get(inventoryId);
+        int sold = Math.max(0, Math.min(demand.sold, available));
+        int consumed = Math.max(0, Math.min(demand.consumed, available - sold));
+        Map<String, Object> update = new HashMap<>();
+        update.put("currentStock", FieldValue.increment(-(sold + consumed)));
+        update.put("unpickedUnits", FieldValue.increment(sold + consumed)); // Picked from lots later
+        if (sold > 0) {
+            update.put("sold", FieldValue.increment(sold));
+        }
+        if (consumed > 0) {
+            update.put("stockOut", FieldValue.increment(consumed));
+        }
+        update.put("updatedAt", FieldValue.serverTimestamp());
+        return update;
+    }
+
+    public boolean isEmpty() {
+        return demands.isEmpty();
+    }
+
+    // Internal Helpers
+
+    private void addLine(FoodItem foodItem, int servings) {
+        if (!foodItem.hasRecipe()) {
+            demandFor(foodItem.getItemId()).sold += servings;
+            return;
+        }
+        for (FoodItem.RecipeIngredient ingredient : foodItem.getRecipe()) {
+            if (ingredient.getInventoryId() != null && ingredient.getQuantity() > 0) {
+                demandFor(ingredient.getInventoryId()).consumed += ingredient.getQuantity() * servings;
+            }
+        }
+    }
+
+    private Demand demandFor(String inventoryId) {
+        Demand demand = demands.get(inventoryId);
+        if (demand == null) {
+            demand = new Demand();
+            demands.put(inventoryId, demand);
+        }
+        return demand;
+    }
+}
@@ -0,0 +1,167 @@
+package com.nmims.canteen.utils;
+
+import com.nmims.canteen.models.InventoryItem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Running inventory totals and stock-level sets, maintained per cache change
+ * Each cached item's last contribution is remembered, so an update subtracts exactly what
+ * was added before (even if the item object was mutated in place) and adds the new one.
+ * Reorder candidates are kept ordered by stock, so reads are O(1) or O(result).
+ */
+class InventoryAggregates {
+    private static final Comparator<Contribution> BY_STOCK =
+            Comparator.comparingInt((Contribution c) -> c.stock).thenComparing(c -> c.key);
+
+    private final Map<String, Contribution> contributions;
+    private final TreeSet<Contribution> lowStock; // 0 < stock <= reorder point
+    private final TreeSet<Contribution> outOfStock; // stock <= 0
+
+    private double totalValue;
+    private double potentialLossValue;
+    private long totalUnits;
+    private double totalWasted;
+    private double totalStocked;
+
+    InventoryAggregates() {
+        this.contributions = new HashMap<>();
+        this.lowStock = new TreeSet<>(BY_STOCK);
+        this.outOfStock = new TreeSet<>(BY_STOCK);
+    }
+
+    /**
+     * Replace the contribution of key with item's current figures (null item removes it)
+     */
+    synchronized void update(String key, InventoryItem item) {
+        Contribution previous = item != null
+                ? contributions.put(key, new Contribution(key, item))
+                : contributions.remove(key);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        if (item != null) {
+            apply(contributions.get(key), 1);
+        } else if (contributions.isEmpty()) {
+            clear(); // Drop floating-point residue once nothing is left
+        }
+    }
+
+    synchronized void clear() {
+        contributions.clear();
+        lowStock.clear();
+        outOfStock.clear();
+        totalValue = 0;
+        potentialLossValue = 0;
+        totalUnits = 0;
+        totalWasted = 0;
+        totalStocked = 0;
+    }
+
+    synchronized double getTotalValue() {
+        return totalValue;
+    }
+
+    synchronized double getPotentialLossValue() {
+        return potentialLossValue;
+    }
+
+    synchronized long getTotalUnits() {
+        return totalUnits;
+    }
+
+    synchronized double getTotalWasted() {
+        return totalWasted;
+    }
+
+    /**
+     * Units moved in any way (in, out, wasted, adjusted), the base of the waste percentage
+     */
+    synchronized double getTotalStocked() {
+        return totalStocked;
+    }
+
+    synchronized int getItemCount() {
+        return contributions.size();
+    }
+
+    synchronized int getLowStockCount() {
+        return lowStock.size();
+    }
+
+    synchronized int getOutOfStockCount() {
+        return outOfStock.size();
+    }
+
+    /**
+     * Items at or below their reorder point, lowest stock first
+     */
+    synchronized List<InventoryItem> getReorderItems() {
+        List<InventoryItem> items = new ArrayList<>(outOfStock.size() + lowStock.size());
+        for (Contribution contribution : outOfStock) {
+            items.add(contribution.item);
+        }
+        for (Contribution contribution : lowStock) {
+            items.add(contribution.item);
+        }
+        return items;
+    }
+
+    synchronized List<InventoryItem> getOutOfStockItems() {
+        List<InventoryItem> items = new ArrayList<>(outOfStock.size());
+        for (Contribution contribution : outOfStock) {
+            items.add(contribution.item);
+        }
+        return items;
+    }
+
+    // Internal Helpers
+
+    private void apply(Contribution contribution, int sign) {
+        totalValue += sign * contribution.value;
+        potentialLossValue += sign * contribution.potentialLoss;
+        totalUnits += sign * contribution.stock;
+        totalWasted += sign * contribution.wasted;
+        totalStocked += sign * contribution.stocked;
+
+        TreeSet<Contribution> set = contribution.stock <= 0 ? outOfStock
+                : contribution.needsReorder ? lowStock : null;
+        if (set != null) {
+            if (sign > 0) {
+                set.add(contribution);
+            } else {
+                set.remove(contribution);
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of what one item added to the totals
+     */
+    private static class Contribution {
+        final String key;
+        final InventoryItem item;
+        final double value;
+        final double potentialLoss;
+        final int stock;
+        final boolean needsReorder;
+        final int wasted;
+        final int stocked;
+
+        Contribution(String key, InventoryItem item) {
+            this.key = key;
+            this.item = item;
+            this.value = item.getTotalValue();
+            this.potentialLoss = item.getPotentialLossValue();
+            this.stock = item.getCurrentStock();
+            this.needsReorder = item.needsReorder();
+            this.wasted = item.getWasted();
+            this.stocked = item.getStockIn() + item.getStockOut() + item.getWasted() + item.getAdjusted();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.nmims.canteen.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Edge-triggered gate in front of inventory alerts
+ * Each (item, alert type) is either clear or raised. An alert is created only on the
+ * clear-to-raised crossing; the condition must then pass a separate clear level before
+ * it can fire again, so a value bouncing around one threshold stays quiet. Repeats while
+ * raised are coalesced into the open alert's counter, and new alerts per item are capped
+ * per hour. A capped crossing stays un-raised and pending: the caller retries it once the
+ * budget returns, and its count is carried into the alert that is finally created.
+ */
+class InventoryAlertGate {
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    /**
+     * What the caller should do with the current observation
+     */
+    enum Decision {
+        NONE,      // Nothing changed
+        RAISE,     // Crossed into the alert state: create and deliver a new alert
+        COALESCE,  // Still raised: bump the open alert's counter
+        SUPPRESS,  // Crossed, but the item's hourly alert budget is spent: retry at getRetryAt
+        CLEAR      // Crossed back past the clear level: resolve the open alert
+    }
+
+    private final int maxAlertsPerItemPerHour;
+
+    // Guarded by this
+    private final Map<String, State> states;
+    private final Map<String, ArrayDeque<Long>> recentAlerts; // Item -> creation times within the hour
+
+    InventoryAlertGate(int maxAlertsPerItemPerHour) {
+        this.maxAlertsPerItemPerHour = maxAlertsPerItemPerHour;
+        this.states = new HashMap<>();
+        this.recentAlerts = new HashMap<>();
+    }
+
+    /**
+     * Feed one observation; raise and clear are the two hysteresis conditions and
+     * are never both true (anything between them keeps the current state)
+     */
+    synchronized Decision observe(String itemId, InventoryManager.InventoryAlert.AlertType type,
+                                  boolean raise, boolean clear, long now) {
+        String key = itemId + "|" + type.name();
+        State state = states.get(key);
+        boolean raised = state != null && state.raised;
+
+        if (!raised) {
+            if (!raise) {
+                if (clear && state != null) {
+                    state.pending = false; // The held-back crossing cleared before its retry
+                }
+                return Decision.NONE;
+            }
+            if (state == null) {
+                state = new State();
+                states.put(key, state);
+            }
+            if (!takeBudget(itemId, now)) {
+                if (!state.pending) {
+                    state.pending = true;
+                    state.suppressed++;
+                }
+                if (state.retryAt > now) {
+                    return Decision.NONE; // A retry is already due for this crossing
+                }
+                state.retryAt = budgetReturnsAt(itemId);
+                return Decision.SUPPRESS;
+            }
+            state.raised = true;
+            state.pending = false;
+            state.retryAt = 0;
+            return Decision.RAISE;
+        }
+
+        if (clear) {
+            state.raised = false;
+            return Decision.CLEAR;
+        }
+        return raise ? Decision.COALESCE : Decision.NONE;
+    }
+
+    /**
+     * When the item's hourly budget next frees a slot, for retrying a suppressed crossing
+     */
+    synchronized long getRetryAt(String itemId, InventoryManager.InventoryAlert.AlertType type) {
+        State state = states.get(itemId + "|" + type.name());
+        return state != null ? state.retryAt : 0;
+    }
+
+    /**
+     * Crossings suppressed since the last alert of this kind was created; resets the count
+     */
+    synchronized int takeSuppressed(String itemId, InventoryManager.InventoryAlert.AlertType type) {
+        State state = states.get(itemId + "|" + type.name());
+        if (state == null) {
+            return 0;
+        }
+        int suppressed = state.suppressed;
+        state.suppressed = 0;
+        return suppressed;
+    }
+
+    /**
+     * Forget an item, e.g. when it is removed from inventory
+     */
+    synchronized void forget(String itemId) {
+        String prefix = itemId + "|";
+        states.keySet().removeIf(key -> key.startsWith(prefix));
+        recentAlerts.remove(itemId);
+    }
+
+    synchronized void clear() {
+        states.clear();
+        recentAlerts.clear();
+    }
+
+    // Internal Helpers
+
+    private boolean takeBudget(String itemId, long now) {
+        ArrayDeque<Long> times = recentAlerts.get(itemId);
+        if (times == null) {
+            times = new ArrayDeque<>();
+            recentAlerts.put(itemId, times);
+        }
+        while (!times.isEmpty() && now - times.peekFirst() >= HOUR_MS) {
+            times.pollFirst();
+        }
+        if (times.size() >= maxAlertsPerItemPerHour) {
+            return false;
+        }
+        times.addLast(now);
+        return true;
+    }
+
+    private long budgetReturnsAt(String itemId) {
+        ArrayDeque<Long> times = recentAlerts.get(itemId);
+        return times == null || times.isEmpty() ? 0 : times.peekFirst() + HOUR_MS;
+    }
+
+    private static class State {
+        boolean raised;
+        boolean pending; // Crossed while over budget, not yet raised
+        long retryAt;
+        int suppressed;
+    }
+}
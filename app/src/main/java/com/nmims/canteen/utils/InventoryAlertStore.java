@@ -0,0 +1,487 @@
+package com.nmims.canteen.utils;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.nmims.canteen.utils.InventoryManager.InventoryAlert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Inventory alert store indexed by alert ID, item and type
+ * Reads go straight to concurrent maps and never lock; writes are serialized so the
+ * indexes stay consistent. Resolved alerts leave the open indexes at once and are evicted
+ * (locally and in Firestore) once more than MAX_RESOLVED_RETAINED have piled up.
+ * Every change is written through to Firestore, and open alerts are reloaded on start.
+ * An open alert lives at a document ID derived from (item, type), created only if absent,
+ * so devices that see the same crossing share one alert; on resolve it is archived under
+ * an ID that adds its creation time, freeing the open ID for the next episode.
+ */
+class InventoryAlertStore {
+    private static final String TAG = "InventoryAlertStore";
+    private static final int MAX_RESOLVED_RETAINED = 200;
+    private static final long COALESCE_PERSIST_INTERVAL_MS = 60 * 1000L; // Repeats are written at most once a minute
+
+    /**
+     * Load completion callback
+     */
+    interface LoadCallback {
+        void onLoaded(List<InventoryAlert> openAlerts);
+    }
+
+    private final Map<String, InventoryAlert> byId;
+    private final Map<String, InventoryAlert> openByItemType; // One open alert per (item, type)
+    private final Map<String, Set<String>> openIdsByItem;
+    private final Map<InventoryAlert.AlertType, Set<String>> openIdsByType;
+    private final ConcurrentLinkedQueue<String> resolvedIds; // Oldest resolution first
+    private final Map<String, Long> lastPersistedAt;
+    private final Map<String, Integer> persistedCounts; // Occurrences already written, by alert ID
+    private final Set<String> unpersisted; // Alerts with coalesced repeats not yet written
+    private final Object writeLock = new Object();
+
+    InventoryAlertStore() {
+        this.byId = new ConcurrentHashMap<>();
+        this.openByItemType = new ConcurrentHashMap<>();
+        this.openIdsByItem = new ConcurrentHashMap<>();
+        this.openIdsByType = new ConcurrentHashMap<>();
+        this.resolvedIds = new ConcurrentLinkedQueue<>();
+        this.lastPersistedAt = new ConcurrentHashMap<>();
+        this.persistedCounts = new ConcurrentHashMap<>();
+        this.unpersisted = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Load unresolved alerts from Firestore, replacing nothing already held
+     * Duplicate open alerts for one (item, type), left by older builds, are folded into the
+     * one at the derived ID and deleted; resolved alerts past the retention cap are evicted.
+     */
+    void load(LoadCallback callback) {
+        FirebaseUtils.getOpenInventoryAlertsQuery()
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    Map<String, List<InventoryAlert>> byKey = new HashMap<>();
+                    for (QueryDocumentSnapshot document : snapshots) {
+                        InventoryAlert alert = document.toObject(InventoryAlert.class);
+                        alert.setAlertId(document.getId());
+                        if (alert.getItemId() != null && alert.getAlertType() != null) {
+                            byKey.computeIfAbsent(key(alert.getItemId(), alert.getAlertType()), k -> new ArrayList<>()).add(alert);
+                        }
+                    }
+
+                    List<InventoryAlert> loaded = new ArrayList<>();
+                    for (List<InventoryAlert> group : byKey.values()) {
+                        InventoryAlert alert = mergeDuplicates(group);
+                        if (index(alert)) {
+                            persistedCounts.put(alert.getAlertId(), alert.getOccurrenceCount());
+                            loaded.add(alert);
+                        }
+                    }
+                    Log.d(TAG, "Loaded " + loaded.size() + " open inventory alerts");
+                    if (callback != null) callback.onLoaded(loaded);
+                    loadResolved();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load inventory alerts", e);
+                    if (callback != null) callback.onLoaded(Collections.emptyList());
+                });
+    }
+
+    /**
+     * Add a new open alert; returns false if (item, type) already has one here
+     * The alert is created in Firestore only if no other device has opened it first;
+     * onCreated runs only when this device created it, otherwise the local copy adopts the
+     * existing alert and adds its occurrences to it.
+     */
+    boolean add(InventoryAlert alert, Runnable onCreated) {
+        alert.setAlertId(InventoryAlert.openAlertId(alert.getItemId(), alert.getAlertType()));
+        if (!index(alert)) {
+            return false;
+        }
+        create(alert, onCreated);
+        return true;
+    }
+
+    /**
+     * Coalesce a repeat into the open alert for (item, type), if any
+     */
+    InventoryAlert recordOccurrence(String itemId, InventoryAlert.AlertType type, String message, int count) {
+        InventoryAlert alert = openByItemType.get(key(itemId, type));
+        if (alert == null) {
+            return null;
+        }
+        alert.recordOccurrence(message, count);
+
+        long now = System.currentTimeMillis();
+        Long persisted = lastPersistedAt.get(alert.getAlertId());
+        if (persisted == null || now - persisted >= COALESCE_PERSIST_INTERVAL_MS) {
+            persistOccurrences(alert);
+        } else {
+            unpersisted.add(alert.getAlertId());
+        }
+        return alert;
+    }
+
+    /**
+     * Write every coalesced repeat still held back by the persist interval, e.g. on stop
+     */
+    void flush() {
+        for (String alertId : new ArrayList<>(unpersisted)) {
+            InventoryAlert alert = byId.get(alertId);
+            if (alert != null && !alert.isResolved()) {
+                persistOccurrences(alert);
+            } else {
+                unpersisted.remove(alertId);
+            }
+        }
+    }
+
+    /**
+     * Resolve by alert ID; returns the alert, or null if unknown or already resolved
+     */
+    InventoryAlert resolve(String alertId) {
+        InventoryAlert alert;
+        synchronized (writeLock) {
+            alert = byId.get(alertId);
+            if (alert == null || alert.isResolved()) {
+                return null;
+            }
+            alert.setResolved(true);
+            unindexOpen(alert);
+
+            // Re-key under the archive ID so the open ID is free for the next episode
+            byId.remove(alertId);
+            lastPersistedAt.remove(alertId);
+            persistedCounts.remove(alertId);
+            unpersisted.remove(alertId);
+            alert.setAlertId(archivedAlertId(alert));
+            byId.put(alert.getAlertId(), alert);
+            resolvedIds.add(alert.getAlertId());
+        }
+        archive(alertId, alert);
+        evictResolved();
+        return alert;
+    }
+
+    /**
+     * Resolve the open alert for (item, type), if any
+     */
+    InventoryAlert resolve(String itemId, InventoryAlert.AlertType type) {
+        InventoryAlert alert = openByItemType.get(key(itemId, type));
+        return alert != null ? resolve(alert.getAlertId()) : null;
+    }
+
+    /**
+     * Drop every alert of an item, locally and in Firestore
+     */
+    void removeItem(String itemId) {
+        List<InventoryAlert> removed = new ArrayList<>();
+        synchronized (writeLock) {
+            for (InventoryAlert alert : byId.values()) {
+                if (itemId.equals(alert.getItemId())) {
+                    removed.add(alert);
+                }
+            }
+            for (InventoryAlert alert : removed) {
+                byId.remove(alert.getAlertId());
+                lastPersistedAt.remove(alert.getAlertId());
+                persistedCounts.remove(alert.getAlertId());
+                unpersisted.remove(alert.getAlertId());
+                if (!alert.isResolved()) {
+                    unindexOpen(alert);
+                }
+            }
+        }
+        for (InventoryAlert alert : removed) {
+            delete(alert.getAlertId());
+        }
+    }
+
+    // Lock-free reads
+
+    InventoryAlert get(String alertId) {
+        return byId.get(alertId);
+    }
+
+    InventoryAlert getOpen(String itemId, InventoryAlert.AlertType type) {
+        return openByItemType.get(key(itemId, type));
+    }
+
+    List<InventoryAlert> getOpenAlerts() {
+        return new ArrayList<>(openByItemType.values());
+    }
+
+    List<InventoryAlert> getOpenAlerts(InventoryAlert.AlertType type) {
+        return resolveIds(openIdsByType.get(type));
+    }
+
+    List<InventoryAlert> getOpenAlertsForItem(String itemId) {
+        return resolveIds(openIdsByItem.get(itemId));
+    }
+
+    int getOpenCount() {
+        return openByItemType.size();
+    }
+
+    void clear() {
+        synchronized (writeLock) {
+            byId.clear();
+            openByItemType.clear();
+            openIdsByItem.clear();
+            openIdsByType.clear();
+            resolvedIds.clear();
+            lastPersistedAt.clear();
+            persistedCounts.clear();
+            unpersisted.clear();
+        }
+    }
+
+    // Internal Helpers
+
+    private boolean index(InventoryAlert alert) {
+        synchronized (writeLock) {
+            String key = key(alert.getItemId(), alert.getAlertType());
+            if (openByItemType.containsKey(key)) {
+                return false;
+            }
+            byId.put(alert.getAlertId(), alert);
+            openByItemType.put(key, alert);
+            openIdsByItem.computeIfAbsent(alert.getItemId(), id -> ConcurrentHashMap.newKeySet()).add(alert.getAlertId());
+            openIdsByType.computeIfAbsent(alert.getAlertType(), type -> ConcurrentHashMap.newKeySet()).add(alert.getAlertId());
+            return true;
+        }
+    }
+
+    private void unindexOpen(InventoryAlert alert) {
+        openByItemType.remove(key(alert.getItemId(), alert.getAlertType()), alert);
+        Set<String> itemIds = openIdsByItem.get(alert.getItemId());
+        if (itemIds != null) {
+            itemIds.remove(alert.getAlertId());
+            if (itemIds.isEmpty()) {
+                openIdsByItem.remove(alert.getItemId());
+            }
+        }
+        Set<String> typeIds = openIdsByType.get(alert.getAlertType());
+        if (typeIds != null) {
+            typeIds.remove(alert.getAlertId());
+        }
+    }
+
+    private void evictResolved() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (writeLock) {
+            while (resolvedIds.size() > MAX_RESOLVED_RETAINED) {
+                String alertId = resolvedIds.poll();
+                byId.remove(alertId);
+                evicted.add(alertId);
+            }
+        }
+        for (String alertId : evicted) {
+            delete(alertId);
+        }
+    }
+
+    private List<InventoryAlert> resolveIds(Set<String> alertIds) {
+        List<InventoryAlert> alerts = new ArrayList<>();
+        if (alertIds != null) {
+            for (String alertId : alertIds) {
+                InventoryAlert alert = byId.get(alertId);
+                if (alert != null && !alert.isResolved()) {
+                    alerts.add(alert);
+                }
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Fold duplicate open alerts of one (item, type) into the one at the derived ID
+     */
+    private InventoryAlert mergeDuplicates(List<InventoryAlert> group) {
+        InventoryAlert first = group.get(0);
+        String openId = InventoryAlert.openAlertId(first.getItemId(), first.getAlertType());
+        if (group.size() == 1 && openId.equals(first.getAlertId())) {
+            return first;
+        }
+
+        // Keep the alert already at the derived ID, else the earliest created
+        InventoryAlert kept = null;
+        for (InventoryAlert alert : group) {
+            if (openId.equals(alert.getAlertId())) {
+                kept = alert;
+            }
+        }
+        boolean migrating = kept == null;
+        if (migrating) {
+            kept = Collections.min(group, Comparator.comparingLong(InventoryAlertStore::createdAtMillis));
+        } else {
+            persistedCounts.put(kept.getAlertId(), kept.getOccurrenceCount());
+        }
+
+        for (InventoryAlert alert : group) {
+            if (alert != kept) {
+                kept.setOccurrenceCount(kept.getOccurrenceCount() + alert.getOccurrenceCount());
+                delete(alert.getAlertId());
+            }
+        }
+        if (migrating) {
+            delete(kept.getAlertId());
+            kept.setAlertId(openId);
+            create(kept, null);
+        } else {
+            persistOccurrences(kept);
+        }
+        Log.d(TAG, "Merged " + group.size() + " open alerts into " + openId);
+        return kept;
+    }
+
+    /**
+     * Queue resolved alerts from earlier sessions for eviction, oldest resolution first
+     */
+    private void loadResolved() {
+        FirebaseUtils.getResolvedInventoryAlertsQuery()
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    List<InventoryAlert> resolved = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : snapshots) {
+                        if (!byId.containsKey(document.getId())) {
+                            InventoryAlert alert = document.toObject(InventoryAlert.class);
+                            alert.setAlertId(document.getId());
+                            resolved.add(alert);
+                        }
+                    }
+                    Collections.sort(resolved, Comparator.comparingLong(InventoryAlertStore::resolvedAtMillis));
+
+                    // Older than anything resolved this session, so they go first
+                    synchronized (writeLock) {
+                        List<String> current = new ArrayList<>(resolvedIds);
+                        resolvedIds.clear();
+                        for (InventoryAlert alert : resolved) {
+                            resolvedIds.add(alert.getAlertId());
+                        }
+                        resolvedIds.addAll(current);
+                    }
+                    evictResolved();
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to load resolved inventory alerts", e));
+    }
+
+    /**
+     * Create the open alert unless another device already has; otherwise adopt that one
+     */
+    private void create(InventoryAlert alert, Runnable onCreated) {
+        DocumentReference alertRef = FirebaseUtils.getInventoryAlertsCollection().document(alert.getAlertId());
+        int count = alert.getOccurrenceCount();
+        lastPersistedAt.put(alert.getAlertId(), System.currentTimeMillis());
+        persistedCounts.put(alert.getAlertId(), count);
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<InventoryAlert>) transaction -> {
+            DocumentSnapshot snapshot = transaction.get(alertRef);
+            InventoryAlert existing = snapshot.exists() ? snapshot.toObject(InventoryAlert.class) : null;
+            if (existing != null && !existing.isResolved()) {
+                transaction.update(alertRef,
+                        "occurrenceCount", FieldValue.increment(count),
+                        "message", alert.getMessage(),
+                        "lastOccurredAt", alert.getLastOccurredAt());
+                return existing;
+            }
+            transaction.set(alertRef, alert);
+            return null;
+        }).addOnSuccessListener(existing -> {
+            if (existing == null) {
+                if (onCreated != null) onCreated.run();
+                return;
+            }
+            // Another device opened this episode first: take its start and its count
+            synchronized (alert) {
+                alert.setCreatedAt(existing.getCreatedAt());
+                alert.setOccurrenceCount(alert.getOccurrenceCount() + existing.getOccurrenceCount());
+            }
+            persistedCounts.merge(alert.getAlertId(), existing.getOccurrenceCount(), Integer::sum);
+        }).addOnFailureListener(e -> Log.e(TAG, "Failed to create inventory alert " + alert.getAlertId(), e));
+    }
+
+    /**
+     * Write coalesced repeats as an increment, so devices sharing an alert add up
+     * Uses update, so an alert resolved elsewhere in the meantime is not recreated.
+     */
+    private void persistOccurrences(InventoryAlert alert) {
+        String alertId = alert.getAlertId();
+        lastPersistedAt.put(alertId, System.currentTimeMillis());
+        unpersisted.remove(alertId);
+
+        int count = alert.getOccurrenceCount();
+        Integer persisted = persistedCounts.put(alertId, count);
+        int delta = count - (persisted != null ? persisted : 0);
+        if (delta <= 0) {
+            return;
+        }
+        FirebaseUtils.getInventoryAlertsCollection()
+                .document(alertId)
+                .update("occurrenceCount", FieldValue.increment(delta),
+                        "message", alert.getMessage(),
+                        "lastOccurredAt", alert.getLastOccurredAt())
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to save inventory alert " + alertId, e));
+    }
+
+    /**
+     * Write the resolved alert under its archive ID and delete the open document, unless a
+     * newer episode has already replaced it
+     */
+    private void archive(String openId, InventoryAlert alert) {
+        DocumentReference openRef = FirebaseUtils.getInventoryAlertsCollection().document(openId);
+        DocumentReference archiveRef = FirebaseUtils.getInventoryAlertsCollection().document(alert.getAlertId());
+        long createdAt = createdAtMillis(alert);
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot snapshot = transaction.get(openRef);
+            InventoryAlert current = snapshot.exists() ? snapshot.toObject(InventoryAlert.class) : null;
+            if (current != null && createdAtMillis(current) <= createdAt) {
+                if (current.getOccurrenceCount() > alert.getOccurrenceCount()) {
+                    alert.setOccurrenceCount(current.getOccurrenceCount()); // Repeats from other devices
+                }
+                transaction.delete(openRef);
+            }
+            transaction.set(archiveRef, alert);
+            return null;
+        }).addOnFailureListener(e -> Log.e(TAG, "Failed to archive inventory alert " + openId, e));
+    }
+
+    private void delete(String alertId) {
+        FirebaseUtils.getInventoryAlertsCollection()
+                .document(alertId)
+                .delete()
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to delete inventory alert " + alertId, e));
+    }
+
+    private static String key(String itemId, InventoryAlert.AlertType type) {
+        return itemId + "|" + type.name();
+    }
+
+    private static String archivedAlertId(InventoryAlert alert) {
+        long createdAt = createdAtMillis(alert);
+        return alert.getAlertId() + "_" + (createdAt > 0 ? createdAt : System.currentTimeMillis());
+    }
+
+    private static long createdAtMillis(InventoryAlert alert) {
+        Date createdAt = alert.getCreatedAt();
+        return createdAt != null ? createdAt.getTime() : 0;
+    }
+
+    private static long resolvedAtMillis(InventoryAlert alert) {
+        Date resolvedAt = alert.getResolvedAt();
+        return resolvedAt != null ? resolvedAt.getTime() : 0;
+    }
+}
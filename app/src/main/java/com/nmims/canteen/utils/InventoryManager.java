@@ -2,22 +2,42 @@ package com.nmims.canteen.utils;
 
 import android.util.Log;
 
+import androidx.lifecycle.LifecycleOwner;
+
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+import com.nmims.canteen.models.FoodItem;
 import com.nmims.canteen.models.InventoryItem;
 import com.nmims.canteen.models.AdminNotification;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Inventory management and stock tracking utility
@@ -29,8 +49,14 @@ public class InventoryManager {
 
     // Real-time monitoring
     private final Map<String, InventoryItem> inventoryCache;
-    private final Map<String, InventoryChangeListener> listeners;
-    private final List<InventoryAlert> activeAlerts;
+    private final InventoryAggregates aggregates; // Totals and stock sets, kept in step with the cache
+    private final ScheduledExecutorService lane; // Expiry timers
+    private final ExpiryIndex expiryIndex;
+    private final ListenerRegistry<InventoryChangeListener> listeners;
+    private final InventoryAlertStore alertStore; // Open alerts indexed by ID, item and type
+    private final InventoryAlertGate alertGate;
+    private final RestockForecaster forecaster; // Consumption velocity, fed from cache updates
+    private ListenerRegistration inventoryRegistration; // Live snapshot listener while monitoring
     private boolean isMonitoringActive;
 
     // Default thresholds
@@ -38,10 +64,29 @@ public class InventoryManager {
     private static final int DEFAULT_REORDER_LEVEL = 15;
     private static final int DEFAULT_EXPIRY_WARNING_DAYS = 7;
 
+    // Alert hysteresis: a raised stock alert clears only once stock is this far past its raise level
+    private static final double CLEAR_MARGIN_RATIO = 0.2;
+    private static final int MIN_CLEAR_MARGIN = 2;
+    private static final int MAX_ALERTS_PER_ITEM_PER_HOUR = 4;
+
+    // Restock forecasting
+    private static final int SAFETY_DAYS = 1; // Suggest once stock-out is within lead time plus this
+    private static final int COVER_DAYS = 7; // Order enough for lead time plus this many days
+
+    // Batch writes
+    private static final int MAX_BATCH_WRITES = 500; // Firestore limit per WriteBatch
+    private static final int WRITES_PER_MOVEMENT = 2; // Item increments + log entry
+    private static final int MAX_IDS_PER_QUERY = 10; // Firestore whereIn limit
+
     private InventoryManager() {
         this.inventoryCache = new ConcurrentHashMap<>();
-        this.listeners = new HashMap<>();
-        this.activeAlerts = Collections.synchronizedList(new ArrayList<>());
+        this.aggregates = new InventoryAggregates();
+        this.lane = Executors.newSingleThreadScheduledExecutor();
+        this.expiryIndex = new ExpiryIndex(lane, this::createExpiryAlert);
+        this.listeners = new ListenerRegistry<>(TAG);
+        this.alertStore = new InventoryAlertStore();
+        this.alertGate = new InventoryAlertGate(MAX_ALERTS_PER_ITEM_PER_HOUR);
+        this.forecaster = new RestockForecaster();
         this.isMonitoringActive = false;
     }
 
@@ -100,9 +145,15 @@ public class InventoryManager {
         private AdminNotification.Priority priority;
         private String actionRequired;
         private String actionUrl;
+        private int occurrenceCount; // Crossings and repeats coalesced into this alert
+        private Date lastOccurredAt;
+
+        public InventoryAlert() {
+            // Required for Firestore
+        }
 
         public InventoryAlert(String itemId, String itemName, AlertType alertType, String message) {
-            this.alertId = generateAlertId();
+            this.alertId = openAlertId(itemId, alertType);
             this.itemId = itemId;
             this.itemName = itemName;
             this.alertType = alertType;
@@ -110,26 +161,49 @@ public class InventoryManager {
             this.createdAt = new Date();
             this.isResolved = false;
             this.priority = determinePriority(alertType);
+            this.occurrenceCount = 1;
+            this.lastOccurredAt = createdAt;
         }
 
         // Getters and Setters
         public String getAlertId() { return alertId; }
+        public void setAlertId(String alertId) { this.alertId = alertId; }
         public String getItemId() { return itemId; }
+        public void setItemId(String itemId) { this.itemId = itemId; }
         public String getItemName() { return itemName; }
+        public void setItemName(String itemName) { this.itemName = itemName; }
         public AlertType getAlertType() { return alertType; }
+        public void setAlertType(AlertType alertType) { this.alertType = alertType; }
         public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
         public Date getCreatedAt() { return createdAt; }
+        public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
         public boolean isResolved() { return isResolved; }
         public void setResolved(boolean resolved) {
             isResolved = resolved;
             if (resolved) resolvedAt = new Date();
         }
         public Date getResolvedAt() { return resolvedAt; }
+        public void setResolvedAt(Date resolvedAt) { this.resolvedAt = resolvedAt; }
         public AdminNotification.Priority getPriority() { return priority; }
+        public void setPriority(AdminNotification.Priority priority) { this.priority = priority; }
         public String getActionRequired() { return actionRequired; }
         public void setActionRequired(String actionRequired) { this.actionRequired = actionRequired; }
         public String getActionUrl() { return actionUrl; }
         public void setActionUrl(String actionUrl) { this.actionUrl = actionUrl; }
+        public int getOccurrenceCount() { return occurrenceCount; }
+        public void setOccurrenceCount(int occurrenceCount) { this.occurrenceCount = occurrenceCount; }
+        public Date getLastOccurredAt() { return lastOccurredAt; }
+        public void setLastOccurredAt(Date lastOccurredAt) { this.lastOccurredAt = lastOccurredAt; }
+
+        /**
+         * Coalesce a repeat into this alert, keeping the latest message
+         */
+        public synchronized void recordOccurrence(String message, int count) {
+            this.occurrenceCount += count;
+            this.lastOccurredAt = new Date();
+            this.message = message;
+        }
 
         private AdminNotification.Priority determinePriority(AlertType type) {
             switch (type) {
@@ -141,8 +215,11 @@ public class InventoryManager {
             }
         }
 
-        private String generateAlertId() {
-            return "INV_ALERT_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+        /**
+         * Document ID of the open alert for (item, type), shared by every device
+         */
+        public static String openAlertId(String itemId, AlertType alertType) {
+            return "INV_ALERT_" + itemId + "_" + alertType.name();
         }
     }
 
@@ -154,6 +231,14 @@ public class InventoryManager {
         void onFailure(String error);
     }
 
+    /**
+     * Movement history page callback interface
+     */
+    public interface MovementHistoryCallback {
+        void onSuccess(List<InventoryItem.InventoryMovement> movements, boolean hasMore);
+        void onFailure(String error);
+    }
+
     /**
      * Inventory analysis callback interface
      */
@@ -180,71 +265,344 @@ public class InventoryManager {
         getInventoryItem(itemId, new InventoryItemCallback() {
             @Override
             public void onSuccess(InventoryItem item) {
-                try {
-                    // Update stock quantity
-                    int previousStock = item.getCurrentStock();
-                    int newStock = previousStock + quantity;
-
-                    // Validate new stock level
-                    if (newStock < 0) {
-                        newStock = 0;
-                    }
+                // The cached item may be stale, so it only supplies the log entry's context;
+                // the stock itself moves by server-side increments and is never read back first
+                InventoryItem.InventoryMovement movement =
+                        item.newMovement(movementType, quantity, reason, performedBy, "");
+
+                // The counters and the append-only log entry commit together
+                WriteBatch batch = FirebaseUtils.getFirestore().batch();
+                batch.update(FirebaseUtils.getInventoryItemDocument(itemId), buildMovementUpdate(movement));
+                batch.set(FirebaseUtils.getInventoryItemLogsCollection(itemId).document(movement.getMovementId()), movement);
+                batch.commit()
+                        .addOnSuccessListener(aVoid -> {
+                            Log.d(TAG, "Stock updated: " + itemId + " " + movementType + " " + Math.abs(quantity));
+                            applyLocally(item, movement);
+                            refreshAfterMovement(itemId, item, movement, callback);
+                        })
+                        .addOnFailureListener(e -> {
+                            Log.e(TAG, "Failed to update stock in Firebase", e);
+                            if (callback != null) callback.onFailure(e.getMessage());
+                        });
+            }
 
-                    // Add movement to history
-                    item.addMovement(movementType, quantity, reason, performedBy, "");
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "Failed to get inventory item for stock update: " + error);
+                if (callback != null) callback.onFailure(error);
+            }
+        });
+    }
 
-                    // Update item in cache
-                    inventoryCache.put(itemId, item);
+    /**
+     * Field update applying a movement blind: counters move by server-side increments and the
+     * movement is appended to the recent ring, so concurrent writers (other admins, order
+     * fulfilment) never overwrite each other. Units taken out are left for the next lot-aware
+     * write to pick, and the next refresh re-sorts and trims the ring.
+     */
+    private Map<String, Object> buildMovementUpdate(InventoryItem.InventoryMovement movement) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("currentStock", FieldValue.increment(movement.getQuantity()));
+        if (movement.getQuantity() < 0) {
+            // Picked from lots by the next lot-aware write
+            updates.put("unpickedUnits", FieldValue.increment(-movement.getQuantity()));
+        }
+        String counterField = InventoryItem.getCounterField(movement.getMovementType());
+        if (counterField != null) {
+            updates.put(counterField, FieldValue.increment(
+                    InventoryItem.getCounterDelta(movement.getMovementType(), movement.getQuantity())));
+        }
+        updates.put("movementCount", FieldValue.increment(1));
+        updates.put("lastMovementAt", FieldValue.serverTimestamp());
+        updates.put("lastMovementDate", movement.getTimestamp().toString());
+        updates.put("lastMovementType", movement.getMovementType());
+        updates.put("lastMovementReason", movement.getReason());
+        updates.put("recentMovements", FieldValue.arrayUnion(movement));
+        updates.put("movementHistory", FieldValue.delete()); // Drops the legacy embedded list; a no-op once gone
+        return updates;
+    }
 
-                    // Update in Firebase
-                    FirebaseUtils.getInventoryItemDocument(itemId)
-                            .set(item)
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "Stock updated successfully: " + itemName + " " + movementType + " " + Math.abs(quantity));
+    // Lots
 
-                                // Notify listeners
-                                for (InventoryChangeListener listener : listeners.values()) {
-                                    listener.onStockUpdated(item, movementType, quantity);
-                                }
+    /**
+     * Receive a new lot with its own batch, expiry ("yyyy-MM-dd", null for none) and unit cost
+     */
+    public void receiveLot(String inventoryId, int quantity, String batchNumber, String expiryDate, double unitCost,
+                           String performedBy, StockMovementCallback callback) {
+        if (inventoryId == null || quantity <= 0) {
+            if (callback != null) callback.onFailure("Invalid item ID or quantity");
+            return;
+        }
+        runMovement(inventoryId, callback, (item, updates) -> {
+            InventoryItem.StockLot lot = new InventoryItem.StockLot(FirebaseUtils.generateDocumentId(),
+                    batchNumber, quantity, unitCost, expiryDate);
+            item.getLots().put(lot.getLotId(), lot);
+            updates.put("lots." + lot.getLotId(), lot);
+            return item.newMovement("STOCK_IN", quantity, "Received lot " + (batchNumber != null ? batchNumber : lot.getLotId()),
+                    performedBy, lot.getLotId());
+        });
+    }
 
-                                // Check for alerts
-                                checkAndCreateAlerts(item);
+    /**
+     * Write off wasted units from lotId, or first-expiry-first-out across lots when lotId is null
+     * Fails without writing if the lots hold fewer units than quantity
+     */
+    public void recordWaste(String inventoryId, String lotId, int quantity, String reason, String performedBy,
+                            StockMovementCallback callback) {
+        if (inventoryId == null || quantity <= 0) {
+            if (callback != null) callback.onFailure("Invalid item ID or quantity");
+            return;
+        }
+        runMovement(inventoryId, callback, (item, updates) -> {
+            Map<String, Integer> picks = item.pickLots(quantity, lotId);
+            int picked = 0;
+            for (Map.Entry<String, Integer> pick : picks.entrySet()) {
+                picked += pick.getValue();
+                InventoryItem.StockLot lot = item.getLots().get(pick.getKey());
+                lot.setQuantity(lot.getQuantity() - pick.getValue());
+                lot.setWasted(lot.getWasted() + pick.getValue());
+                updates.put("lots." + pick.getKey() + ".quantity", lot.getQuantity());
+                updates.put("lots." + pick.getKey() + ".wasted", lot.getWasted());
+            }
+            if (picked < quantity) {
+                throw new FirebaseFirestoreException("Only " + picked + " left in " + (lotId != null ? "lot" : "lots"),
+                        FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            String referenceId = picks.size() == 1 ? picks.keySet().iterator().next() : "";
+            return item.newMovement("WASTE", -quantity, reason, performedBy, referenceId);
+        });
+    }
 
-                                if (callback != null) callback.onSuccess(item);
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to update stock in Firebase", e);
-                                if (callback != null) callback.onFailure(e.getMessage());
-                            });
+    /**
+     * Lots of a monitored item once pending picks are taken, next to be picked first
+     */
+    public List<InventoryItem.StockLot> getLots(String inventoryId) {
+        InventoryItem item = inventoryCache.get(inventoryId);
+        return item != null ? item.pickedLots() : new ArrayList<>();
+    }
 
-                } catch (Exception e) {
-                    Log.e(TAG, "Error updating stock", e);
-                    if (callback != null) callback.onFailure(e.getMessage());
+    /**
+     * One stock change, applied to the item read inside the transaction after its unpicked
+     * units are picked; adds the lot fields it changed to updates and returns the movement
+     */
+    private interface MovementChange {
+        InventoryItem.InventoryMovement apply(InventoryItem item, Map<String, Object> updates) throws FirebaseFirestoreException;
+    }
+
+    /**
+     * Run a lot-aware movement in a transaction: units taken by increment-only writers since the
+     * last one are first picked first-expiry-first-out, so lots match what was actually sold
+     * before the lot set changes. Stock, counters, the log entry, the recent ring and the derived
+     * value and alert fields all commit together, computed from the state the transaction read.
+     */
+    private void runMovement(String inventoryId, StockMovementCallback callback, MovementChange change) {
+        DocumentReference itemRef = FirebaseUtils.getInventoryItemDocument(inventoryId);
+        InventoryItem[] read = new InventoryItem[1];
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<InventoryItem.InventoryMovement>) transaction -> {
+            DocumentSnapshot snapshot = transaction.get(itemRef);
+            InventoryItem item = snapshot.toObject(InventoryItem.class);
+            if (item == null) {
+                throw new FirebaseFirestoreException("Inventory item not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            item.setInventoryId(snapshot.getId());
+            read[0] = item;
+
+            // Pick the pending units, then apply the change on top. Lot fields are only written
+            // here, inside transactions, so they are set outright rather than incremented
+            Map<String, Integer> pendingPicks = item.pendingPicks();
+            for (Map.Entry<String, Integer> pick : pendingPicks.entrySet()) {
+                InventoryItem.StockLot lot = item.getLots().get(pick.getKey());
+                lot.setQuantity(lot.getQuantity() - pick.getValue());
+            }
+            int unpicked = item.getUnpickedUnits();
+            item.setUnpickedUnits(0);
+
+            Map<String, Object> lotUpdates = new HashMap<>();
+            InventoryItem.InventoryMovement movement = change.apply(item, lotUpdates);
+            for (String lotId : pendingPicks.keySet()) {
+                String field = "lots." + lotId + ".quantity";
+                if (!lotUpdates.containsKey(field)) {
+                    lotUpdates.put(field, item.getLots().get(lotId).getQuantity());
                 }
             }
 
-            @Override
-            public void onFailure(String error) {
-                Log.e(TAG, "Failed to get inventory item for stock update", error);
-                if (callback != null) callback.onFailure(error);
+            Map<String, Object> updates = buildMovementUpdate(movement);
+            updates.putAll(lotUpdates);
+            updates.put("unpickedUnits", FieldValue.increment(-unpicked)); // Everything is picked now, this movement included
+            item.refreshLotSummary();
+            updates.put("batchNumber", item.getBatchNumber());
+            updates.put("expiryDate", item.getExpiryDate());
+            updates.put("expiryEpochDay", item.getExpiryEpochDay());
+
+            // The read is current for this attempt, so the post-movement state is exact
+            item.applyMovement(movement);
+            Map<String, Object> derivedFields = recomputeDerivedFields(item);
+            if (derivedFields != null) {
+                updates.putAll(derivedFields);
             }
+            updates.put("recentMovements", item.getRecentMovements());
+
+            transaction.update(itemRef, updates);
+            transaction.set(FirebaseUtils.getInventoryItemLogsCollection(inventoryId).document(movement.getMovementId()), movement);
+            return movement;
+        }).addOnSuccessListener(movement -> {
+            Log.d(TAG, "Stock movement applied: " + inventoryId + " " + movement.getMovementType() + " " + Math.abs(movement.getQuantity()));
+            deliverMovement(read[0], movement, callback);
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Failed to apply stock movement for " + inventoryId, e);
+            if (callback != null) callback.onFailure(e.getMessage());
         });
     }
 
     /**
-     * Check for low stock items
+     * Re-read an item after a blind movement write and bring its derived value and alert fields
+     * and its recent ring in line with the stored stock, then deliver it
+     * The read and the write share a transaction, so a movement landing in between makes it retry
+     * against the newer stock instead of overwriting it with stale values; whichever refresh
+     * commits last has seen every movement before it. The movement has landed either way, so if
+     * the refresh fails the local projection is delivered instead.
      */
-    public void checkLowStock(InventoryAnalysisCallback callback) {
-        List<InventoryItem> lowStockItems = new ArrayList<>();
+    private void refreshAfterMovement(String inventoryId, InventoryItem projected,
+                                      InventoryItem.InventoryMovement movement, StockMovementCallback callback) {
+        DocumentReference itemRef = FirebaseUtils.getInventoryItemDocument(inventoryId);
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<InventoryItem>) transaction -> {
+            DocumentSnapshot snapshot = transaction.get(itemRef);
+            InventoryItem item = snapshot.toObject(InventoryItem.class);
+            if (item == null) {
+                throw new FirebaseFirestoreException("Inventory item not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            item.setInventoryId(snapshot.getId());
 
-        for (InventoryItem item : inventoryCache.values()) {
-            if (item.needsReorder()) {
-                lowStockItems.add(item);
+            Map<String, Object> updates = recomputeDerivedFields(item);
+            if (!isRingInOrder(snapshot, item)) {
+                if (updates == null) {
+                    updates = new HashMap<>();
+                }
+                updates.put("recentMovements", item.getRecentMovements());
             }
+            if (updates != null) {
+                transaction.update(itemRef, updates);
+            }
+            return item;
+        }).addOnSuccessListener(item -> deliverMovement(item, movement, callback))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to refresh derived stock fields for " + inventoryId, e);
+                    deliverMovement(projected, movement, callback);
+                });
+    }
+
+    /**
+     * Whether the stored recent ring is already newest first and within its cap, as the item read it
+     */
+    private static boolean isRingInOrder(DocumentSnapshot snapshot, InventoryItem item) {
+        Object stored = snapshot.get("recentMovements");
+        if (!(stored instanceof List)) {
+            return true;
+        }
+        List<?> storedRing = (List<?>) stored;
+        List<InventoryItem.InventoryMovement> ring = item.getRecentMovements();
+        if (storedRing.size() != ring.size()) {
+            return false;
+        }
+        for (int i = 0; i < ring.size(); i++) {
+            Object entry = storedRing.get(i);
+            if (!(entry instanceof Map) || !Objects.equals(((Map<?, ?>) entry).get("movementId"), ring.get(i).getMovementId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply a movement that was written blind to a local copy, as the increments will land
+     */
+    private void applyLocally(InventoryItem item, InventoryItem.InventoryMovement movement) {
+        item.applyMovement(movement);
+        if (movement.getQuantity() < 0) {
+            item.setUnpickedUnits(item.getUnpickedUnits() - movement.getQuantity());
+        }
+        recomputeDerivedFields(item);
+    }
+
+    /**
+     * Recompute item's derived fields in place; returns the changed fields, or null if none changed
+     */
+    private Map<String, Object> recomputeDerivedFields(InventoryItem item) {
+        double totalValue = item.getTotalValue();
+        double potentialLossValue = item.getPotentialLossValue();
+        boolean lowStockAlert = item.isLowStockAlert();
+        String alertLevel = item.getAlertLevel();
+        long expiryEpochDay = item.getExpiryEpochDay();
+
+        item.calculateTotalValue();
+        item.checkAlertLevels();
+        item.refreshLotSummary(); // Sales may have emptied the lot that was next
+
+        if (totalValue == item.getTotalValue() && potentialLossValue == item.getPotentialLossValue()
+                && lowStockAlert == item.isLowStockAlert() && item.getAlertLevel().equals(alertLevel)
+                && expiryEpochDay == item.getExpiryEpochDay()) {
+            return null;
+        }
+        Map<String, Object> derivedFields = new HashMap<>();
+        derivedFields.put("totalValue", item.getTotalValue());
+        derivedFields.put("potentialLossValue", item.getPotentialLossValue());
+        derivedFields.put("lowStockAlert", item.isLowStockAlert());
+        derivedFields.put("alertLevel", item.getAlertLevel());
+        if (expiryEpochDay != item.getExpiryEpochDay()) {
+            derivedFields.put("batchNumber", item.getBatchNumber());
+            derivedFields.put("expiryDate", item.getExpiryDate());
+            derivedFields.put("expiryEpochDay", item.getExpiryEpochDay());
+        }
+        return derivedFields;
+    }
+
+    private void deliverMovement(InventoryItem item, InventoryItem.InventoryMovement movement, StockMovementCallback callback) {
+        putCachedItem(item.getInventoryId(), item);
+
+        // Notify listeners
+        listeners.dispatch(listener -> listener.onStockUpdated(item, movement.getMovementType(), movement.getQuantity()));
+
+        // Check for alerts
+        checkAndCreateAlerts(item);
+
+        if (callback != null) callback.onSuccess(item);
+    }
+
+    /**
+     * Load one page of an item's movement log, newest first
+     * Pass null to start from the newest movement, then the ID of the last movement already shown
+     */
+    public void getMovementHistory(String inventoryId, String afterMovementId, int pageSize,
+                                   MovementHistoryCallback callback) {
+        Query query = FirebaseUtils.getInventoryItemLogsQuery(inventoryId, pageSize);
+        if (afterMovementId != null) {
+            query = query.startAfter(afterMovementId);
         }
 
-        // Sort by urgency (lowest stock first)
-        lowStockItems.sort(Comparator.comparingInt(InventoryItem::getCurrentStock));
+        query.get()
+                .addOnSuccessListener(snapshots -> {
+                    List<InventoryItem.InventoryMovement> movements = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : snapshots) {
+                        InventoryItem.InventoryMovement movement = document.toObject(InventoryItem.InventoryMovement.class);
+                        movement.setMovementId(document.getId());
+                        movements.add(movement);
+                    }
+                    if (callback != null) callback.onSuccess(movements, movements.size() == pageSize);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load movement history", e);
+                    if (callback != null) callback.onFailure(e.getMessage());
+                });
+    }
+
+    /**
+     * Check for low stock items
+     * Served from the maintained reorder sets, already ordered lowest stock first
+     */
+    public void checkLowStock(InventoryAnalysisCallback callback) {
+        List<InventoryItem> lowStockItems = aggregates.getReorderItems();
 
         Map<String, Object> analysis = new HashMap<>();
         analysis.put("lowStockItems", lowStockItems);
@@ -257,28 +615,15 @@ public class InventoryManager {
 
     /**
      * Check for expiring items
+     * Range read on the expiry index, already ordered earliest first
      */
     public void checkExpiringItems(InventoryAnalysisCallback callback) {
-        List<InventoryItem> expiringItems = new ArrayList<>();
-        Date today = new Date();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(today);
-        calendar.add(Calendar.DAY_OF_MONTH, DEFAULT_EXPIRY_WARNING_DAYS);
-        Date warningDate = calendar.getTime();
-
-        for (InventoryItem item : inventoryCache.values()) {
-            if (item.getExpiryDate() != null && isItemExpiring(item, warningDate)) {
-                expiringItems.add(item);
-            }
-        }
-
-        // Sort by expiry date (earliest first)
-        expiringItems.sort(Comparator.comparing(InventoryItem::getExpiryDate));
+        List<InventoryItem> expiringItems = expiryIndex.getExpiringWithin(DEFAULT_EXPIRY_WARNING_DAYS);
 
         Map<String, Object> analysis = new HashMap<>();
         analysis.put("expiringItems", expiringItems);
         analysis.put("totalCount", expiringItems.size());
-        analysis.put("checkedAt", today);
+        analysis.put("checkedAt", new Date());
         analysis.put("warningDays", DEFAULT_EXPIRY_WARNING_DAYS);
 
         if (callback != null) callback.onSuccess(analysis);
@@ -286,33 +631,58 @@ public class InventoryManager {
 
     /**
      * Generate restock suggestions
+     * Items with a consumption history are suggested when their projected stock-out falls
+     * within lead time plus a safety margin, for enough to cover lead time plus COVER_DAYS;
+     * items without one fall back to the static reorder point and quantity
      */
     public void generateRestockSuggestions(InventoryAnalysisCallback callback) {
         List<Map<String, Object>> suggestions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, InventoryItem> entry : inventoryCache.entrySet()) {
+            InventoryItem item = entry.getValue();
+            int leadHours = item.getLeadTimeDays() * 24;
+            RestockForecaster.Forecast forecast = forecaster.forecast(
+                    entry.getKey(), item.getCurrentStock(), leadHours + COVER_DAYS * 24, now);
 
-        for (InventoryItem item : inventoryCache.values()) {
-            if (item.needsReorder()) {
-                Map<String, Object> suggestion = new HashMap<>();
-                suggestion.put("itemId", item.getItemId());
-                suggestion.put("itemName", item.getItemName());
-                suggestion.put("currentStock", item.getCurrentStock());
-                suggestion.put("reorderPoint", item.getReorderPoint());
-                suggestion.put("reorderQuantity", item.getReorderQuantity());
-                suggestion.put("supplierName", item.getSupplierName());
-                suggestion.put("supplierContact", item.getSupplierContact());
-                suggestion.put("leadTimeDays", item.getLeadTimeDays());
-                suggestion.put("urgency", calculateUrgency(item));
-                suggestion.put("suggestedOrderDate", calculateSuggestedOrderDate(item));
-
-                suggestions.add(suggestion);
+            boolean dueByForecast = forecast != null && forecast.hoursToStockout <= leadHours + SAFETY_DAYS * 24;
+            if (!dueByForecast && !item.needsReorder()) {
+                continue;
             }
+
+            Map<String, Object> suggestion = new HashMap<>();
+            suggestion.put("itemId", item.getItemId());
+            suggestion.put("itemName", item.getItemName());
+            suggestion.put("currentStock", item.getCurrentStock());
+            suggestion.put("reorderPoint", item.getReorderPoint());
+            suggestion.put("reorderQuantity", calculateSuggestedQuantity(item, forecast));
+            suggestion.put("supplierName", item.getSupplierName());
+            suggestion.put("supplierContact", item.getSupplierContact());
+            suggestion.put("leadTimeDays", item.getLeadTimeDays());
+            suggestion.put("urgency", calculateUrgency(item, forecast));
+            suggestion.put("suggestedOrderDate", calculateSuggestedOrderDate(item, forecast, now));
+            if (forecast != null) {
+                suggestion.put("dailyVelocity", forecast.dailyVelocity);
+                suggestion.put("hoursToStockout", forecast.hoursToStockout);
+                suggestion.put("projectedStockoutDate", new Date(now + (long) (forecast.hoursToStockout * 60 * 60 * 1000)));
+            }
+
+            suggestions.add(suggestion);
         }
 
-        // Sort by urgency
+        // Sort by urgency, then soonest projected stock-out, then lowest stock
         suggestions.sort((a, b) -> {
-            String urgencyA = (String) a.get("urgency");
-            String urgencyB = (String) b.get("urgency");
-            return getUrgencyLevel(urgencyB) - getUrgencyLevel(urgencyA);
+            int byUrgency = getUrgencyLevel((String) b.get("urgency")) - getUrgencyLevel((String) a.get("urgency"));
+            if (byUrgency != 0) {
+                return byUrgency;
+            }
+            int byStockout = Double.compare(
+                    (Double) a.getOrDefault("hoursToStockout", Double.MAX_VALUE),
+                    (Double) b.getOrDefault("hoursToStockout", Double.MAX_VALUE));
+            if (byStockout != 0) {
+                return byStockout;
+            }
+            return Integer.compare((Integer) a.get("currentStock"), (Integer) b.get("currentStock"));
         });
 
         Map<String, Object> analysis = new HashMap<>();
@@ -328,33 +698,18 @@ public class InventoryManager {
      * Calculate total inventory value
      */
     public void calculateInventoryValue(InventoryAnalysisCallback callback) {
-        double totalValue = 0.0;
-        double potentialLossValue = 0.0;
-        int totalItems = 0;
-        int outOfStockItems = 0;
-        int lowStockItems = 0;
-
-        for (InventoryItem item : inventoryCache.values()) {
-            totalValue += item.getTotalValue();
-            potentialLossValue += item.getPotentialLossValue();
-            totalItems += item.getCurrentStock();
-
-            if (item.getCurrentStock() <= 0) {
-                outOfStockItems++;
-            } else if (item.needsReorder()) {
-                lowStockItems++;
-            }
-        }
+        double totalValue = aggregates.getTotalValue();
+        int uniqueProducts = aggregates.getItemCount();
 
         Map<String, Object> analysis = new HashMap<>();
         analysis.put("totalValue", totalValue);
-        analysis.put("potentialLossValue", potentialLossValue);
-        analysis.put("totalItems", totalItems);
-        analysis.put("outOfStockItems", outOfStockItems);
-        analysis.put("lowStockItems", lowStockItems);
-        analysis.put("uniqueProducts", inventoryCache.size());
+        analysis.put("potentialLossValue", aggregates.getPotentialLossValue());
+        analysis.put("totalItems", (int) aggregates.getTotalUnits());
+        analysis.put("outOfStockItems", aggregates.getOutOfStockCount());
+        analysis.put("lowStockItems", aggregates.getLowStockCount());
+        analysis.put("uniqueProducts", uniqueProducts);
         analysis.put("calculatedAt", new Date());
-        analysis.put("averageItemValue", inventoryCache.size() > 0 ? totalValue / inventoryCache.size() : 0);
+        analysis.put("averageItemValue", uniqueProducts > 0 ? totalValue / uniqueProducts : 0);
 
         if (callback != null) callback.onSuccess(analysis);
     }
@@ -363,14 +718,8 @@ public class InventoryManager {
      * Get waste percentage
      */
     public void getWastePercentage(InventoryAnalysisCallback callback) {
-        double totalWasted = 0.0;
-        double totalStocked = 0.0;
-
-        for (InventoryItem item : inventoryCache.values()) {
-            totalWasted += item.getWasted();
-            totalStocked += item.getStockIn() + item.getStockOut() + item.getWasted() + item.getAdjusted();
-        }
-
+        double totalWasted = aggregates.getTotalWasted();
+        double totalStocked = aggregates.getTotalStocked();
         double wastePercentage = totalStocked > 0 ? (totalWasted / totalStocked) * 100 : 0;
 
         Map<String, Object> analysis = new HashMap<>();
@@ -382,6 +731,13 @@ public class InventoryManager {
         if (callback != null) callback.onSuccess(analysis);
     }
 
+    /**
+     * Servings of a dish that monitored stock can make, in O(recipe size)
+     */
+    public int getServingsAvailable(FoodItem foodItem) {
+        return foodItem != null ? foodItem.calculateServingsAvailable(inventoryCache) : 0;
+    }
+
     // Real-time Monitoring
 
     /**
@@ -394,9 +750,21 @@ public class InventoryManager {
 
         isMonitoringActive = true;
         Log.d(TAG, "Starting real-time inventory monitoring");
+        expiryIndex.start();
+
+        // Restore open alerts first, so items still in an alert state coalesce into them
+        alertStore.load(openAlerts -> attachInventoryListener());
+    }
+
+    /**
+     * Set up Firestore listener for inventory changes
+     */
+    private void attachInventoryListener() {
+        if (!isMonitoringActive || inventoryRegistration != null) {
+            return; // Stopped while alerts were loading, or a restart already attached
+        }
 
-        // Set up Firestore listener for inventory changes
-        FirebaseUtils.getInventoryCollection()
+        inventoryRegistration = FirebaseUtils.getInventoryCollection()
                 .addSnapshotListener((snapshots, e) -> {
                     if (e != null) {
                         Log.e(TAG, "Listen failed.", e);
@@ -429,15 +797,38 @@ public class InventoryManager {
      */
     public void stopMonitoring() {
         isMonitoringActive = false;
+        if (inventoryRegistration != null) {
+            inventoryRegistration.remove();
+            inventoryRegistration = null;
+        }
+        expiryIndex.stop();
+        alertStore.flush();
         Log.d(TAG, "Stopped real-time inventory monitoring");
     }
 
     /**
-     * Add inventory change listener
+     * Add inventory change listener, delivered on the main thread; an existing listener with
+     * the same ID is replaced
      */
     public void addInventoryChangeListener(String id, InventoryChangeListener listener) {
+        addInventoryChangeListener(id, listener, ListenerRegistry.MAIN_THREAD);
+    }
+
+    /**
+     * Add inventory change listener, delivered on executor
+     */
+    public void addInventoryChangeListener(String id, InventoryChangeListener listener, Executor executor) {
         if (listener != null) {
-            listeners.put(id, listener);
+            listeners.add(id, listener, executor);
+        }
+    }
+
+    /**
+     * Add inventory change listener that is removed when owner is destroyed; call on the main thread
+     */
+    public void addInventoryChangeListener(LifecycleOwner owner, String id, InventoryChangeListener listener) {
+        if (owner != null && listener != null) {
+            listeners.add(owner, id, listener, ListenerRegistry.MAIN_THREAD);
         }
     }
 
@@ -448,38 +839,52 @@ public class InventoryManager {
         listeners.remove(id);
     }
 
+    /**
+     * Stop monitoring and release the expiry timer thread; the next getInstance starts fresh
+     */
+    public void shutdown() {
+        stopMonitoring();
+        listeners.clear();
+        if (lane != null && !lane.isShutdown()) {
+            lane.shutdown();
+        }
+        synchronized (InventoryManager.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+    }
+
     // Alert Management
 
     /**
      * Get active alerts
      */
     public List<InventoryAlert> getActiveAlerts() {
-        return new ArrayList<>(activeAlerts);
+        return alertStore.getOpenAlerts();
     }
 
     /**
      * Get alerts by type
      */
     public List<InventoryAlert> getAlertsByType(InventoryAlert.AlertType type) {
-        List<InventoryAlert> filteredAlerts = new ArrayList<>();
-        for (InventoryAlert alert : activeAlerts) {
-            if (alert.getAlertType() == type && !alert.isResolved()) {
-                filteredAlerts.add(alert);
-            }
-        }
-        return filteredAlerts;
+        return alertStore.getOpenAlerts(type);
+    }
+
+    /**
+     * Get open alerts for an item
+     */
+    public List<InventoryAlert> getAlertsForItem(String itemId) {
+        return alertStore.getOpenAlertsForItem(itemId);
     }
 
     /**
      * Resolve alert
      */
     public void resolveAlert(String alertId, String resolvedBy) {
-        for (InventoryAlert alert : activeAlerts) {
-            if (alert.getAlertId().equals(alertId)) {
-                alert.setResolved(true);
-                Log.d(TAG, "Alert resolved: " + alert.getMessage());
-                break;
-            }
+        InventoryAlert alert = alertStore.resolve(alertId);
+        if (alert != null) {
+            Log.d(TAG, "Alert resolved by " + resolvedBy + ": " + alert.getMessage());
         }
     }
 
@@ -507,49 +912,145 @@ public class InventoryManager {
 
     /**
      * Batch update stock for multiple items
+     * Each item's increments and log entry are packed into write batches of up to 500 writes,
+     * all batches commit in parallel, and the callback runs once every batch has settled: one
+     * round trip to read the items, one to commit. Only increments are sent, so a movement
+     * committed by another writer in between is never overwritten; each item's derived value
+     * and alert fields are then refreshed from its post-commit state, and the result lists the
+     * local projections.
      */
     public void batchUpdateStock(Map<String, Integer> stockUpdates, String reason, String performedBy,
                                 InventoryAnalysisCallback callback) {
         List<String> failedItems = new ArrayList<>();
-        List<InventoryItem> updatedItems = new ArrayList<>();
-
+        Map<String, Integer> validUpdates = new LinkedHashMap<>();
         for (Map.Entry<String, Integer> entry : stockUpdates.entrySet()) {
-            String itemId = entry.getKey();
-            int quantity = entry.getValue();
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue() == 0) {
+                failedItems.add(entry.getKey() + ": Invalid item ID or quantity");
+            } else {
+                validUpdates.put(entry.getKey(), entry.getValue());
+            }
+        }
 
-            updateStock(itemId, quantity, reason, performedBy, new StockMovementCallback() {
-                @Override
-                public void onSuccess(InventoryItem item) {
-                    updatedItems.add(item);
+        // Read fresh rather than from the cache: it gives the log entries their context and
+        // keeps a missing item from failing the whole batch it would have gone into
+        loadInventoryItems(validUpdates.keySet(), (items, readErrors) -> {
+            List<PendingBatch> batches = new ArrayList<>();
+            PendingBatch current = null;
+
+            for (Map.Entry<String, Integer> entry : validUpdates.entrySet()) {
+                String itemId = entry.getKey();
+                int quantity = entry.getValue();
+                InventoryItem item = items.get(itemId);
+                if (item == null) {
+                    String readError = readErrors.get(itemId);
+                    failedItems.add(itemId + ": " + (readError != null ? readError : "Inventory item not found"));
+                    continue;
                 }
 
-                @Override
-                public void onFailure(String error) {
-                    failedItems.add(itemId + ": " + error);
+                if (current == null || current.writes + WRITES_PER_MOVEMENT > MAX_BATCH_WRITES) {
+                    current = new PendingBatch(FirebaseUtils.getFirestore().batch());
+                    batches.add(current);
                 }
-            });
-        }
+                InventoryItem.InventoryMovement movement = item.newMovement(
+                        quantity > 0 ? "STOCK_IN" : "STOCK_OUT", quantity, reason, performedBy, "");
+                current.batch.update(FirebaseUtils.getInventoryItemDocument(itemId), buildMovementUpdate(movement));
+                current.batch.set(FirebaseUtils.getInventoryItemLogsCollection(itemId).document(movement.getMovementId()), movement);
+                current.writes += WRITES_PER_MOVEMENT;
+                current.movements.put(itemId, movement);
+            }
+
+            List<Task<Void>> commits = new ArrayList<>();
+            for (PendingBatch pending : batches) {
+                commits.add(pending.batch.commit());
+            }
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("updatedItems", updatedItems);
-        result.put("failedItems", failedItems);
-        result.put("totalUpdates", stockUpdates.size());
-        result.put("successCount", updatedItems.size());
-        result.put("failureCount", failedItems.size());
-        result.put("performedAt", new Date());
+            Tasks.whenAllComplete(commits).addOnCompleteListener(settled -> {
+                List<InventoryItem> updatedItems = new ArrayList<>();
+                for (int i = 0; i < batches.size(); i++) {
+                    Task<Void> commit = commits.get(i);
+                    if (commit.isSuccessful()) {
+                        for (Map.Entry<String, InventoryItem.InventoryMovement> entry : batches.get(i).movements.entrySet()) {
+                            InventoryItem item = items.get(entry.getKey());
+                            applyLocally(item, entry.getValue());
+                            refreshAfterMovement(entry.getKey(), item, entry.getValue(), null);
+                            updatedItems.add(item);
+                        }
+                    } else {
+                        String error = commit.getException() != null ? commit.getException().getMessage() : "Batch write failed";
+                        Log.e(TAG, "Stock batch failed", commit.getException());
+                        for (String itemId : batches.get(i).movements.keySet()) {
+                            failedItems.add(itemId + ": " + error);
+                        }
+                    }
+                }
 
-        if (callback != null) callback.onSuccess(result);
+                Map<String, Object> result = new HashMap<>();
+                result.put("updatedItems", updatedItems);
+                result.put("failedItems", failedItems);
+                result.put("totalUpdates", stockUpdates.size());
+                result.put("successCount", updatedItems.size());
+                result.put("failureCount", failedItems.size());
+                result.put("batchCount", batches.size());
+                result.put("performedAt", new Date());
+
+                Log.d(TAG, "Batch stock update: " + updatedItems.size() + " updated, " + failedItems.size() + " failed");
+                if (callback != null) callback.onSuccess(result);
+            });
+        });
     }
 
     // Helper Methods
 
+    /**
+     * Load several inventory items by document ID, in chunks of MAX_IDS_PER_QUERY queried in parallel
+     * Missing items are left out; items in a chunk that could not be read are left out too,
+     * with the read error recorded against each of their IDs
+     */
+    private void loadInventoryItems(Collection<String> itemIds, InventoryItemsCallback callback) {
+        Map<String, InventoryItem> items = new HashMap<>();
+        Map<String, String> readErrors = new HashMap<>();
+        List<String> toFetch = new ArrayList<>(itemIds);
+
+        List<List<String>> chunks = new ArrayList<>();
+        List<Task<QuerySnapshot>> reads = new ArrayList<>();
+        for (int i = 0; i < toFetch.size(); i += MAX_IDS_PER_QUERY) {
+            List<String> chunk = new ArrayList<>(toFetch.subList(i, Math.min(i + MAX_IDS_PER_QUERY, toFetch.size())));
+            chunks.add(chunk);
+            reads.add(FirebaseUtils.getInventoryCollection()
+                    .whereIn(FieldPath.documentId(), chunk)
+                    .get());
+        }
+
+        Tasks.whenAllComplete(reads).addOnCompleteListener(settled -> {
+            for (int i = 0; i < reads.size(); i++) {
+                Task<QuerySnapshot> read = reads.get(i);
+                if (!read.isSuccessful()) {
+                    Log.e(TAG, "Failed to load inventory items", read.getException());
+                    String error = "Failed to read item: " + (read.getException() != null
+                            ? read.getException().getMessage() : "unknown error");
+                    for (String itemId : chunks.get(i)) {
+                        readErrors.put(itemId, error);
+                    }
+                    continue;
+                }
+                for (QueryDocumentSnapshot document : read.getResult()) {
+                    InventoryItem item = document.toObject(InventoryItem.class);
+                    item.setInventoryId(document.getId());
+                    items.put(document.getId(), item);
+                }
+            }
+            callback.onLoaded(items, readErrors);
+        });
+    }
+
     /**
      * Get inventory item
      */
     private void getInventoryItem(String itemId, InventoryItemCallback callback) {
         // Check cache first
-        if (inventoryCache.containsKey(itemId)) {
-            if (callback != null) callback.onSuccess(inventoryCache.get(itemId));
+        InventoryItem cached = inventoryCache.get(itemId);
+        if (cached != null) {
+            if (callback != null) callback.onSuccess(cached);
             return;
         }
 
@@ -557,14 +1058,13 @@ public class InventoryManager {
         FirebaseUtils.getInventoryItemDocument(itemId)
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        InventoryItem item = documentSnapshot.toObject(InventoryItem.class);
-                        item.setInventoryId(documentSnapshot.getId());
-                        inventoryCache.put(itemId, item);
-                        if (callback != null) callback.onSuccess(item);
-                    } else {
+                    InventoryItem item = documentSnapshot.toObject(InventoryItem.class);
+                    if (item == null) {
                         if (callback != null) callback.onFailure("Inventory item not found");
+                        return;
                     }
+                    item.setInventoryId(documentSnapshot.getId());
+                    if (callback != null) callback.onSuccess(item);
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to get inventory item", e);
@@ -573,89 +1073,189 @@ public class InventoryManager {
     }
 
     /**
-     * Check if item is expiring
+     * Cache an item and move its contribution in the running aggregates
      */
-    private boolean isItemExpiring(InventoryItem item, Date warningDate) {
-        if (item.getExpiryDate() == null || item.getExpiryDate().isEmpty()) {
-            return false;
+    private void putCachedItem(String key, InventoryItem item) {
+        inventoryCache.put(key, item);
+        aggregates.update(key, item);
+        forecaster.observe(key, item, System.currentTimeMillis());
+        if (expiryIndex.update(key, item)) {
+            createExpiryAlert(item);
+        } else if (!item.isExpiringSoon()) {
+            // Restocked with a later batch: close any open expiry alert
+            evaluateAlert(item, InventoryAlert.AlertType.EXPIRY, false, true, null, null, null);
         }
+    }
 
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-            Date expiryDate = sdf.parse(item.getExpiryDate());
-            return expiryDate.before(warningDate);
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing expiry date", e);
-            return false;
-        }
+    private InventoryItem removeCachedItem(String key) {
+        InventoryItem item = inventoryCache.remove(key);
+        aggregates.update(key, null);
+        forecaster.remove(key);
+        expiryIndex.update(key, null);
+        return item;
     }
 
     /**
      * Check and create alerts for item
+     * Each condition has separate raise and clear levels, so only crossings create alerts
      */
     private void checkAndCreateAlerts(InventoryItem item) {
-        // Check for low stock
-        if (item.needsReorder()) {
-            createAlert(item, InventoryAlert.AlertType.LOW_STOCK,
-                    item.getCurrentStock() <= 0 ? "Item is out of stock" :
-                    "Item is running low on stock (" + item.getCurrentStock() + " remaining)",
-                    "Restock Item",
-                    "/inventory/" + item.getItemId());
+        checkAlert(item, InventoryAlert.AlertType.OUT_OF_STOCK);
+        checkAlert(item, InventoryAlert.AlertType.LOW_STOCK);
+        // Expiry is reported by the expiry index as the item enters its warning window
+        checkAlert(item, InventoryAlert.AlertType.QUALITY);
+    }
+
+    /**
+     * Evaluate one alert condition for item
+     */
+    private void checkAlert(InventoryItem item, InventoryAlert.AlertType alertType) {
+        int stock = item.getCurrentStock();
+        int clearMargin = Math.max(MIN_CLEAR_MARGIN, (int) Math.ceil(item.getReorderPoint() * CLEAR_MARGIN_RATIO));
+        String itemUrl = "/inventory/" + item.getItemId();
+
+        switch (alertType) {
+            case OUT_OF_STOCK:
+                evaluateAlert(item, alertType, stock <= 0, stock >= clearMargin,
+                        "Item is out of stock", "Restock Item", itemUrl);
+                break;
+
+            case LOW_STOCK:
+                evaluateAlert(item, alertType,
+                        item.needsReorder(), stock > item.getReorderPoint() + clearMargin,
+                        "Item is running low on stock (" + stock + " remaining)", "Restock Item", itemUrl);
+                break;
+
+            case EXPIRY:
+                if (item.isExpiringSoon()) {
+                    createExpiryAlert(item);
+                }
+                break;
+
+            case QUALITY:
+                boolean qualityIssue = item.getQualityStatus() != null && !"Good".equals(item.getQualityStatus());
+                evaluateAlert(item, alertType, qualityIssue, !qualityIssue,
+                        "Quality issue: " + item.getQualityStatus(), "Quality Check Required", itemUrl);
+                break;
+        }
+    }
+
+    /**
+     * Create expiry alert for an item entering its warning window
+     */
+    private void createExpiryAlert(InventoryItem item) {
+        int days = item.getDaysToExpiry();
+        evaluateAlert(item, InventoryAlert.AlertType.EXPIRY, true, false,
+                days < 0 ? "Item expired on " + item.getExpiryDate() : "Item expires on " + item.getExpiryDate(),
+                "Manage Expiring Stock",
+                "/inventory/expiring");
+    }
+
+    /**
+     * Pass one observation through the alert gate and act on its decision
+     */
+    private void evaluateAlert(InventoryItem item, InventoryAlert.AlertType alertType, boolean raise, boolean clear,
+                               String message, String actionRequired, String actionUrl) {
+        InventoryAlertGate.Decision decision =
+                alertGate.observe(item.getItemId(), alertType, raise, clear, System.currentTimeMillis());
+
+        switch (decision) {
+            case RAISE:
+                // An alert restored from Firestore is still open; count the crossing against it
+                if (alertStore.recordOccurrence(item.getItemId(), alertType, message, 1) == null) {
+                    createAlert(item, alertType, message, actionRequired, actionUrl);
+                }
+                break;
+
+            case COALESCE:
+                alertStore.recordOccurrence(item.getItemId(), alertType, message, 1);
+                break;
+
+            case CLEAR:
+                resolveOpenAlert(item, alertType);
+                break;
+
+            case SUPPRESS:
+                Log.d(TAG, "Alert budget spent, holding " + alertType + " for " + item.getItemName());
+                scheduleAlertRetry(item, alertType);
+                break;
+
+            default:
+                // A restored alert has no gate state; clear it on the first observation past its clear level
+                if (clear) {
+                    resolveOpenAlert(item, alertType);
+                }
+                break;
         }
+    }
 
-        // Check for expiry
-        if (item.isExpiringSoon()) {
-            createAlert(item, InventoryAlert.AlertType.EXPIRY,
-                    "Item expires on " + item.getExpiryDate(),
-                    "Manage Expiring Stock",
-                    "/inventory/expiring");
+    /**
+     * Re-check a held-back crossing against the current cached item once its budget returns
+     */
+    private void scheduleAlertRetry(InventoryItem item, InventoryAlert.AlertType alertType) {
+        String key = item.getInventoryId();
+        long delay = alertGate.getRetryAt(item.getItemId(), alertType) - System.currentTimeMillis();
+        try {
+            lane.schedule(() -> {
+                InventoryItem current = key != null ? inventoryCache.get(key) : null;
+                if (current != null) {
+                    checkAlert(current, alertType);
+                }
+            }, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Shut down, dropping alert retry for " + item.getItemName());
         }
+    }
 
-        // Check for quality issues
-        if (item.getQualityStatus() != null && !"Good".equals(item.getQualityStatus())) {
-            createAlert(item, InventoryAlert.AlertType.QUALITY,
-                    "Quality issue: " + item.getQualityStatus(),
-                    "Quality Check Required",
-                    "/inventory/" + item.getItemId());
+    private void resolveOpenAlert(InventoryItem item, InventoryAlert.AlertType alertType) {
+        InventoryAlert clearedAlert = alertStore.resolve(item.getItemId(), alertType);
+        if (clearedAlert != null) {
+            Log.d(TAG, "Alert cleared: " + clearedAlert.getMessage());
         }
     }
 
     /**
-     * Create inventory alert
+     * Create inventory alert and deliver it to listeners and admin notifications
      */
     private void createAlert(InventoryItem item, InventoryAlert.AlertType alertType,
                             String message, String actionRequired, String actionUrl) {
-        // Check if similar alert already exists
-        for (InventoryAlert existingAlert : activeAlerts) {
-            if (existingAlert.getItemId().equals(item.getItemId()) &&
-                existingAlert.getAlertType() == alertType &&
-                !existingAlert.isResolved()) {
-                return; // Alert already exists
-            }
-        }
-
-        // Create new alert
         InventoryAlert alert = new InventoryAlert(item.getItemId(), item.getItemName(), alertType, message);
         alert.setActionRequired(actionRequired);
         alert.setActionUrl(actionUrl);
 
-        activeAlerts.add(alert);
+        // Crossings dropped by the hourly budget are carried into this alert's count
+        int suppressed = alertGate.takeSuppressed(item.getItemId(), alertType);
+        if (suppressed > 0) {
+            alert.recordOccurrence(message, suppressed);
+        }
+
+        // Only the device that creates the alert notifies admins
+        AdminNotification notification = createNotificationFromAlert(alert);
+        if (!alertStore.add(alert, () -> NotificationManager.getInstance().sendMonitoringAlert(notification))) {
+            alertStore.recordOccurrence(item.getItemId(), alertType, message, alert.getOccurrenceCount());
+            return;
+        }
         Log.d(TAG, "Created inventory alert: " + alert.getMessage());
 
         // Notify listeners
-        for (InventoryChangeListener listener : listeners.values()) {
-            if (alertType == InventoryAlert.AlertType.LOW_STOCK) {
-                listener.onLowStockAlert(item);
-            } else if (alertType == InventoryAlert.AlertType.EXPIRY) {
-                listener.onExpiryAlert(item);
-            }
+        if (alertType == InventoryAlert.AlertType.LOW_STOCK || alertType == InventoryAlert.AlertType.OUT_OF_STOCK) {
+            listeners.dispatch(listener -> listener.onLowStockAlert(item));
+        } else if (alertType == InventoryAlert.AlertType.EXPIRY) {
+            listeners.dispatch(listener -> listener.onExpiryAlert(item));
         }
     }
 
     /**
      * Calculate urgency level
      */
-    private String calculateUrgency(InventoryItem item) {
+    private String calculateUrgency(InventoryItem item, RestockForecaster.Forecast forecast) {
+        if (forecast != null && item.getCurrentStock() > 0) {
+            if (forecast.hoursToStockout < item.getLeadTimeDays() * 24) {
+                return "Critical"; // Runs out before an order placed now can arrive
+            } else if (forecast.hoursToStockout <= (item.getLeadTimeDays() + SAFETY_DAYS) * 24) {
+                return "High";
+            }
+        }
         if (item.getCurrentStock() <= 0) {
             return "Critical";
         } else if (item.getCurrentStock() <= item.getLowStockThreshold()) {
@@ -681,15 +1281,39 @@ public class InventoryManager {
     }
 
     /**
-     * Calculate suggested order date
+     * Calculate suggested order date: lead time before the projected stock-out, never in the past
+     * Without a forecast the item is already at its reorder point, so order today
      */
-    private String calculateSuggestedOrderDate(InventoryItem item) {
+    private String calculateSuggestedOrderDate(InventoryItem item, RestockForecaster.Forecast forecast, long now) {
         Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.DAY_OF_MONTH, item.getLeadTimeDays());
+        calendar.setTimeInMillis(now);
+        if (forecast != null) {
+            long orderBy = now + (long) (forecast.hoursToStockout * 60 * 60 * 1000)
+                    - item.getLeadTimeDays() * 24L * 60 * 60 * 1000;
+            calendar.setTimeInMillis(Math.max(now, orderBy));
+        }
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
         return sdf.format(calendar.getTime());
     }
 
+    /**
+     * Calculate order quantity covering projected demand over lead time plus COVER_DAYS,
+     * capped at the item's maximum stock; static reorder quantity without a forecast
+     */
+    private int calculateSuggestedQuantity(InventoryItem item, RestockForecaster.Forecast forecast) {
+        int stock = Math.max(item.getCurrentStock(), 0);
+        int quantity = forecast != null
+                ? (int) Math.ceil(forecast.demandOverHorizon - stock)
+                : item.getReorderQuantity();
+        if (quantity <= 0) {
+            quantity = item.getReorderQuantity(); // At the reorder point, but demand is covered
+        }
+        if (item.getMaximumStock() > stock) {
+            quantity = Math.min(quantity, item.getMaximumStock() - stock);
+        }
+        return Math.max(quantity, 1);
+    }
+
     /**
      * Calculate total restock cost
      */
@@ -705,34 +1329,29 @@ public class InventoryManager {
     // Event Handlers
 
     private void handleNewItem(InventoryItem item) {
-        inventoryCache.put(item.getInventoryId(), item);
+        putCachedItem(item.getInventoryId(), item);
         checkAndCreateAlerts(item);
 
-        for (InventoryChangeListener listener : listeners.values()) {
-            listener.onNewItemAdded(item);
-        }
+        listeners.dispatch(listener -> listener.onNewItemAdded(item));
     }
 
     private void handleModifiedItem(InventoryItem item) {
-        InventoryItem previousItem = inventoryCache.get(item.getInventoryId());
-        inventoryCache.put(item.getInventoryId(), item);
+        putCachedItem(item.getInventoryId(), item);
         checkAndCreateAlerts(item);
 
-        for (InventoryChangeListener listener : listeners.values()) {
-            listener.onInventoryChanged(item);
-        }
+        listeners.dispatch(listener -> listener.onInventoryChanged(item));
     }
 
     private void handleRemovedItem(String itemId) {
-        InventoryItem item = inventoryCache.remove(itemId);
+        InventoryItem item = removeCachedItem(itemId);
 
         // Remove related alerts
-        activeAlerts.removeIf(alert -> alert.getItemId().equals(itemId));
+        String alertItemId = item != null && item.getItemId() != null ? item.getItemId() : itemId;
+        alertStore.removeItem(alertItemId);
+        alertGate.forget(alertItemId);
 
         if (item != null) {
-            for (InventoryChangeListener listener : listeners.values()) {
-                listener.onItemRemoved(item);
-            }
+            listeners.dispatch(listener -> listener.onItemRemoved(item));
         }
     }
 
@@ -743,4 +1362,21 @@ public class InventoryManager {
         void onSuccess(InventoryItem item);
         void onFailure(String error);
     }
+
+    private interface InventoryItemsCallback {
+        void onLoaded(Map<String, InventoryItem> items, Map<String, String> readErrors);
+    }
+
+    /**
+     * Write batch being filled, with the movements it carries
+     */
+    private static class PendingBatch {
+        final WriteBatch batch;
+        final Map<String, InventoryItem.InventoryMovement> movements = new LinkedHashMap<>();
+        int writes;
+
+        PendingBatch(WriteBatch batch) {
+            this.batch = batch;
+        }
+    }
 }
\ No newline at end of file
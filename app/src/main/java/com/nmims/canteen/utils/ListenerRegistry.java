@@ -0,0 +1,179 @@
+package com.nmims.canteen.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Thread-safe listener set shared by the managers
+ * Registrations live in a copy-on-write list, so dispatch from Firestore or timer threads never
+ * races an activity adding or removing itself. Each registration is held strongly, weakly, or
+ * until its lifecycle owner is destroyed, and is delivered on its own executor. A registration
+ * removed after an event was posted is skipped when the event runs, so a destroyed screen
+ * never gets a late callback.
+ */
+class ListenerRegistry<L> {
+
+    /**
+     * Runs on the main thread; inline when already there, so main-thread callers keep
+     * their synchronous callbacks
+     */
+    static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                command.run();
+            } else {
+                handler.post(command);
+            }
+        }
+    };
+
+    /**
+     * One notification, applied to each listener
+     */
+    interface Event<L> {
+        void deliver(L listener);
+    }
+
+    private final String tag;
+    private final CopyOnWriteArrayList<Registration<L>> registrations;
+
+    ListenerRegistry(String tag) {
+        this.tag = tag;
+        this.registrations = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Register listener under key, replacing any earlier registration with the same key;
+     * a null key identifies the registration by the listener itself
+     */
+    void add(Object key, L listener, Executor executor) {
+        register(new Registration<>(key, listener, null, executor));
+    }
+
+    /**
+     * Register without keeping listener alive; the caller must hold its own reference
+     */
+    void addWeak(Object key, L listener, Executor executor) {
+        register(new Registration<>(key, null, new WeakReference<>(listener), executor));
+    }
+
+    /**
+     * Register until owner is destroyed; must be called on the main thread
+     */
+    void add(LifecycleOwner owner, Object key, L listener, Executor executor) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        Registration<L> registration = new Registration<>(key, listener, null, executor);
+        register(registration);
+        lifecycle.addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    unregister(registration);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove the registration with this key, or the keyless registration of this listener
+     */
+    void remove(Object keyOrListener) {
+        if (keyOrListener == null) {
+            return;
+        }
+        for (Registration<L> registration : registrations) {
+            if (registration.matches(keyOrListener)) {
+                unregister(registration);
+            }
+        }
+    }
+
+    void clear() {
+        for (Registration<L> registration : registrations) {
+            unregister(registration);
+        }
+    }
+
+    int size() {
+        return registrations.size();
+    }
+
+    /**
+     * Post event to every live listener on its executor; collected weak listeners are pruned
+     */
+    void dispatch(Event<L> event) {
+        for (Registration<L> registration : registrations) {
+            if (registration.get() == null) {
+                unregister(registration);
+                continue;
+            }
+            registration.executor.execute(() -> {
+                L listener = registration.active ? registration.get() : null;
+                if (listener == null) {
+                    return;
+                }
+                try {
+                    event.deliver(listener);
+                } catch (RuntimeException e) {
+                    Log.e(tag, "Listener failed", e);
+                }
+            });
+        }
+    }
+
+    // Internal Helpers
+
+    private synchronized void register(Registration<L> registration) {
+        // Re-registering the same key replaces it, so a listener never receives an event twice
+        remove(registration.key != null ? registration.key : registration.get());
+        registrations.add(registration);
+    }
+
+    private void unregister(Registration<L> registration) {
+        registration.active = false;
+        registrations.remove(registration);
+    }
+
+    /**
+     * A listener with its key, executor and reference strength
+     */
+    private static class Registration<L> {
+        final Object key; // Null: identified by the listener, without pinning a weak one
+        final L strong;
+        final WeakReference<L> weak;
+        final Executor executor;
+        volatile boolean active = true;
+
+        Registration(Object key, L strong, WeakReference<L> weak, Executor executor) {
+            this.key = key;
+            this.strong = strong;
+            this.weak = weak;
+            this.executor = executor != null ? executor : MAIN_THREAD;
+        }
+
+        L get() {
+            return strong != null ? strong : weak.get();
+        }
+
+        boolean matches(Object keyOrListener) {
+            return key != null ? key.equals(keyOrListener) : get() == keyOrListener;
+        }
+    }
+}
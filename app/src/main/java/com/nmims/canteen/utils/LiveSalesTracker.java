@@ -0,0 +1,279 @@
+package com.nmims.canteen.utils;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.nmims.canteen.models.Order;
+import com.nmims.canteen.models.SalesData;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live accumulator for today's sales, fed by an order snapshot listener
+ * After the initial snapshot only changed orders are read. New and newly paid orders are
+ * added in O(1); cancelled, removed or re-priced orders trigger a rebuild from the orders
+ * already held in memory, never a re-fetch. The same events feed the anomaly detector.
+ * All state is confined to the live lane.
+ */
+class LiveSalesTracker {
+    private static final String TAG = "LiveSalesTracker";
+
+    /**
+     * Receives a fresh copy of today's rollup after each batch of changes
+     */
+    interface Listener {
+        void onUpdated(SalesData today);
+        void onError(String error);
+    }
+
+    private final ScheduledExecutorService lane;
+    private final CustomerIdRegistry customerIds;
+    private final AnalyticsCache cache;
+    private final OrderArchive archive;
+    private final SalesAnomalyDetector anomalies;
+
+    // Lane-confined state
+    private Listener listener;
+    private ListenerRegistration registration;
+    private ScheduledFuture<?> rolloverTask;
+    private int generation; // Ignores events queued by a listener that was already removed
+    private boolean primed; // Initial snapshot applied; its orders are replays, not new events
+    private String dateId;
+    private Date dayStart;
+    private Date dayEnd;
+    private Map<String, Order> todayOrders;
+    private Map<String, Integer> customerOrderCounts;
+    private int newCustomers; // Customers with exactly one order today, as in the batch rollup
+    private int returningCustomers;
+    private SalesData accumulator;
+
+    LiveSalesTracker(ScheduledExecutorService lane, CustomerIdRegistry customerIds, AnalyticsCache cache,
+                     OrderArchive archive, SalesAnomalyDetector anomalies) {
+        this.lane = lane;
+        this.customerIds = customerIds;
+        this.cache = cache;
+        this.archive = archive;
+        this.anomalies = anomalies;
+    }
+
+    /**
+     * Start listening to today's orders, replacing any previous listener
+     */
+    void start(Listener listener) {
+        lane.execute(() -> {
+            this.listener = listener;
+            anomalies.start();
+            attach();
+        });
+    }
+
+    /**
+     * Stop listening and drop the accumulated state
+     */
+    void stop() {
+        lane.execute(() -> {
+            detach();
+            anomalies.stop();
+            listener = null;
+        });
+    }
+
+    /**
+     * Seed anomaly baselines from recent history
+     */
+    void seedBaselines(DemandMatrix history) {
+        lane.execute(() -> anomalies.seed(history));
+    }
+
+    // Lane Helpers
+
+    private void attach() {
+        detach();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        dayEnd = calendar.getTime();
+
+        dateId = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(dayStart);
+        todayOrders = new HashMap<>();
+        customerOrderCounts = new HashMap<>();
+        newCustomers = 0;
+        returningCustomers = 0;
+        accumulator = newAccumulator();
+        primed = false;
+
+        int attached = ++generation;
+        registration = FirebaseUtils.getOrdersCollection()
+                .whereGreaterThanOrEqualTo("createdAt", dayStart)
+                .whereLessThan("createdAt", dayEnd)
+                .addSnapshotListener(lane, (snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Live orders listener error", e);
+                        if (listener != null) listener.onError(e.getMessage());
+                        return;
+                    }
+                    if (snapshots != null && attached == generation) {
+                        applyChanges(snapshots);
+                    }
+                });
+
+        // Start a new day at midnight even if no orders arrive
+        long delay = dayEnd.getTime() - System.currentTimeMillis();
+        rolloverTask = lane.schedule(this::rollover, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private void rollover() {
+        // The finished day is already in memory, archive it without another read if every
+        // order on it is final; otherwise it is read again once it settles
+        if (todayOrders != null && !dayEnd.after(new Date())) {
+            archive.appendDays(dayStart, dayEnd, todayOrders.values());
+        }
+        attach();
+    }
+
+    private void detach() {
+        generation++;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        if (rolloverTask != null) {
+            rolloverTask.cancel(false);
+            rolloverTask = null;
+        }
+        todayOrders = null;
+        customerOrderCounts = null;
+        accumulator = null;
+    }
+
+    private void applyChanges(QuerySnapshot snapshots) {
+        boolean rebuild = false;
+        boolean replay = !primed;
+        primed = true;
+
+        for (DocumentChange change : snapshots.getDocumentChanges()) {
+            String orderId = change.getDocument().getId();
+            Order current = change.getDocument().toObject(Order.class);
+            current.setOrderId(orderId);
+
+            switch (change.getType()) {
+                case ADDED:
+                    todayOrders.put(orderId, current);
+                    countCustomerOrder(current, 1);
+                    anomalies.onOrderPlaced(current, replay);
+                    if (!replay && current.isPaymentCompleted()) {
+                        anomalies.onPaymentResolved(true);
+                    }
+                    if (isCounted(current)) {
+                        addOrder(accumulator, current);
+                    }
+                    break;
+
+                case MODIFIED:
+                    Order previous = todayOrders.put(orderId, current);
+                    trackPaymentOutcome(previous, current);
+                    if (previous == null || !isCounted(previous)) {
+                        if (isCounted(current)) {
+                            addOrder(accumulator, current);
+                        }
+                    } else if (!isCounted(current) || previous.getFinalAmount() != current.getFinalAmount()
+                            || previous.getTotalItemCount() != current.getTotalItemCount()) {
+                        // Sketches cannot subtract, so recompute from memory
+                        rebuild = true;
+                    } else {
+                        accumulator.addFulfilmentProgress(previous, current);
+                    }
+                    break;
+
+                case REMOVED:
+                    Order removed = todayOrders.remove(orderId);
+                    if (removed != null) {
+                        countCustomerOrder(removed, -1);
+                        rebuild |= isCounted(removed);
+                    }
+                    break;
+            }
+        }
+
+        if (rebuild) {
+            accumulator = newAccumulator();
+            for (Order order : todayOrders.values()) {
+                if (isCounted(order)) {
+                    addOrder(accumulator, order);
+                }
+            }
+        }
+
+        publish();
+        anomalies.onRevenue(dateId, accumulator.getTotalRevenue(), replay);
+    }
+
+    private void trackPaymentOutcome(Order previous, Order current) {
+        if (previous == null || previous.isPaymentCompleted()) {
+            return;
+        }
+        if (current.isPaymentCompleted()) {
+            anomalies.onPaymentResolved(true);
+        } else if (current.isCancelled() && !previous.isCancelled()) {
+            // Cancelled before payment went through
+            anomalies.onPaymentResolved(false);
+        }
+    }
+
+    private void publish() {
+        SalesData today = accumulator.copy();
+        today.setNewCustomers(newCustomers);
+        today.setReturningCustomers(returningCustomers);
+        today.setCustomerSatisfactionScore(4.0);
+
+        cache.putToday(dateId, today);
+        if (listener != null) listener.onUpdated(today);
+    }
+
+    private SalesData newAccumulator() {
+        SalesData salesData = new SalesData(dateId, dayStart);
+        salesData.setPeriod("daily");
+        salesData.getDemandMatrix().addDay(dayStart.getTime());
+        return salesData;
+    }
+
+    private void addOrder(SalesData salesData, Order order) {
+        salesData.addOrderData(order);
+        if (order.getUserId() != null) {
+            salesData.getActiveCustomers().add(customerIds.getOrAssign(order.getUserId()));
+        }
+    }
+
+    private void countCustomerOrder(Order order, int delta) {
+        String userId = order.getUserId();
+        int before = customerOrderCounts.getOrDefault(userId, 0);
+        int after = before + delta;
+        if (after > 0) {
+            customerOrderCounts.put(userId, after);
+        } else {
+            customerOrderCounts.remove(userId);
+        }
+
+        newCustomers += (after == 1 ? 1 : 0) - (before == 1 ? 1 : 0);
+        returningCustomers += (after > 1 ? 1 : 0) - (before > 1 ? 1 : 0);
+    }
+
+    private static boolean isCounted(Order order) {
+        return !order.isCancelled() && order.isPaymentCompleted();
+    }
+}
@@ -3,6 +3,8 @@ package com.nmims.canteen.utils;
 import android.util.Log;
 
 import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.Transaction;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.nmims.canteen.models.AdminNotification;
 import com.nmims.canteen.models.InventoryItem;
@@ -300,6 +302,46 @@ public class NotificationManager {
         );
     }
 
+    /**
+     * Send alert raised by automated monitoring (e.g. sales anomaly detection)
+     */
+    public void sendMonitoringAlert(AdminNotification notification) {
+        notification.setSource("automation");
+
+        // Add to cache and deliver
+        notificationCache.add(0, notification);
+        deliverNotification(notification);
+
+        // Save to Firebase
+        FirebaseUtils.getAdminNotificationsCollection()
+                .document(notification.getNotificationId())
+                .set(notification);
+    }
+
+    /**
+     * Send a monitoring alert at most once per alertKey across all devices
+     * alertKey names the alert and its period (e.g. metric and hour), and becomes the document
+     * ID; the alert is created only if absent, and only the device that created it delivers it.
+     */
+    public void sendMonitoringAlert(String alertKey, AdminNotification notification) {
+        notification.setSource("automation");
+        notification.setNotificationId("monitor_" + alertKey);
+        DocumentReference alertRef = FirebaseUtils.getNotificationDocument(notification.getNotificationId());
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<Boolean>) transaction -> {
+            if (transaction.get(alertRef).exists()) {
+                return false;
+            }
+            transaction.set(alertRef, notification);
+            return true;
+        }).addOnSuccessListener(created -> {
+            if (created) {
+                notificationCache.add(0, notification);
+                deliverNotification(notification);
+            }
+        }).addOnFailureListener(e -> Log.e(TAG, "Failed to raise monitoring alert " + alertKey, e));
+    }
+
     /**
      * Send customer complaint notification
      */
@@ -0,0 +1,958 @@
+package com.nmims.canteen.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.nmims.canteen.models.CartItem;
+import com.nmims.canteen.models.Order;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * On-device columnar archive of orders for offline analytics scans
+ * Orders of settled days are stored in one segment file per month, each column
+ * (timestamp, customer ID, amount, delivery charges and type, fulfilment latencies, status,
+ * payment, item ID/quantity/total) laid out
+ * contiguously and sorted by time. Segments are memory-mapped read-only, so a year-long
+ * scan touches a few MB of local pages instead of the network.
+ *
+ * A day is settled once every order on it is final (delivered and paid, or cancelled) or
+ * SETTLE_WINDOW_MS after it ended; until then it is read from Firestore. Orders can still
+ * change after that (refunds), so a day is dropped when one of its orders changes and
+ * archived again on its next scan.
+ */
+public class OrderArchive {
+    private static final String TAG = "OrderArchive";
+    private static final String STORE_DIRECTORY = "order_archive";
+    private static final String ITEMS_FILE = "items.json";
+    private static final String CHECKED_THROUGH_FILE = "checked_through";
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    /**
+     * Late payments and cancellations are expected within this long after a day ends
+     */
+    public static final long SETTLE_WINDOW_MS = 2 * 24 * 60 * 60 * 1000L;
+
+    private static final int MAGIC = 0x4F524441; // "ORDA"
+    private static final int VERSION = 3; // 1 archived days before their orders settled, 2 lacked delivery and latency columns
+    private static final int HEADER_SIZE = 24; // magic, version, day mask, rows, items, padding
+
+    private static final int PAYMENT_COMPLETED_FLAG = 0x80;
+
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+    private static final Order.PaymentMethod[] PAYMENT_METHODS = Order.PaymentMethod.values();
+    private static final Order.DeliveryType[] DELIVERY_TYPES = Order.DeliveryType.values();
+
+    /**
+     * Receives archived orders one at a time
+     * The row is reused between calls and must not be kept
+     */
+    public interface RowVisitor {
+        void visit(Row row);
+    }
+
+    private final CustomerIdRegistry customerIds;
+    private final Gson gson;
+
+    // Item dictionary: index is the dense item ID used by the item columns
+    private final List<ItemInfo> items;
+    private final Map<String, Integer> itemIds;
+    private boolean itemsDirty;
+
+    private final Map<String, Segment> segments; // Keyed by yyyy-MM, loaded lazily
+    private File storeDirectory;
+    private long checkedThrough; // Order changes before this time are reflected, 0 if never checked
+
+    public OrderArchive(CustomerIdRegistry customerIds) {
+        this.customerIds = customerIds;
+        this.gson = new Gson();
+        this.items = new ArrayList<>();
+        this.itemIds = new HashMap<>();
+        this.segments = new HashMap<>();
+    }
+
+    /**
+     * Attach on-device store and load the item dictionary
+     * Without a store the archive still works, but only in memory. Returns false if the
+     * stored archive predates change tracking and was discarded; rollups persisted next to
+     * it may be stale as well.
+     */
+    public synchronized boolean attachStore(Context context) {
+        if (storeDirectory != null || context == null) {
+            return true;
+        }
+
+        File directory = new File(context.getApplicationContext().getFilesDir(), STORE_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create order archive directory");
+            return true;
+        }
+        storeDirectory = directory;
+        segments.clear();
+
+        File checkedThroughFile = new File(directory, CHECKED_THROUGH_FILE);
+        checkedThrough = checkedThroughFile.exists() ? readCheckedThrough(checkedThroughFile) : 0;
+        if (checkedThrough == 0 && hasSegmentFiles(directory)) {
+            Log.w(TAG, "Discarding archive written before order changes were tracked");
+            clear();
+            return false;
+        }
+
+        File itemsFile = new File(directory, ITEMS_FILE);
+        if (!itemsFile.exists()) {
+            return true;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(itemsFile), StandardCharsets.UTF_8)) {
+            List<ItemInfo> saved = gson.fromJson(reader, new TypeToken<List<ItemInfo>>() {}.getType());
+            if (saved != null) {
+                items.clear();
+                itemIds.clear();
+                for (ItemInfo item : saved) {
+                    itemIds.put(item.itemId, items.size());
+                    items.add(item);
+                }
+            }
+        } catch (Exception e) {
+            // Segments reference item IDs we can no longer resolve
+            Log.e(TAG, "Error reading archived items, discarding archive", e);
+            clear();
+        }
+        return true;
+    }
+
+    /**
+     * Whether a day's orders can no longer change in the normal course of business
+     */
+    public static boolean isSettled(Date dayEnd, Collection<Order> dayOrders) {
+        if (dayEnd.getTime() + SETTLE_WINDOW_MS <= System.currentTimeMillis()) {
+            return true;
+        }
+        for (Order order : dayOrders) {
+            if (!isFinal(order)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Time through which order changes have been applied to the archive, 0 if never checked
+     */
+    public synchronized long getCheckedThrough() {
+        return checkedThrough;
+    }
+
+    /**
+     * Record that changes to orders up to time have been applied (see dropDay)
+     */
+    public synchronized void setCheckedThrough(long time) {
+        checkedThrough = time;
+        if (storeDirectory == null) {
+            return;
+        }
+
+        File file = new File(storeDirectory, CHECKED_THROUGH_FILE);
+        File tempFile = new File(storeDirectory, CHECKED_THROUGH_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            writer.write(Long.toString(time));
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing archive check time", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error committing archive check time");
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Check whether all orders of the day starting at dayStart are archived
+     */
+    public boolean hasDay(Date dayStart) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(dayStart);
+        Segment segment = getSegment(formatMonthId(calendar));
+        return segment != null && (segment.dayMask & dayBit(calendar)) != 0;
+    }
+
+    /**
+     * Archive all orders of the settled whole days in [startDate, endDate)
+     * Orders on days that are already archived or not settled yet are ignored, so repeating
+     * a call is harmless. Each affected month segment is rewritten once, sorted by time, and
+     * swapped in atomically. orders must be current as of the call.
+     */
+    public void appendDays(Date startDate, Date endDate, Collection<Order> orders) {
+        List<Date> dayStarts = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(startDate);
+        while (calendar.getTime().before(endDate)) {
+            dayStarts.add(calendar.getTime());
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        appendDays(dayStarts, orders);
+    }
+
+    /**
+     * Archive all orders of the given whole days, which need not be contiguous, as above
+     * Lets a caller collect several days' orders and rewrite each month segment once for all
+     * of them instead of once per day.
+     */
+    public synchronized void appendDays(Collection<Date> dayStarts, Collection<Order> orders) {
+        if (checkedThrough == 0) {
+            // Orders are current, so changes before now are already reflected
+            setCheckedThrough(System.currentTimeMillis());
+        }
+
+        // Days still waiting on payment, preparation or cancellation, by month
+        Calendar calendar = Calendar.getInstance();
+        Map<String, Integer> openDays = new HashMap<>();
+        for (Order order : orders) {
+            if (order.getCreatedAt() != null && !isFinal(order)) {
+                calendar.setTime(order.getCreatedAt());
+                String monthId = formatMonthId(calendar);
+                openDays.put(monthId, openDays.getOrDefault(monthId, 0) | dayBit(calendar));
+            }
+        }
+
+        // Group new settled days and their orders by month
+        Map<String, Integer> newDays = new HashMap<>();
+        long settledBefore = System.currentTimeMillis() - SETTLE_WINDOW_MS;
+        for (Date dayStart : dayStarts) {
+            calendar.setTime(dayStart);
+            String monthId = formatMonthId(calendar);
+            Segment segment = getSegment(monthId);
+            int dayBit = dayBit(calendar);
+            boolean open = (openDays.getOrDefault(monthId, 0) & dayBit) != 0;
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            if (open && calendar.getTimeInMillis() > settledBefore) {
+                continue;
+            }
+            if (segment == null || (segment.dayMask & dayBit) == 0) {
+                newDays.put(monthId, newDays.getOrDefault(monthId, 0) | dayBit);
+            }
+        }
+        if (newDays.isEmpty()) {
+            return;
+        }
+
+        Map<String, Columns> newRows = new HashMap<>();
+        for (Order order : orders) {
+            if (order.getCreatedAt() == null) {
+                continue;
+            }
+            calendar.setTime(order.getCreatedAt());
+            String monthId = formatMonthId(calendar);
+            Integer mask = newDays.get(monthId);
+            if (mask == null || (mask & dayBit(calendar)) == 0) {
+                continue;
+            }
+            Columns columns = newRows.get(monthId);
+            if (columns == null) {
+                columns = new Columns();
+                newRows.put(monthId, columns);
+            }
+            columns.addOrder(order);
+        }
+
+        // IDs must be on disk before any segment that references them
+        customerIds.flush();
+        flushItems();
+
+        for (Map.Entry<String, Integer> entry : newDays.entrySet()) {
+            String monthId = entry.getKey();
+            Segment existing = getSegment(monthId);
+            Columns columns = newRows.containsKey(monthId) ? newRows.get(monthId) : new Columns();
+            if (existing != null) {
+                columns.addSegment(existing);
+            }
+            int dayMask = entry.getValue() | (existing != null ? existing.dayMask : 0);
+
+            try {
+                segments.put(monthId, writeSegment(monthId, columns, dayMask));
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing archive segment " + monthId, e);
+            }
+        }
+    }
+
+    /**
+     * Remove a day so its orders are read again, e.g. after one of them changed
+     */
+    public synchronized void dropDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        String monthId = formatMonthId(calendar);
+        int dayBit = dayBit(calendar);
+        Segment existing = getSegment(monthId);
+        if (existing == null || (existing.dayMask & dayBit) == 0) {
+            return;
+        }
+        long dayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+
+        Columns columns = new Columns();
+        columns.addSegment(existing, dayStart, calendar.getTimeInMillis());
+        try {
+            segments.put(monthId, writeSegment(monthId, columns, existing.dayMask & ~dayBit));
+        } catch (IOException e) {
+            // Never leave the stale day readable; the whole month is fetched again instead
+            Log.e(TAG, "Error rewriting archive segment " + monthId + ", dropping it", e);
+            segments.remove(monthId);
+            if (storeDirectory != null) {
+                new File(storeDirectory, monthId + SEGMENT_EXTENSION).delete();
+            }
+        }
+    }
+
+    /**
+     * Visit archived orders created in [startDate, endDate) in time order
+     * Days that are not archived are skipped; use hasDay to check coverage first
+     */
+    public void scan(Date startDate, Date endDate, RowVisitor visitor) {
+        long start = startDate.getTime();
+        long end = endDate.getTime();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(startDate);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        Row row = new Row(this);
+        while (calendar.getTimeInMillis() < end) {
+            Segment segment = getSegment(formatMonthId(calendar));
+            if (segment != null) {
+                scanSegment(segment, start, end, row, visitor);
+            }
+            calendar.add(Calendar.MONTH, 1);
+        }
+    }
+
+    /**
+     * Visit orders that are not archived (e.g. today's) through the same row interface
+     * The orders are encoded into a temporary in-memory segment
+     */
+    public void scan(Collection<Order> orders, RowVisitor visitor) {
+        Columns columns = new Columns();
+        synchronized (this) {
+            for (Order order : orders) {
+                if (order.getCreatedAt() != null) {
+                    columns.addOrder(order);
+                }
+            }
+        }
+        Segment segment = new Segment(columns.encode(0));
+        scanSegment(segment, Long.MIN_VALUE, Long.MAX_VALUE, new Row(this), visitor);
+    }
+
+    /**
+     * Get Firebase item ID for dense item ID
+     */
+    public synchronized String getItemId(int denseItemId) {
+        return denseItemId >= 0 && denseItemId < items.size() ? items.get(denseItemId).itemId : null;
+    }
+
+    /**
+     * Get item name as last archived
+     */
+    public synchronized String getItemName(int denseItemId) {
+        return denseItemId >= 0 && denseItemId < items.size() ? items.get(denseItemId).name : "";
+    }
+
+    /**
+     * Get item category as last archived
+     */
+    public synchronized String getItemCategory(int denseItemId) {
+        return denseItemId >= 0 && denseItemId < items.size() ? items.get(denseItemId).category : "";
+    }
+
+    /**
+     * Delete all segments, the item dictionary and the change check time
+     */
+    public synchronized void clear() {
+        segments.clear();
+        items.clear();
+        itemIds.clear();
+        itemsDirty = false;
+        checkedThrough = 0;
+
+        if (storeDirectory != null) {
+            File[] files = storeDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.delete()) {
+                        Log.w(TAG, "Failed to delete " + file.getName());
+                    }
+                }
+            }
+        }
+    }
+
+    // Internal Helpers
+
+    private synchronized Segment getSegment(String monthId) {
+        Segment segment = segments.get(monthId);
+        if (segment != null || storeDirectory == null) {
+            return segment;
+        }
+
+        File file = new File(storeDirectory, monthId + SEGMENT_EXTENSION);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            segment = new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            segments.put(monthId, segment);
+            return segment;
+        } catch (Exception e) {
+            Log.e(TAG, "Discarding unreadable archive segment " + monthId, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static boolean isFinal(Order order) {
+        return order.isCancelled() || order.isCompleted() && order.isPaymentCompleted();
+    }
+
+    private static boolean hasSegmentFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_EXTENSION)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long readCheckedThrough(File file) {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[32];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                text.append(buffer, 0, read);
+            }
+            return Long.parseLong(text.toString().trim());
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading archive check time", e);
+            return 0;
+        }
+    }
+
+    private Segment writeSegment(String monthId, Columns columns, int dayMask) throws IOException {
+        ByteBuffer buffer = columns.encode(dayMask);
+        if (storeDirectory == null) {
+            return new Segment(buffer);
+        }
+
+        File file = new File(storeDirectory, monthId + SEGMENT_EXTENSION);
+        File tempFile = new File(storeDirectory, monthId + SEGMENT_EXTENSION + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tempFile);
+             FileChannel channel = output.getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to commit archive segment " + monthId);
+        }
+
+        buffer.rewind();
+        return new Segment(buffer);
+    }
+
+    private static void scanSegment(Segment segment, long start, long end, Row row, RowVisitor visitor) {
+        row.segment = segment;
+        for (int i = segment.firstRowAtOrAfter(start); i < segment.rows; i++) {
+            if (segment.getCreatedAt(i) >= end) {
+                break;
+            }
+            row.index = i;
+            visitor.visit(row);
+        }
+    }
+
+    private int getOrAssignItem(CartItem item) {
+        String itemId = item.getFoodItem() != null ? item.getFoodItem().getItemId() : null;
+        if (itemId == null) {
+            itemId = "";
+        }
+
+        Integer denseId = itemIds.get(itemId);
+        if (denseId == null) {
+            denseId = items.size();
+            itemIds.put(itemId, denseId);
+            items.add(new ItemInfo(itemId, item.getFoodItemName(), item.getFoodItemCategory()));
+            itemsDirty = true;
+        } else {
+            // Keep the latest name and category for display
+            ItemInfo info = items.get(denseId);
+            String name = item.getFoodItemName();
+            String category = item.getFoodItemCategory();
+            if (!name.isEmpty() && !name.equals(info.name) || !category.isEmpty() && !category.equals(info.category)) {
+                info.name = name;
+                info.category = category;
+                itemsDirty = true;
+            }
+        }
+        return denseId;
+    }
+
+    private void flushItems() {
+        if (!itemsDirty || storeDirectory == null) {
+            return;
+        }
+
+        File itemsFile = new File(storeDirectory, ITEMS_FILE);
+        File tempFile = new File(storeDirectory, ITEMS_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            gson.toJson(items, writer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing archived items", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(itemsFile)) {
+            Log.e(TAG, "Error committing archived items");
+            tempFile.delete();
+            return;
+        }
+        itemsDirty = false;
+    }
+
+    private static String formatMonthId(Calendar calendar) {
+        return String.format(Locale.US, "%04d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+    }
+
+    private static int dayBit(Calendar calendar) {
+        return 1 << (calendar.get(Calendar.DAY_OF_MONTH) - 1);
+    }
+
+    private static int toCents(double amount) {
+        return (int) Math.round(amount * 100);
+    }
+
+    private static int secondsBetween(Date from, Date to) {
+        if (from == null || to == null || to.before(from)) {
+            return -1;
+        }
+        return (int) Math.min((to.getTime() - from.getTime()) / 1000, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Cursor over one archived order
+     */
+    public static class Row {
+        private final OrderArchive archive;
+        private Segment segment;
+        private int index;
+
+        private Row(OrderArchive archive) {
+            this.archive = archive;
+        }
+
+        public long getCreatedAt() {
+            return segment.getCreatedAt(index);
+        }
+
+        /**
+         * Dense customer ID (see CustomerIdRegistry), or -1 for orders without a user
+         */
+        public int getCustomerId() {
+            return segment.buffer.getInt(segment.customerOffset + index * 4);
+        }
+
+        public double getFinalAmount() {
+            return segment.buffer.getInt(segment.amountOffset + index * 4) / 100.0;
+        }
+
+        public double getDeliveryCharges() {
+            return segment.buffer.getInt(segment.chargesOffset + index * 4) / 100.0;
+        }
+
+        /**
+         * Delivery type, or null if none was recorded
+         */
+        public Order.DeliveryType getDeliveryType() {
+            int type = segment.buffer.get(segment.deliveryOffset + index);
+            return type > 0 ? DELIVERY_TYPES[type - 1] : null;
+        }
+
+        /**
+         * Seconds from creation to confirmation, ready and delivery, or -1 for steps never reached
+         */
+        public int getSecondsToConfirm() {
+            return segment.buffer.getInt(segment.confirmOffset + index * 4);
+        }
+
+        public int getSecondsToReady() {
+            return segment.buffer.getInt(segment.readyOffset + index * 4);
+        }
+
+        public int getSecondsToDelivery() {
+            return segment.buffer.getInt(segment.deliveredOffset + index * 4);
+        }
+
+        public Order.OrderStatus getStatus() {
+            return STATUSES[segment.buffer.get(segment.statusOffset + index)];
+        }
+
+        /**
+         * Payment method, or null if none was recorded
+         */
+        public Order.PaymentMethod getPaymentMethod() {
+            int method = segment.buffer.get(segment.paymentOffset + index) & ~PAYMENT_COMPLETED_FLAG;
+            return method > 0 ? PAYMENT_METHODS[method - 1] : null;
+        }
+
+        public boolean isPaymentCompleted() {
+            return (segment.buffer.get(segment.paymentOffset + index) & PAYMENT_COMPLETED_FLAG) != 0;
+        }
+
+        public boolean isCancelled() {
+            Order.OrderStatus status = getStatus();
+            return status == Order.OrderStatus.CANCELLED || status == Order.OrderStatus.REFUNDED;
+        }
+
+        /**
+         * Whether the order counts towards sales (paid and not cancelled)
+         */
+        public boolean isCounted() {
+            return isPaymentCompleted() && !isCancelled();
+        }
+
+        public int getItemCount() {
+            return segment.getItemEnd(index) - segment.getItemStart(index);
+        }
+
+        /**
+         * Dense item ID of line i; resolve with OrderArchive.getItemId/getItemName/getItemCategory
+         */
+        public int getItemId(int i) {
+            return segment.buffer.getInt(segment.itemIdOffset + (segment.getItemStart(index) + i) * 4);
+        }
+
+        public int getItemQuantity(int i) {
+            return segment.buffer.getShort(segment.itemQuantityOffset + (segment.getItemStart(index) + i) * 2);
+        }
+
+        public double getItemTotal(int i) {
+            return segment.buffer.getInt(segment.itemTotalOffset + (segment.getItemStart(index) + i) * 4) / 100.0;
+        }
+
+        public String getItemCategory(int i) {
+            return archive.getItemCategory(getItemId(i));
+        }
+    }
+
+    /**
+     * Read-only view of an encoded month segment
+     * Layout after the header: created (long), customer, amount cents, delivery charges cents,
+     * seconds to confirm, ready and delivery, item end (int), item ID, item total cents (int),
+     * item quantity (short), status, payment, delivery type (byte)
+     */
+    private static class Segment {
+        final ByteBuffer buffer;
+        final int dayMask;
+        final int rows;
+        final int itemCount;
+        final int createdOffset;
+        final int customerOffset;
+        final int amountOffset;
+        final int chargesOffset;
+        final int confirmOffset;
+        final int readyOffset;
+        final int deliveredOffset;
+        final int itemEndOffset;
+        final int itemIdOffset;
+        final int itemTotalOffset;
+        final int itemQuantityOffset;
+        final int statusOffset;
+        final int paymentOffset;
+        final int deliveryOffset;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalStateException("Not an order archive segment");
+            }
+            this.dayMask = buffer.getInt(8);
+            this.rows = buffer.getInt(12);
+            this.itemCount = buffer.getInt(16);
+
+            this.createdOffset = HEADER_SIZE;
+            this.customerOffset = createdOffset + rows * 8;
+            this.amountOffset = customerOffset + rows * 4;
+            this.chargesOffset = amountOffset + rows * 4;
+            this.confirmOffset = chargesOffset + rows * 4;
+            this.readyOffset = confirmOffset + rows * 4;
+            this.deliveredOffset = readyOffset + rows * 4;
+            this.itemEndOffset = deliveredOffset + rows * 4;
+            this.itemIdOffset = itemEndOffset + rows * 4;
+            this.itemTotalOffset = itemIdOffset + itemCount * 4;
+            this.itemQuantityOffset = itemTotalOffset + itemCount * 4;
+            this.statusOffset = itemQuantityOffset + itemCount * 2;
+            this.paymentOffset = statusOffset + rows;
+            this.deliveryOffset = paymentOffset + rows;
+            if (deliveryOffset + rows > buffer.capacity()) {
+                throw new IllegalStateException("Truncated order archive segment");
+            }
+        }
+
+        long getCreatedAt(int row) {
+            return buffer.getLong(createdOffset + row * 8);
+        }
+
+        int getItemStart(int row) {
+            return row > 0 ? buffer.getInt(itemEndOffset + (row - 1) * 4) : 0;
+        }
+
+        int getItemEnd(int row) {
+            return buffer.getInt(itemEndOffset + row * 4);
+        }
+
+        /**
+         * Binary search on the sorted timestamp column
+         */
+        int firstRowAtOrAfter(long time) {
+            int low = 0;
+            int high = rows;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getCreatedAt(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Growable column arrays used to build a segment
+     */
+    private class Columns {
+        long[] created = new long[16];
+        int[] customer = new int[16];
+        int[] amount = new int[16];
+        int[] charges = new int[16];
+        int[] confirm = new int[16];
+        int[] ready = new int[16];
+        int[] delivered = new int[16];
+        byte[] status = new byte[16];
+        byte[] payment = new byte[16];
+        byte[] delivery = new byte[16];
+        int[] itemStart = new int[16];
+        int[] itemLength = new int[16];
+        int rows;
+
+        int[] itemId = new int[64];
+        int[] itemTotal = new int[64];
+        short[] itemQuantity = new short[64];
+        int itemCount;
+
+        /**
+         * Add order (caller holds the archive lock for the dictionaries)
+         */
+        void addOrder(Order order) {
+            List<CartItem> orderItems = order.getItems() != null ? order.getItems() : new ArrayList<>();
+            int row = nextRow();
+            created[row] = order.getCreatedAt().getTime();
+            customer[row] = order.getUserId() != null ? customerIds.getOrAssign(order.getUserId()) : -1;
+            amount[row] = toCents(order.getFinalAmount());
+            charges[row] = toCents(order.getDeliveryCharges());
+            confirm[row] = secondsBetween(order.getCreatedAt(), order.getConfirmedAt());
+            ready[row] = secondsBetween(order.getCreatedAt(), order.getReadyAt());
+            delivered[row] = secondsBetween(order.getCreatedAt(), order.getDeliveredAt());
+            delivery[row] = (byte) (order.getDeliveryType() != null ? order.getDeliveryType().ordinal() + 1 : 0);
+            status[row] = (byte) (order.getStatus() != null ? order.getStatus() : Order.OrderStatus.PENDING).ordinal();
+            payment[row] = (byte) ((order.getPaymentMethod() != null ? order.getPaymentMethod().ordinal() + 1 : 0)
+                    | (order.isPaymentCompleted() ? PAYMENT_COMPLETED_FLAG : 0));
+            itemStart[row] = itemCount;
+            itemLength[row] = 0;
+
+            for (CartItem item : orderItems) {
+                if (item == null) {
+                    continue;
+                }
+                int line = nextItem();
+                itemId[line] = getOrAssignItem(item);
+                itemTotal[line] = toCents(item.getTotalPrice());
+                itemQuantity[line] = (short) Math.min(item.getQuantity(), Short.MAX_VALUE);
+                itemLength[row]++;
+            }
+        }
+
+        /**
+         * Add all rows of an existing segment
+         */
+        void addSegment(Segment segment) {
+            addSegment(segment, 0, 0);
+        }
+
+        /**
+         * Add the rows of an existing segment created outside [skipStart, skipEnd)
+         */
+        void addSegment(Segment segment, long skipStart, long skipEnd) {
+            ByteBuffer buffer = segment.buffer;
+            for (int i = 0; i < segment.rows; i++) {
+                if (segment.getCreatedAt(i) >= skipStart && segment.getCreatedAt(i) < skipEnd) {
+                    continue;
+                }
+                int row = nextRow();
+                created[row] = segment.getCreatedAt(i);
+                customer[row] = buffer.getInt(segment.customerOffset + i * 4);
+                amount[row] = buffer.getInt(segment.amountOffset + i * 4);
+                charges[row] = buffer.getInt(segment.chargesOffset + i * 4);
+                confirm[row] = buffer.getInt(segment.confirmOffset + i * 4);
+                ready[row] = buffer.getInt(segment.readyOffset + i * 4);
+                delivered[row] = buffer.getInt(segment.deliveredOffset + i * 4);
+                status[row] = buffer.get(segment.statusOffset + i);
+                payment[row] = buffer.get(segment.paymentOffset + i);
+                delivery[row] = buffer.get(segment.deliveryOffset + i);
+                itemStart[row] = itemCount;
+                itemLength[row] = 0;
+
+                for (int j = segment.getItemStart(i); j < segment.getItemEnd(i); j++) {
+                    int line = nextItem();
+                    itemId[line] = buffer.getInt(segment.itemIdOffset + j * 4);
+                    itemTotal[line] = buffer.getInt(segment.itemTotalOffset + j * 4);
+                    itemQuantity[line] = buffer.getShort(segment.itemQuantityOffset + j * 2);
+                    itemLength[row]++;
+                }
+            }
+        }
+
+        /**
+         * Encode rows sorted by creation time
+         */
+        ByteBuffer encode(int dayMask) {
+            Integer[] order = new Integer[rows];
+            for (int i = 0; i < rows; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(created[a], created[b]));
+
+            int size = HEADER_SIZE + rows * (8 + 4 + 4 + 4 * 4 + 4 + 1 + 1 + 1) + itemCount * (4 + 4 + 2);
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dayMask).putInt(rows).putInt(itemCount).putInt(0);
+
+            for (int i : order) buffer.putLong(created[i]);
+            for (int i : order) buffer.putInt(customer[i]);
+            for (int i : order) buffer.putInt(amount[i]);
+            for (int i : order) buffer.putInt(charges[i]);
+            for (int i : order) buffer.putInt(confirm[i]);
+            for (int i : order) buffer.putInt(ready[i]);
+            for (int i : order) buffer.putInt(delivered[i]);
+            int itemEnd = 0;
+            for (int i : order) {
+                itemEnd += itemLength[i];
+                buffer.putInt(itemEnd);
+            }
+            for (int i : order) {
+                for (int j = itemStart[i]; j < itemStart[i] + itemLength[i]; j++) buffer.putInt(itemId[j]);
+            }
+            for (int i : order) {
+                for (int j = itemStart[i]; j < itemStart[i] + itemLength[i]; j++) buffer.putInt(itemTotal[j]);
+            }
+            for (int i : order) {
+                for (int j = itemStart[i]; j < itemStart[i] + itemLength[i]; j++) buffer.putShort(itemQuantity[j]);
+            }
+            for (int i : order) buffer.put(status[i]);
+            for (int i : order) buffer.put(payment[i]);
+            for (int i : order) buffer.put(delivery[i]);
+
+            buffer.flip();
+            return buffer;
+        }
+
+        private int nextRow() {
+            if (rows == created.length) {
+                int capacity = rows * 2;
+                created = Arrays.copyOf(created, capacity);
+                customer = Arrays.copyOf(customer, capacity);
+                amount = Arrays.copyOf(amount, capacity);
+                charges = Arrays.copyOf(charges, capacity);
+                confirm = Arrays.copyOf(confirm, capacity);
+                ready = Arrays.copyOf(ready, capacity);
+                delivered = Arrays.copyOf(delivered, capacity);
+                status = Arrays.copyOf(status, capacity);
+                payment = Arrays.copyOf(payment, capacity);
+                delivery = Arrays.copyOf(delivery, capacity);
+                itemStart = Arrays.copyOf(itemStart, capacity);
+                itemLength = Arrays.copyOf(itemLength, capacity);
+            }
+            return rows++;
+        }
+
+        private int nextItem() {
+            if (itemCount == itemId.length) {
+                int capacity = itemCount * 2;
+                itemId = Arrays.copyOf(itemId, capacity);
+                itemTotal = Arrays.copyOf(itemTotal, capacity);
+                itemQuantity = Arrays.copyOf(itemQuantity, capacity);
+            }
+            return itemCount++;
+        }
+    }
+
+    /**
+     * Item dictionary entry
+     */
+    private static class ItemInfo {
+        String itemId;
+        String name;
+        String category;
+
+        // Default constructor for serialization
+        ItemInfo() {
+        }
+
+        ItemInfo(String itemId, String name, String category) {
+            this.itemId = itemId;
+            this.name = name;
+            this.category = category;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.nmims.canteen.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import com.nmims.canteen.models.Order;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming file exporter for analytics reports and order details
+ * Rows are written straight to a file in the app's exports cache directory, so memory use
+ * does not grow with the size of the export. Exports only live long enough to be shared:
+ * older ones are deleted before each new export, and the system may reclaim the rest.
+ */
+public class ReportExporter {
+    private static final String TAG = "ReportExporter";
+    private static final String EXPORT_DIRECTORY = "exports";
+    private static final long EXPORT_RETENTION_MS = 60 * 60 * 1000L; // Long enough for a share to be read
+    private static final String FILE_PROVIDER_SUFFIX = ".fileprovider";
+
+    private static final String[] ORDER_COLUMNS = {
+            "orderId", "createdAt", "status", "userId", "userName", "itemCount",
+            "totalAmount", "discountAmount", "taxAmount", "finalAmount", "paymentMethod",
+            "paymentCompleted", "deliveryType", "confirmedAt", "readyAt", "deliveredAt",
+            "cancelledAt", "specialInstructions"
+    };
+
+    /**
+     * Export file format
+     */
+    public enum Format {
+        CSV("csv", "text/csv"),
+        JSON("json", "application/json");
+
+        private final String extension;
+        private final String mimeType;
+
+        Format(String extension, String mimeType) {
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    /**
+     * Source of orders, fetched one page at a time
+     */
+    public interface OrderPageSource {
+        /**
+         * Get next page of orders, or an empty list when done
+         */
+        List<Order> nextPage() throws Exception;
+    }
+
+    private final Context context;
+    private final Gson gson;
+    private final SimpleDateFormat timestampFormat;
+
+    public ReportExporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.gson = new GsonBuilder()
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ssZ")
+                .serializeSpecialFloatingPointValues() // Empty percentiles are NaN
+                .create();
+        this.timestampFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+    }
+
+    /**
+     * Export report map, flattening nested sections (items, categories, hourly, cohorts)
+     * CSV rows are section,key,value; JSON keeps the nesting
+     */
+    public File exportReport(Map<String, Object> data, Format format, String baseName) throws IOException {
+        File file = createExportFile(baseName, format);
+        try (Writer writer = openWriter(file)) {
+            if (format == Format.CSV) {
+                CsvWriter csv = new CsvWriter(writer);
+                csv.writeRow("Section", "Key", "Value");
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    writeCsvSection(csv, entry.getKey(), entry.getValue());
+                }
+            } else {
+                JsonWriter json = new JsonWriter(writer);
+                json.setIndent("  ");
+                json.beginObject();
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    json.name(entry.getKey());
+                    if (entry.getValue() == null) {
+                        json.nullValue();
+                    } else {
+                        gson.toJson(entry.getValue(), entry.getValue().getClass(), json);
+                    }
+                }
+                json.endObject();
+                json.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Export one row per order, pulling pages from source until it is exhausted
+     * Only the current page is held in memory
+     */
+    public File exportOrders(OrderPageSource source, Format format, String baseName) throws Exception {
+        File file = createExportFile(baseName, format);
+        try (Writer writer = openWriter(file)) {
+            CsvWriter csv = null;
+            JsonWriter json = null;
+            if (format == Format.CSV) {
+                csv = new CsvWriter(writer);
+                csv.writeRow((Object[]) ORDER_COLUMNS);
+            } else {
+                json = new JsonWriter(writer);
+                json.beginArray();
+            }
+
+            Object[] row = new Object[ORDER_COLUMNS.length];
+            List<Order> page;
+            while (!(page = source.nextPage()).isEmpty()) {
+                for (Order order : page) {
+                    fillOrderRow(order, row);
+                    if (csv != null) {
+                        csv.writeRow(row);
+                    } else {
+                        writeJsonRow(json, row);
+                    }
+                }
+            }
+
+            if (json != null) {
+                json.endArray();
+                json.flush();
+            }
+        } catch (Exception e) {
+            file.delete();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Get shareable content URI for an exported file
+     */
+    public Uri getUri(File file) {
+        return FileProvider.getUriForFile(context, context.getPackageName() + FILE_PROVIDER_SUFFIX, file);
+    }
+
+    // Internal Helpers
+
+    private File createExportFile(String baseName, Format format) throws IOException {
+        File directory = new File(context.getCacheDir(), EXPORT_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create export directory");
+        }
+        deleteOldExports(directory);
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        return new File(directory, baseName + "_" + stamp + "." + format.getExtension());
+    }
+
+    private void deleteOldExports(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - EXPORT_RETENTION_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                Log.w(TAG, "Failed to delete old export " + file.getName());
+            }
+        }
+    }
+
+    private Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private void writeCsvSection(CsvWriter csv, String section, Object value) throws IOException {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            csv.writeRow("summary", section, value);
+            return;
+        }
+        if (value instanceof Date) {
+            csv.writeRow("summary", section, formatDate((Date) value));
+            return;
+        }
+        writeCsvElement(csv, section, "", gson.toJsonTree(value));
+    }
+
+    private void writeCsvElement(CsvWriter csv, String section, String path, JsonElement element) throws IOException {
+        if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> child : object.entrySet()) {
+                writeCsvElement(csv, section, path.isEmpty() ? child.getKey() : path + "." + child.getKey(), child.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                writeCsvElement(csv, section, path.isEmpty() ? String.valueOf(i) : path + "." + i, array.get(i));
+            }
+        } else if (element.isJsonNull()) {
+            csv.writeRow(section, path, null);
+        } else if (element.getAsJsonPrimitive().isNumber()) {
+            csv.writeRow(section, path, element.getAsNumber());
+        } else {
+            csv.writeRow(section, path, element.getAsString());
+        }
+    }
+
+    private void fillOrderRow(Order order, Object[] row) {
+        row[0] = order.getOrderId();
+        row[1] = formatDate(order.getCreatedAt());
+        row[2] = order.getStatus() != null ? order.getStatus().name() : null;
+        row[3] = order.getUserId();
+        row[4] = order.getUserName();
+        row[5] = order.getTotalItemCount();
+        row[6] = order.getTotalAmount();
+        row[7] = order.getDiscountAmount();
+        row[8] = order.getTaxAmount();
+        row[9] = order.getFinalAmount();
+        row[10] = order.getPaymentMethod() != null ? order.getPaymentMethod().name() : null;
+        row[11] = order.isPaymentCompleted();
+        row[12] = order.getDeliveryType() != null ? order.getDeliveryType().name() : null;
+        row[13] = formatDate(order.getConfirmedAt());
+        row[14] = formatDate(order.getReadyAt());
+        row[15] = formatDate(order.getDeliveredAt());
+        row[16] = formatDate(order.getCancelledAt());
+        row[17] = order.getSpecialInstructions();
+    }
+
+    private void writeJsonRow(JsonWriter json, Object[] row) throws IOException {
+        json.beginObject();
+        for (int i = 0; i < ORDER_COLUMNS.length; i++) {
+            json.name(ORDER_COLUMNS[i]);
+            Object value = row[i];
+            if (value == null) {
+                json.nullValue();
+            } else if (value instanceof Number) {
+                json.value((Number) value);
+            } else if (value instanceof Boolean) {
+                json.value((Boolean) value);
+            } else {
+                json.value(value.toString());
+            }
+        }
+        json.endObject();
+    }
+
+    private String formatDate(Date date) {
+        return date != null ? timestampFormat.format(date) : null;
+    }
+
+    /**
+     * Minimal RFC 4180 CSV writer
+     */
+    static class CsvWriter {
+        private final Writer writer;
+
+        CsvWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        void writeRow(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(Object value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Number || value instanceof Boolean) {
+                writer.write(value.toString());
+                return;
+            }
+
+            String text = value.toString();
+            // Stop spreadsheets from evaluating user-entered text as a formula
+            if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+                text = "'" + text;
+            }
+
+            boolean needsQuotes = text.indexOf(',') >= 0 || text.indexOf('"') >= 0
+                    || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0
+                    || (!text.isEmpty() && (text.charAt(0) == ' ' || text.charAt(text.length() - 1) == ' '));
+            if (!needsQuotes) {
+                writer.write(text);
+                return;
+            }
+
+            writer.write('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+    }
+}
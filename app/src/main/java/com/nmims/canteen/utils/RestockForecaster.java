@@ -0,0 +1,238 @@
+package com.nmims.canteen.utils;
+
+import com.nmims.canteen.models.InventoryItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Per-item consumption velocity by weekday and hour, for restock forecasting
+ * Every cache update is reduced to the units consumed (sold + stock out) since the item was
+ * last seen and added to the current hour; each closed hour folds into an EWMA for its
+ * weekday-hour slot. A forecast rolls the profile forward to now and walks at most one
+ * week of slots, so refreshing every item costs O(items) with no history rescans.
+ */
+class RestockForecaster {
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    private static final double ALPHA = 0.3; // Weight of the latest week in each slot
+    private static final int MAX_IDLE_HOURS_FOLDED = 4 * HOURS_PER_WEEK; // After a month idle the profile has decayed enough
+
+    /**
+     * Projected consumption for one item
+     */
+    static class Forecast {
+        final double dailyVelocity; // Units per day over the weekly profile
+        final double hoursToStockout; // From now, at the projected rate
+        final double demandOverHorizon; // Units consumed over the requested horizon
+
+        Forecast(double dailyVelocity, double hoursToStockout, double demandOverHorizon) {
+            this.dailyVelocity = dailyVelocity;
+            this.hoursToStockout = hoursToStockout;
+            this.demandOverHorizon = demandOverHorizon;
+        }
+    }
+
+    // Guarded by this
+    private final Map<String, History> histories;
+
+    // Default timezone is cloned on every lookup, so resolve it once
+    private final TimeZone timeZone;
+
+    RestockForecaster() {
+        this.histories = new HashMap<>();
+        this.timeZone = TimeZone.getDefault();
+    }
+
+    /**
+     * Feed the item's current counters; the first sighting seeds from its recent movement ring
+     */
+    synchronized void observe(String key, InventoryItem item, long now) {
+        long consumed = (long) item.getSold() + item.getStockOut();
+        History history = histories.get(key);
+
+        if (history == null) {
+            history = new History(localHour(now));
+            seed(history, item.getRecentMovements(), now);
+            history.consumedTotal = consumed;
+            histories.put(key, history);
+            return;
+        }
+
+        long delta = consumed - history.consumedTotal;
+        history.consumedTotal = consumed;
+        if (delta > 0) {
+            history.record(delta, localHour(now));
+        }
+    }
+
+    synchronized void remove(String key) {
+        histories.remove(key);
+    }
+
+    synchronized void clear() {
+        histories.clear();
+    }
+
+    /**
+     * Forecast key at stock over the next horizonHours; null when no consumption has been seen
+     */
+    synchronized Forecast forecast(String key, int stock, int horizonHours, long now) {
+        History history = histories.get(key);
+        if (history == null) {
+            return null;
+        }
+        long hour = localHour(now);
+        history.closeThrough(hour);
+
+        // Expected units per hour, starting at the current hour; slots not seen yet (the first
+        // week of an item) assume the mean of the slots that have been
+        double[] demand = new double[HOURS_PER_WEEK];
+        double seenTotal = 0;
+        int seenSlots = 0;
+        for (int i = 0; i < HOURS_PER_WEEK; i++) {
+            demand[i] = history.expected(hour + i);
+            if (demand[i] >= 0) {
+                seenTotal += demand[i];
+                seenSlots++;
+            }
+        }
+        if (seenTotal <= 0) {
+            return null;
+        }
+        double weekly = 0;
+        for (int i = 0; i < HOURS_PER_WEEK; i++) {
+            if (demand[i] < 0) {
+                demand[i] = seenTotal / seenSlots;
+            }
+            weekly += demand[i];
+        }
+        // Units already consumed this hour come off the current hour's expectation
+        double consumedThisHour = Math.min(history.openUnits, demand[0]);
+        demand[0] -= consumedThisHour;
+        weekly -= consumedThisHour;
+
+        return new Forecast(weekly / 7, hoursToStockout(demand, weekly, stock), demandOver(demand, weekly, horizonHours));
+    }
+
+    // Internal Helpers
+
+    private static double hoursToStockout(double[] demand, double weekly, int stock) {
+        if (stock <= 0) {
+            return 0;
+        }
+        // Skip whole weeks, then walk the final partial week slot by slot
+        long weeks = (long) (stock / weekly);
+        double remaining = stock - weeks * weekly;
+        double hours = weeks * HOURS_PER_WEEK;
+        for (int i = 0; i < HOURS_PER_WEEK; i++) {
+            if (demand[i] >= remaining && demand[i] > 0) {
+                return hours + i + remaining / demand[i];
+            }
+            remaining -= demand[i];
+        }
+        return hours + HOURS_PER_WEEK;
+    }
+
+    private static double demandOver(double[] demand, double weekly, int horizonHours) {
+        double total = (horizonHours / HOURS_PER_WEEK) * weekly;
+        for (int i = 0; i < horizonHours % HOURS_PER_WEEK; i++) {
+            total += demand[i];
+        }
+        return total;
+    }
+
+    private void seed(History history, List<InventoryItem.InventoryMovement> recentMovements, long now) {
+        if (recentMovements == null || recentMovements.isEmpty()) {
+            return;
+        }
+        // The ring is newest first; replay oldest first from the oldest movement's hour
+        List<InventoryItem.InventoryMovement> replay = new ArrayList<>();
+        for (int i = recentMovements.size() - 1; i >= 0; i--) {
+            InventoryItem.InventoryMovement movement = recentMovements.get(i);
+            if (movement.getTimestamp() != null && movement.getTimestamp().getTime() <= now
+                    && ("SALE".equals(movement.getMovementType()) || "STOCK_OUT".equals(movement.getMovementType()))) {
+                replay.add(movement);
+            }
+        }
+        if (replay.isEmpty()) {
+            return;
+        }
+        history.openHour = Math.max(localHour(replay.get(0).getTimestamp().getTime()), localHour(now) - HOURS_PER_WEEK);
+        for (InventoryItem.InventoryMovement movement : replay) {
+            history.record(Math.abs(movement.getQuantity()), localHour(movement.getTimestamp().getTime()));
+        }
+    }
+
+    /**
+     * Hours since the epoch in local time, so hour % 24 is the local hour of day
+     */
+    private long localHour(long timeMillis) {
+        return Math.floorDiv(timeMillis + timeZone.getOffset(timeMillis), HOUR_MS);
+    }
+
+    /**
+     * Weekday-hour slot of a local hour, Sunday 00:00 first; 1970-01-01 was a Thursday
+     */
+    private static int slotOf(long localHour) {
+        return (int) Math.floorMod(localHour + 4 * 24, (long) HOURS_PER_WEEK);
+    }
+
+    /**
+     * Consumption profile of one item
+     */
+    private static class History {
+        final double[] profile = new double[HOURS_PER_WEEK];
+        final int[] samples = new int[HOURS_PER_WEEK];
+        long openHour; // Local hour still accumulating
+        double openUnits;
+        long consumedTotal; // sold + stockOut as last observed
+
+        History(long openHour) {
+            this.openHour = openHour;
+        }
+
+        void record(double units, long hour) {
+            if (hour > openHour) {
+                closeThrough(hour);
+            }
+            openUnits += units; // Late arrivals count towards the open hour
+        }
+
+        /**
+         * Fold every hour before hour into its slot; idle hours fold in as zero demand
+         */
+        void closeThrough(long hour) {
+            if (hour <= openHour) {
+                return;
+            }
+            fold(openHour, openUnits);
+            long idle = Math.min(hour - openHour - 1, MAX_IDLE_HOURS_FOLDED);
+            for (long h = hour - idle; h < hour; h++) {
+                fold(h, 0);
+            }
+            openHour = hour;
+            openUnits = 0;
+        }
+
+        /**
+         * Bias-corrected EWMA of a slot, so a slot seen once is not shrunk towards zero; -1 if never seen
+         */
+        double expected(long hour) {
+            int slot = slotOf(hour);
+            if (samples[slot] == 0) {
+                return -1;
+            }
+            return profile[slot] / (1 - Math.pow(1 - ALPHA, samples[slot]));
+        }
+
+        private void fold(long hour, double units) {
+            int slot = slotOf(hour);
+            profile[slot] = ALPHA * units + (1 - ALPHA) * profile[slot];
+            samples[slot]++;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.nmims.canteen.utils;
+
+import com.nmims.canteen.models.AdminNotification;
+import com.nmims.canteen.models.CartItem;
+import com.nmims.canteen.models.Order;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming anomaly detector over the live order feed
+ * Keeps EWMA baselines of orders per hour-of-week, each item's share of orders and the
+ * payment success rate, and raises admin alerts for drops, spikes and revenue milestones.
+ * Each order event is O(1) (O(lines) for its items) and rolls the hour over when it arrives
+ * after the hour ended; a periodic check closes idle hours and looks for items that stopped
+ * selling. Every admin device runs a detector, so alerts are keyed by metric and hour and
+ * raised once across devices. All state is confined to the live lane.
+ */
+class SalesAnomalyDetector {
+    private static final int HOURS_OF_WEEK = DemandMatrix.DAYS * DemandMatrix.HOURS;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long CHECK_INTERVAL_MINUTES = 5;
+    private static final long ALERT_COOLDOWN_MS = HOUR_MS;
+
+    // Orders per hour-of-week, one EWMA step per week
+    private static final double RATE_ALPHA = 0.3;
+    private static final double Z_THRESHOLD = 3;
+    private static final double MIN_EXPECTED_ORDERS = 5;
+    private static final double MIN_HOUR_FRACTION = 0.25; // Judge partial hours only after 15 minutes
+
+    // Item share of orders, one EWMA step per order (roughly the last 100 orders)
+    private static final double ITEM_SHARE_ALPHA = 0.01;
+    private static final double MIN_ITEM_SHARE = 0.03;
+    private static final double ITEM_MISSING_PROBABILITY = 0.001;
+    private static final int ITEM_SPIKE_MIN_COUNT = 10;
+    private static final double ITEM_SPIKE_FACTOR = 3;
+
+    // Payment success rate, recent vs usual
+    private static final double PAYMENT_FAST_ALPHA = 0.2;
+    private static final double PAYMENT_SLOW_ALPHA = 0.02;
+    private static final double PAYMENT_DROP = 0.3;
+    private static final int MIN_PAYMENT_EVENTS = 20;
+
+    private static final double MILESTONE_STEP = 5000;
+
+    private final ScheduledExecutorService lane;
+    private final NotificationManager notificationManager;
+    private final DemandMatrix clock; // Only used for allocation-free hour-of-week bucketing
+
+    // Lane-confined state
+    private final double[] slotMean;
+    private final double[] slotVariance;
+    private final boolean[] slotLearned;
+    private long hourStart;
+    private int hourSlot;
+    private int hourOrders;
+
+    private final Map<String, ItemStats> items;
+    private long orderIndex;
+
+    private double paymentFast;
+    private double paymentSlow;
+    private int paymentEvents;
+
+    private String milestoneDateId;
+    private double nextMilestone;
+
+    private final Map<String, Long> lastAlertAt;
+    private ScheduledFuture<?> checkTask;
+
+    SalesAnomalyDetector(ScheduledExecutorService lane, NotificationManager notificationManager) {
+        this.lane = lane;
+        this.notificationManager = notificationManager;
+        this.clock = new DemandMatrix();
+        this.slotMean = new double[HOURS_OF_WEEK];
+        this.slotVariance = new double[HOURS_OF_WEEK];
+        this.slotLearned = new boolean[HOURS_OF_WEEK];
+        this.items = new HashMap<>();
+        this.lastAlertAt = new HashMap<>();
+        this.paymentFast = 1;
+        this.paymentSlow = 1;
+    }
+
+    /**
+     * Start the periodic check (call on the lane)
+     */
+    void start() {
+        stop();
+        openHour(System.currentTimeMillis());
+        checkTask = lane.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MINUTES, CHECK_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop the periodic check, keeping learned baselines (call on the lane)
+     */
+    void stop() {
+        if (checkTask != null) {
+            checkTask.cancel(false);
+            checkTask = null;
+        }
+    }
+
+    /**
+     * Seed hourly baselines from per-day averages of recent weeks; learned slots are kept
+     */
+    void seed(DemandMatrix history) {
+        for (int slot = 0; slot < HOURS_OF_WEEK; slot++) {
+            int weekday = slot / DemandMatrix.HOURS;
+            if (slotLearned[slot] || history.getDaysSeen(weekday) == 0) {
+                continue;
+            }
+            double mean = history.getAverageHour(DemandMatrix.Metric.ORDERS, weekday, slot % DemandMatrix.HOURS);
+            slotMean[slot] = mean;
+            slotVariance[slot] = mean; // Assume Poisson until real variance is learned
+            slotLearned[slot] = true;
+        }
+    }
+
+    /**
+     * Order placed; replay is true for orders delivered by the listener's initial snapshot
+     */
+    void onOrderPlaced(Order order, boolean replay) {
+        if (order.getCreatedAt() == null) {
+            return;
+        }
+
+        rollHour(System.currentTimeMillis());
+        long createdAt = order.getCreatedAt().getTime();
+        boolean inCurrentHour = createdAt >= hourStart && createdAt < hourStart + HOUR_MS;
+        if (inCurrentHour) {
+            hourOrders++;
+        }
+
+        if (!replay) {
+            orderIndex++;
+        }
+        if (order.getItems() != null) {
+            for (CartItem item : order.getItems()) {
+                if (item != null && item.getFoodItem() != null && item.getFoodItem().getItemId() != null) {
+                    onItemOrdered(item, replay, inCurrentHour);
+                }
+            }
+        }
+
+        if (inCurrentHour && !replay) {
+            checkOrderSpike();
+        }
+    }
+
+    /**
+     * Payment outcome: paid, or cancelled before payment completed
+     */
+    void onPaymentResolved(boolean success) {
+        double outcome = success ? 1 : 0;
+        paymentFast += PAYMENT_FAST_ALPHA * (outcome - paymentFast);
+        paymentSlow += PAYMENT_SLOW_ALPHA * (outcome - paymentSlow);
+        paymentEvents++;
+
+        if (paymentEvents >= MIN_PAYMENT_EVENTS && paymentFast < paymentSlow - PAYMENT_DROP) {
+            raise("payments", AdminNotification.createPaymentIssueAlert(paymentFast, paymentSlow));
+        }
+    }
+
+    /**
+     * Today's revenue after a batch of changes; milestones already passed on replay are skipped
+     */
+    void onRevenue(String dateId, double revenue, boolean replay) {
+        if (!dateId.equals(milestoneDateId)) {
+            milestoneDateId = dateId;
+            nextMilestone = MILESTONE_STEP;
+        }
+        if (revenue < nextMilestone) {
+            return;
+        }
+
+        double reached = Math.floor(revenue / MILESTONE_STEP) * MILESTONE_STEP;
+        nextMilestone = reached + MILESTONE_STEP;
+        if (!replay) {
+            notificationManager.sendSalesMilestoneNotification(reached);
+        }
+    }
+
+    // Lane Helpers
+
+    private void onItemOrdered(CartItem item, boolean replay, boolean inCurrentHour) {
+        String itemId = item.getFoodItem().getItemId();
+        ItemStats stats = items.get(itemId);
+        if (stats == null) {
+            stats = new ItemStats(item.getFoodItemName());
+            items.put(itemId, stats);
+        }
+
+        if (stats.hourStart != hourStart) {
+            stats.hourStart = hourStart;
+            stats.hourCount = 0;
+            stats.hourShare = stats.share;
+        }
+        if (inCurrentHour) {
+            stats.hourCount++;
+        }
+
+        if (!replay && stats.lastSeenIndex < orderIndex) {
+            // Lazily apply the decay of the orders that did not contain this item
+            stats.share = stats.share * Math.pow(1 - ITEM_SHARE_ALPHA, orderIndex - stats.lastSeenIndex) + ITEM_SHARE_ALPHA;
+        }
+        stats.lastSeenIndex = orderIndex;
+        stats.missingRaised = false;
+
+        // Items without an established share have no baseline to spike from
+        double expected = stats.hourShare * hourOrders;
+        if (!replay && inCurrentHour && stats.hourShare >= MIN_ITEM_SHARE
+                && stats.hourCount >= ITEM_SPIKE_MIN_COUNT && stats.hourCount > ITEM_SPIKE_FACTOR * expected) {
+            raise("item-spike:" + itemId,
+                    AdminNotification.createDemandSpikeNotification(stats.name, stats.hourCount, expected));
+        }
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (!rollHour(now)) {
+            checkOrderDrop(now);
+        }
+        checkMissingItems();
+    }
+
+    /**
+     * Close the current hour if now is past it; true if it was closed
+     */
+    private boolean rollHour(long now) {
+        if (now < hourStart + HOUR_MS) {
+            return false;
+        }
+        closeHour();
+        openHour(now);
+        return true;
+    }
+
+    private void openHour(long now) {
+        hourSlot = clock.slotOf(now) / 4;
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        hourStart = calendar.getTimeInMillis();
+        hourOrders = 0;
+    }
+
+    /**
+     * Judge the finished hour against its baseline, then fold it into the EWMA
+     */
+    private void closeHour() {
+        checkOrderDrop(hourStart + HOUR_MS);
+
+        double observed = hourOrders;
+        if (!slotLearned[hourSlot]) {
+            slotMean[hourSlot] = observed;
+            slotVariance[hourSlot] = Math.max(observed, 1);
+            slotLearned[hourSlot] = true;
+            return;
+        }
+        double delta = observed - slotMean[hourSlot];
+        slotMean[hourSlot] += RATE_ALPHA * delta;
+        slotVariance[hourSlot] = (1 - RATE_ALPHA) * (slotVariance[hourSlot] + RATE_ALPHA * delta * delta);
+    }
+
+    private void checkOrderSpike() {
+        if (!slotLearned[hourSlot]) {
+            return;
+        }
+        double mean = slotMean[hourSlot];
+        double threshold = mean + Z_THRESHOLD * getDeviation(hourSlot, 1);
+        if (hourOrders >= MIN_EXPECTED_ORDERS && hourOrders > threshold) {
+            raise("orders-spike", AdminNotification.createDemandSpikeNotification("Orders", hourOrders, mean));
+        }
+    }
+
+    private void checkOrderDrop(long now) {
+        double fraction = Math.min(1, (double) (now - hourStart) / HOUR_MS);
+        if (!slotLearned[hourSlot] || fraction < MIN_HOUR_FRACTION) {
+            return;
+        }
+        double expected = slotMean[hourSlot] * fraction;
+        if (expected >= MIN_EXPECTED_ORDERS && hourOrders < expected - Z_THRESHOLD * getDeviation(hourSlot, fraction)) {
+            raise("orders-drop", AdminNotification.createSalesDropAlert(hourOrders, expected,
+                    DemandMatrix.formatSlot(hourSlot * 4)));
+        }
+    }
+
+    /**
+     * An item with share s should appear within n orders unless (1 - s)^n is tiny
+     */
+    private void checkMissingItems() {
+        for (Map.Entry<String, ItemStats> entry : items.entrySet()) {
+            ItemStats stats = entry.getValue();
+            long ordersSince = orderIndex - stats.lastSeenIndex;
+            if (stats.missingRaised || stats.share < MIN_ITEM_SHARE || ordersSince == 0) {
+                continue;
+            }
+            if (Math.pow(1 - stats.share, ordersSince) < ITEM_MISSING_PROBABILITY) {
+                stats.missingRaised = true;
+                raise("item-missing:" + entry.getKey(),
+                        AdminNotification.createItemNotSellingAlert(entry.getKey(), stats.name, ordersSince));
+            }
+        }
+    }
+
+    /**
+     * Standard deviation of the count expected in a fraction of the slot's hour
+     */
+    private double getDeviation(int slot, double fraction) {
+        double variance = Math.max(slotVariance[slot], slotMean[slot]) * fraction;
+        return Math.sqrt(Math.max(variance, 1));
+    }
+
+    private void raise(String key, AdminNotification notification) {
+        long now = System.currentTimeMillis();
+        Long last = lastAlertAt.get(key);
+        if (last != null && now - last < ALERT_COOLDOWN_MS) {
+            return;
+        }
+        lastAlertAt.put(key, now);
+        notificationManager.sendMonitoringAlert(key + "_" + hourStart, notification);
+    }
+
+    /**
+     * Per-item baseline
+     */
+    private static class ItemStats {
+        final String name;
+        double share; // EWMA of "order contains this item", as of lastSeenIndex
+        long lastSeenIndex;
+        boolean missingRaised;
+
+        long hourStart;
+        int hourCount;
+        double hourShare; // Share at the start of the hour, for spike checks
+
+        ItemStats(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.nmims.canteen.utils;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Time-limited stock holds placed when items are added to a cart
+ * Each hold is a document under inventory/<id>/reservations, and the units held on an item are
+ * spread over SHARD_COUNT counter documents so holds and checkouts do not all write one document.
+ * Available stock is currentStock minus all shards; a hold transaction reads every shard, so
+ * holds placed from other devices are always counted, and writes only its own. A hold lapses
+ * after HOLD_TTL_MS; lapsed
+ * holds still count until someone needs the units, and are released then. At checkout a hold
+ * turns into a sale with blind increments, so the order never reads the hot inventory document.
+ */
+public class StockReservationManager {
+    private static final String TAG = "StockReservationManager";
+    private static StockReservationManager instance;
+
+    public static final long HOLD_TTL_MS = 10 * 60 * 1000L;
+    private static final int SHARD_COUNT = 8;
+    private static final int EXPIRED_SWEEP_LIMIT = 20;
+
+    // Reservation states
+    public static final String STATUS_HELD = "HELD";
+    public static final String STATUS_CONVERTED = "CONVERTED";
+    public static final String STATUS_RELEASED = "RELEASED";
+    public static final String STATUS_EXPIRED = "EXPIRED";
+
+    // Document fields
+    private static final String FIELD_HELD = "held";
+    private static final String FIELD_STATUS = "status";
+    private static final String FIELD_QUANTITY = "quantity";
+    private static final String FIELD_SHARD = "shard";
+    private static final String FIELD_EXPIRES_AT = "expiresAt";
+
+    private final Random random;
+
+    private StockReservationManager() {
+        this.random = new Random();
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized StockReservationManager getInstance() {
+        if (instance == null) {
+            instance = new StockReservationManager();
+        }
+        return instance;
+    }
+
+    /**
+     * An active hold
+     */
+    public static class Hold {
+        private final String reservationId;
+        private final int quantity;
+        private final long expiresAt;
+
+        Hold(String reservationId, int quantity, long expiresAt) {
+            this.reservationId = reservationId;
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getReservationId() { return reservationId; }
+        public int getQuantity() { return quantity; }
+        public long getExpiresAt() { return expiresAt; }
+    }
+
+    /**
+     * Reservation callback interface
+     * onFailure means the stock is not there; when the hold could not be placed for any other
+     * reason (offline, permissions) onSuccess gets null and the line is checked at checkout
+     */
+    public interface ReservationCallback {
+        void onSuccess(Hold hold);
+        void onFailure(String error);
+    }
+
+    // Holds
+
+    /**
+     * Hold quantity units of an item, creating a hold or resizing an existing one (null
+     * reservationId creates); the TTL restarts either way
+     */
+    public void hold(String inventoryId, String reservationId, int quantity, ReservationCallback callback) {
+        if (inventoryId == null || quantity <= 0) {
+            if (callback != null) callback.onFailure("Invalid item or quantity");
+            return;
+        }
+        runHold(inventoryId, reservationId, quantity, Collections.emptyList(), callback);
+    }
+
+    /**
+     * Release a hold, e.g. when its cart line is removed; converted or lapsed holds are left alone
+     */
+    public void release(String inventoryId, String reservationId) {
+        if (inventoryId == null || reservationId == null) {
+            return;
+        }
+        DocumentReference reservationRef = FirebaseUtils.getReservationsCollection(inventoryId).document(reservationId);
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot reservation = transaction.get(reservationRef);
+            if (isHeld(reservation)) {
+                releaseInTransaction(transaction, inventoryId, reservation, STATUS_RELEASED);
+            }
+            return null;
+        }).addOnFailureListener(e -> Log.e(TAG, "Failed to release hold " + reservationId, e));
+    }
+
+    // Checkout
+
+    /**
+     * Read a cart line's hold inside a checkout transaction (read phase)
+     */
+    public DocumentSnapshot readHold(Transaction transaction, String inventoryId, String reservationId)
+            throws FirebaseFirestoreException {
+        if (reservationId == null) {
+            return null;
+        }
+        return transaction.get(FirebaseUtils.getReservationsCollection(inventoryId).document(reservationId));
+    }
+
+    /**
+     * Whether a hold read by readHold still reserves at least quantity units
+     * Lapsed holds that nobody has swept still count, since their units are still held
+     */
+    public static boolean coversQuantity(DocumentSnapshot reservation, int quantity) {
+        if (!isHeld(reservation)) {
+            return false;
+        }
+        Long held = reservation.getLong(FIELD_QUANTITY);
+        return held != null && held >= quantity;
+    }
+
+    /**
+     * Units held on an item, summed over every shard inside a transaction (read phase)
+     */
+    public long readHeldUnits(Transaction transaction, String inventoryId) throws FirebaseFirestoreException {
+        long held = 0;
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            Long value = transaction.get(FirebaseUtils.getReservationShardDocument(inventoryId, shard)).getLong(FIELD_HELD);
+            held += value != null ? value : 0;
+        }
+        return held;
+    }
+
+    /**
+     * Mark a hold as sold and return its units from the shard (write phase)
+     * The caller decrements currentStock by the quantity sold; any excess held is freed
+     */
+    public void convertHold(Transaction transaction, String inventoryId, DocumentSnapshot reservation) {
+        releaseInTransaction(transaction, inventoryId, reservation, STATUS_CONVERTED);
+    }
+
+    // Internal Helpers
+
+    private void runHold(String inventoryId, String reservationId, int quantity, List<String> expiredIds,
+                         ReservationCallback callback) {
+        DocumentReference inventoryRef = FirebaseUtils.getInventoryItemDocument(inventoryId);
+        DocumentReference reservationRef = reservationId != null
+                ? FirebaseUtils.getReservationsCollection(inventoryId).document(reservationId)
+                : FirebaseUtils.getReservationsCollection(inventoryId).document();
+        int newShard = random.nextInt(SHARD_COUNT);
+
+        FirebaseUtils.getFirestore().runTransaction((Transaction.Function<Hold>) transaction -> {
+            long now = System.currentTimeMillis();
+
+            // Reads: stock, the hold being resized, any lapsed holds to sweep, then the held units
+            DocumentSnapshot inventoryDoc = transaction.get(inventoryRef);
+            if (!inventoryDoc.exists()) {
+                throw new FirebaseFirestoreException("Inventory item not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            DocumentSnapshot existing = reservationId != null ? transaction.get(reservationRef) : null;
+            List<DocumentSnapshot> lapsed = new ArrayList<>();
+            for (String expiredId : expiredIds) {
+                if (expiredId.equals(reservationRef.getId())) {
+                    continue;
+                }
+                DocumentSnapshot candidate = transaction.get(FirebaseUtils.getReservationsCollection(inventoryId).document(expiredId));
+                Date expiresAt = candidate.getDate(FIELD_EXPIRES_AT);
+                if (isHeld(candidate) && expiresAt != null && expiresAt.getTime() < now) {
+                    lapsed.add(candidate);
+                }
+            }
+
+            boolean resize = isHeld(existing);
+            long current = resize ? existing.getLong(FIELD_QUANTITY) : 0;
+            long freed = 0;
+            for (DocumentSnapshot candidate : lapsed) {
+                freed += candidate.getLong(FIELD_QUANTITY);
+            }
+            Long stock = inventoryDoc.getLong("currentStock");
+            int shard = resize ? existing.getLong(FIELD_SHARD).intValue() : newShard;
+            long held = readHeldUnits(transaction, inventoryId);
+            long available = (stock != null ? stock : 0) - held + freed + current;
+            if (quantity > available) {
+                throw new FirebaseFirestoreException(available <= 0 ? "Out of stock" : "Only " + available + " left",
+                        FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+
+            // Writes: each shard at most once
+            long[] shardDeltas = new long[SHARD_COUNT];
+            for (DocumentSnapshot candidate : lapsed) {
+                transaction.update(candidate.getReference(), FIELD_STATUS, STATUS_EXPIRED);
+                shardDeltas[candidate.getLong(FIELD_SHARD).intValue()] -= candidate.getLong(FIELD_QUANTITY);
+            }
+
+            Date expiresAt = new Date(now + HOLD_TTL_MS);
+            if (resize) {
+                shardDeltas[shard] += quantity - current;
+                transaction.update(reservationRef, FIELD_QUANTITY, quantity, FIELD_EXPIRES_AT, expiresAt);
+            } else {
+                shardDeltas[newShard] += quantity;
+                Map<String, Object> reservation = new HashMap<>();
+                reservation.put("userId", FirebaseUtils.getCurrentUserId());
+                reservation.put(FIELD_QUANTITY, quantity);
+                reservation.put(FIELD_SHARD, newShard);
+                reservation.put(FIELD_STATUS, STATUS_HELD);
+                reservation.put(FIELD_EXPIRES_AT, expiresAt);
+                reservation.put("createdAt", FieldValue.serverTimestamp());
+                transaction.set(reservationRef, reservation);
+            }
+            writeShardDeltas(transaction, inventoryId, shardDeltas);
+
+            return new Hold(reservationRef.getId(), quantity, expiresAt.getTime());
+        }).addOnSuccessListener(hold -> {
+            Log.d(TAG, "Holding " + hold.getQuantity() + " of " + inventoryId);
+            if (callback != null) callback.onSuccess(hold);
+        }).addOnFailureListener(e -> {
+            if (!isInsufficient(e)) {
+                Log.e(TAG, "Failed to hold stock for " + inventoryId + ", leaving it unheld", e);
+                if (callback != null) callback.onSuccess(null);
+                return;
+            }
+            if (expiredIds.isEmpty()) {
+                // Lapsed holds are only swept when their units are actually needed
+                sweepAndRetry(inventoryId, reservationId, quantity, e.getMessage(), callback);
+                return;
+            }
+            if (callback != null) callback.onFailure(e.getMessage());
+        });
+    }
+
+    private void sweepAndRetry(String inventoryId, String reservationId, int quantity, String error,
+                               ReservationCallback callback) {
+        FirebaseUtils.getExpiredReservationsQuery(inventoryId, new Date(), EXPIRED_SWEEP_LIMIT)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    List<String> expiredIds = new ArrayList<>();
+                    for (QueryDocumentSnapshot document : snapshots) {
+                        expiredIds.add(document.getId());
+                    }
+                    if (expiredIds.isEmpty()) {
+                        if (callback != null) callback.onFailure(error);
+                    } else {
+                        runHold(inventoryId, reservationId, quantity, expiredIds, callback);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to look up lapsed holds", e);
+                    if (callback != null) callback.onFailure(error);
+                });
+    }
+
+    private void releaseInTransaction(Transaction transaction, String inventoryId, DocumentSnapshot reservation, String status) {
+        long[] shardDeltas = new long[SHARD_COUNT];
+        shardDeltas[reservation.getLong(FIELD_SHARD).intValue()] -= reservation.getLong(FIELD_QUANTITY);
+        transaction.update(reservation.getReference(), FIELD_STATUS, status);
+        writeShardDeltas(transaction, inventoryId, shardDeltas);
+    }
+
+    private void writeShardDeltas(Transaction transaction, String inventoryId, long[] shardDeltas) {
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            if (shardDeltas[shard] != 0) {
+                Map<String, Object> delta = new HashMap<>();
+                delta.put(FIELD_HELD, FieldValue.increment(shardDeltas[shard]));
+                transaction.set(FirebaseUtils.getReservationShardDocument(inventoryId, shard), delta, SetOptions.merge());
+            }
+        }
+    }
+
+    private static boolean isHeld(DocumentSnapshot reservation) {
+        return reservation != null && reservation.exists() && STATUS_HELD.equals(reservation.getString(FIELD_STATUS));
+    }
+
+    private static boolean isInsufficient(Exception e) {
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.FAILED_PRECONDITION;
+    }
+}
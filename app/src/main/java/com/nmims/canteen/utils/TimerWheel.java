@@ -0,0 +1,178 @@
+package com.nmims.canteen.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel over abstract ticks (e.g. epoch days or seconds)
+ * Four levels of 64 slots; a timer is filed at the level of the highest 6-bit group in
+ * which its deadline differs from the current tick and cascades down as that group is
+ * reached, so scheduling is O(1) and advancing is O(1) per tick plus O(due timers).
+ * Slots are intrusive linked lists, so a cancelled timer leaves its slot at once and the
+ * wheel only ever holds live timers.
+ * Not thread-safe: confine to one lane or guard externally.
+ */
+class TimerWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * Scheduled timer; cancelling unlinks it in O(1)
+     */
+    static class Timer<T> {
+        final T value;
+        final long deadline;
+        private final TimerWheel<T> wheel;
+        private Timer<T> prev; // Null while not in a slot (fired, cancelled or a slot head)
+        private Timer<T> next;
+        private boolean cancelled;
+
+        private Timer(TimerWheel<T> wheel, T value, long deadline) {
+            this.wheel = wheel;
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (prev != null) {
+                wheel.unlink(this);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final List<Timer<T>> heads; // LEVELS * SLOTS circular lists, one sentinel each
+    private long currentTick;
+    private int size;
+
+    TimerWheel(long startTick) {
+        this.heads = new ArrayList<>(LEVELS * SLOTS);
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            Timer<T> head = new Timer<>(this, null, 0);
+            head.next = head;
+            head.prev = head;
+            heads.add(head);
+        }
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedule value for deadline; returns null when the deadline has already been reached
+     * (the caller handles it immediately) or lies beyond the wheel's range
+     */
+    Timer<T> schedule(T value, long deadline) {
+        if (deadline <= currentTick || deadline - currentTick >= 1L << (SLOT_BITS * LEVELS)) {
+            return null;
+        }
+        Timer<T> timer = new Timer<>(this, value, deadline);
+        file(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Advance to tick, collecting every live timer whose deadline was passed, in deadline order
+     */
+    List<T> advanceTo(long tick) {
+        List<T> due = new ArrayList<>();
+        while (currentTick < tick) {
+            currentTick++;
+
+            // Cascade the highest boundary crossed first, so timers fall through every level
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    Timer<T> timer = detach(slot(level, currentTick));
+                    while (timer != null) {
+                        Timer<T> next = timer.next;
+                        file(timer); // A deadline of exactly this tick lands in the level-0 slot below
+                        timer = next;
+                    }
+                }
+            }
+
+            Timer<T> timer = detach(slot(0, currentTick));
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                size--;
+                due.add(timer.value);
+                timer = next;
+            }
+        }
+        return due;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Scheduled live timers
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (Timer<T> head : heads) {
+            Timer<T> timer = detach(head);
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer = next;
+            }
+        }
+        size = 0;
+    }
+
+    // Internal Helpers
+
+    private void file(Timer<T> timer) {
+        long differing = timer.deadline ^ currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && (differing >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+
+        // Push onto the slot's list; order within a slot does not matter
+        Timer<T> head = slot(level, timer.deadline);
+        timer.prev = head;
+        timer.next = head.next;
+        head.next.prev = timer;
+        head.next = timer;
+    }
+
+    private void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        size--;
+    }
+
+    /**
+     * Empty a slot, returning its timers as a null-terminated chain (prev links left stale)
+     */
+    private Timer<T> detach(Timer<T> head) {
+        if (head.next == head) {
+            return null;
+        }
+        Timer<T> first = head.next;
+        head.prev.next = null; // head.prev is the last timer
+        head.next = head;
+        head.prev = head;
+        return first;
+    }
+
+    private Timer<T> slot(int level, long tick) {
+        return heads.get(level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+    }
+}
@@ -0,0 +1,283 @@
+package com.nmims.canteen.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming top-K heavy-hitter tracker (Space-Saving)
+ * Keeps at most K counters in a min-heap indexed by key, so each update is O(log K)
+ * and reading the top list is O(K log K) regardless of how many distinct keys were seen.
+ *
+ * Error bounds: every reported count over-estimates the true count by at most its
+ * {@link Entry#getError()}, and any key not reported has a true count no larger than
+ * {@link #getMinCount()}. While fewer than K distinct keys have been seen all counts are exact.
+ */
+public class TopKTracker implements Serializable {
+    public static final int DEFAULT_CAPACITY = 128; // Exact for menus up to 128 items
+
+    /**
+     * Tracked counter with its over-estimation error
+     */
+    public static class Entry implements Serializable {
+        private String key;
+        private double count;
+        private double error;
+        private transient int heapIndex;
+
+        public Entry() {
+        }
+
+        Entry(String key, double count, double error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() { return key; }
+        public double getCount() { return count; }
+        public double getError() { return error; }
+
+        /**
+         * Lowest possible true count
+         */
+        public double getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + "(±" + error + ")";
+        }
+    }
+
+    private int capacity;
+    private long totalUpdates;
+    private double totalWeight;
+    private Map<String, Entry> entries;
+    private transient Entry[] heap;
+    private transient int heapSize;
+
+    // Default constructor for serialization
+    public TopKTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TopKTracker(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * Record an occurrence of key with given weight (quantity or revenue)
+     */
+    public synchronized void offer(String key, double weight) {
+        if (key == null || weight <= 0) {
+            return;
+        }
+        ensureHeap();
+        totalUpdates++;
+        totalWeight += weight;
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.count += weight;
+            siftDown(entry.heapIndex);
+            return;
+        }
+
+        if (heapSize < capacity) {
+            entry = new Entry(key, weight, 0);
+            entries.put(key, entry);
+            heap[heapSize] = entry;
+            entry.heapIndex = heapSize;
+            heapSize++;
+            siftUp(entry.heapIndex);
+            return;
+        }
+
+        // Replace the minimum counter; its count becomes the new key's error bound
+        Entry min = heap[0];
+        entries.remove(min.key);
+        min.error = min.count;
+        min.count += weight;
+        min.key = key;
+        entries.put(key, min);
+        siftDown(0);
+    }
+
+    /**
+     * Merge another tracker into this one (mergeable summaries, error stays bounded)
+     */
+    public synchronized void merge(TopKTracker other) {
+        if (other == null) {
+            return;
+        }
+
+        Map<String, Entry> otherEntries;
+        double otherMin;
+        synchronized (other) {
+            otherEntries = new HashMap<>();
+            for (Entry entry : other.entries.values()) {
+                otherEntries.put(entry.key, new Entry(entry.key, entry.count, entry.error));
+            }
+            otherMin = other.getMinCountInternal();
+            totalUpdates += other.totalUpdates;
+            totalWeight += other.totalWeight;
+        }
+        double thisMin = getMinCountInternal();
+
+        // Keys missing from a full summary may have up to that summary's minimum count
+        Map<String, Entry> combined = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            Entry otherEntry = otherEntries.get(entry.key);
+            if (otherEntry != null) {
+                combined.put(entry.key, new Entry(entry.key, entry.count + otherEntry.count, entry.error + otherEntry.error));
+            } else {
+                combined.put(entry.key, new Entry(entry.key, entry.count + otherMin, entry.error + otherMin));
+            }
+        }
+        for (Entry otherEntry : otherEntries.values()) {
+            if (!combined.containsKey(otherEntry.key)) {
+                combined.put(otherEntry.key, new Entry(otherEntry.key, otherEntry.count + thisMin, otherEntry.error + thisMin));
+            }
+        }
+
+        // Keep the K largest counters
+        List<Entry> sorted = new ArrayList<>(combined.values());
+        sorted.sort((a, b) -> Double.compare(b.count, a.count));
+        entries = new HashMap<>();
+        heap = new Entry[capacity];
+        heapSize = 0;
+        for (int i = 0; i < sorted.size() && i < capacity; i++) {
+            Entry entry = sorted.get(i);
+            entries.put(entry.key, entry);
+            heap[heapSize] = entry;
+            entry.heapIndex = heapSize;
+            heapSize++;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Get the top entries in descending order of count, at most limit entries
+     * Sorts the K counters, so O(K log K)
+     */
+    public synchronized List<Entry> getTop(int limit) {
+        List<Entry> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            result.add(new Entry(entry.key, entry.count, entry.error));
+        }
+        result.sort((a, b) -> Double.compare(b.count, a.count));
+        if (result.size() > limit) {
+            return new ArrayList<>(result.subList(0, Math.max(limit, 0)));
+        }
+        return result;
+    }
+
+    /**
+     * Upper bound on the true count of any key not currently tracked
+     */
+    public synchronized double getMinCount() {
+        return getMinCountInternal();
+    }
+
+    /**
+     * Whether all tracked counts are exact (fewer than K distinct keys seen)
+     */
+    public synchronized boolean isExact() {
+        for (Entry entry : entries.values()) {
+            if (entry.error > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getTotalUpdates() {
+        return totalUpdates;
+    }
+
+    public synchronized double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Heap Helpers
+
+    private double getMinCountInternal() {
+        ensureHeap();
+        return heapSize < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Rebuild the transient heap after deserialization
+     */
+    private void ensureHeap() {
+        if (heap != null) {
+            return;
+        }
+        if (entries == null) {
+            entries = new HashMap<>();
+        }
+        heap = new Entry[capacity];
+        heapSize = 0;
+        for (Entry entry : entries.values()) {
+            heap[heapSize] = entry;
+            entry.heapIndex = heapSize;
+            heapSize++;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (entry.count <= heap[child].count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+}